@@ -0,0 +1,93 @@
+package com.nobu_games.audio.metering;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Meter listener that emits Java Flight Recorder events for the stages of a
+ * {@link MeterRegistry}.
+ * <p>
+ * Loaded reflectively by {@link MeterRegistry#enableFlightRecorder()}, so the
+ * rest of the library does not depend on the <code>jdk.jfr</code> module.
+ * The events are only created if they are enabled in the running recording.
+ * 
+ * @author ti
+ */
+public class FlightRecorderMeterListener implements MeterListener {
+    @Override
+    public void closed(StageMeter meter) {
+        final StageEvent event = new StageEvent();
+
+        if (event.isEnabled()) {
+            event.stage = meter.getName();
+            event.frames = meter.getFrames();
+            event.selfTime = meter.getSelfTime();
+            event.totalTime = meter.getTotalTime();
+            event.bytesRead = meter.getBytesRead();
+            event.bytesWritten = meter.getBytesWritten();
+            event.firstOutputTime = meter.getFirstOutputTime();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void firstOutput(StageMeter meter) {
+        final FirstOutputEvent event = new FirstOutputEvent();
+
+        if (event.isEnabled()) {
+            event.stage = meter.getName();
+            event.firstOutputTime = meter.getFirstOutputTime();
+            event.commit();
+        }
+    }
+
+    @Name("com.nobu_games.audio.FirstOutput")
+    @Label("Audio Stage First Output")
+    @Description("Audio processing stage produced its first frame or byte")
+    @Category("Audio")
+    static class FirstOutputEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Time To First Output")
+        @Timespan(Timespan.NANOSECONDS)
+        long firstOutputTime;
+    }
+
+    @Name("com.nobu_games.audio.Stage")
+    @Label("Audio Stage")
+    @Description("Counters of an audio processing stage that ended")
+    @Category("Audio")
+    static class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Frames")
+        long frames;
+
+        @Label("Self Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long selfTime;
+
+        @Label("Total Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long totalTime;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+
+        @Label("Time To First Output")
+        @Timespan(Timespan.NANOSECONDS)
+        long firstOutputTime;
+    }
+}
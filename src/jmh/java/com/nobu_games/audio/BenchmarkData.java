@@ -0,0 +1,123 @@
+package com.nobu_games.audio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import com.nobu_games.audio.format.wave.WaveAudioDataFormat;
+import com.nobu_games.audio.format.wave.WaveFormatWriter;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.AudioSource;
+import com.nobu_games.audio.source.DoubleArrayAudioSource;
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamWriter;
+
+/**
+ * Synthetic in-memory inputs for the benchmarks.
+ * <p>
+ * Every benchmark processes {@link #FRAMES} input frames per invocation and
+ * declares them as operations, so JMH reports the throughput in frames per
+ * second. The inputs are generated with a fixed seed, so runs on different
+ * versions of the library process the same data.
+ * 
+ * @author ti
+ */
+public final class BenchmarkData {
+    /**
+     * Amount of input frames per benchmark invocation.
+     */
+    public static final int FRAMES = 1 << 16;
+
+    /**
+     * Amount of frames that are read at a time.
+     */
+    public static final int BLOCK_FRAMES = 1024;
+
+    /**
+     * Output stream that discards everything written to it.
+     */
+    public static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public void write(int b) {
+        }
+    };
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Creates a descriptor for {@link #FRAMES} frames.
+     */
+    public static AudioStreamDescriptor createDescriptor(int channels,
+            int bitsPerSample, int sampleRate) {
+        return new PCMAudioStreamDescriptor(channels, (short) bitsPerSample,
+                sampleRate, FRAMES, 0);
+    }
+
+    /**
+     * Creates interleaved samples of a sine tone with some noise in each
+     * channel.
+     */
+    public static double[] createSamples(int channels) {
+        final Random random = new Random(42);
+        final double[] samples = new double[FRAMES * channels];
+
+        for (int frame = 0; frame < FRAMES; ++frame) {
+            for (int channel = 0; channel < channels; ++channel) {
+                samples[frame * channels + channel] = 0.7
+                        * Math.sin(frame * 0.05 * (channel + 1)) + 0.2
+                        * (random.nextDouble() * 2 - 1);
+            }
+        }
+
+        return samples;
+    }
+
+    /**
+     * Encodes samples as little endian linear PCM data.
+     */
+    public static byte[] createPCM(AudioStreamDescriptor descriptor,
+            double[] samples) throws IOException, AudioDecodingException,
+            AudioEncodingException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new PCMAudioStreamWriter(ByteOrder.LITTLE_ENDIAN).write(
+                new DoubleArrayAudioSource(descriptor, samples), output);
+        return output.toByteArray();
+    }
+
+    /**
+     * Encodes samples as linear PCM wave file.
+     */
+    public static byte[] createWave(AudioStreamDescriptor descriptor,
+            double[] samples) throws IOException, AudioDecodingException,
+            AudioEncodingException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new WaveFormatWriter(output, WaveAudioDataFormat.LINEAR_PCM)
+                .write(new DoubleArrayAudioSource(descriptor, samples));
+        return output.toByteArray();
+    }
+
+    /**
+     * Reads an audio source block by block until the end of the stream.
+     * 
+     * @return Sum of the first sample of each block, which keeps the JIT
+     *         compiler from eliminating the reads.
+     */
+    public static double drain(AudioSource source, double[][] block)
+            throws IOException {
+        double sum = 0;
+
+        while (source.read(block, 0, BLOCK_FRAMES) > 0) {
+            sum += block[0][0];
+        }
+
+        return sum;
+    }
+}
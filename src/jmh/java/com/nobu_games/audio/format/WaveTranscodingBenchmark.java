@@ -0,0 +1,80 @@
+package com.nobu_games.audio.format;
+
+import static com.nobu_games.audio.BenchmarkData.FRAMES;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nobu_games.audio.BenchmarkData;
+import com.nobu_games.audio.format.wave.WaveAudioDataFormat;
+import com.nobu_games.audio.format.wave.WaveFormatReader;
+import com.nobu_games.audio.format.wave.WaveFormatWriter;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.AudioSource;
+import com.nobu_games.audio.source.ResamplerFactory;
+
+/**
+ * End-to-end throughput of reading a wave file with {@link WaveFormatReader}
+ * and writing it with {@link WaveFormatWriter}, optionally resampled to 48
+ * kHz, in input frames per second.
+ * 
+ * @author ti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(FRAMES)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class WaveTranscodingBenchmark {
+    @Param({ "16", "24" })
+    public int bitsPerSample;
+
+    /**
+     * Output sample rate, 0 keeps the input sample rate of 44.1 kHz.
+     */
+    @Param({ "0", "48000" })
+    public int sampleRate;
+
+    private byte[] mWave;
+
+    @Setup
+    public void setUp() throws IOException, AudioDecodingException,
+            AudioEncodingException {
+        mWave = BenchmarkData.createWave(
+                BenchmarkData.createDescriptor(2, bitsPerSample, 44100),
+                BenchmarkData.createSamples(2));
+    }
+
+    @Benchmark
+    public void transcode() throws IOException, AudioDecodingException,
+            AudioEncodingException {
+        final WaveFormatReader reader = new WaveFormatReader(
+                new ByteArrayInputStream(mWave));
+        AudioSource source = reader.createAudioSource();
+
+        if (sampleRate > 0)
+            source = ResamplerFactory.create(source, sampleRate);
+
+        final WaveFormatWriter writer = new WaveFormatWriter(
+                BenchmarkData.NULL_OUTPUT, WaveAudioDataFormat.LINEAR_PCM);
+        writer.write(source);
+        reader.close();
+    }
+}
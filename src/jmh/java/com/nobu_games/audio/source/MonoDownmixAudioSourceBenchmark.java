@@ -0,0 +1,64 @@
+package com.nobu_games.audio.source;
+
+import static com.nobu_games.audio.BenchmarkData.FRAMES;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.BenchmarkData;
+
+/**
+ * Throughput of mixing channels down to mono with
+ * {@link MonoDownmixAudioSource} and the equivalent {@link ChannelMixer}.
+ * 
+ * @author ti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(FRAMES)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MonoDownmixAudioSourceBenchmark {
+    @Param({ "2", "6" })
+    public int channels;
+
+    private double[][] mBlock;
+    private AudioStreamDescriptor mDescriptor;
+    private double[] mSamples;
+
+    @Setup
+    public void setUp() {
+        mDescriptor = BenchmarkData.createDescriptor(channels, 16, 44100);
+        mSamples = BenchmarkData.createSamples(channels);
+        mBlock = new double[1][BenchmarkData.BLOCK_FRAMES];
+    }
+
+    @Benchmark
+    public double downmix() throws IOException {
+        return BenchmarkData.drain(new MonoDownmixAudioSource(
+                new DoubleArrayAudioSource(mDescriptor, mSamples)), mBlock);
+    }
+
+    @Benchmark
+    public double mixer() throws IOException {
+        return BenchmarkData.drain(ChannelMixer
+                .createMonoDownmix(new DoubleArrayAudioSource(mDescriptor,
+                        mSamples)), mBlock);
+    }
+}
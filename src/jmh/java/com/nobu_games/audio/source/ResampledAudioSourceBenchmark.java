@@ -0,0 +1,96 @@
+package com.nobu_games.audio.source;
+
+import static com.nobu_games.audio.BenchmarkData.FRAMES;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.BenchmarkData;
+
+/**
+ * Resampling throughput for common sample rate ratios, in input frames per
+ * second. Compares the legacy {@link ResampledAudioSource} with the resampler
+ * that {@link ResamplerFactory} picks.
+ * 
+ * @author ti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(FRAMES)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ResampledAudioSourceBenchmark {
+    /**
+     * Input and output sample rate.
+     */
+    @Param({ "22050:44100", "44100:48000", "48000:44100", "96000:48000" })
+    public String ratio;
+
+    /**
+     * <code>legacy</code> for {@link ResampledAudioSource},
+     * <code>factory</code> for {@link ResamplerFactory}.
+     */
+    @Param({ "legacy", "factory" })
+    public String resampler;
+
+    private double[][] mBlock;
+    private AudioStreamDescriptor mDescriptor;
+    private int mOutputRate;
+    private double[] mSamples;
+
+    @Setup
+    public void setUp() {
+        final String[] rates = ratio.split(":");
+        mDescriptor = BenchmarkData.createDescriptor(2, 16,
+                Integer.parseInt(rates[0]));
+        mOutputRate = Integer.parseInt(rates[1]);
+        mSamples = BenchmarkData.createSamples(2);
+        mBlock = new double[2][BenchmarkData.BLOCK_FRAMES];
+    }
+
+    private AudioSource createResampler() {
+        final AudioSource source = new DoubleArrayAudioSource(mDescriptor,
+                mSamples);
+
+        if ("legacy".equals(resampler))
+            return new ResampledAudioSource(source, mOutputRate);
+
+        return ResamplerFactory.create(source, mOutputRate);
+    }
+
+    @Benchmark
+    public double resample() throws IOException {
+        return BenchmarkData.drain(createResampler(), mBlock);
+    }
+
+    /**
+     * Frame by frame access, which the legacy resampler was designed for.
+     */
+    @Benchmark
+    public double resampleFrames() throws IOException {
+        final AudioSource resampled = createResampler();
+        double sum = 0;
+
+        while (resampled.next()) {
+            sum += resampled.getSample(0);
+        }
+
+        return sum;
+    }
+}
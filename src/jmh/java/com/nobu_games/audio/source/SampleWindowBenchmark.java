@@ -0,0 +1,64 @@
+package com.nobu_games.audio.source;
+
+import static com.nobu_games.audio.BenchmarkData.FRAMES;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.BenchmarkData;
+
+/**
+ * Throughput of sliding a {@link SampleWindow} over a stream sample by sample.
+ * 
+ * @author ti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(FRAMES)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SampleWindowBenchmark {
+    /**
+     * Look ahead and look behind size of the window.
+     */
+    @Param({ "1", "16", "256" })
+    public int size;
+
+    private AudioStreamDescriptor mDescriptor;
+    private double[] mSamples;
+
+    @Setup
+    public void setUp() {
+        mDescriptor = BenchmarkData.createDescriptor(2, 16, 44100);
+        mSamples = BenchmarkData.createSamples(2);
+    }
+
+    @Benchmark
+    public double next() throws IOException {
+        final SampleWindow window = new SampleWindow(
+                new DoubleArrayAudioSource(mDescriptor, mSamples), size, size);
+        double sum = 0;
+
+        while (window.next(0)) {
+            sum += window.getSample(0, 0) + window.getSample(1, size);
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,121 @@
+package com.nobu_games.audio.source;
+
+import static com.nobu_games.audio.BenchmarkData.FRAMES;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.BenchmarkData;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.stream.pcm.PCMAudioSource;
+
+/**
+ * Throughput of source chains of different shapes, read block by block and
+ * sample by sample, in input frames per second.
+ * <p>
+ * The setup reads every shape before the measurement starts, so the calls
+ * between the stages see several receiver types, as in a JVM that runs mixed
+ * workloads. Block reads pay for these calls once per block, sample reads
+ * once per frame and channel.
+ * 
+ * @author ti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(FRAMES)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SourceChainBenchmark {
+    private static final String[] SHAPES = { "downmix", "halfband",
+            "polyphase" };
+
+    /**
+     * Shape of the measured chain: 44.1 kHz stereo mixed down to mono, 24
+     * kHz stereo upsampled to 48 kHz or 44.1 kHz stereo resampled to 48 kHz
+     * and mixed down to mono.
+     */
+    @Param({ "downmix", "halfband", "polyphase" })
+    public String shape;
+
+    private double[][] mBlock;
+    private byte[] mData24000;
+    private byte[] mData44100;
+    private AudioStreamDescriptor mDescriptor24000;
+    private AudioStreamDescriptor mDescriptor44100;
+
+    private static double drainSamples(AudioSource source)
+            throws IOException {
+        final int channels = source.getDescriptor().getChannelCount();
+        double sum = 0;
+
+        while (source.next()) {
+            for (int channel = 0; channel < channels; ++channel) {
+                sum += source.getSample(channel);
+            }
+        }
+
+        return sum;
+    }
+
+    @Setup
+    public void setUp() throws IOException, AudioDecodingException,
+            AudioEncodingException {
+        final double[] samples = BenchmarkData.createSamples(2);
+        mDescriptor24000 = BenchmarkData.createDescriptor(2, 16, 24000);
+        mDescriptor44100 = BenchmarkData.createDescriptor(2, 16, 44100);
+        mData24000 = BenchmarkData.createPCM(mDescriptor24000, samples);
+        mData44100 = BenchmarkData.createPCM(mDescriptor44100, samples);
+        mBlock = new double[2][BenchmarkData.BLOCK_FRAMES];
+
+        for (String other : SHAPES) {
+            BenchmarkData.drain(createChain(other), mBlock);
+            drainSamples(createChain(other));
+        }
+    }
+
+    @Benchmark
+    public double block() throws IOException, AudioDecodingException {
+        return BenchmarkData.drain(createChain(shape), mBlock);
+    }
+
+    private AudioSource createChain(String chainShape)
+            throws AudioDecodingException {
+        if ("halfband".equals(chainShape)) {
+            return ResamplerFactory.create(new PCMAudioSource(
+                    new ByteArrayInputStream(mData24000),
+                    ByteOrder.LITTLE_ENDIAN, mDescriptor24000), 48000);
+        }
+
+        final AudioSource decoder = new PCMAudioSource(
+                new ByteArrayInputStream(mData44100), ByteOrder.LITTLE_ENDIAN,
+                mDescriptor44100);
+
+        if ("downmix".equals(chainShape))
+            return new MonoDownmixAudioSource(decoder);
+        return new MonoDownmixAudioSource(ResamplerFactory.create(decoder,
+                48000));
+    }
+
+    @Benchmark
+    public double sample() throws IOException, AudioDecodingException {
+        return drainSamples(createChain(shape));
+    }
+}
@@ -0,0 +1,83 @@
+package com.nobu_games.audio.stream.pcm;
+
+import static com.nobu_games.audio.BenchmarkData.BLOCK_FRAMES;
+import static com.nobu_games.audio.BenchmarkData.FRAMES;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.BenchmarkData;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+
+/**
+ * Decoding throughput of linear PCM data per bit depth.
+ * 
+ * @author ti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(FRAMES)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PCMAudioSourceBenchmark {
+    @Param({ "8", "16", "24", "32", "64" })
+    public int bitsPerSample;
+
+    @Param({ "2" })
+    public int channels;
+
+    private double[][] mBlock;
+    private byte[] mData;
+    private AudioStreamDescriptor mDescriptor;
+    private float[][] mFloatBlock;
+
+    @Setup
+    public void setUp() throws IOException, AudioDecodingException,
+            AudioEncodingException {
+        mDescriptor = BenchmarkData.createDescriptor(channels, bitsPerSample,
+                44100);
+        mData = BenchmarkData.createPCM(mDescriptor,
+                BenchmarkData.createSamples(channels));
+        mBlock = new double[channels][BLOCK_FRAMES];
+        mFloatBlock = new float[channels][BLOCK_FRAMES];
+    }
+
+    @Benchmark
+    public double decode() throws IOException, AudioDecodingException {
+        return BenchmarkData.drain(new PCMAudioSource(new ByteArrayInputStream(
+                mData), ByteOrder.LITTLE_ENDIAN, mDescriptor), mBlock);
+    }
+
+    @Benchmark
+    public float decodeFloat() throws IOException, AudioDecodingException {
+        final PCMFloatAudioSource source = new PCMFloatAudioSource(
+                new ByteArrayInputStream(mData), ByteOrder.LITTLE_ENDIAN,
+                mDescriptor);
+        float sum = 0;
+
+        while (source.read(mFloatBlock, 0, BLOCK_FRAMES) > 0) {
+            sum += mFloatBlock[0][0];
+        }
+
+        return sum;
+    }
+}
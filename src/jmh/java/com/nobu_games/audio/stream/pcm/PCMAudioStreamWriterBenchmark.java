@@ -0,0 +1,69 @@
+package com.nobu_games.audio.stream.pcm;
+
+import static com.nobu_games.audio.BenchmarkData.FRAMES;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.BenchmarkData;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.DoubleArrayAudioSource;
+
+/**
+ * Encoding throughput of linear PCM data per bit depth.
+ * 
+ * @author ti
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(FRAMES)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PCMAudioStreamWriterBenchmark {
+    @Param({ "8", "16", "24", "32", "64" })
+    public int bitsPerSample;
+
+    @Param({ "2" })
+    public int channels;
+
+    @Param({ "false", "true" })
+    public boolean floatingPoint;
+
+    private AudioStreamDescriptor mDescriptor;
+    private double[] mSamples;
+    private PCMAudioStreamWriter mWriter;
+
+    @Setup
+    public void setUp() {
+        mDescriptor = BenchmarkData.createDescriptor(channels, bitsPerSample,
+                44100);
+        mSamples = BenchmarkData.createSamples(channels);
+        mWriter = new PCMAudioStreamWriter(ByteOrder.LITTLE_ENDIAN,
+                floatingPoint);
+    }
+
+    @Benchmark
+    public void encode() throws IOException, AudioDecodingException,
+            AudioEncodingException {
+        mWriter.write(new DoubleArrayAudioSource(mDescriptor, mSamples),
+                BenchmarkData.NULL_OUTPUT);
+    }
+}
@@ -3,6 +3,11 @@ package com.nobu_games.audio;
 public interface AudioStreamDescriptor {
     public static final int FLAG_VARIABLE_BITS_PER_SAMPLE = 1;
     public static final int FLAG_VARIABLE_SAMPLE_RATE = 2;
+    /**
+     * Samples are encoded as IEEE 754 floating point values instead of
+     * integers. Only valid for 32 and 64 bits per sample.
+     */
+    public static final int FLAG_FLOATING_POINT = 4;
 
     /**
      * Gets the amount of audio channels available in this source.
@@ -26,5 +31,5 @@ public interface AudioStreamDescriptor {
      * 
      * @return Total sample count in stream or <code>-1</code> if unknown.
      */
-    int getSampleCount();
+    long getSampleCount();
 }
@@ -0,0 +1,362 @@
+package com.nobu_games.audio.format;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.source.AudioSource;
+import com.nobu_games.audio.source.MonoDownmixAudioSource;
+import com.nobu_games.audio.source.ResamplerFactory;
+import com.nobu_games.audio.source.ResamplerQuality;
+
+/**
+ * Runs transcoding jobs on an executor while limiting the estimated memory of
+ * their sample buffers.
+ * <p>
+ * Each job reads an audio stream from a {@link ContainerFormatReader},
+ * optionally resamples it and mixes it down to mono and writes it with a
+ * {@link ContainerFormatWriter}. Before a job starts it reserves an estimate
+ * of its sample buffer memory from the memory budget of the scheduler. Jobs
+ * that do not fit wait until running jobs release their reservations.
+ * <p>
+ * The estimate is derived from the stages of the job: the channel count of
+ * the input and the output, one block per stage and the filter length of the
+ * resampler. Readers and writers that buffer more than a block, e.g. to
+ * compress whole frames, are not accounted for, so the budget is a heuristic
+ * cap on the amount of concurrent jobs rather than a hard memory bound.
+ * <p>
+ * Cancelling the future of a job stops it cooperatively: the job checks for
+ * cancellation before every block it reads and gives up while waiting for
+ * memory. The reader and the writer of a job are closed when the job ends,
+ * whether it completed, failed or was cancelled.
+ * <p>
+ * The executor is pluggable. {@link #createVirtualThreadExecutor()} returns an
+ * executor that starts a virtual thread per job on Java runtimes that support
+ * them.
+ * 
+ * @author ti
+ */
+public class TranscodingScheduler {
+    /**
+     * Value for the target sample rate or channel count that keeps the value
+     * of the input stream.
+     */
+    public static final int KEEP = -1;
+
+    /**
+     * Default memory budget for sample buffers in bytes.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+    /**
+     * Amount of frames per channel that a stage of a job is assumed to
+     * buffer, the block size of the decoders, resamplers and writers of this
+     * library.
+     */
+    static final int BLOCK_FRAMES = 1024;
+
+    /**
+     * Interval in milliseconds in which waiting jobs check for cancellation.
+     */
+    private static final long POLL_INTERVAL = 50;
+
+    private final Executor mExecutor;
+    private final Semaphore mMemory;
+    private final int mMemoryBudget;
+
+    /**
+     * Creates a scheduler with the default memory budget.
+     * 
+     * @param executor
+     *            Executor that runs the jobs.
+     */
+    public TranscodingScheduler(Executor executor) {
+        this(executor, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Creates a scheduler.
+     * 
+     * @param executor
+     *            Executor that runs the jobs.
+     * @param memoryBudget
+     *            Budget for the estimated sample buffer memory of all running
+     *            jobs in bytes.
+     * @throws IllegalArgumentException
+     *             If the memory budget is less than 1 KiB.
+     */
+    public TranscodingScheduler(Executor executor, long memoryBudget) {
+        if (memoryBudget < 1024)
+            throw new IllegalArgumentException("memoryBudget must be >= 1024");
+        mExecutor = executor;
+        // Permits are counted in KiB, so budgets beyond 2 GiB fit in an int
+        mMemoryBudget = (int) Math.min(memoryBudget >> 10, Integer.MAX_VALUE);
+        mMemory = new Semaphore(mMemoryBudget, true);
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread. On Java
+     * runtimes without virtual threads a cached thread pool is returned
+     * instead.
+     * 
+     * @return New executor service.
+     */
+    public static ExecutorService createVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Estimates the sample buffer memory of a job from the stages it builds:
+     * the decoder buffers two blocks of the input channels, the resampler
+     * buffers a block plus its filter context, the downmix reads a block of
+     * the input channels and the writer reads and encodes a block of the
+     * output channels.
+     * 
+     * @return Estimate in KiB.
+     */
+    static int estimateMemory(AudioStreamDescriptor descriptor,
+            int sampleRate, int channelCount) {
+        final long inputChannels = descriptor.getChannelCount();
+        final long outputChannels = channelCount == 1 ? 1 : inputChannels;
+        final int inputRate = descriptor.getMaximumSampleRate(0);
+        long frames = inputChannels * 2 * BLOCK_FRAMES;
+
+        if (sampleRate > 0 && inputRate != sampleRate) {
+            frames += inputChannels
+                    * (ResamplerFactory.getInputContext(inputRate,
+                            sampleRate, ResamplerQuality.HIGH) + BLOCK_FRAMES);
+        }
+
+        if (outputChannels != inputChannels)
+            frames += inputChannels * BLOCK_FRAMES;
+
+        final long bytes = (frames + outputChannels * 2 * BLOCK_FRAMES) * 8;
+        return (int) Math.min((bytes + 1023) >> 10, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the amount of sample buffer memory that is not reserved by running
+     * jobs.
+     * 
+     * @return Available memory in bytes.
+     */
+    public long getAvailableMemory() {
+        return (long) mMemory.availablePermits() << 10;
+    }
+
+    /**
+     * Submits a transcoding job.
+     * 
+     * @param reader
+     *            Reader of the input audio stream.
+     * @param sampleRate
+     *            Target sample rate or {@link #KEEP}.
+     * @param channelCount
+     *            Target channel count. Either 1 for mixing down to mono or
+     *            {@link #KEEP}.
+     * @param writer
+     *            Writer for the transcoded audio stream.
+     * @return Future that yields the amount of samples that were written.
+     *         Its {@link Future#get()} method throws an
+     *         {@link java.util.concurrent.ExecutionException} that wraps the
+     *         {@link IOException},
+     *         {@link com.nobu_games.audio.source.AudioDecodingException} or
+     *         {@link com.nobu_games.audio.sink.AudioEncodingException} that
+     *         made the job fail.
+     * @throws IllegalArgumentException
+     *             If the channel count is not supported.
+     */
+    public Future<Long> submit(ContainerFormatReader reader, int sampleRate,
+            int channelCount, ContainerFormatWriter writer) {
+        if (channelCount != 1 && channelCount != KEEP)
+            throw new IllegalArgumentException("Unsupported channel count "
+                    + channelCount);
+        final Job job = new Job(reader, sampleRate, channelCount, writer);
+        final FutureTask<Long> future = new FutureTask<Long>(job) {
+            @Override
+            protected void done() {
+                if (isCancelled())
+                    job.abandon();
+            }
+        };
+        job.mFuture = future;
+        mExecutor.execute(future);
+        return future;
+    }
+
+    /**
+     * Transcoding job that stops when its future is cancelled.
+     */
+    private class Job implements Callable<Long> {
+        private final int mChannelCount;
+        private volatile Future<Long> mFuture;
+        private final ContainerFormatReader mReader;
+        private final int mSampleRate;
+        private final AtomicBoolean mStarted = new AtomicBoolean();
+        private final ContainerFormatWriter mWriter;
+
+        Job(ContainerFormatReader reader, int sampleRate, int channelCount,
+                ContainerFormatWriter writer) {
+            mReader = reader;
+            mSampleRate = sampleRate;
+            mChannelCount = channelCount;
+            mWriter = writer;
+        }
+
+        /**
+         * Closes the reader and the writer if the job was cancelled before it
+         * started.
+         */
+        void abandon() {
+            if (!mStarted.compareAndSet(false, true))
+                return;
+
+            try {
+                close();
+            } catch (IOException e) {
+                // Nobody is interested in the result anymore
+            }
+        }
+
+        @Override
+        public Long call() throws Exception {
+            if (!mStarted.compareAndSet(false, true))
+                throw new CancellationException();
+
+            try {
+                final AudioStreamDescriptor descriptor = mReader
+                        .getAudioStreamDescriptor();
+                final int permits = Math.min(estimateMemory(descriptor,
+                        mSampleRate, mChannelCount), mMemoryBudget);
+                reserve(permits);
+
+                try {
+                    AudioSource source = mReader.createAudioSource();
+
+                    if (mSampleRate != KEEP
+                            && descriptor.getMaximumSampleRate(0) != mSampleRate) {
+                        source = ResamplerFactory.create(source, mSampleRate);
+                    }
+
+                    if (mChannelCount == 1 && descriptor.getChannelCount() > 1) {
+                        source = new MonoDownmixAudioSource(source);
+                    }
+
+                    final JobAudioSource output = new JobAudioSource(source);
+                    mWriter.write(output);
+                    return output.mFrames;
+                } finally {
+                    mMemory.release(permits);
+                }
+            } finally {
+                close();
+            }
+        }
+
+        private void close() throws IOException {
+            try {
+                mReader.close();
+            } finally {
+                mWriter.close();
+            }
+        }
+
+        /**
+         * Throws if the future of this job has been cancelled.
+         */
+        void checkCancelled() throws InterruptedIOException {
+            final Future<Long> future = mFuture;
+            if (future != null && future.isCancelled())
+                throw new InterruptedIOException("Transcoding job cancelled");
+        }
+
+        /**
+         * Waits until the requested amount of memory is available.
+         */
+        private void reserve(int permits) throws InterruptedIOException {
+            try {
+                while (!mMemory.tryAcquire(permits, POLL_INTERVAL,
+                        TimeUnit.MILLISECONDS)) {
+                    checkCancelled();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(
+                        "Interrupted while waiting for memory");
+            }
+        }
+
+        /**
+         * Audio source at the end of the pipeline of a job. It counts the
+         * samples passed to the writer and stops the job once it is
+         * cancelled.
+         */
+        private class JobAudioSource implements AudioSource {
+            private long mFrames;
+            private final AudioSource mSource;
+
+            JobAudioSource(AudioSource source) {
+                mSource = source;
+            }
+
+            @Override
+            public void close() throws IOException {
+                mSource.close();
+            }
+
+            @Override
+            public short getCurrentBitRate(int channel) {
+                return mSource.getCurrentBitRate(channel);
+            }
+
+            @Override
+            public int getCurrentSampleRate(int channel) {
+                return mSource.getCurrentSampleRate(channel);
+            }
+
+            @Override
+            public AudioStreamDescriptor getDescriptor() {
+                return mSource.getDescriptor();
+            }
+
+            @Override
+            public double getSample(int channel) {
+                return mSource.getSample(channel);
+            }
+
+            @Override
+            public boolean next() throws IOException {
+                checkCancelled();
+                final boolean hasNext = mSource.next();
+                if (hasNext)
+                    ++mFrames;
+                return hasNext;
+            }
+
+            @Override
+            public int read(double[][] dst, int offset, int frames)
+                    throws IOException {
+                checkCancelled();
+                final int count = mSource.read(dst, offset, frames);
+                if (count > 0)
+                    mFrames += count;
+                return count;
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.nobu_games.audio.format.wave;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.format.ContainerFormatReader;
+import com.nobu_games.audio.format.InvalidAudioFormatException;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.ProxyAudioStreamDescriptor;
+import com.nobu_games.audio.source.SeekableAudioSource;
+import com.nobu_games.audio.stream.pcm.MappedPCMAudioSource;
+
+/**
+ * Wave file reader that memory maps the audio data of a wave file.
+ * <p>
+ * Unlike {@link WaveFormatReader}, {@link #createAudioSource()} can be called
+ * any number of times. Every call returns a new independent, seekable cursor
+ * that shares the same memory mapping. The mapping remains valid after this
+ * reader has been closed.
+ * 
+ * @author ti
+ */
+public class MappedWaveFormatReader implements ContainerFormatReader {
+    private final FileChannel mChannel;
+    private final ByteBuffer mData;
+    private final AudioStreamDescriptor mDescriptor;
+    private final ByteOrder mEndianness;
+
+    /**
+     * Creates a memory mapping reader for a wave file.
+     * 
+     * @param file
+     *            Wave file to read.
+     * @throws InvalidAudioFormatException
+     *             In case the file is not a supported wave file.
+     * @throws IOException
+     *             In case the file could not be read or mapped.
+     */
+    public MappedWaveFormatReader(File file)
+            throws InvalidAudioFormatException, IOException {
+        this(new RandomAccessFile(file, "r").getChannel());
+    }
+
+    /**
+     * Creates a memory mapping reader for a wave file.
+     * 
+     * @param channel
+     *            File channel of the wave file to read. It is closed when this
+     *            reader is closed.
+     * @throws InvalidAudioFormatException
+     *             In case the file is not a supported wave file.
+     * @throws IOException
+     *             In case the file could not be read or mapped.
+     */
+    public MappedWaveFormatReader(FileChannel channel)
+            throws InvalidAudioFormatException, IOException {
+        mChannel = channel;
+
+        try {
+            channel.position(0);
+            WaveFormatReader header = new WaveFormatReader(
+                    Channels.newInputStream(channel));
+            AudioStreamDescriptor descriptor = header
+                    .getAudioStreamDescriptor();
+            mEndianness = header.getByteOrder();
+            long offset = header.getDataOffset();
+            long size = Math.min(header.getDataSize(), channel.size()
+                    - offset);
+
+            if (size > Integer.MAX_VALUE) {
+                throw new InvalidAudioFormatException(
+                        "Audio data is too large to be memory mapped");
+            }
+
+            mData = channel.map(MapMode.READ_ONLY, offset, size);
+
+            if (descriptor.getSampleCount() == -1) {
+                // Streamed wave file, the mapping tells the actual length
+                final long sampleCount = size / (descriptor
+                        .getChannelCount() * (descriptor
+                        .getMaximumBitsPerSample(0) / 8));
+                descriptor = new ProxyAudioStreamDescriptor(descriptor) {
+                    @Override
+                    public long getSampleCount() {
+                        return sampleCount;
+                    }
+                };
+            }
+
+            mDescriptor = descriptor;
+        } catch (IOException | AudioDecodingException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    /**
+     * Creates a new seekable audio source for the mapped audio data.
+     * 
+     * @return Seekable audio source starting at the first sample of the
+     *         stream.
+     * @throws AudioDecodingException
+     *             In case the audio stream format is not supported.
+     */
+    @Override
+    public SeekableAudioSource createAudioSource()
+            throws AudioDecodingException {
+        return new MappedPCMAudioSource(mData, mEndianness, mDescriptor);
+    }
+
+    @Override
+    public AudioStreamDescriptor getAudioStreamDescriptor() {
+        return mDescriptor;
+    }
+}
@@ -0,0 +1,250 @@
+package com.nobu_games.audio.format.wave;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.ResamplerQuality;
+import com.nobu_games.audio.source.SeekableAudioSource;
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamWriter;
+
+/**
+ * Converts memory mapped wave files to linear PCM wave files on several
+ * threads.
+ * <p>
+ * The output sample range is split into chunks that are converted
+ * independently on a {@link ForkJoinPool}. Each chunk reads its own range of
+ * the input with a separate {@link SeekableAudioSource}, including enough
+ * samples before and after the range to fill the resampling filter, as
+ * mapped by {@link WaveRangeTranscoder}. The output of a chunk is written
+ * directly to its final position in the output file. The result is identical
+ * to converting the file on a single thread with {@link WaveTranscoder}.
+ * 
+ * @author ti
+ */
+public class ParallelWaveTranscoder {
+    /**
+     * Default amount of output samples per chunk.
+     */
+    public static final int DEFAULT_CHUNK_FRAMES = 1 << 18;
+
+    private final int mChunkFrames;
+    private final ForkJoinPool mPool;
+    private final WaveRangeTranscoder mRangeTranscoder;
+
+    /**
+     * Creates a transcoder for the specified target format that runs on a
+     * shared pool with one thread per processor.
+     * 
+     * @param sampleRate
+     *            Target sample rate or {@link WaveTranscoder#KEEP}.
+     * @param channelCount
+     *            Target channel count. Either 1 for mixing down to mono or
+     *            {@link WaveTranscoder#KEEP}.
+     * @throws IllegalArgumentException
+     *             If the channel count is not supported.
+     */
+    public ParallelWaveTranscoder(int sampleRate, int channelCount) {
+        this(sampleRate, channelCount, ResamplerQuality.HIGH,
+                DefaultPool.INSTANCE, DEFAULT_CHUNK_FRAMES);
+    }
+
+    /**
+     * Creates a transcoder for the specified target format.
+     * 
+     * @param sampleRate
+     *            Target sample rate or {@link WaveTranscoder#KEEP}.
+     * @param channelCount
+     *            Target channel count. Either 1 for mixing down to mono or
+     *            {@link WaveTranscoder#KEEP}.
+     * @param quality
+     *            Quality preset of the resampler.
+     * @param pool
+     *            Pool that runs the chunk conversions.
+     * @param chunkFrames
+     *            Maximum amount of output samples per chunk.
+     * @throws IllegalArgumentException
+     *             If the channel count is not supported or if the chunk size
+     *             is not positive.
+     */
+    public ParallelWaveTranscoder(int sampleRate, int channelCount,
+            ResamplerQuality quality, ForkJoinPool pool, int chunkFrames) {
+        if (chunkFrames < 1)
+            throw new IllegalArgumentException("chunkFrames must be > 0");
+        mRangeTranscoder = new WaveRangeTranscoder(sampleRate, channelCount,
+                quality);
+        mPool = pool;
+        mChunkFrames = chunkFrames;
+    }
+
+    /**
+     * Transcodes a wave file.
+     * 
+     * @param input
+     *            Reader of the input wave file.
+     * @param output
+     *            File channel of the output wave file. It is written with
+     *            absolute positions, truncated to the size of the transcoded
+     *            file and left open.
+     * @return Size of the transcoded wave file in bytes.
+     * @throws IOException
+     *             In case of an I/O error while reading or writing.
+     * @throws AudioDecodingException
+     *             In case the input file format is not supported.
+     * @throws AudioEncodingException
+     *             In case the audio data could not be encoded.
+     */
+    public long transcode(MappedWaveFormatReader input, FileChannel output)
+            throws IOException, AudioDecodingException, AudioEncodingException {
+        final AudioStreamDescriptor descriptor = mRangeTranscoder
+                .getOutputDescriptor(input);
+        final long frameSize = descriptor.getChannelCount()
+                * (descriptor.getMaximumBitsPerSample(0) / 8);
+        final long sampleCount = descriptor.getSampleCount();
+
+        // Chunks address frames with int offsets
+        if (sampleCount > Integer.MAX_VALUE) {
+            throw new AudioEncodingException(
+                    "Transcoded audio data has too many frames");
+        }
+
+        final int frames = (int) sampleCount;
+        final long dataSize = frames * frameSize;
+
+        final ByteArrayOutputStream header = new ByteArrayOutputStream(44);
+        new WaveFormatWriter(header, WaveAudioDataFormat.LINEAR_PCM)
+                .writeHeader(descriptor);
+        final long dataOffset = header.size();
+        WaveTranscoder.writeFully(output, ByteBuffer.wrap(header
+                .toByteArray()), 0);
+
+        final Chunk chunk = new Chunk(input, output, 0, frames, dataOffset,
+                frameSize);
+
+        try {
+            mPool.invoke(chunk);
+        } catch (ChunkException e) {
+            Throwable cause = e;
+            while (cause instanceof ChunkException)
+                cause = cause.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof AudioDecodingException)
+                throw (AudioDecodingException) cause;
+            if (cause instanceof AudioEncodingException)
+                throw (AudioEncodingException) cause;
+            throw e;
+        }
+
+        output.truncate(dataOffset + dataSize);
+        return dataOffset + dataSize;
+    }
+
+    /**
+     * Converts a range of output samples, splitting it into smaller chunks if
+     * it is larger than the chunk size.
+     */
+    private class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long mDataOffset;
+        private final long mFrameSize;
+        private final MappedWaveFormatReader mInput;
+        private final int mLength;
+        private final int mOffset;
+        private final FileChannel mOutput;
+
+        Chunk(MappedWaveFormatReader input, FileChannel output, int offset,
+                int length, long dataOffset, long frameSize) {
+            mInput = input;
+            mOutput = output;
+            mOffset = offset;
+            mLength = length;
+            mDataOffset = dataOffset;
+            mFrameSize = frameSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (mLength > mChunkFrames) {
+                final int half = mLength / 2;
+                invokeAll(split(mOffset, half), split(mOffset + half, mLength
+                        - half));
+                return;
+            }
+
+            try {
+                convert();
+            } catch (IOException | AudioDecodingException
+                    | AudioEncodingException e) {
+                throw new ChunkException(e);
+            }
+        }
+
+        private void convert() throws IOException, AudioDecodingException,
+                AudioEncodingException {
+            new PCMAudioStreamWriter(ByteOrder.LITTLE_ENDIAN).write(
+                    mRangeTranscoder.createAudioSource(mInput, mOffset,
+                            mLength), new PositionalOutputStream(mOutput,
+                            mDataOffset + mOffset * mFrameSize));
+        }
+
+        private Chunk split(int offset, int length) {
+            return new Chunk(mInput, mOutput, offset, length, mDataOffset,
+                    mFrameSize);
+        }
+    }
+
+    /**
+     * Unchecked wrapper for exceptions thrown by a chunk conversion.
+     */
+    private static class ChunkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkException(Exception cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Lazily created pool that is shared by all transcoders that do not
+     * specify their own pool.
+     */
+    private static class DefaultPool {
+        static final ForkJoinPool INSTANCE = new ForkJoinPool();
+    }
+
+    /**
+     * Output stream that writes to consecutive absolute positions of a file
+     * channel, so several streams can write to the same channel concurrently.
+     */
+    private static class PositionalOutputStream extends OutputStream {
+        private final FileChannel mChannel;
+        private long mPosition;
+
+        PositionalOutputStream(FileChannel channel, long position) {
+            mChannel = channel;
+            mPosition = position;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            WaveTranscoder.writeFully(mChannel, ByteBuffer.wrap(b, off, len),
+                    mPosition);
+            mPosition += len;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+    }
+}
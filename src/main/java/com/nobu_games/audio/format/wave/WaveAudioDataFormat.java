@@ -1,7 +1,11 @@
 package com.nobu_games.audio.format.wave;
 
 public enum WaveAudioDataFormat {
-    LINEAR_PCM(1);
+    LINEAR_PCM(1),
+    /**
+     * IEEE floating point samples with 32 or 64 bits.
+     */
+    IEEE_FLOAT(3);
 
     private short mCode;
 
@@ -1,5 +1,6 @@
 package com.nobu_games.audio.format.wave;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -10,17 +11,44 @@ import com.nobu_games.audio.format.ContainerFormatReader;
 import com.nobu_games.audio.format.InvalidAudioFormatException;
 import com.nobu_games.audio.source.AudioDecodingException;
 import com.nobu_games.audio.source.AudioSource;
+import com.nobu_games.audio.source.FloatAudioSource;
 import com.nobu_games.audio.stream.pcm.PCMAudioSource;
 import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+import com.nobu_games.audio.stream.pcm.PCMFloatAudioSource;
 
 /**
  * Wave file reader.
+ * <p>
+ * The header is parsed by walking the chunks up to the <code>data</code>
+ * chunk, so files with additional chunks in front of the audio data are
+ * supported. RF64 and BW64 files, which declare sizes beyond 4 GiB in a
+ * <code>ds64</code> chunk, are read as well. The audio sources end after the
+ * declared amount of samples, so chunks behind the <code>data</code> chunk
+ * are never decoded as audio data.
  * 
  * @author ti
  */
 public class WaveFormatReader implements ContainerFormatReader {
     private static final String INVALID_WAVE_FILE_FORMAT = "Invalid WAVE file format";
-    
+
+    /**
+     * Format code of <code>WAVE_FORMAT_EXTENSIBLE</code>, which stores the
+     * actual format code in the sub format GUID of the extended fmt chunk.
+     */
+    private static final short FORMAT_EXTENSIBLE = (short) 0xfffe;
+
+    /**
+     * Size of the extension of <code>WAVE_FORMAT_EXTENSIBLE</code> up to and
+     * including the format code in the sub format GUID.
+     */
+    private static final int EXTENSIBLE_SIZE = 10;
+
+    /**
+     * Chunk size that stands for an unknown size, or for the size in the
+     * <code>ds64</code> chunk of RF64 files.
+     */
+    private static final long UNKNOWN_SIZE = 0xffffffffL;
+
     private AudioStreamDescriptor mAudioStreamDescriptor;
     private short mBitsPerSample;
     private short mBlockAlign;
@@ -28,18 +56,25 @@ public class WaveFormatReader implements ContainerFormatReader {
     private final ByteBuffer mByteBuffer;
     private int mByteRate;
     private short mChannels;
-    private int mDataSize;
+    private long mDataOffset;
+    private long mDataSize;
+    /**
+     * Data chunk size of the <code>ds64</code> chunk or -1.
+     */
+    private long mDataSize64 = -1;
     private ByteOrder mEndianness;
     private short mFormatCode;
     private final InputStream mInput;
     private int mInputFileSize;
-    private int mSampleCount;
+    private long mPosition;
+    private boolean mRF64;
+    private long mSampleCount;
     private int mSampleRate;
 
     public WaveFormatReader(InputStream source)
             throws InvalidAudioFormatException, IOException {
         mInput = source;
-        // Length of wave file format header
+        // Large enough for the biggest field of the header
         mByteArray = new byte[44];
         mByteBuffer = ByteBuffer.wrap(mByteArray);
         readHeader();
@@ -55,7 +90,38 @@ public class WaveFormatReader implements ContainerFormatReader {
             AudioDecodingException {
         switch (mFormatCode) {
             case 1:
-                return new PCMAudioSource(mInput, mEndianness,
+            case 3:
+                return new PCMAudioSource(getDataStream(), mEndianness,
+                        getAudioStreamDescriptor());
+
+            default:
+                throw new AudioDecodingException(
+                        "Cannot create audio source for unsupported format code "
+                                + mFormatCode);
+        }
+    }
+
+    /**
+     * Creates a single precision audio source that can decode the contained
+     * audio stream on the fly.
+     * <p>
+     * This method must only be called once on a reader object, and it cannot
+     * be combined with {@link #createAudioSource()}.
+     * 
+     * @return Single precision audio source for the contained audio stream
+     *         data.
+     * @throws IOException
+     *             In case there was an error reading from the input data
+     *             stream.
+     * @throws AudioDecodingException
+     *             In case the audio stream format is not supported.
+     */
+    public FloatAudioSource createFloatAudioSource() throws IOException,
+            AudioDecodingException {
+        switch (mFormatCode) {
+            case 1:
+            case 3:
+                return new PCMFloatAudioSource(getDataStream(), mEndianness,
                         getAudioStreamDescriptor());
 
             default:
@@ -76,6 +142,19 @@ public class WaveFormatReader implements ContainerFormatReader {
                             mSampleCount, 0);
                     break;
 
+                case 3:
+                    if (mBitsPerSample != 32 && mBitsPerSample != 64) {
+                        throw new InvalidAudioFormatException(
+                                "Unsupported floating point bit depth "
+                                        + mBitsPerSample);
+                    }
+
+                    mAudioStreamDescriptor = new PCMAudioStreamDescriptor(
+                            mChannels, mBitsPerSample, mSampleRate,
+                            mSampleCount,
+                            AudioStreamDescriptor.FLAG_FLOATING_POINT);
+                    break;
+
                 default:
                     throw new InvalidAudioFormatException(
                             "Cannot create audio stream descriptor for unsupported format code "
@@ -86,28 +165,166 @@ public class WaveFormatReader implements ContainerFormatReader {
         return mAudioStreamDescriptor;
     }
 
+    /**
+     * Gets the byte order of the contained audio stream.
+     * 
+     * @return Byte order as declared by the RIFF header.
+     */
+    public ByteOrder getByteOrder() {
+        return mEndianness;
+    }
+
+    /**
+     * Gets the input stream of the audio data, limited to the declared amount
+     * of samples unless the size of the data chunk is unknown.
+     */
+    private InputStream getDataStream() {
+        if (mSampleCount < 0)
+            return mInput;
+        return new LimitedInputStream(mInput, mSampleCount * mBlockAlign);
+    }
+
+    /**
+     * Gets the position of the first audio data byte in the wave file.
+     * 
+     * @return Byte offset of the <code>data</code> chunk contents.
+     */
+    public long getDataOffset() {
+        return mDataOffset;
+    }
+
+    /**
+     * Gets the size of the audio data as declared in the wave file header.
+     * The size of RF64 files is taken from their <code>ds64</code> chunk.
+     * 
+     * @return Size of the <code>data</code> chunk contents in bytes.
+     *         Streamed wave files of unknown length declare
+     *         <code>0xffffffff</code>.
+     */
+    public long getDataSize() {
+        return mDataSize;
+    }
+
+    /**
+     * Checks whether the file is an RF64 or BW64 file, which stores sizes
+     * beyond 4 GiB in a <code>ds64</code> chunk.
+     * 
+     * @return <code>true</code> for RF64 and BW64 files.
+     */
+    public boolean isRF64() {
+        return mRF64;
+    }
+
+    /**
+     * Checks whether the last read chunk ID matches.
+     */
+    private boolean isChunk(String id) {
+        for (int i = 0; i < 4; ++i) {
+            if (mByteArray[i] != id.charAt(i))
+                return false;
+        }
+
+        return true;
+    }
+
     private void readBuffer(int length) throws IOException {
-        int result = mInput.read(mByteArray, 0, length);
-        if (result == -1)
-            throw new IOException("Unexpected end of stream");
+        int total = 0;
+
+        while (total < length) {
+            int result = mInput.read(mByteArray, total, length - total);
+            if (result == -1)
+                throw new IOException("Unexpected end of stream");
+            total += result;
+        }
+
+        mPosition += length;
     }
 
-    private void readHeader() throws InvalidAudioFormatException, IOException {
-        validateRiff();
-        mByteBuffer.order(mEndianness);
-        mInputFileSize = readInt();
-        validateWave();
-        validateFmt();
-        readInt(); // sub-chunk size
+    /**
+     * Reads the <code>ds64</code> chunk of RF64 files.
+     */
+    private void readDataSize64(long chunkSize)
+            throws InvalidAudioFormatException, IOException {
+        if (chunkSize < 24)
+            throw new InvalidAudioFormatException(INVALID_WAVE_FILE_FORMAT);
+        readLong(); // RIFF size
+        mDataSize64 = readLong();
+        readLong(); // sample count of the fact chunk
+        skip(chunkSize - 24 + (chunkSize & 1));
+    }
+
+    /**
+     * Reads the <code>fmt </code> chunk.
+     */
+    private void readFormat(long chunkSize)
+            throws InvalidAudioFormatException, IOException {
+        if (chunkSize < 16)
+            throw new InvalidAudioFormatException(INVALID_WAVE_FILE_FORMAT);
         mFormatCode = readShort();
         mChannels = readShort();
         mSampleRate = readInt();
         mByteRate = readInt();
         mBlockAlign = readShort();
         mBitsPerSample = readShort();
-        validateData();
-        mDataSize = readInt();
-        mSampleCount = mDataSize / mBlockAlign;
+        long extraSize = chunkSize - 16;
+
+        if (mFormatCode == FORMAT_EXTENSIBLE && extraSize >= EXTENSIBLE_SIZE) {
+            readShort(); // extension size
+            readShort(); // valid bits per sample
+            readInt(); // channel mask
+            mFormatCode = readShort(); // first bytes of the sub format GUID
+            extraSize -= EXTENSIBLE_SIZE;
+        }
+
+        // Chunks are padded to an even size
+        skip(extraSize + (chunkSize & 1));
+    }
+
+    /**
+     * Walks the chunks up to the <code>data</code> chunk. Chunks other than
+     * <code>fmt </code> and <code>ds64</code>, such as <code>LIST</code>,
+     * <code>fact</code>, <code>bext</code> or <code>JUNK</code>, are skipped
+     * without reading them.
+     */
+    private void readHeader() throws InvalidAudioFormatException, IOException {
+        validateRiff();
+        mByteBuffer.order(mEndianness);
+        mInputFileSize = readInt();
+        validateWave();
+        boolean hasFormat = false;
+
+        while (true) {
+            readBuffer(4);
+            final boolean ds64 = isChunk("ds64");
+            final boolean fmt = isChunk("fmt ");
+            final boolean data = isChunk("data");
+            final long chunkSize = readInt() & UNKNOWN_SIZE;
+
+            if (data) {
+                if (!hasFormat)
+                    throw new InvalidAudioFormatException(
+                            INVALID_WAVE_FILE_FORMAT);
+                mDataSize = chunkSize == UNKNOWN_SIZE
+                        && mDataSize64 > -1 ? mDataSize64 : chunkSize;
+                break;
+            } else if (fmt) {
+                readFormat(chunkSize);
+                hasFormat = true;
+            } else if (ds64 && mRF64) {
+                readDataSize64(chunkSize);
+            } else {
+                skip(chunkSize + (chunkSize & 1));
+            }
+        }
+
+        mDataOffset = mPosition;
+
+        if (mBlockAlign <= 0)
+            throw new InvalidAudioFormatException(INVALID_WAVE_FILE_FORMAT);
+
+        // Streamed wave files of unknown length declare the maximum size
+        mSampleCount = mDataSize == UNKNOWN_SIZE ? -1 : mDataSize
+                / mBlockAlign;
     }
 
     private int readInt() throws IOException {
@@ -116,33 +333,43 @@ public class WaveFormatReader implements ContainerFormatReader {
         return mByteBuffer.getInt();
     }
 
+    private long readLong() throws IOException {
+        readBuffer(8);
+        mByteBuffer.rewind();
+        return mByteBuffer.getLong();
+    }
+
     private short readShort() throws IOException {
         readBuffer(2);
         mByteBuffer.rewind();
         return mByteBuffer.getShort();
     }
 
-    private void validateData() throws InvalidAudioFormatException, IOException {
-        readBuffer(4);
+    private void skip(long length) throws IOException {
+        while (length > 0) {
+            long skipped = mInput.skip(length);
 
-        if (mByteArray[0] != 'd' || mByteArray[1] != 'a'
-                || mByteArray[2] != 't' || mByteArray[3] != 'a') {
-            throw new InvalidAudioFormatException(INVALID_WAVE_FILE_FORMAT);
-        }
-    }
-
-    private void validateFmt() throws InvalidAudioFormatException, IOException {
-        readBuffer(4);
+            if (skipped <= 0) {
+                // Some streams do not skip at all, probe for the end
+                if (mInput.read() == -1)
+                    throw new IOException("Unexpected end of stream");
+                skipped = 1;
+            }
 
-        if (mByteArray[0] != 'f' || mByteArray[1] != 'm'
-                || mByteArray[2] != 't' || mByteArray[3] != ' ') {
-            throw new InvalidAudioFormatException(INVALID_WAVE_FILE_FORMAT);
+            length -= skipped;
+            mPosition += skipped;
         }
     }
 
     private void validateRiff() throws InvalidAudioFormatException, IOException {
         readBuffer(4);
 
+        if (isChunk("RF64") || isChunk("BW64")) {
+            mEndianness = ByteOrder.LITTLE_ENDIAN;
+            mRF64 = true;
+            return;
+        }
+
         if (mByteArray[0] == 'R' && mByteArray[1] == 'I'
                 && mByteArray[2] == 'F') {
             if (mByteArray[3] == 'F') {
@@ -166,4 +393,56 @@ public class WaveFormatReader implements ContainerFormatReader {
                     "Unsupported WAVE file format");
         }
     }
+
+    /**
+     * Input stream decorator that ends after a limited amount of bytes.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private long mRemaining;
+
+        LimitedInputStream(InputStream input, long length) {
+            super(input);
+            mRemaining = length;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(mRemaining, in.available());
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mRemaining <= 0)
+                return -1;
+            final int result = in.read();
+            if (result != -1)
+                --mRemaining;
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (mRemaining <= 0)
+                return -1;
+            final int count = in.read(b, off, (int) Math.min(len, mRemaining));
+            if (count > 0)
+                mRemaining -= count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = in.skip(Math.min(n, mRemaining));
+            if (skipped > 0)
+                mRemaining -= skipped;
+            return skipped;
+        }
+    }
 }
@@ -1,33 +1,102 @@
 package com.nobu_games.audio.format.wave;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
 
 import com.nobu_games.audio.AudioStreamDescriptor;
 import com.nobu_games.audio.format.ContainerFormatWriter;
 import com.nobu_games.audio.sink.AudioEncodingException;
 import com.nobu_games.audio.source.AudioDecodingException;
 import com.nobu_games.audio.source.AudioSource;
+import com.nobu_games.audio.source.FloatAudioSource;
 import com.nobu_games.audio.stream.AudioStreamWriter;
 import com.nobu_games.audio.stream.pcm.PCMAudioStreamWriter;
 
 /**
  * Wave file writer.
+ * <p>
+ * Audio streams of unknown length, which report a sample count of -1, are
+ * written in one of two ways. Writers of an output stream declare the maximum
+ * RIFF and data chunk sizes, which readers treat as "read until the end of the
+ * stream", and flush every encoded block right away. Writers of a seekable
+ * channel write the same placeholder sizes and patch the actual sizes into
+ * the header when they are closed or {@link #finish() finished}. In both cases
+ * the audio data is never held in memory as a whole.
+ * <p>
+ * Audio data beyond the 4 GiB limit of the RIFF format is written as an RF64
+ * file, which declares the sizes in a <code>ds64</code> chunk in front of the
+ * <code>fmt </code> chunk. Streams of unknown length that are written to a
+ * seekable channel reserve room for that chunk with a <code>JUNK</code>
+ * chunk, which {@link #finish()} turns into a <code>ds64</code> chunk if
+ * needed.
  * 
  * @author ti
  */
 public class WaveFormatWriter implements ContainerFormatWriter {
+    /**
+     * Size of the wave file header in bytes.
+     */
+    private static final int HEADER_SIZE = 44;
+
+    /**
+     * Size of the <code>ds64</code> chunk including its chunk header.
+     */
+    private static final int DS64_SIZE = 36;
+
+    /**
+     * Size of the RF64 file header in bytes.
+     */
+    private static final int RF64_HEADER_SIZE = HEADER_SIZE + DS64_SIZE;
+
+    /**
+     * RIFF and data chunk size that stands for an unknown or too large size.
+     */
+    private static final long UNKNOWN_SIZE = 0xffffffffL;
+
+    private int mBlockAlign;
     private final byte[] mByteArray;
     private final ByteBuffer mByteBuffer;
+    private final SeekableByteChannel mChannel;
     private final WaveAudioDataFormat mFormat;
+    private long mHeaderPosition = -1;
+    private int mHeaderSize;
     private OutputStream mOutput;
+    private boolean mRF64;
 
     public WaveFormatWriter(OutputStream output, WaveAudioDataFormat format) {
+        this(output, null, format);
+    }
+
+    /**
+     * Creates a writer for a seekable channel. The RIFF and data chunk sizes
+     * in the header are patched with the amount of written audio data when
+     * the writer is closed, so the length of the audio stream does not need to
+     * be known in advance.
+     * 
+     * @param output
+     *            Seekable channel to write to, for example a
+     *            {@link java.nio.channels.FileChannel}. The wave file starts
+     *            at its current position. It is closed when this writer is
+     *            closed.
+     * @param format
+     *            Audio data format.
+     */
+    public WaveFormatWriter(SeekableByteChannel output,
+            WaveAudioDataFormat format) {
+        this(Channels.newOutputStream(output), output, format);
+    }
+
+    private WaveFormatWriter(OutputStream output, SeekableByteChannel channel,
+            WaveAudioDataFormat format) {
         mOutput = output;
+        mChannel = channel;
         mFormat = format;
-        mByteArray = new byte[44];
+        mByteArray = new byte[RF64_HEADER_SIZE];
         mByteBuffer = ByteBuffer.wrap(mByteArray);
         mByteBuffer.order(ByteOrder.LITTLE_ENDIAN);
     }
@@ -39,64 +108,285 @@ public class WaveFormatWriter implements ContainerFormatWriter {
      * @param source
      *            Audio source to calculate final wave file size for.
      * @return Wave file size in bytes for audio source on success. -1 if the
-     *         source does not specify the total amount of samples.
+     *         source does not specify the total amount of samples or if the
+     *         size does not fit into an <code>int</code>.
+     * @deprecated Only works for linear PCM wave files. Use
+     *             {@link #getFileSize(AudioStreamDescriptor)} instead.
      */
-    // TODO I just realize how non-sensical this method is, since it would only
-    // work correctly for PCM wave files.
+    @Deprecated
     public static int calculateFileSize(AudioSource source) {
-        final AudioStreamDescriptor descriptor = source.getDescriptor();
-        final int sampleCount = descriptor.getSampleCount();
-        if (sampleCount == -1)
+        try {
+            final long fileSize = getFileSize(WaveAudioDataFormat.LINEAR_PCM,
+                    source.getDescriptor());
+            return fileSize > Integer.MAX_VALUE ? -1 : (int) fileSize;
+        } catch (AudioEncodingException e) {
             return -1;
-
-        int bitsPerSample = descriptor.getMaximumBitsPerSample(0);
-        int channels = descriptor.getChannelCount();
-        int dataSize = sampleCount * channels * (bitsPerSample / 8);
-        int fileSize = 44 + dataSize;
-
-        return fileSize;
+        }
     }
 
+    /**
+     * Closes the output. Writers of a seekable channel patch the header sizes
+     * first.
+     */
     @Override
     public void close() throws IOException {
-        mOutput.close();
+        try {
+            if (mChannel != null)
+                finish();
+        } finally {
+            mOutput.close();
+        }
+    }
+
+    /**
+     * Patches the RIFF and data chunk sizes in the header with the amount of
+     * bytes written behind it so far. This allows to complete the wave file
+     * without closing the channel. If the header has room for a
+     * <code>ds64</code> chunk and the data exceeds the limit of the RIFF
+     * format, the file is turned into an RF64 file. Otherwise sizes beyond 4
+     * GiB are declared as unknown.
+     * 
+     * @throws IOException
+     *             In case of an I/O error while patching the header.
+     * @throws IllegalStateException
+     *             If this writer does not write to a seekable channel.
+     */
+    public void finish() throws IOException {
+        if (mChannel == null)
+            throw new IllegalStateException(
+                    "Only writers of seekable channels can patch the header");
+        if (mHeaderPosition < 0)
+            return;
+        final long end = mChannel.position();
+        final long dataSize = end - mHeaderPosition - mHeaderSize;
+
+        if (mHeaderSize == RF64_HEADER_SIZE
+                && (mRF64 || isRF64Required(dataSize))) {
+            final ByteBuffer buffer = ByteBuffer.allocate(DS64_SIZE + 12)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put(new byte[] { 'R', 'F', '6', '4' });
+            buffer.putInt((int) UNKNOWN_SIZE);
+            buffer.put(new byte[] { 'W', 'A', 'V', 'E' });
+            putDataSize64(buffer, dataSize);
+            buffer.flip();
+            write(mHeaderPosition, buffer);
+            patchSize(mHeaderPosition + mHeaderSize - 4, UNKNOWN_SIZE);
+            mRF64 = true;
+        } else {
+            patchSize(mHeaderPosition + 4, dataSize + mHeaderSize - 8);
+            patchSize(mHeaderPosition + mHeaderSize - 4, dataSize);
+        }
+
+        mChannel.position(end);
+    }
+
+    /**
+     * Creates the audio stream writer for the audio data format of this
+     * writer.
+     */
+    private static AudioStreamWriter createStreamWriter(
+            WaveAudioDataFormat format) {
+        switch (format) {
+            case LINEAR_PCM:
+                return new PCMAudioStreamWriter(ByteOrder.LITTLE_ENDIAN);
+
+            case IEEE_FLOAT:
+                return new PCMAudioStreamWriter(ByteOrder.LITTLE_ENDIAN, true);
+
+            default:
+                throw new IllegalStateException(
+                        "Cannot handle wave audio data format " + format);
+        }
+    }
+
+    /**
+     * Gets the bits per encoded sample. IEEE float samples are written with
+     * 64 bits if the audio stream has 64 bits per sample, otherwise with 32
+     * bits.
+     */
+    private int getBitsPerSample(AudioStreamDescriptor descriptor) {
+        final int bitsPerSample = descriptor.getMaximumBitsPerSample(0);
+
+        if (mFormat == WaveAudioDataFormat.IEEE_FLOAT)
+            return bitsPerSample == 64 ? 64 : 32;
+
+        return bitsPerSample;
+    }
+
+    /**
+     * Gets the output stream for the audio data. Streams of unknown length are
+     * flushed after every block, so their data reaches the receiver as soon as
+     * it is encoded.
+     */
+    private OutputStream getDataOutput(AudioStreamDescriptor descriptor) {
+        if (descriptor.getSampleCount() >= 0)
+            return mOutput;
+
+        return new FilterOutputStream(mOutput) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                out.flush();
+            }
+        };
+    }
+
+    /**
+     * Calculates the exact size of the wave file that this writer produces
+     * for an audio stream, for example to announce the content length of a
+     * transfer before the audio data has been encoded.
+     * 
+     * @param descriptor
+     *            Descriptor of the audio stream to write.
+     * @return Size of the wave file in bytes or -1 if the sample count of the
+     *         stream is unknown.
+     * @throws AudioEncodingException
+     *             In case the audio stream cannot be encoded in the audio data
+     *             format of this writer.
+     */
+    public long getFileSize(AudioStreamDescriptor descriptor)
+            throws AudioEncodingException {
+        return getFileSize(mFormat, descriptor);
+    }
+
+    static long getFileSize(WaveAudioDataFormat format,
+            AudioStreamDescriptor descriptor) throws AudioEncodingException {
+        final long dataSize = createStreamWriter(format).getEncodedSize(
+                descriptor);
+        if (dataSize < 0)
+            return -1;
+        return (isRF64Required(dataSize) ? RF64_HEADER_SIZE : HEADER_SIZE)
+                + dataSize;
+    }
+
+    /**
+     * Checks whether audio data of the specified size exceeds the limits of
+     * the RIFF format.
+     */
+    private static boolean isRF64Required(long dataSize) {
+        return dataSize + HEADER_SIZE - 8 >= UNKNOWN_SIZE;
+    }
+
+    private void patchSize(long position, long size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(4).order(
+                ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt((int) Math.min(size, UNKNOWN_SIZE)).flip();
+        write(position, buffer);
+    }
+
+    /**
+     * Puts a <code>ds64</code> chunk with the sizes of the RF64 file.
+     */
+    private void putDataSize64(ByteBuffer buffer, long dataSize) {
+        buffer.put(new byte[] { 'd', 's', '6', '4' });
+        buffer.putInt(DS64_SIZE - 8);
+        buffer.putLong(dataSize + RF64_HEADER_SIZE - 8);
+        buffer.putLong(dataSize);
+        buffer.putLong(dataSize / mBlockAlign);
+        // No table of further chunk sizes
+        buffer.putInt(0);
+    }
+
+    /**
+     * Writes a buffer at an absolute position of the seekable channel.
+     */
+    private void write(long position, ByteBuffer buffer) throws IOException {
+        mChannel.position(position);
+
+        while (buffer.hasRemaining()) {
+            mChannel.write(buffer);
+        }
     }
 
     @Override
     public void write(AudioSource source) throws IOException,
             AudioDecodingException, AudioEncodingException {
         writeHeader(source.getDescriptor());
-        AudioStreamWriter writer;
+        createStreamWriter(mFormat).write(source,
+                getDataOutput(source.getDescriptor()));
+    }
+
+    /**
+     * Writes a single precision audio source into the wave file.
+     * 
+     * @param source
+     *            Audio source that provides the sample stream to encode and
+     *            write.
+     * @throws IOException
+     * @throws AudioEncodingException
+     */
+    public void write(FloatAudioSource source) throws IOException,
+            AudioEncodingException {
+        writeHeader(source.getDescriptor());
 
         switch (mFormat) {
             case LINEAR_PCM:
-                writer = new PCMAudioStreamWriter(ByteOrder.LITTLE_ENDIAN);
+            case IEEE_FLOAT:
+                new PCMAudioStreamWriter(ByteOrder.LITTLE_ENDIAN,
+                        mFormat == WaveAudioDataFormat.IEEE_FLOAT).write(
+                        source, getDataOutput(source.getDescriptor()));
                 break;
 
             default:
                 throw new IllegalStateException(
                         "Cannot handle wave audio data format " + mFormat);
         }
-
-        writer.write(source, mOutput);
     }
 
-    private void writeHeader(AudioStreamDescriptor descriptor)
+    /**
+     * Writes only the wave file header for an audio stream.
+     * <p>
+     * This is useful if the audio data is already encoded in the target format
+     * and can be copied verbatim behind the header. If the sample count of the
+     * descriptor is unknown, the header declares the maximum sizes and is
+     * flushed right away.
+     * 
+     * @param descriptor
+     *            Descriptor of the audio stream that follows the header.
+     * @throws IOException
+     *             In case of an I/O error while writing the header.
+     */
+    public void writeHeader(AudioStreamDescriptor descriptor)
             throws IOException {
+        mByteBuffer.clear();
         mByteBuffer.order(ByteOrder.LITTLE_ENDIAN);
-        mByteBuffer.put(new byte[] { 'R', 'I', 'F', 'F' });
-        int sampleCount = descriptor.getSampleCount();
-        int bitsPerSample = descriptor.getMaximumBitsPerSample(0);
+        long sampleCount = descriptor.getSampleCount();
+        int bitsPerSample = getBitsPerSample(descriptor);
         int channels = descriptor.getChannelCount();
         int sampleRate = descriptor.getMaximumSampleRate(0);
         int byteRate = sampleRate * channels * (bitsPerSample / 8);
         int blockAlign = channels * (bitsPerSample / 8);
-        int dataSize = sampleCount * channels * (bitsPerSample / 8);
-        int fileSize = 44 + dataSize;
-        mByteBuffer.putInt(fileSize - 8);
+        long dataSize = sampleCount < 0 ? UNKNOWN_SIZE : sampleCount
+                * blockAlign;
+        mBlockAlign = blockAlign;
+        mRF64 = sampleCount >= 0 && isRF64Required(dataSize);
+        // Seekable channels reserve room for turning the file into an RF64
+        // file when the length is unknown
+        final boolean reserve = sampleCount < 0 && mChannel != null;
+        mHeaderSize = mRF64 || reserve ? RF64_HEADER_SIZE : HEADER_SIZE;
+
+        if (mRF64) {
+            mByteBuffer.put(new byte[] { 'R', 'F', '6', '4' });
+            mByteBuffer.putInt((int) UNKNOWN_SIZE);
+        } else {
+            mByteBuffer.put(new byte[] { 'R', 'I', 'F', 'F' });
+            mByteBuffer.putInt((int) Math.min(dataSize + mHeaderSize - 8,
+                    UNKNOWN_SIZE));
+        }
+
         mByteBuffer.put(new byte[] { 'W', 'A', 'V', 'E' });
+
+        if (mRF64) {
+            putDataSize64(mByteBuffer, dataSize);
+        } else if (reserve) {
+            mByteBuffer.put(new byte[] { 'J', 'U', 'N', 'K' });
+            mByteBuffer.putInt(DS64_SIZE - 8);
+            mByteBuffer.put(new byte[DS64_SIZE - 8]);
+        }
+
         mByteBuffer.put(new byte[] { 'f', 'm', 't', ' ' });
-        // sub chunk size... this is currently hard coded for linear PCM
+        // sub chunk size... the basic fmt chunk is sufficient for linear PCM
+        // and IEEE float, the optional fact chunk of the latter is omitted
         // http://csserver.evansville.edu/~blandfor/EE356/WavFormatDocs.pdf
         mByteBuffer.putInt(16);
         mByteBuffer.putShort(mFormat.getFormatCode());
@@ -106,7 +396,12 @@ public class WaveFormatWriter implements ContainerFormatWriter {
         mByteBuffer.putShort((short) blockAlign);
         mByteBuffer.putShort((short) bitsPerSample);
         mByteBuffer.put(new byte[] { 'd', 'a', 't', 'a' });
-        mByteBuffer.putInt(dataSize);
-        mOutput.write(mByteArray, 0, 44);
+        mByteBuffer.putInt((int) (mRF64 ? UNKNOWN_SIZE : Math.min(dataSize,
+                UNKNOWN_SIZE)));
+        if (mChannel != null)
+            mHeaderPosition = mChannel.position();
+        mOutput.write(mByteArray, 0, mHeaderSize);
+        if (sampleCount < 0)
+            mOutput.flush();
     }
 }
@@ -0,0 +1,441 @@
+package com.nobu_games.audio.format.wave;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.AudioSource;
+import com.nobu_games.audio.source.MonoDownmixAudioSource;
+import com.nobu_games.audio.source.ResamplerFactory;
+import com.nobu_games.audio.source.ResamplerQuality;
+import com.nobu_games.audio.source.SampleRangeAudioSource;
+import com.nobu_games.audio.source.SeekableAudioSource;
+import com.nobu_games.audio.stream.pcm.SeekablePCMAudioSource;
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamWriter;
+
+/**
+ * Transcodes arbitrary byte ranges of the linear PCM wave file that
+ * {@link WaveTranscoder} would produce for a wave file, for example to answer
+ * HTTP range requests.
+ * <p>
+ * The input is either a {@link MappedWaveFormatReader} or any
+ * {@link SeekableAudioSource} of the audio data, such as a
+ * {@link SeekablePCMAudioSource} on a file channel for files that are too
+ * large to be mapped.
+ * <p>
+ * A byte range of the transcoded file is mapped to the range of output samples
+ * it covers. The output samples are mapped to the input samples they depend
+ * on, including the samples that the resampling filter needs to warm up. Only
+ * those input samples are decoded, starting at a position that is reached by
+ * seeking the {@link SeekableAudioSource} of the input. The produced bytes are
+ * identical to the same range of the completely transcoded file, so the cost
+ * of a request does not depend on where the range starts.
+ * 
+ * @author ti
+ */
+public class WaveRangeTranscoder {
+    private final int mChannelCount;
+    private final ResamplerQuality mQuality;
+    private final int mSampleRate;
+
+    /**
+     * Creates a range transcoder for the specified target format.
+     * 
+     * @param sampleRate
+     *            Target sample rate or {@link WaveTranscoder#KEEP}.
+     * @param channelCount
+     *            Target channel count. Either 1 for mixing down to mono or
+     *            {@link WaveTranscoder#KEEP}.
+     * @throws IllegalArgumentException
+     *             If the channel count is not supported.
+     */
+    public WaveRangeTranscoder(int sampleRate, int channelCount) {
+        this(sampleRate, channelCount, ResamplerQuality.HIGH);
+    }
+
+    /**
+     * Creates a range transcoder for the specified target format.
+     * 
+     * @param sampleRate
+     *            Target sample rate or {@link WaveTranscoder#KEEP}.
+     * @param channelCount
+     *            Target channel count. Either 1 for mixing down to mono or
+     *            {@link WaveTranscoder#KEEP}.
+     * @param quality
+     *            Quality preset of the resampler.
+     * @throws IllegalArgumentException
+     *             If the channel count is not supported.
+     */
+    public WaveRangeTranscoder(int sampleRate, int channelCount,
+            ResamplerQuality quality) {
+        if (channelCount != 1 && channelCount != WaveTranscoder.KEEP)
+            throw new IllegalArgumentException("Unsupported channel count "
+                    + channelCount);
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mQuality = quality;
+    }
+
+    /**
+     * Creates an audio source for a range of output samples. It decodes only
+     * the input samples of the range and its filter context.
+     * 
+     * @param input
+     *            Reader of the input wave file.
+     * @param offset
+     *            Index of the first output sample.
+     * @param length
+     *            Amount of output samples.
+     * @return Audio source that provides the output samples of the range.
+     * @throws IOException
+     *             In case the input could not be positioned.
+     * @throws AudioDecodingException
+     *             In case the input file format is not supported.
+     */
+    public AudioSource createAudioSource(MappedWaveFormatReader input,
+            long offset, long length) throws IOException,
+            AudioDecodingException {
+        return createAudioSource(input.createAudioSource(), offset, length);
+    }
+
+    /**
+     * Creates an audio source for a range of output samples. It decodes only
+     * the input samples of the range and its filter context.
+     * 
+     * @param input
+     *            Audio source of the input. It is positioned at the start of
+     *            the input range and must not be used otherwise while the
+     *            returned audio source is in use.
+     * @param offset
+     *            Index of the first output sample.
+     * @param length
+     *            Amount of output samples.
+     * @return Audio source that provides the output samples of the range.
+     * @throws IOException
+     *             In case the input could not be positioned.
+     * @throws IllegalArgumentException
+     *             If the range is negative or if its input range starts
+     *             beyond the <code>int</code> positions that a
+     *             {@link SeekableAudioSource} can seek to.
+     */
+    public AudioSource createAudioSource(SeekableAudioSource input,
+            long offset, long length) throws IOException {
+        final InputRange range = getInputRange(input.getDescriptor(), offset,
+                length);
+
+        if (range.mStart > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Input position "
+                    + range.mStart + " of output sample " + offset
+                    + " cannot be sought to");
+        }
+
+        input.seekPosition((int) range.mStart);
+
+        return new SampleRangeAudioSource(
+                createPipeline(new SampleRangeAudioSource(input, 0,
+                        range.mEnd - range.mStart)), range.mWarmup, length);
+    }
+
+    /**
+     * Builds the conversion pipeline for an input audio source.
+     */
+    private AudioSource createPipeline(AudioSource source) {
+        final AudioStreamDescriptor descriptor = source.getDescriptor();
+
+        if (mSampleRate != WaveTranscoder.KEEP
+                && descriptor.getMaximumSampleRate(0) != mSampleRate) {
+            source = ResamplerFactory.create(source, mSampleRate, mQuality);
+        }
+
+        if (mChannelCount == 1 && descriptor.getChannelCount() > 1) {
+            source = new MonoDownmixAudioSource(source);
+        }
+
+        return source;
+    }
+
+    /**
+     * Maps a range of output samples to the input samples that are needed to
+     * compute it.
+     * 
+     * @param input
+     *            Descriptor of the input audio stream.
+     * @param offset
+     *            Index of the first output sample.
+     * @param length
+     *            Amount of output samples.
+     * @return Input sample range.
+     * @throws IllegalArgumentException
+     *             If the range is negative.
+     */
+    public InputRange getInputRange(AudioStreamDescriptor input, long offset,
+            long length) {
+        if (offset < 0 || length < 0)
+            throw new IllegalArgumentException(
+                    "offset and length must be >= 0");
+        final int inputRate = input.getMaximumSampleRate(0);
+        final int outputRate = mSampleRate == WaveTranscoder.KEEP ? inputRate
+                : mSampleRate;
+        final long start = ResamplerFactory.getStartPosition(inputRate,
+                outputRate, mQuality, offset);
+        final long end = Math.min(input.getSampleCount(),
+                ResamplerFactory.getEndPosition(inputRate, outputRate,
+                        mQuality, offset + length));
+        final long warmup = ResamplerFactory.getWarmup(inputRate, outputRate,
+                mQuality, offset);
+
+        return new InputRange(start, Math.max(start, end), warmup);
+    }
+
+    /**
+     * Maps a range of output samples to the input samples that are needed to
+     * compute it.
+     * 
+     * @param input
+     *            Reader of the input wave file.
+     * @param offset
+     *            Index of the first output sample.
+     * @param length
+     *            Amount of output samples.
+     * @return Input sample range.
+     * @throws IllegalArgumentException
+     *             If the range is negative.
+     */
+    public InputRange getInputRange(MappedWaveFormatReader input,
+            long offset, long length) {
+        return getInputRange(input.getAudioStreamDescriptor(), offset, length);
+    }
+
+    /**
+     * Gets the descriptor of the transcoded audio stream.
+     * 
+     * @param input
+     *            Reader of the input wave file.
+     * @return Descriptor of the output audio stream.
+     * @throws AudioDecodingException
+     *             In case the input file format is not supported.
+     */
+    public AudioStreamDescriptor getOutputDescriptor(
+            MappedWaveFormatReader input) throws AudioDecodingException {
+        return getOutputDescriptor(input.createAudioSource());
+    }
+
+    /**
+     * Gets the descriptor of the transcoded audio stream.
+     * 
+     * @param input
+     *            Audio source of the input. It is not read.
+     * @return Descriptor of the output audio stream.
+     */
+    public AudioStreamDescriptor getOutputDescriptor(SeekableAudioSource input) {
+        return createPipeline(input).getDescriptor();
+    }
+
+    /**
+     * Calculates the size of the transcoded wave file.
+     * 
+     * @param input
+     *            Reader of the input wave file.
+     * @return Size of the transcoded wave file in bytes.
+     * @throws AudioDecodingException
+     *             In case the input file format is not supported.
+     * @throws AudioEncodingException
+     *             In case the audio data cannot be encoded.
+     */
+    public long getOutputSize(MappedWaveFormatReader input)
+            throws AudioDecodingException, AudioEncodingException {
+        return getOutputSize(input.createAudioSource());
+    }
+
+    /**
+     * Calculates the size of the transcoded wave file.
+     * 
+     * @param input
+     *            Audio source of the input. It is not read.
+     * @return Size of the transcoded wave file in bytes.
+     * @throws AudioEncodingException
+     *             In case the audio data cannot be encoded.
+     */
+    public long getOutputSize(SeekableAudioSource input)
+            throws AudioEncodingException {
+        return WaveFormatWriter.getFileSize(WaveAudioDataFormat.LINEAR_PCM,
+                getOutputDescriptor(input));
+    }
+
+    /**
+     * Transcodes a byte range of the transcoded wave file.
+     * 
+     * @param input
+     *            Reader of the input wave file.
+     * @param position
+     *            Position of the first byte in the transcoded wave file,
+     *            including the header.
+     * @param length
+     *            Amount of bytes to produce.
+     * @param output
+     *            Target channel for the bytes. It is left open.
+     * @return Amount of bytes written to the output channel.
+     * @throws IOException
+     *             In case of an I/O error while writing.
+     * @throws AudioDecodingException
+     *             In case the input file format is not supported.
+     * @throws AudioEncodingException
+     *             In case the audio data could not be encoded.
+     * @throws IllegalArgumentException
+     *             If the range is not within the transcoded wave file.
+     */
+    public long transcode(MappedWaveFormatReader input, long position,
+            long length, WritableByteChannel output) throws IOException,
+            AudioDecodingException, AudioEncodingException {
+        return transcode(input.createAudioSource(), position, length, output);
+    }
+
+    /**
+     * Transcodes a byte range of the transcoded wave file.
+     * 
+     * @param input
+     *            Audio source of the input. It is repositioned and left open.
+     * @param position
+     *            Position of the first byte in the transcoded wave file,
+     *            including the header.
+     * @param length
+     *            Amount of bytes to produce.
+     * @param output
+     *            Target channel for the bytes. It is left open.
+     * @return Amount of bytes written to the output channel.
+     * @throws IOException
+     *             In case of an I/O error while reading or writing.
+     * @throws AudioDecodingException
+     *             In case the input audio data could not be decoded.
+     * @throws AudioEncodingException
+     *             In case the audio data could not be encoded.
+     * @throws IllegalArgumentException
+     *             If the range is not within the transcoded wave file.
+     */
+    public long transcode(SeekableAudioSource input, long position,
+            long length, WritableByteChannel output) throws IOException,
+            AudioDecodingException, AudioEncodingException {
+        final AudioStreamDescriptor descriptor = getOutputDescriptor(input);
+        final long fileSize = WaveFormatWriter.getFileSize(
+                WaveAudioDataFormat.LINEAR_PCM, descriptor);
+
+        if (position < 0 || length < 0 || position + length > fileSize) {
+            throw new IllegalArgumentException("Range " + position + "+"
+                    + length + " exceeds file size " + fileSize);
+        }
+
+        final ByteArrayOutputStream headerStream = new ByteArrayOutputStream(
+                44);
+        new WaveFormatWriter(headerStream, WaveAudioDataFormat.LINEAR_PCM)
+                .writeHeader(descriptor);
+        final byte[] header = headerStream.toByteArray();
+        final long end = position + length;
+
+        if (position < header.length) {
+            WaveTranscoder.writeFully(output, ByteBuffer.wrap(header,
+                    (int) position, (int) (Math.min(end, header.length)
+                            - position)));
+        }
+
+        final long dataStart = Math.max(position, header.length)
+                - header.length;
+        final long dataEnd = end - header.length;
+
+        if (dataEnd > dataStart) {
+            final long frameSize = descriptor.getChannelCount()
+                    * (descriptor.getMaximumBitsPerSample(0) / 8);
+            final long first = dataStart / frameSize;
+            final long last = (dataEnd + frameSize - 1) / frameSize;
+            new PCMAudioStreamWriter(ByteOrder.LITTLE_ENDIAN).write(
+                    createAudioSource(input, first, last - first),
+                    new RangeOutputStream(output, dataStart - first
+                            * frameSize, dataEnd - dataStart));
+        }
+
+        return length;
+    }
+
+    /**
+     * Range of input samples needed to compute a range of output samples.
+     */
+    public static class InputRange {
+        private final long mEnd;
+        private final long mStart;
+        private final long mWarmup;
+
+        InputRange(long start, long end, long warmup) {
+            mStart = start;
+            mEnd = end;
+            mWarmup = warmup;
+        }
+
+        /**
+         * Gets the end of the input range.
+         * 
+         * @return Index behind the last input sample.
+         */
+        public long getEnd() {
+            return mEnd;
+        }
+
+        /**
+         * Gets the start of the input range.
+         * 
+         * @return Index of the first input sample.
+         */
+        public long getStart() {
+            return mStart;
+        }
+
+        /**
+         * Gets the amount of output samples that the input range yields in
+         * front of the requested output range. They are computed to warm up
+         * the resampling filter and discarded.
+         * 
+         * @return Amount of warm-up output samples.
+         */
+        public long getWarmup() {
+            return mWarmup;
+        }
+    }
+
+    /**
+     * Output stream that skips a number of leading bytes and passes at most a
+     * limited amount of the following bytes to a channel.
+     */
+    private static class RangeOutputStream extends OutputStream {
+        private final WritableByteChannel mChannel;
+        private long mRemaining;
+        private long mSkip;
+
+        RangeOutputStream(WritableByteChannel channel, long skip, long length) {
+            mChannel = channel;
+            mSkip = skip;
+            mRemaining = length;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            final int skip = (int) Math.min(mSkip, len);
+            mSkip -= skip;
+            final int count = (int) Math.min(mRemaining, len - skip);
+
+            if (count > 0) {
+                WaveTranscoder.writeFully(mChannel, ByteBuffer.wrap(b, off
+                        + skip, count));
+                mRemaining -= count;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package com.nobu_games.audio.format.wave;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.format.InvalidAudioFormatException;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.AudioSource;
+import com.nobu_games.audio.source.MonoDownmixAudioSource;
+import com.nobu_games.audio.source.ProxyAudioStreamDescriptor;
+import com.nobu_games.audio.source.ResamplerFactory;
+import com.nobu_games.audio.source.SampleRangeAudioSource;
+import com.nobu_games.audio.stream.pcm.PCMAudioSource;
+
+/**
+ * Converts wave files to linear PCM wave files with a specific sample rate and
+ * channel count.
+ * <p>
+ * If the audio data of the input file already matches the target format, the
+ * data chunk is copied verbatim behind a freshly written header using
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which lets
+ * the operating system copy the data without passing it through the Java
+ * heap. Otherwise the audio data is decoded, converted and encoded again. The
+ * resampler is picked by {@link ResamplerFactory}.
+ * 
+ * @author ti
+ */
+public class WaveTranscoder {
+    /**
+     * Value for the target sample rate or channel count that keeps the value
+     * of the input file.
+     */
+    public static final int KEEP = -1;
+
+    /**
+     * Size of the buffer that is used when a transfer between channels makes
+     * no progress.
+     */
+    private static final int TRANSFER_BUFFER_SIZE = 65536;
+
+    private final int mChannelCount;
+    private final int mSampleRate;
+
+    /**
+     * Creates a transcoder for the specified target format.
+     * 
+     * @param sampleRate
+     *            Target sample rate or {@link #KEEP}.
+     * @param channelCount
+     *            Target channel count. Either 1 for mixing down to mono or
+     *            {@link #KEEP}.
+     * @throws IllegalArgumentException
+     *             If the channel count is not supported.
+     */
+    public WaveTranscoder(int sampleRate, int channelCount) {
+        if (channelCount != 1 && channelCount != KEEP)
+            throw new IllegalArgumentException("Unsupported channel count "
+                    + channelCount);
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+    }
+
+    /**
+     * Gets the target channel count.
+     * 
+     * @return 1 or {@link #KEEP}.
+     */
+    public int getChannelCount() {
+        return mChannelCount;
+    }
+
+    /**
+     * Gets the target sample rate.
+     * 
+     * @return Sample rate or {@link #KEEP}.
+     */
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    /**
+     * Checks whether the audio data of a wave file can be copied verbatim to
+     * produce the target format.
+     * 
+     * @param reader
+     *            Reader of the input wave file with the header already parsed.
+     * @return <code>true</code> if no conversion is necessary.
+     * @throws InvalidAudioFormatException
+     *             In case the input audio format is not supported.
+     */
+    public boolean isPassthrough(WaveFormatReader reader)
+            throws InvalidAudioFormatException {
+        final AudioStreamDescriptor descriptor = reader
+                .getAudioStreamDescriptor();
+        final short bitsPerSample = descriptor.getMaximumBitsPerSample(0);
+
+        return reader.getByteOrder() == ByteOrder.LITTLE_ENDIAN
+                && (descriptor.getFlags() & AudioStreamDescriptor.FLAG_FLOATING_POINT) == 0
+                && (bitsPerSample == 8 || bitsPerSample == 16
+                        || bitsPerSample == 24 || bitsPerSample == 32
+                        || bitsPerSample == 64)
+                && (mSampleRate == KEEP || descriptor.getMaximumSampleRate(0) == mSampleRate)
+                && (mChannelCount == KEEP || descriptor.getChannelCount() == mChannelCount);
+    }
+
+    /**
+     * Creates the conversion pipeline for the audio data of a wave file.
+     * 
+     * @param reader
+     *            Reader of the input wave file that has just parsed the
+     *            header.
+     * @param input
+     *            File channel of the input wave file, positioned at the first
+     *            audio data byte.
+     * @param descriptor
+     *            Descriptor of the audio data with its actual sample count.
+     * @throws AudioDecodingException
+     *             In case the audio data format is not supported.
+     */
+    private AudioSource createPipeline(WaveFormatReader reader,
+            FileChannel input, AudioStreamDescriptor descriptor)
+            throws AudioDecodingException {
+        // The data chunk is read directly, so chunks behind it are never
+        // decoded as audio data
+        AudioSource source = new SampleRangeAudioSource(new PCMAudioSource(
+                Channels.newInputStream(input), reader.getByteOrder(),
+                descriptor), 0, descriptor.getSampleCount());
+
+        if (mSampleRate != KEEP
+                && descriptor.getMaximumSampleRate(0) != mSampleRate) {
+            source = ResamplerFactory.create(source, mSampleRate);
+        }
+
+        if (mChannelCount == 1 && descriptor.getChannelCount() > 1) {
+            source = new MonoDownmixAudioSource(source);
+        }
+
+        return source;
+    }
+
+    /**
+     * Gets the descriptor of the audio data of a wave file with the amount of
+     * samples that are actually present. The declared data size is not
+     * trusted, since truncated and streamed wave files declare more.
+     */
+    private static AudioStreamDescriptor getInputDescriptor(
+            WaveFormatReader reader, FileChannel input)
+            throws InvalidAudioFormatException, IOException {
+        final AudioStreamDescriptor descriptor = reader
+                .getAudioStreamDescriptor();
+        final long offset = reader.getDataOffset();
+        final int frameSize = descriptor.getChannelCount()
+                * descriptor.getMaximumBitsPerSample(0) / 8;
+        final long available = Math.min(reader.getDataSize(), input.size()
+                - offset);
+        final long sampleCount = available / frameSize;
+
+        return new ProxyAudioStreamDescriptor(descriptor) {
+            @Override
+            public long getSampleCount() {
+                return sampleCount;
+            }
+        };
+    }
+
+    /**
+     * Calculates the exact size of the wave file that
+     * {@link #transcode(FileChannel, WritableByteChannel)} produces, without
+     * transcoding anything. This allows to announce the content length of a
+     * transfer up front.
+     * 
+     * @param input
+     *            File channel of the input wave file. It is read from the
+     *            beginning and left open.
+     * @return Size of the transcoded wave file in bytes.
+     * @throws IOException
+     *             In case of an I/O error while reading.
+     * @throws AudioDecodingException
+     *             In case the input file format is not supported.
+     * @throws AudioEncodingException
+     *             In case the audio data could not be encoded.
+     */
+    public long getOutputSize(FileChannel input) throws IOException,
+            AudioDecodingException, AudioEncodingException {
+        input.position(0);
+        final WaveFormatReader reader = new WaveFormatReader(
+                Channels.newInputStream(input));
+        final AudioStreamDescriptor descriptor = getInputDescriptor(reader,
+                input);
+        final AudioStreamDescriptor output = isPassthrough(reader) ? descriptor
+                : createPipeline(reader, input, descriptor).getDescriptor();
+
+        return WaveFormatWriter.getFileSize(WaveAudioDataFormat.LINEAR_PCM,
+                output);
+    }
+
+    /**
+     * Transcodes a wave file. Exactly {@link #getOutputSize(FileChannel)}
+     * bytes are written.
+     * 
+     * @param input
+     *            File channel of the input wave file. It is read from the
+     *            beginning and left open.
+     * @param output
+     *            Target channel for the transcoded wave file. It is left open.
+     * @return Amount of bytes written to the output channel.
+     * @throws IOException
+     *             In case of an I/O error while reading or writing.
+     * @throws AudioDecodingException
+     *             In case the input file format is not supported.
+     * @throws AudioEncodingException
+     *             In case the audio data could not be encoded.
+     */
+    public long transcode(FileChannel input, WritableByteChannel output)
+            throws IOException, AudioDecodingException, AudioEncodingException {
+        input.position(0);
+        final WaveFormatReader reader = new WaveFormatReader(
+                Channels.newInputStream(input));
+        final CountingOutputStream target = new CountingOutputStream(
+                Channels.newOutputStream(output));
+        final WaveFormatWriter writer = new WaveFormatWriter(target,
+                WaveAudioDataFormat.LINEAR_PCM);
+        final AudioStreamDescriptor descriptor = getInputDescriptor(reader,
+                input);
+
+        if (isPassthrough(reader)) {
+            final long offset = reader.getDataOffset();
+            final int frameSize = descriptor.getChannelCount()
+                    * descriptor.getMaximumBitsPerSample(0) / 8;
+            writer.writeHeader(descriptor);
+            final long length = descriptor.getSampleCount() * frameSize;
+            transfer(input, offset, length, output);
+            return target.getCount() + length;
+        }
+
+        writer.write(createPipeline(reader, input, descriptor));
+        target.flush();
+        return target.getCount();
+    }
+
+    /**
+     * Copies a range of a file channel to an output channel. The range is
+     * transferred with
+     * {@link FileChannel#transferTo(long, long, WritableByteChannel)} as long
+     * as that makes progress. Since it may transfer nothing, for example when
+     * the output channel does not take any bytes at the moment, the rest is
+     * then copied through a buffer.
+     * 
+     * @param input
+     *            File channel to copy from. Its position is not changed.
+     * @param position
+     *            Position of the first byte to copy.
+     * @param count
+     *            Amount of bytes to copy.
+     * @param output
+     *            Target channel.
+     * @throws EOFException
+     *             If the input ends before all bytes are copied.
+     * @throws IOException
+     *             In case of an I/O error or if the output channel does not
+     *             take any more bytes.
+     */
+    static void transfer(FileChannel input, long position, long count,
+            WritableByteChannel output) throws IOException {
+        final long end = position + count;
+
+        while (position < end) {
+            final long transferred = input.transferTo(position, end
+                    - position, output);
+            if (transferred <= 0)
+                break;
+            position += transferred;
+        }
+
+        if (position == end)
+            return;
+
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(
+                TRANSFER_BUFFER_SIZE, end - position));
+
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+
+            if (input.read(buffer, position) < 0) {
+                throw new EOFException("Input ended " + (end - position)
+                        + " bytes early");
+            }
+
+            buffer.flip();
+            position += buffer.remaining();
+            writeFully(output, buffer);
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer to a file channel, starting at a
+     * file position. The position of the channel is not changed.
+     * 
+     * @param output
+     *            Target channel.
+     * @param buffer
+     *            Bytes to write.
+     * @param position
+     *            File position of the first byte.
+     * @throws IOException
+     *             In case of an I/O error or if the output channel does not
+     *             take any more bytes.
+     */
+    static void writeFully(FileChannel output, ByteBuffer buffer,
+            long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int written = output.write(buffer, position);
+
+            if (written == 0) {
+                throw new IOException(
+                        "Output channel does not take any more bytes");
+            }
+
+            position += written;
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer to a channel.
+     * 
+     * @param output
+     *            Target channel.
+     * @param buffer
+     *            Bytes to write.
+     * @throws IOException
+     *             In case of an I/O error or if the output channel does not
+     *             take any more bytes.
+     */
+    static void writeFully(WritableByteChannel output, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (output.write(buffer) == 0) {
+                throw new IOException(
+                        "Output channel does not take any more bytes");
+            }
+        }
+    }
+
+    /**
+     * Output stream decorator that counts the bytes written through it.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private long mCount;
+        private final OutputStream mOutput;
+
+        CountingOutputStream(OutputStream output) {
+            mOutput = output;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            mOutput.flush();
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            mOutput.write(b, off, len);
+            mCount += len;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            mOutput.write(b);
+            ++mCount;
+        }
+    }
+}
@@ -0,0 +1,439 @@
+package com.nobu_games.audio.format.wave;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+
+/**
+ * Thread safe, size bounded cache of transcoded wave files on local disk.
+ * <p>
+ * Entries are keyed by the identity of the input file, which consists of its
+ * canonical path, size and modification time, and by the target format of the
+ * {@link WaveTranscoder}. A modified input file therefore gets a new entry,
+ * while the outdated one is eventually evicted.
+ * <p>
+ * A missing entry is transcoded only once, even if several threads request it
+ * at the same time. The first request transcodes the file into a temporary
+ * file and renames it atomically to its final name, all others wait for the
+ * result. Cached files are copied to the output channel with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+ * <p>
+ * When the total size of the cached files exceeds the maximum size, the least
+ * recently used entries are deleted. Entries that are being read are never
+ * deleted. The entries of an existing cache directory are picked up in the
+ * order of their modification times, which are updated on every cache hit.
+ * 
+ * @author ti
+ */
+public class WaveTranscodingCache {
+    /**
+     * Version of the transcoded output. It is part of every cache key and
+     * must be increased whenever a change to the transcoding pipeline changes
+     * the bytes that are produced for the same input file and target format,
+     * so that files cached by an older version are no longer used.
+     */
+    static final int FORMAT_VERSION = 1;
+
+    private static final String SUFFIX = ".wav";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+    private final LinkedHashMap<String, Entry> mEntries;
+    private final long mMaxSize;
+    private long mSize;
+
+    /**
+     * Creates a cache that stores its files in the specified directory. Cached
+     * files from a previous run are kept, leftover temporary files are
+     * deleted.
+     * 
+     * @param directory
+     *            Cache directory. It is created if it does not exist yet. The
+     *            directory should not be shared with other files.
+     * @param maxSize
+     *            Maximum total size of the cached files in bytes.
+     * @throws IOException
+     *             If the directory cannot be created.
+     * @throws IllegalArgumentException
+     *             If the maximum size is negative.
+     */
+    public WaveTranscodingCache(File directory, long maxSize)
+            throws IOException {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("maxSize must be >= 0");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create cache directory "
+                    + directory);
+        mDirectory = directory;
+        mMaxSize = maxSize;
+        mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        load();
+    }
+
+    /**
+     * Waits for the transcoded file of an entry. Failed entries are removed,
+     * so the next request tries again.
+     * 
+     * @return Size of the transcoded file.
+     */
+    private long await(String key, Entry entry) throws IOException,
+            AudioDecodingException, AudioEncodingException {
+        try {
+            return entry.mTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while waiting for transcoded file");
+        } catch (ExecutionException e) {
+            remove(key, entry);
+
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof AudioDecodingException)
+                throw (AudioDecodingException) cause;
+            if (cause instanceof AudioEncodingException)
+                throw (AudioEncodingException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Copies a cached file to an output channel.
+     * 
+     * @return Amount of bytes copied.
+     */
+    private static long copy(File file, WritableByteChannel output)
+            throws IOException {
+        final FileChannel channel = new RandomAccessFile(file, "r")
+                .getChannel();
+
+        try {
+            final long size = channel.size();
+            WaveTranscoder.transfer(channel, 0, size, output);
+            return size;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Computes the cache key of an input file and a target format. The key
+     * includes the {@link #FORMAT_VERSION} of the output.
+     * 
+     * @return Hexadecimal SHA-1 digest, which doubles as file name.
+     */
+    static String getKey(File input, WaveTranscoder transcoder)
+            throws IOException {
+        final String identity = input.getCanonicalPath() + '\n'
+                + input.length() + '\n' + input.lastModified() + '\n'
+                + transcoder.getSampleRate() + '\n'
+                + transcoder.getChannelCount() + '\n'
+                + WaveAudioDataFormat.LINEAR_PCM + '\n' + FORMAT_VERSION;
+        final byte[] digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(
+                    identity.getBytes(Charset.forName("UTF-8")));
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+
+        final StringBuilder key = new StringBuilder(digest.length * 2);
+
+        for (byte b : digest) {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16));
+            key.append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Gets the maximum total size of the cached files.
+     * 
+     * @return Maximum size in bytes.
+     */
+    public long getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Gets the total size of the cached files.
+     * 
+     * @return Size in bytes.
+     */
+    public long getSize() {
+        synchronized (mEntries) {
+            return mSize;
+        }
+    }
+
+    /**
+     * Adds the files of the cache directory to the cache, least recently used
+     * first, and deletes leftover temporary files.
+     */
+    private void load() {
+        final File[] files = mDirectory.listFiles();
+        if (files == null)
+            return;
+        final long[] modified = new long[files.length];
+
+        for (int i = 0; i < files.length; ++i) {
+            modified[i] = files[i].lastModified();
+        }
+
+        final Integer[] order = new Integer[files.length];
+
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+
+        // Modification times are read once, so the order stays consistent
+        // while other processes touch the files
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(modified[a], modified[b]);
+            }
+        });
+
+        synchronized (mEntries) {
+            for (int index : order) {
+                final File file = files[index];
+                final String name = file.getName();
+
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    file.delete();
+                } else if (name.endsWith(SUFFIX) && file.isFile()) {
+                    final Entry entry = Entry.completed(file.length());
+                    mEntries.put(name.substring(0,
+                            name.length() - SUFFIX.length()), entry);
+                    mSize += entry.mSize;
+                }
+            }
+
+            trim();
+        }
+    }
+
+    /**
+     * Removes an entry unless it has been replaced already.
+     */
+    private void remove(String key, Entry entry) {
+        synchronized (mEntries) {
+            if (mEntries.get(key) == entry) {
+                mEntries.remove(key);
+                mSize -= entry.mSize;
+            }
+        }
+    }
+
+    /**
+     * Transcodes a wave file, using the cached result if it is available. If
+     * the cached file has been deleted outside of the cache, e.g. by a
+     * cleaner of temporary files, the file is transcoded again.
+     * 
+     * @param input
+     *            Input wave file.
+     * @param transcoder
+     *            Transcoder for the target format.
+     * @param output
+     *            Target channel for the transcoded wave file. It is left open.
+     * @return Amount of bytes written to the output channel.
+     * @throws IOException
+     *             In case of an I/O error while reading or writing.
+     * @throws AudioDecodingException
+     *             In case the input file format is not supported.
+     * @throws AudioEncodingException
+     *             In case the audio data could not be encoded.
+     */
+    public long transcode(File input, WaveTranscoder transcoder,
+            WritableByteChannel output) throws IOException,
+            AudioDecodingException, AudioEncodingException {
+        if (!input.isFile())
+            throw new FileNotFoundException(input.getPath());
+        final String key = getKey(input, transcoder);
+        final File file = new File(mDirectory, key + SUFFIX);
+
+        while (true) {
+            Entry entry;
+            boolean produce = false;
+
+            synchronized (mEntries) {
+                entry = mEntries.get(key);
+
+                if (entry == null) {
+                    entry = new Entry(new Producer(input, transcoder, file));
+                    mEntries.put(key, entry);
+                    produce = true;
+                }
+
+                // Entries with readers are not evicted
+                ++entry.mReaders;
+            }
+
+            try {
+                // Transcoding happens outside of the lock, so requests for
+                // other entries are not blocked
+                if (produce)
+                    entry.mTask.run();
+                final long size = await(key, entry);
+
+                if (produce) {
+                    synchronized (mEntries) {
+                        entry.mSize = size;
+                        mSize += size;
+                    }
+                } else {
+                    file.setLastModified(System.currentTimeMillis());
+                }
+
+                try {
+                    return copy(file, output);
+                } catch (FileNotFoundException e) {
+                    if (produce)
+                        throw e;
+                    // Deleted outside of the cache, transcode it again
+                    remove(key, entry);
+                }
+            } finally {
+                synchronized (mEntries) {
+                    --entry.mReaders;
+                    trim();
+                }
+            }
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the maximum size is no
+     * longer exceeded. Must be called while holding the lock on the entries.
+     */
+    private void trim() {
+        final Iterator<Map.Entry<String, Entry>> iterator = mEntries
+                .entrySet().iterator();
+
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            final Map.Entry<String, Entry> next = iterator.next();
+            final Entry entry = next.getValue();
+
+            if (entry.mReaders > 0 || !entry.mTask.isDone())
+                continue;
+
+            iterator.remove();
+            mSize -= entry.mSize;
+            new File(mDirectory, next.getKey() + SUFFIX).delete();
+        }
+    }
+
+    /**
+     * Cache entry with the pending or completed transcoding of a file.
+     */
+    private static class Entry {
+        /**
+         * Amount of requests that currently read the entry. Guarded by the
+         * lock on the entries.
+         */
+        int mReaders;
+
+        /**
+         * Size of the cached file once it is accounted for. Guarded by the
+         * lock on the entries.
+         */
+        long mSize;
+
+        final FutureTask<Long> mTask;
+
+        Entry(Callable<Long> producer) {
+            mTask = new FutureTask<Long>(producer);
+        }
+
+        static Entry completed(final long size) {
+            final Entry entry = new Entry(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return size;
+                }
+            });
+            entry.mTask.run();
+            entry.mSize = size;
+            return entry;
+        }
+    }
+
+    /**
+     * Transcodes an input file into a temporary file and publishes it under
+     * its final name.
+     */
+    private class Producer implements Callable<Long> {
+        private final File mFile;
+        private final File mInput;
+        private final WaveTranscoder mTranscoder;
+
+        Producer(File input, WaveTranscoder transcoder, File file) {
+            mInput = input;
+            mTranscoder = transcoder;
+            mFile = file;
+        }
+
+        @Override
+        public Long call() throws IOException, AudioDecodingException,
+                AudioEncodingException {
+            final File temp = File.createTempFile(mFile.getName(),
+                    TEMP_SUFFIX, mDirectory);
+            boolean published = false;
+
+            try {
+                final FileChannel input = new RandomAccessFile(mInput, "r")
+                        .getChannel();
+
+                try {
+                    final FileChannel output = new RandomAccessFile(temp,
+                            "rw").getChannel();
+
+                    try {
+                        mTranscoder.transcode(input, output);
+                    } finally {
+                        output.close();
+                    }
+                } finally {
+                    input.close();
+                }
+
+                Files.move(temp.toPath(), mFile.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+                published = true;
+                return mFile.length();
+            } finally {
+                if (!published)
+                    temp.delete();
+            }
+        }
+    }
+}
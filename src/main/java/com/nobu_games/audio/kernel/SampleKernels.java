@@ -0,0 +1,166 @@
+package com.nobu_games.audio.kernel;
+
+/**
+ * Inner loops of the sample processing stages.
+ * <p>
+ * {@link #getInstance()} returns an implementation with SIMD kernels based on
+ * the Java Vector API if the library was built with them and the runtime
+ * provides the <code>jdk.incubator.vector</code> module, which has to be
+ * enabled with <code>--add-modules jdk.incubator.vector</code>. Otherwise the
+ * plain Java kernels of {@link ScalarSampleKernels} are used. Setting the
+ * system property <code>com.nobu_games.audio.kernel.scalar</code> to
+ * <code>true</code> forces the scalar kernels.
+ * <p>
+ * Element wise kernels produce the same results in both implementations. The
+ * SIMD version of {@link #dot(double[], int, double[], int, int)} sums in a
+ * different order, so its result may differ in the last bits.
+ * 
+ * @author ti
+ */
+public abstract class SampleKernels {
+    /**
+     * Name of the system property that forces the scalar kernels.
+     */
+    public static final String SCALAR_PROPERTY = "com.nobu_games.audio.kernel.scalar";
+
+    private static final String VECTOR_CLASS = "com.nobu_games.audio.kernel.VectorSampleKernels";
+
+    private static final SampleKernels INSTANCE = load();
+
+    /**
+     * Gets the fastest kernels that are supported by the runtime.
+     * 
+     * @return Shared kernel instance.
+     */
+    public static SampleKernels getInstance() {
+        return INSTANCE;
+    }
+
+    private static SampleKernels load() {
+        if (!Boolean.getBoolean(SCALAR_PROPERTY)) {
+            try {
+                return (SampleKernels) Class.forName(VECTOR_CLASS)
+                        .getConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                // Not built with the vector kernels or not supported by the
+                // hardware
+            } catch (LinkageError e) {
+                // Runtime is too old or the vector module is not enabled
+            }
+        }
+
+        return new ScalarSampleKernels();
+    }
+
+    /**
+     * Adds scaled samples to a target array:
+     * <code>dst[i] += gain * src[i]</code>.
+     * 
+     * @param src
+     *            Source samples.
+     * @param srcOffset
+     *            Index of the first source sample.
+     * @param gain
+     *            Scale factor.
+     * @param dst
+     *            Target samples.
+     * @param dstOffset
+     *            Index of the first target sample.
+     * @param length
+     *            Amount of samples.
+     */
+    public abstract void addScaled(double[] src, int srcOffset, double gain,
+            double[] dst, int dstOffset, int length);
+
+    /**
+     * Computes the dot product of two sample ranges, for example the output
+     * sample of a FIR filter.
+     * 
+     * @param a
+     *            First samples.
+     * @param aOffset
+     *            Index of the first sample in <code>a</code>.
+     * @param b
+     *            Second samples.
+     * @param bOffset
+     *            Index of the first sample in <code>b</code>.
+     * @param length
+     *            Amount of samples.
+     * @return Sum of the products.
+     */
+    public abstract double dot(double[] a, int aOffset, double[] b,
+            int bOffset, int length);
+
+    /**
+     * Gets the name of the implementation for diagnostics.
+     * 
+     * @return Implementation name.
+     */
+    public abstract String getName();
+
+    /**
+     * Normalizes signed integer PCM values to the range from -1 to 1.
+     * Negative values are divided by <code>2^(bits - 1)</code>, positive
+     * values by <code>2^(bits - 1) - 1</code>.
+     * 
+     * @param src
+     *            PCM values.
+     * @param srcOffset
+     *            Index of the first PCM value.
+     * @param dst
+     *            Target samples.
+     * @param dstOffset
+     *            Index of the first target sample.
+     * @param length
+     *            Amount of samples.
+     * @param bits
+     *            Bits per PCM value, at most 32.
+     */
+    public abstract void normalize(int[] src, int srcOffset, double[] dst,
+            int dstOffset, int length, int bits);
+
+    /**
+     * Quantizes normalized samples to integer PCM values. Samples are clamped
+     * to the range from -1 to 1. Negative values are scaled by
+     * <code>halfRange + 0.5</code>, positive values by
+     * <code>halfRange - 0.5</code>, and the result is rounded like
+     * {@link Math#round(double)}. The values are stored as integral doubles.
+     * 
+     * @param src
+     *            Normalized samples.
+     * @param srcOffset
+     *            Index of the first sample.
+     * @param dst
+     *            Target for the quantized values.
+     * @param dstOffset
+     *            Index of the first target value.
+     * @param length
+     *            Amount of samples.
+     * @param halfRange
+     *            Half of the PCM value range, e.g. <code>32767.5</code> for
+     *            16 bit samples. The quantized values must fit into an
+     *            <code>int</code>.
+     */
+    public abstract void quantize(double[] src, int srcOffset, double[] dst,
+            int dstOffset, int length, double halfRange);
+
+    /**
+     * Writes scaled samples to a target array:
+     * <code>dst[i] = gain * src[i]</code>.
+     * 
+     * @param src
+     *            Source samples.
+     * @param srcOffset
+     *            Index of the first source sample.
+     * @param gain
+     *            Scale factor.
+     * @param dst
+     *            Target samples.
+     * @param dstOffset
+     *            Index of the first target sample.
+     * @param length
+     *            Amount of samples.
+     */
+    public abstract void scale(double[] src, int srcOffset, double gain,
+            double[] dst, int dstOffset, int length);
+}
@@ -0,0 +1,66 @@
+package com.nobu_games.audio.kernel;
+
+/**
+ * Plain Java implementation of the sample kernels. Simple element wise loops
+ * are left to the auto-vectorization of the JIT compiler.
+ * 
+ * @author ti
+ */
+public class ScalarSampleKernels extends SampleKernels {
+    @Override
+    public void addScaled(double[] src, int srcOffset, double gain,
+            double[] dst, int dstOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            dst[dstOffset + i] += gain * src[srcOffset + i];
+        }
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset,
+            int length) {
+        double sum = 0;
+
+        for (int i = 0; i < length; ++i) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+
+        return sum;
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void normalize(int[] src, int srcOffset, double[] dst,
+            int dstOffset, int length, int bits) {
+        final double negative = 1L << (bits - 1);
+        final double positive = negative - 1;
+
+        for (int i = 0; i < length; ++i) {
+            final int value = src[srcOffset + i];
+            dst[dstOffset + i] = value < 0 ? value / negative : value
+                    / positive;
+        }
+    }
+
+    @Override
+    public void quantize(double[] src, int srcOffset, double[] dst,
+            int dstOffset, int length, double halfRange) {
+        for (int i = 0; i < length; ++i) {
+            final double value = Math.max(-1.0,
+                    Math.min(1.0, src[srcOffset + i]));
+            dst[dstOffset + i] = Math.round(value
+                    * (halfRange - Math.copySign(0.5, value)));
+        }
+    }
+
+    @Override
+    public void scale(double[] src, int srcOffset, double gain, double[] dst,
+            int dstOffset, int length) {
+        for (int i = 0; i < length; ++i) {
+            dst[dstOffset + i] = gain * src[srcOffset + i];
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.nobu_games.audio.metering;
+
+/**
+ * Receives the events of the stage meters of a {@link MeterRegistry}.
+ * <p>
+ * Listeners are called on the thread that runs the stage, so they should
+ * return quickly and must not throw exceptions.
+ * 
+ * @author ti
+ */
+public interface MeterListener {
+    /**
+     * Called after a stage ended. The counters of the meter have their final
+     * values.
+     * 
+     * @param meter
+     *            Meter of the stage.
+     */
+    void closed(StageMeter meter);
+
+    /**
+     * Called when a stage produced its first frame or byte.
+     * {@link StageMeter#getFirstOutputTime()} is set at that point.
+     * 
+     * @param meter
+     *            Meter of the stage.
+     */
+    void firstOutput(StageMeter meter);
+}
@@ -0,0 +1,140 @@
+package com.nobu_games.audio.metering;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Creates stage meters and keeps track of the meters of all running stages.
+ * <p>
+ * Monitoring code can poll the counters of the running stages with
+ * {@link #getMeters()} or register a {@link MeterListener} to be notified
+ * when a stage produces its first output and when it ends. A stage ends when
+ * its meter is closed. The registry only holds weak references to the meters,
+ * so a stage that is dropped without being closed disappears from
+ * {@link #getMeters()} once it has been garbage collected, without notifying
+ * the listeners.
+ * {@link #enableFlightRecorder()} adds a listener that emits Java Flight
+ * Recorder events, if the library was built with it and the runtime supports
+ * it.
+ * 
+ * @author ti
+ */
+public class MeterRegistry {
+    private static final MeterRegistry DEFAULT = new MeterRegistry();
+
+    private static final String FLIGHT_RECORDER_CLASS = "com.nobu_games.audio.metering.FlightRecorderMeterListener";
+
+    private MeterListener mFlightRecorder;
+    private final List<MeterListener> mListeners = new CopyOnWriteArrayList<MeterListener>();
+    // Weak, so the meters of stages that are dropped without being closed do
+    // not pile up
+    private final Set<StageMeter> mMeters = Collections
+            .synchronizedSet(Collections
+                    .newSetFromMap(new WeakHashMap<StageMeter, Boolean>()));
+
+    /**
+     * Gets the registry that is used by metered stages unless another one is
+     * specified.
+     * 
+     * @return Shared registry instance.
+     */
+    public static MeterRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Registers a listener for the events of all meters of this registry.
+     * 
+     * @param listener
+     *            Listener to add.
+     */
+    public void addListener(MeterListener listener) {
+        if (listener == null)
+            throw new IllegalArgumentException("Listener must not be null");
+
+        mListeners.add(listener);
+    }
+
+    /**
+     * Creates a meter for a new stage and adds it to the running stages.
+     * 
+     * @param name
+     *            Name of the stage, used to attribute the counters.
+     * @return New meter.
+     */
+    public StageMeter createMeter(String name) {
+        if (name == null)
+            throw new IllegalArgumentException("Name must not be null");
+
+        final StageMeter meter = new StageMeter(this, name);
+        mMeters.add(meter);
+
+        return meter;
+    }
+
+    /**
+     * Registers a listener that emits a Java Flight Recorder event with the
+     * counters of each stage when it ends. Calling this method again has no
+     * effect.
+     * 
+     * @return true if the events are enabled, false if the library was built
+     *         without the Flight Recorder listener or the runtime does not
+     *         provide the <code>jdk.jfr</code> module.
+     */
+    public synchronized boolean enableFlightRecorder() {
+        if (mFlightRecorder == null) {
+            try {
+                mFlightRecorder = (MeterListener) Class
+                        .forName(FLIGHT_RECORDER_CLASS).getConstructor()
+                        .newInstance();
+            } catch (ReflectiveOperationException e) {
+                // Not built with the Flight Recorder listener
+                return false;
+            } catch (LinkageError e) {
+                // Runtime is too old or lacks the jdk.jfr module
+                return false;
+            }
+
+            addListener(mFlightRecorder);
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the meters of all stages that have not ended yet.
+     * 
+     * @return Snapshot of the running stages.
+     */
+    public List<StageMeter> getMeters() {
+        return new ArrayList<StageMeter>(mMeters);
+    }
+
+    /**
+     * Unregisters a listener.
+     * 
+     * @param listener
+     *            Listener to remove.
+     */
+    public void removeListener(MeterListener listener) {
+        mListeners.remove(listener);
+    }
+
+    void fireClosed(StageMeter meter) {
+        mMeters.remove(meter);
+
+        for (MeterListener listener : mListeners) {
+            listener.closed(meter);
+        }
+    }
+
+    void fireFirstOutput(StageMeter meter) {
+        for (MeterListener listener : mListeners) {
+            listener.firstOutput(meter);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.nobu_games.audio.metering;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that meters the bytes read from another input stream and the
+ * time spent reading them as a stage of its own. Wrapping the input of a
+ * decoder separates the I/O time from the decoding time of the decoder.
+ * <p>
+ * The meter is closed when a read reaches the end of the stream or when this
+ * stream is closed, whichever happens first.
+ * 
+ * @author ti
+ */
+public class MeteredInputStream extends FilterInputStream {
+    private final StageMeter mMeter;
+
+    /**
+     * Creates a metered input stream with a new meter of the default
+     * registry.
+     * 
+     * @param in
+     *            Input stream to meter.
+     * @param name
+     *            Stage name.
+     */
+    public MeteredInputStream(InputStream in, String name) {
+        this(in, MeterRegistry.getDefault().createMeter(name));
+    }
+
+    /**
+     * Creates a metered input stream.
+     * 
+     * @param in
+     *            Input stream to meter.
+     * @param meter
+     *            Meter that receives the counters.
+     */
+    public MeteredInputStream(InputStream in, StageMeter meter) {
+        super(in);
+
+        if (meter == null)
+            throw new IllegalArgumentException("Meter must not be null");
+
+        mMeter = meter;
+    }
+
+    /**
+     * Closes the input stream and the meter.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            mMeter.close();
+        }
+    }
+
+    /**
+     * Gets the meter of this stream.
+     * 
+     * @return Stage meter.
+     */
+    public StageMeter getMeter() {
+        return mMeter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b;
+        mMeter.enter();
+
+        try {
+            b = in.read();
+        } finally {
+            mMeter.exit();
+        }
+
+        if (b >= 0)
+            mMeter.addBytesRead(1);
+        else
+            mMeter.close();
+
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        final int count;
+        mMeter.enter();
+
+        try {
+            count = in.read(b, off, len);
+        } finally {
+            mMeter.exit();
+        }
+
+        if (count < 0)
+            mMeter.close();
+        else
+            mMeter.addBytesRead(count);
+
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        final long count;
+        mMeter.enter();
+
+        try {
+            count = in.skip(n);
+        } finally {
+            mMeter.exit();
+        }
+
+        mMeter.addBytesRead(count);
+
+        return count;
+    }
+}
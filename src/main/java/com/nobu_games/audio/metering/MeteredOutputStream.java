@@ -0,0 +1,104 @@
+package com.nobu_games.audio.metering;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that meters the bytes written to another output stream and
+ * the time spent writing them as a stage of its own. Wrapping the target of
+ * an encoder separates the I/O time from the encoding time of the encoder.
+ * 
+ * @author ti
+ */
+public class MeteredOutputStream extends FilterOutputStream {
+    private final StageMeter mMeter;
+
+    /**
+     * Creates a metered output stream with a new meter of the default
+     * registry.
+     * 
+     * @param out
+     *            Output stream to meter.
+     * @param name
+     *            Stage name.
+     */
+    public MeteredOutputStream(OutputStream out, String name) {
+        this(out, MeterRegistry.getDefault().createMeter(name));
+    }
+
+    /**
+     * Creates a metered output stream.
+     * 
+     * @param out
+     *            Output stream to meter.
+     * @param meter
+     *            Meter that receives the counters.
+     */
+    public MeteredOutputStream(OutputStream out, StageMeter meter) {
+        super(out);
+
+        if (meter == null)
+            throw new IllegalArgumentException("Meter must not be null");
+
+        mMeter = meter;
+    }
+
+    /**
+     * Closes the output stream and the meter.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            mMeter.close();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        mMeter.enter();
+
+        try {
+            out.flush();
+        } finally {
+            mMeter.exit();
+        }
+    }
+
+    /**
+     * Gets the meter of this stream.
+     * 
+     * @return Stage meter.
+     */
+    public StageMeter getMeter() {
+        return mMeter;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        mMeter.enter();
+
+        try {
+            out.write(b, off, len);
+        } finally {
+            mMeter.exit();
+        }
+
+        mMeter.addBytesWritten(len);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        mMeter.enter();
+
+        try {
+            out.write(b);
+        } finally {
+            mMeter.exit();
+        }
+
+        mMeter.addBytesWritten(1);
+    }
+}
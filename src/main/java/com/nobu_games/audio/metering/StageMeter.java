@@ -0,0 +1,219 @@
+package com.nobu_games.audio.metering;
+
+/**
+ * Counters of a single processing stage, such as a decoder, a resampler or an
+ * encoder.
+ * <p>
+ * A stage brackets each call into its work with {@link #enter()} and
+ * {@link #exit()} and reports what it produced with {@link #addFrames(long)},
+ * {@link #addBytesRead(long)} and {@link #addBytesWritten(long)}. Stages that
+ * call each other on the same thread nest: the time a stage spends waiting
+ * for a metered upstream stage is counted as total time of both, but only as
+ * self time of the upstream stage. The self times of a chain therefore add up
+ * to the total time of its outermost stage.
+ * <p>
+ * A meter is updated by one thread at a time, the thread that runs the stage.
+ * The counters can be read from any other thread, for example by a monitoring
+ * task, while the stage is running.
+ * 
+ * @author ti
+ */
+public class StageMeter {
+    // Total time of all metered calls that completed on a thread. The
+    // difference before and after a call is the time spent in nested stages.
+    private static final ThreadLocal<long[]> COVERED_TIME = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private volatile long mBytesRead;
+    private volatile long mBytesWritten;
+    private volatile boolean mClosed;
+    private long[] mCoveredTime;
+    private long mEnterCoveredTime;
+    private long mEnterTime;
+    private volatile long mFirstOutputTime = -1;
+    private volatile long mFrames;
+    private final String mName;
+    private final MeterRegistry mRegistry;
+    private volatile long mSelfTime;
+    private long mStartTime = -1;
+    private volatile long mTotalTime;
+
+    StageMeter(MeterRegistry registry, String name) {
+        mRegistry = registry;
+        mName = name;
+    }
+
+    /**
+     * Adds to the amount of bytes read by this stage, e.g. encoded input data.
+     * 
+     * @param bytes
+     *            Amount of bytes.
+     */
+    public void addBytesRead(long bytes) {
+        if (bytes > 0) {
+            mBytesRead += bytes;
+            markOutput();
+        }
+    }
+
+    /**
+     * Adds to the amount of bytes written by this stage, e.g. encoded output
+     * data.
+     * 
+     * @param bytes
+     *            Amount of bytes.
+     */
+    public void addBytesWritten(long bytes) {
+        if (bytes > 0) {
+            mBytesWritten += bytes;
+            markOutput();
+        }
+    }
+
+    /**
+     * Adds to the amount of sample frames processed by this stage.
+     * 
+     * @param frames
+     *            Amount of frames.
+     */
+    public void addFrames(long frames) {
+        if (frames > 0) {
+            mFrames += frames;
+            markOutput();
+        }
+    }
+
+    /**
+     * Marks the end of the stage. The listeners of the registry are notified
+     * and the meter is removed from the registry. Calling this method again
+     * has no effect.
+     */
+    public void close() {
+        if (!mClosed) {
+            mClosed = true;
+            mRegistry.fireClosed(this);
+        }
+    }
+
+    /**
+     * Marks the beginning of a call into this stage. Each call must be
+     * followed by a call to {@link #exit()} on the same thread, typically in a
+     * <code>finally</code> block.
+     */
+    public void enter() {
+        mCoveredTime = COVERED_TIME.get();
+        mEnterCoveredTime = mCoveredTime[0];
+        mEnterTime = System.nanoTime();
+
+        if (mStartTime < 0)
+            mStartTime = mEnterTime;
+    }
+
+    /**
+     * Marks the end of a call into this stage that started with
+     * {@link #enter()}.
+     */
+    public void exit() {
+        final long elapsed = System.nanoTime() - mEnterTime;
+        final long nested = mCoveredTime[0] - mEnterCoveredTime;
+        mCoveredTime[0] = mEnterCoveredTime + elapsed;
+        mTotalTime += elapsed;
+        mSelfTime += elapsed - nested;
+    }
+
+    /**
+     * Gets the amount of bytes read by this stage.
+     * 
+     * @return Amount of bytes.
+     */
+    public long getBytesRead() {
+        return mBytesRead;
+    }
+
+    /**
+     * Gets the amount of bytes written by this stage.
+     * 
+     * @return Amount of bytes.
+     */
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * Gets the time from the first call into this stage until it produced its
+     * first frame or byte.
+     * 
+     * @return Time to first output in nanoseconds or -1 if the stage has not
+     *         produced anything yet.
+     */
+    public long getFirstOutputTime() {
+        return mFirstOutputTime;
+    }
+
+    /**
+     * Gets the amount of sample frames processed by this stage.
+     * 
+     * @return Amount of frames.
+     */
+    public long getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * Gets the name of the stage.
+     * 
+     * @return Stage name.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Gets the time spent in this stage, excluding the time spent in nested
+     * metered stages.
+     * 
+     * @return Self time in nanoseconds.
+     */
+    public long getSelfTime() {
+        return mSelfTime;
+    }
+
+    /**
+     * Gets the time spent in this stage, including the time spent in nested
+     * metered stages.
+     * 
+     * @return Total time in nanoseconds.
+     */
+    public long getTotalTime() {
+        return mTotalTime;
+    }
+
+    /**
+     * Checks if {@link #close()} has been called.
+     * 
+     * @return true if the stage has ended.
+     */
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    @Override
+    public String toString() {
+        return mName + " [frames=" + mFrames + ", selfTime=" + mSelfTime
+                + ", totalTime=" + mTotalTime + ", bytesRead=" + mBytesRead
+                + ", bytesWritten=" + mBytesWritten + ", firstOutputTime="
+                + mFirstOutputTime + "]";
+    }
+
+    private void markOutput() {
+        if (mFirstOutputTime < 0) {
+            final long now = System.nanoTime();
+            mFirstOutputTime = mStartTime < 0 ? 0 : now - mStartTime;
+            mRegistry.fireFirstOutput(this);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+
+/**
+ * Base class for audio sources that only implement frame by frame access via
+ * {@link #next()} and {@link #getSample(int)}.
+ * <p>
+ * Provides a {@link #read(double[][], int, int)} implementation that is built
+ * on top of these two methods.
+ * 
+ * @author ti
+ */
+public abstract class AbstractAudioSource implements AudioSource {
+    /**
+     * Reads a block of samples from an audio source by calling
+     * {@link AudioSource#next()} and {@link AudioSource#getSample(int)} for
+     * each frame.
+     * 
+     * @param source
+     *            Audio source to read from.
+     * @param dst
+     *            Target sample arrays, one per channel.
+     * @param offset
+     *            Sample position in the target arrays where to store the first
+     *            read sample.
+     * @param frames
+     *            Maximum amount of samples per channel to read.
+     * @return Amount of samples read per channel or <code>-1</code> if the
+     *         end of stream has been reached.
+     * @throws IOException
+     *             In case of an I/O error while reading from the audio source.
+     * @see AudioSource#read(double[][], int, int)
+     */
+    public static int readFrames(AudioSource source, double[][] dst,
+            int offset, int frames) throws IOException {
+        final int channelCount = source.getDescriptor().getChannelCount();
+        int frame = 0;
+
+        for (; frame < frames; ++frame) {
+            if (!source.next())
+                break;
+
+            for (int channel = 0; channel < channelCount; ++channel) {
+                dst[channel][offset + frame] = source.getSample(channel);
+            }
+        }
+
+        return frame == 0 && frames > 0 ? -1 : frame;
+    }
+
+    @Override
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        return readFrames(this, dst, offset, frames);
+    }
+}
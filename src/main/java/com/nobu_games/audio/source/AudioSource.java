@@ -75,4 +75,37 @@ public interface AudioSource extends Closeable {
      *             the underlying data source.
      */
     boolean next() throws IOException;
+
+    /**
+     * Reads a block of consecutive samples of all available audio channels of
+     * this source.
+     * <p>
+     * This is the bulk counterpart of calling {@link #next()} followed by
+     * {@link #getSample(int)} for each channel. The target array is planar:
+     * the first dimension is the channel index, the second dimension is the
+     * sample position. Implementations that have no native block support can
+     * extend {@link AbstractAudioSource}, which provides a frame-by-frame
+     * fallback.
+     * <p>
+     * The value returned by {@link #getSample(int)} is undefined after calling
+     * this method until {@link #next()} has been called again.
+     * 
+     * @param dst
+     *            Target sample arrays, one per channel. Must have at least as
+     *            many entries as this source has channels.
+     * @param offset
+     *            Sample position in the target arrays where to store the first
+     *            read sample.
+     * @param frames
+     *            Maximum amount of samples per channel to read.
+     * 
+     * @return Amount of samples read per channel. A value less than
+     *         <code>frames</code> means that the end of the stream has been
+     *         reached. <code>-1</code> if the end of the stream had already
+     *         been reached before calling this method.
+     * @throws IOException
+     *             In case of an I/O error while reading samples from the
+     *             underlying data source.
+     */
+    int read(double[][] dst, int offset, int frames) throws IOException;
 }
@@ -0,0 +1,237 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+
+/**
+ * Audio source that mixes the channels of another audio source with a gain
+ * matrix.
+ * <p>
+ * Each output channel is a weighted sum of the input channels. The matrix is
+ * turned into a sparse {@link MixingPlan} up front: inputs with a gain of zero
+ * are left out, inputs with a gain of one are added without multiplication and
+ * an output channel with a single unity input is a plain copy. If every output
+ * channel picks a different input channel with unity gain, for example when
+ * extracting or swapping channels, the input channels are read directly into
+ * the target arrays without touching the samples at all.
+ * 
+ * @author ti
+ */
+public class ChannelMixer implements AudioSource {
+    /**
+     * Gain of the center and surround channels in the surround downmix, which
+     * is -3 dB as recommended by ITU-R BS.775.
+     */
+    private static final double SURROUND_GAIN = Math.sqrt(0.5);
+
+    private final AudioStreamDescriptor mDescriptor;
+    private final int mOutputChannelCount;
+    private final MixingPlan mPlan;
+    private double[][] mReadBuffer;
+    /**
+     * Target arrays of the input channels for selection reads.
+     */
+    private final double[][] mSelectionTargets;
+    private final AudioSource mSource;
+    private final int mSourceChannelCount;
+
+    /**
+     * Creates a channel mixer.
+     * 
+     * @param source
+     *            Audio source to mix.
+     * @param matrix
+     *            Gain matrix. <code>matrix[output][input]</code> is the gain
+     *            of an input channel in an output channel. It needs a row per
+     *            output channel and a column per input channel. The matrix is
+     *            copied.
+     * @throws IllegalArgumentException
+     *             If the matrix has no rows or if a row does not have a
+     *             column for each input channel.
+     */
+    public ChannelMixer(AudioSource source, double[][] matrix) {
+        this(source, new MixingPlan(matrix, source.getDescriptor()
+                .getChannelCount()));
+    }
+
+    /**
+     * Creates a channel mixer that uses an existing mixing plan.
+     * 
+     * @param source
+     *            Audio source to mix.
+     * @param plan
+     *            Mixing plan for the channels of the source.
+     * @throws IllegalArgumentException
+     *             If the plan does not match the channel count of the source.
+     */
+    public ChannelMixer(AudioSource source, MixingPlan plan) {
+        final AudioStreamDescriptor descriptor = source.getDescriptor();
+        mSource = source;
+        mSourceChannelCount = descriptor.getChannelCount();
+
+        if (plan.getInputChannelCount() != mSourceChannelCount) {
+            throw new IllegalArgumentException("Mixing plan has "
+                    + plan.getInputChannelCount() + " input channels, expected "
+                    + mSourceChannelCount);
+        }
+
+        mPlan = plan;
+        mOutputChannelCount = plan.getOutputChannelCount();
+        mSelectionTargets = plan.isSelection() ? new double[mSourceChannelCount][]
+                : null;
+        mDescriptor = new ProxyAudioStreamDescriptor(descriptor) {
+            @Override
+            public int getChannelCount() {
+                return mOutputChannelCount;
+            }
+        };
+    }
+
+    /**
+     * Creates a channel mixer that averages all input channels into a single
+     * output channel.
+     * 
+     * @param source
+     *            Audio source to mix down.
+     * @return Mono channel mixer.
+     */
+    public static ChannelMixer createMonoDownmix(AudioSource source) {
+        final int channelCount = source.getDescriptor().getChannelCount();
+        final double[][] matrix = new double[1][channelCount];
+        Arrays.fill(matrix[0], 1.0 / channelCount);
+        return new ChannelMixer(source, matrix);
+    }
+
+    /**
+     * Creates a channel mixer that provides a selection of the input channels.
+     * It can extract, reorder or duplicate channels.
+     * 
+     * @param source
+     *            Audio source.
+     * @param channels
+     *            Index of the input channel of each output channel.
+     * @return Channel mixer that selects the channels.
+     * @throws IllegalArgumentException
+     *             If no channel is specified or if a channel index is out of
+     *             range.
+     */
+    public static ChannelMixer createSelection(AudioSource source,
+            int... channels) {
+        final int channelCount = source.getDescriptor().getChannelCount();
+        final double[][] matrix = new double[channels.length][channelCount];
+
+        for (int output = 0; output < channels.length; ++output) {
+            final int input = channels[output];
+            if (input < 0 || input >= channelCount)
+                throw new IllegalArgumentException("Invalid channel index "
+                        + input);
+            matrix[output][input] = 1;
+        }
+
+        return new ChannelMixer(source, matrix);
+    }
+
+    /**
+     * Creates a channel mixer that mixes 5.1 surround audio down to stereo.
+     * The input channels are expected in the wave file order front left,
+     * front right, center, low frequency effects, back left and back right.
+     * Center and back channels are added to the front channels at -3 dB, the
+     * low frequency effects channel is dropped. The result is scaled so that
+     * full scale input cannot clip.
+     * 
+     * @param source
+     *            Audio source with six channels.
+     * @return Stereo channel mixer.
+     * @throws IllegalArgumentException
+     *             If the source does not have six channels.
+     */
+    public static ChannelMixer createSurroundDownmix(AudioSource source) {
+        final int channelCount = source.getDescriptor().getChannelCount();
+        if (channelCount != 6)
+            throw new IllegalArgumentException(
+                    "Surround downmix needs 6 channels, got " + channelCount);
+        final double scale = 1 / (1 + 2 * SURROUND_GAIN);
+        final double front = scale;
+        final double surround = SURROUND_GAIN * scale;
+
+        return new ChannelMixer(source, new double[][] {
+                { front, 0, surround, 0, surround, 0 },
+                { 0, front, surround, 0, 0, surround } });
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSource.close();
+    }
+
+    @Override
+    public short getCurrentBitRate(int channel) {
+        return mSource.getCurrentBitRate(getSourceChannel(channel));
+    }
+
+    @Override
+    public int getCurrentSampleRate(int channel) {
+        return mSource.getCurrentSampleRate(getSourceChannel(channel));
+    }
+
+    @Override
+    public AudioStreamDescriptor getDescriptor() {
+        return mDescriptor;
+    }
+
+    @Override
+    public double getSample(int channel) {
+        return mPlan.mix(mSource, channel);
+    }
+
+    /**
+     * Gets the first input channel that contributes to an output channel.
+     */
+    private int getSourceChannel(int channel) {
+        return mPlan.getInputChannel(channel);
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        return mSource.next();
+    }
+
+    @Override
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        if (mPlan.isSelection())
+            return readSelection(dst, offset, frames);
+
+        if (mReadBuffer == null || mReadBuffer[0].length < frames) {
+            mReadBuffer = new double[mSourceChannelCount][frames];
+        }
+
+        final int count = mSource.read(mReadBuffer, 0, frames);
+        if (count > 0)
+            mPlan.mix(mReadBuffer, 0, dst, offset, count);
+        return count;
+    }
+
+    /**
+     * Reads the selected input channels directly into the target arrays. The
+     * input channels that are not selected are read into the read buffer.
+     */
+    private int readSelection(double[][] dst, int offset, int frames)
+            throws IOException {
+        if (mReadBuffer == null || mReadBuffer[0].length < offset + frames) {
+            mReadBuffer = new double[mSourceChannelCount][offset + frames];
+        }
+
+        for (int input = 0; input < mSourceChannelCount; ++input) {
+            mSelectionTargets[input] = mReadBuffer[input];
+        }
+
+        for (int output = 0; output < mOutputChannelCount; ++output) {
+            mSelectionTargets[mPlan.getInputChannel(output)] = dst[output];
+        }
+
+        return mSource.read(mSelectionTargets, offset, frames);
+    }
+}
@@ -63,6 +63,30 @@ public class DoubleArrayAudioSource implements SeekableAudioSource {
         return (++mDataIndex * mDescriptor.getChannelCount()) < mData.length;
     }
 
+    @Override
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        final int channelCount = mDescriptor.getChannelCount();
+        final int start = mDataIndex + 1;
+        final int available = mData.length / channelCount - start;
+        if (available <= 0)
+            return frames > 0 ? -1 : 0;
+        final int count = Math.min(frames, available);
+
+        for (int channel = 0; channel < channelCount; ++channel) {
+            final double[] target = dst[channel];
+            int dataIndex = start * channelCount + channel;
+
+            for (int frame = 0; frame < count; ++frame) {
+                target[offset + frame] = mData[dataIndex];
+                dataIndex += channelCount;
+            }
+        }
+
+        mDataIndex += count;
+        return count;
+    }
+
     @Override
     public void rewind() {
         mDataIndex = -1;
@@ -70,7 +94,7 @@ public class DoubleArrayAudioSource implements SeekableAudioSource {
 
     @Override
     public void seekPosition(int position) throws IOException {
-        mDataIndex = position;
+        mDataIndex = position - 1;
     }
 
     @Override
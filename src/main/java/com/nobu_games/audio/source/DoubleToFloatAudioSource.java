@@ -0,0 +1,80 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+
+/**
+ * Adapter that exposes a double precision {@link AudioSource} as a
+ * {@link FloatAudioSource}.
+ * <p>
+ * Use {@link #adapt(AudioSource)} to create instances. It avoids stacking
+ * adapters on top of each other by unwrapping a {@link FloatToDoubleAudioSource}.
+ * 
+ * @author ti
+ */
+public class DoubleToFloatAudioSource implements FloatAudioSource {
+    private double[][] mReadBuffer;
+    private final AudioSource mSource;
+
+    private DoubleToFloatAudioSource(AudioSource source) {
+        mSource = source;
+    }
+
+    /**
+     * Gets a single precision view of an audio source.
+     * 
+     * @param source
+     *            Double precision audio source.
+     * @return Single precision audio source. If <code>source</code> is
+     *         itself an adapter for a single precision source, that source
+     *         is returned.
+     */
+    public static FloatAudioSource adapt(AudioSource source) {
+        if (source instanceof FloatToDoubleAudioSource)
+            return ((FloatToDoubleAudioSource) source).getFloatAudioSource();
+
+        return new DoubleToFloatAudioSource(source);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSource.close();
+    }
+
+    /**
+     * Gets the adapted audio source.
+     * 
+     * @return Double precision audio source.
+     */
+    public AudioSource getAudioSource() {
+        return mSource;
+    }
+
+    @Override
+    public AudioStreamDescriptor getDescriptor() {
+        return mSource.getDescriptor();
+    }
+
+    @Override
+    public int read(float[][] dst, int offset, int frames) throws IOException {
+        final int channelCount = mSource.getDescriptor().getChannelCount();
+
+        if (mReadBuffer == null || mReadBuffer[0].length < frames) {
+            mReadBuffer = new double[channelCount][frames];
+        }
+
+        final int count = mSource.read(mReadBuffer, 0, frames);
+
+        for (int channel = 0; channel < channelCount; ++channel) {
+            final double[] samples = mReadBuffer[channel];
+            final float[] target = dst[channel];
+
+            for (int frame = 0; frame < count; ++frame) {
+                target[offset + frame] = (float) samples[frame];
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,49 @@
+package com.nobu_games.audio.source;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+
+/**
+ * Single precision audio sample data source.
+ * <p>
+ * Block oriented counterpart of {@link AudioSource} that provides a decoded
+ * stream of normalized single precision floating point sample values ranging
+ * from <code>-1.0</code> to <code>+1.0</code>. Samples are delivered in planar
+ * layout, i.e. one array per channel.
+ * 
+ * @author ti
+ */
+public interface FloatAudioSource extends Closeable {
+    /**
+     * Gets the audio stream descriptor for this audio source.
+     * 
+     * @return Descriptor object for this audio source.
+     */
+    AudioStreamDescriptor getDescriptor();
+
+    /**
+     * Reads a block of consecutive samples of all available audio channels of
+     * this source.
+     * 
+     * @param dst
+     *            Target sample arrays, one per channel. Must have at least as
+     *            many entries as this source has channels.
+     * @param offset
+     *            Sample position in the target arrays where to store the first
+     *            read sample.
+     * @param frames
+     *            Maximum amount of samples per channel to read.
+     * 
+     * @return Amount of samples read per channel. A value less than
+     *         <code>frames</code> means that the end of the stream has been
+     *         reached. <code>-1</code> if the end of the stream had already
+     *         been reached before calling this method.
+     * @throws IOException
+     *             In case of an I/O error while reading samples from the
+     *             underlying data source.
+     * @see AudioSource#read(double[][], int, int)
+     */
+    int read(float[][] dst, int offset, int frames) throws IOException;
+}
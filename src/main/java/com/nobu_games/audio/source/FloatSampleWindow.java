@@ -0,0 +1,155 @@
+package com.nobu_games.audio.source;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Single precision counterpart of {@link SampleWindow} for
+ * {@link FloatAudioSource} objects.
+ * 
+ * @author ti
+ */
+public class FloatSampleWindow implements Closeable {
+    private long mCenter = -1;
+    private long mEnd;
+    private boolean mEOS;
+    private final int mLookAheadSize;
+    private final int mLookBehindSize;
+    private final int mMask;
+    private final float[][] mSampleBuffer;
+    private final FloatAudioSource mSource;
+    private final int mWindowSize;
+
+    /**
+     * Creates a sample window object for an audio source.
+     * 
+     * @param source
+     *            Audio source to provide window for.
+     * @param lookAheadSize
+     *            The maximum amount of future samples that can be accessed at a
+     *            time in this window (must be >= 0).
+     * @param lookBehindSize
+     *            The maximum amount of past samples that can be accessed at a
+     *            time in this window (must be >= 0).
+     * 
+     * @throws IllegalArgumentException
+     *             If <code>lookAheadSize</code> or <code>lookBehindSize</code>
+     *             are negative, or if both values are 0.
+     * @throws NullPointerException
+     *             If <code>source</code> is <code>null</code>.
+     */
+    public FloatSampleWindow(FloatAudioSource source, int lookAheadSize,
+            int lookBehindSize) {
+        if (lookAheadSize < 0)
+            throw new IllegalArgumentException("lookAheadSize must be >= 0");
+        if (lookBehindSize < 0)
+            throw new IllegalArgumentException("lookBehindSize must be >= 0");
+        if (lookAheadSize + lookBehindSize == 0)
+            throw new IllegalArgumentException(
+                    "lookAheadSize + lookBehindSize must be > 0");
+        mSource = source;
+        mLookAheadSize = lookAheadSize;
+        mLookBehindSize = lookBehindSize;
+        mWindowSize = mLookBehindSize + mLookAheadSize + 1;
+        final int capacity = SampleWindow.getCapacity(mWindowSize);
+        mMask = capacity - 1;
+        mSampleBuffer = new float[source.getDescriptor().getChannelCount()][capacity];
+    }
+
+    /**
+     * Closes the underlying audio source.
+     */
+    @Override
+    public void close() throws IOException {
+        mSource.close();
+    }
+
+    /**
+     * Gets the underlying audio source for this window.
+     * 
+     * @return Audio source.
+     */
+    public FloatAudioSource getAudioSource() {
+        return mSource;
+    }
+
+    /**
+     * Gets a sample from the window.
+     * 
+     * @param channel
+     *            Channel index number to get sample from.
+     * @param offset
+     *            Relative offset. 0 meaning the current center position of the
+     *            window, negative values look behind, positive values look
+     *            ahead.
+     * @return Normalized sample value (-1.0 to +1.0) or <code>Float.NaN</code>
+     *         in case the offset value points to a non-existing sample in this
+     *         window.
+     * @see SampleWindow#getSample(int, int)
+     */
+    public float getSample(int channel, int offset) {
+        if (offset < -mLookBehindSize || offset > mLookAheadSize)
+            throw new ArrayIndexOutOfBoundsException(offset);
+        final long position = mCenter + offset;
+        if (position < 0 || position >= mEnd)
+            return Float.NaN;
+        return mSampleBuffer[channel][(int) position & mMask];
+    }
+
+    /**
+     * Gets the total amount of samples buffered by this window at a time.
+     * 
+     * @return Window size in samples.
+     */
+    public int getWindowSize() {
+        return mWindowSize;
+    }
+
+    /**
+     * Slides the window to the next position in the audio stream.
+     * 
+     * @param skip
+     *            Optional amount of audio stream samples to skip.
+     * @return <code>true</code> if there is at least 1 more sample left in the
+     *         audio stream to reach the center location of this window,
+     *         <code>false</code> if the end of stream has been reached.
+     * @throws IOException
+     *             In case there was an I/O error while reading samples from the
+     *             underlying audio source.
+     * @see SampleWindow#next(int)
+     */
+    public boolean next(int skip) throws IOException {
+        mCenter += skip + 1;
+
+        while (!mEOS && mEnd <= mCenter + mLookAheadSize) {
+            refill();
+        }
+
+        return mCenter < mEnd;
+    }
+
+    /**
+     * Reads as many samples from the audio source as fit into the buffer
+     * without overwriting samples that are still inside of the window.
+     */
+    private void refill() throws IOException {
+        final int capacity = mMask + 1;
+        long remaining = mCenter - mLookBehindSize + capacity - mEnd;
+
+        while (remaining > 0) {
+            final int start = (int) mEnd & mMask;
+            final int requested = (int) Math.min(remaining, capacity - start);
+            final int count = mSource.read(mSampleBuffer, start, requested);
+
+            if (count > 0) {
+                mEnd += count;
+                remaining -= count;
+            }
+
+            if (count < requested) {
+                mEOS = true;
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+
+/**
+ * Adapter that exposes a {@link FloatAudioSource} as a double precision
+ * {@link AudioSource}.
+ * <p>
+ * Frame by frame access through {@link #next()} is served from an internal
+ * block buffer, so the underlying source is always read in blocks. Use
+ * {@link #adapt(FloatAudioSource)} to create instances.
+ * 
+ * @author ti
+ */
+public class FloatToDoubleAudioSource implements AudioSource {
+    private static final int BLOCK_FRAMES = 1024;
+
+    private final float[][] mBlock;
+    private int mBlockFrames;
+    private int mBlockIndex = -1;
+    private final FloatAudioSource mSource;
+
+    private FloatToDoubleAudioSource(FloatAudioSource source) {
+        mSource = source;
+        mBlock = new float[source.getDescriptor().getChannelCount()][BLOCK_FRAMES];
+    }
+
+    /**
+     * Gets a double precision view of a single precision audio source.
+     * 
+     * @param source
+     *            Single precision audio source.
+     * @return Double precision audio source. If <code>source</code> is itself
+     *         an adapter for a double precision source, that source is
+     *         returned.
+     */
+    public static AudioSource adapt(FloatAudioSource source) {
+        if (source instanceof DoubleToFloatAudioSource)
+            return ((DoubleToFloatAudioSource) source).getAudioSource();
+
+        return new FloatToDoubleAudioSource(source);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSource.close();
+    }
+
+    @Override
+    public short getCurrentBitRate(int channel) {
+        return mSource.getDescriptor().getMaximumBitsPerSample(channel);
+    }
+
+    @Override
+    public int getCurrentSampleRate(int channel) {
+        return mSource.getDescriptor().getMaximumSampleRate(channel);
+    }
+
+    @Override
+    public AudioStreamDescriptor getDescriptor() {
+        return mSource.getDescriptor();
+    }
+
+    /**
+     * Gets the adapted audio source.
+     * 
+     * @return Single precision audio source.
+     */
+    public FloatAudioSource getFloatAudioSource() {
+        return mSource;
+    }
+
+    @Override
+    public double getSample(int channel) {
+        return mBlock[channel][mBlockIndex];
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (++mBlockIndex < mBlockFrames)
+            return true;
+
+        final int count = mSource.read(mBlock, 0, BLOCK_FRAMES);
+        mBlockIndex = 0;
+        mBlockFrames = Math.max(count, 0);
+
+        return mBlockFrames > 0;
+    }
+
+    @Override
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        final int channelCount = mBlock.length;
+        int total = 0;
+
+        while (total < frames) {
+            int available = mBlockFrames - (mBlockIndex + 1);
+
+            if (available <= 0) {
+                final int count = mSource.read(mBlock, 0, BLOCK_FRAMES);
+                if (count < 1)
+                    break;
+                mBlockIndex = -1;
+                mBlockFrames = count;
+                available = count;
+            }
+
+            final int count = Math.min(available, frames - total);
+            final int start = mBlockIndex + 1;
+
+            for (int channel = 0; channel < channelCount; ++channel) {
+                final float[] samples = mBlock[channel];
+                final double[] target = dst[channel];
+
+                for (int frame = 0; frame < count; ++frame) {
+                    target[offset + total + frame] = samples[start + frame];
+                }
+            }
+
+            mBlockIndex += count;
+            total += count;
+        }
+
+        return total == 0 && frames > 0 ? -1 : total;
+    }
+}
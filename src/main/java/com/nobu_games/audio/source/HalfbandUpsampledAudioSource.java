@@ -0,0 +1,292 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+
+/**
+ * Audio source that doubles the sample rate of another audio source with a
+ * halfband FIR filter.
+ * <p>
+ * Every second tap of a halfband filter is zero, except for the center tap.
+ * Each even output sample is therefore a copy of an input sample, and only
+ * the odd output samples need filtering. The filter is symmetric, so the
+ * input samples on both sides of an odd output sample are added before they
+ * are multiplied with their shared coefficient. That takes
+ * <code>quality.getTaps() / 2</code> multiplications per two output samples.
+ * <p>
+ * Higher power-of-two ratios are produced by cascading instances, see
+ * {@link ResamplerFactory}. The filter delay is compensated, so output sample
+ * <code>2k</code> is input sample <code>k</code>. An input stream of
+ * <code>n</code> samples yields <code>2n</code> output samples.
+ * 
+ * @author ti
+ */
+public class HalfbandUpsampledAudioSource implements AudioSource {
+    /**
+     * Amount of input samples read from the source at a time.
+     */
+    private static final int BLOCK_FRAMES = 1024;
+
+    private final double[] mCoefficients;
+    private final AudioStreamDescriptor mDescriptor;
+    private boolean mEOS;
+    private final double[][] mFrame;
+    private final double[][] mInput;
+    private int mInputFill;
+    private long mInputFrames;
+    private long mInputStart;
+    private long mOutputFrames = -1;
+    private long mOutputIndex;
+    private final int mResampleRate;
+    private long mSampleCount;
+    private final AudioSource mSource;
+
+    /**
+     * Creates an upsampled audio source with a filter of
+     * {@link ResamplerQuality#HIGH} quality.
+     * 
+     * @param source
+     *            Audio source to upsample.
+     */
+    public HalfbandUpsampledAudioSource(AudioSource source) {
+        this(source, ResamplerQuality.HIGH);
+    }
+
+    /**
+     * Creates an upsampled audio source.
+     * 
+     * @param source
+     *            Audio source to upsample.
+     * @param quality
+     *            Quality preset of the halfband filter.
+     * @throws IllegalArgumentException
+     *             If the source has a variable sample rate.
+     */
+    public HalfbandUpsampledAudioSource(AudioSource source,
+            ResamplerQuality quality) {
+        this(source, quality.getTaps() / 2, quality.getStopbandAttenuation());
+    }
+
+    /**
+     * Creates an upsampled audio source.
+     * 
+     * @param source
+     *            Audio source to upsample.
+     * @param pairs
+     *            Amount of coefficient pairs of the halfband filter.
+     * @param attenuation
+     *            Stopband attenuation of the filter window in dB.
+     */
+    HalfbandUpsampledAudioSource(AudioSource source, int pairs,
+            double attenuation) {
+        final AudioStreamDescriptor descriptor = source.getDescriptor();
+
+        if ((descriptor.getFlags() & AudioStreamDescriptor.FLAG_VARIABLE_SAMPLE_RATE) != 0) {
+            throw new IllegalArgumentException(
+                    "Cannot resample an audio source with variable sample rate.");
+        }
+
+        mSource = source;
+        mResampleRate = descriptor.getMaximumSampleRate(0) * 2;
+        mSampleCount = descriptor.getSampleCount();
+        if (mSampleCount > -1)
+            mSampleCount *= 2;
+        mDescriptor = new ProxyAudioStreamDescriptor(descriptor) {
+            @Override
+            public int getMaximumSampleRate(int channel) {
+                return mResampleRate;
+            }
+
+            @Override
+            public int getMinimumSampleRate(int channel) {
+                return mResampleRate;
+            }
+
+            @Override
+            public long getSampleCount() {
+                return mSampleCount;
+            }
+        };
+        mCoefficients = design(pairs, attenuation);
+
+        final int channelCount = descriptor.getChannelCount();
+        mInput = new double[channelCount][2 * pairs + BLOCK_FRAMES];
+        // Input samples before the start of the stream are silent
+        mInputStart = -(pairs - 1);
+        mInputFill = pairs - 1;
+        mFrame = new double[channelCount][1];
+    }
+
+    /**
+     * Designs the non-zero half of a Kaiser windowed halfband filter. The
+     * coefficient at index <code>k</code> applies to the input samples at a
+     * distance of <code>k + 0.5</code> from the interpolated position.
+     */
+    private static double[] design(int pairs, double attenuation) {
+        final double beta = PolyphaseFilterBank.getKaiserBeta(attenuation);
+        final double[] coefficients = new double[pairs];
+        double sum = 0;
+
+        for (int k = 0; k < pairs; ++k) {
+            final double x = k + 0.5;
+            final double r = x / pairs;
+            final double window = PolyphaseFilterBank.bessel0(beta
+                    * Math.sqrt(1 - r * r))
+                    / PolyphaseFilterBank.bessel0(beta);
+            coefficients[k] = Math.sin(Math.PI * x) / (Math.PI * x) * window;
+            sum += 2 * coefficients[k];
+        }
+
+        for (int k = 0; k < pairs; ++k) {
+            coefficients[k] /= sum;
+        }
+
+        return coefficients;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSource.close();
+    }
+
+    @Override
+    public short getCurrentBitRate(int channel) {
+        return mSource.getCurrentBitRate(channel);
+    }
+
+    @Override
+    public int getCurrentSampleRate(int channel) {
+        return mResampleRate;
+    }
+
+    @Override
+    public AudioStreamDescriptor getDescriptor() {
+        return mDescriptor;
+    }
+
+    @Override
+    public double getSample(int channel) {
+        return mFrame[channel][0];
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        return read(mFrame, 0, 1) == 1;
+    }
+
+    @Override
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        final double[] coefficients = mCoefficients;
+        final int pairs = coefficients.length;
+        int total = 0;
+
+        while (total < frames) {
+            if (mOutputFrames > -1 && mOutputIndex >= mOutputFrames)
+                break;
+
+            // Output samples 2n and 2n + 1 need the input samples up to
+            // n + pairs
+            final long available = 2 * (mInputStart + mInputFill - pairs)
+                    - mOutputIndex;
+            long limit = frames - total;
+            if (mOutputFrames > -1)
+                limit = Math.min(limit, mOutputFrames - mOutputIndex);
+            final int count = (int) Math.min(limit, available);
+
+            if (count <= 0) {
+                refill((mOutputIndex >> 1) - pairs + 1);
+                continue;
+            }
+
+            final int first = (int) ((mOutputIndex >> 1) - mInputStart);
+            final boolean odd = (mOutputIndex & 1) != 0;
+
+            for (int channel = 0; channel < mInput.length; ++channel) {
+                final double[] input = mInput[channel];
+                final double[] target = dst[channel];
+                final int end = offset + total + count;
+                int i = offset + total;
+                int base = first;
+
+                if (odd) {
+                    target[i++] = interpolate(coefficients, input, base++);
+                }
+
+                while (i + 1 < end) {
+                    target[i++] = input[base];
+                    target[i++] = interpolate(coefficients, input, base++);
+                }
+
+                if (i < end) {
+                    target[i] = input[base];
+                }
+            }
+
+            mOutputIndex += count;
+            total += count;
+        }
+
+        return total == 0 && frames > 0 ? -1 : total;
+    }
+
+    /**
+     * Computes the output sample halfway between two input samples.
+     */
+    private static double interpolate(double[] coefficients, double[] input,
+            int base) {
+        double sample = 0;
+
+        for (int k = 0; k < coefficients.length; ++k) {
+            sample += coefficients[k] * (input[base - k] + input[base + 1 + k]);
+        }
+
+        return sample;
+    }
+
+    /**
+     * Discards buffered input samples before the specified input position and
+     * fills the rest of the input buffer with new samples from the source, or
+     * with silence after the end of the source stream.
+     */
+    private void refill(long keepFrom) throws IOException {
+        final int discard = (int) Math.min(keepFrom - mInputStart, mInputFill);
+
+        if (discard > 0) {
+            for (double[] input : mInput) {
+                System.arraycopy(input, discard, input, 0, mInputFill
+                        - discard);
+            }
+
+            mInputStart += discard;
+            mInputFill -= discard;
+        }
+
+        final int capacity = mInput[0].length;
+
+        if (!mEOS) {
+            final int requested = capacity - mInputFill;
+            final int count = mSource.read(mInput, mInputFill, requested);
+
+            if (count > 0) {
+                mInputFill += count;
+                mInputFrames += count;
+            }
+
+            if (count < requested) {
+                mEOS = true;
+                mOutputFrames = 2 * mInputFrames;
+            }
+        }
+
+        if (mEOS) {
+            for (double[] input : mInput) {
+                Arrays.fill(input, mInputFill, capacity, 0);
+            }
+
+            mInputFill = capacity;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.metering.MeterRegistry;
+import com.nobu_games.audio.metering.StageMeter;
+
+/**
+ * Audio source that meters the frames read from another audio source and the
+ * time spent reading them.
+ * <p>
+ * Wrapping each stage of a source chain in a metered audio source attributes
+ * the processing time to the individual stages, because the time spent in a
+ * nested metered source only counts as self time of the nested source. Block
+ * reads with {@link #read(double[][], int, int)} are metered with negligible
+ * overhead, metering {@link #next()} reads the clock for every single frame.
+ * <p>
+ * The meter is closed and removed from its registry when this source reaches
+ * the end of the stream or when it is closed, whichever happens first.
+ * 
+ * @author ti
+ */
+public class MeteredAudioSource implements AudioSource {
+    private final StageMeter mMeter;
+    private final AudioSource mSource;
+
+    /**
+     * Creates a metered audio source with a new meter of the default
+     * registry.
+     * 
+     * @param source
+     *            Audio source to meter.
+     * @param name
+     *            Stage name.
+     */
+    public MeteredAudioSource(AudioSource source, String name) {
+        this(source, MeterRegistry.getDefault().createMeter(name));
+    }
+
+    /**
+     * Creates a metered audio source.
+     * 
+     * @param source
+     *            Audio source to meter.
+     * @param meter
+     *            Meter that receives the counters.
+     */
+    public MeteredAudioSource(AudioSource source, StageMeter meter) {
+        if (source == null)
+            throw new IllegalArgumentException("Source must not be null");
+        if (meter == null)
+            throw new IllegalArgumentException("Meter must not be null");
+
+        mSource = source;
+        mMeter = meter;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            mSource.close();
+        } finally {
+            mMeter.close();
+        }
+    }
+
+    @Override
+    public short getCurrentBitRate(int channel) {
+        return mSource.getCurrentBitRate(channel);
+    }
+
+    @Override
+    public int getCurrentSampleRate(int channel) {
+        return mSource.getCurrentSampleRate(channel);
+    }
+
+    @Override
+    public AudioStreamDescriptor getDescriptor() {
+        return mSource.getDescriptor();
+    }
+
+    /**
+     * Gets the meter of this source.
+     * 
+     * @return Stage meter.
+     */
+    public StageMeter getMeter() {
+        return mMeter;
+    }
+
+    @Override
+    public double getSample(int channel) {
+        return mSource.getSample(channel);
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        final boolean hasNext;
+        mMeter.enter();
+
+        try {
+            hasNext = mSource.next();
+        } finally {
+            mMeter.exit();
+        }
+
+        if (hasNext)
+            mMeter.addFrames(1);
+        else
+            mMeter.close();
+
+        return hasNext;
+    }
+
+    @Override
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        final int count;
+        mMeter.enter();
+
+        try {
+            count = mSource.read(dst, offset, frames);
+        } finally {
+            mMeter.exit();
+        }
+
+        if (count < 0)
+            mMeter.close();
+        else
+            mMeter.addFrames(count);
+
+        return count;
+    }
+}
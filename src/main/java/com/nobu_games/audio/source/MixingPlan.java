@@ -0,0 +1,207 @@
+package com.nobu_games.audio.source;
+
+import java.util.Arrays;
+
+import com.nobu_games.audio.kernel.SampleKernels;
+
+/**
+ * Sparse plan for mixing planar sample blocks with a gain matrix.
+ * <p>
+ * Each output channel is a weighted sum of the input channels. Inputs with a
+ * gain of zero are left out, inputs with a gain of one are added without
+ * multiplication and an output channel with a single unity input is a plain
+ * copy. A plan is immutable and can be shared by any amount of mixers.
+ * 
+ * @author ti
+ */
+public class MixingPlan {
+    private static final SampleKernels KERNELS = SampleKernels.getInstance();
+
+    private final double[][] mGains;
+    private final int mInputChannelCount;
+    private final int[][] mInputs;
+    private final boolean mSelection;
+
+    /**
+     * Creates a mixing plan.
+     * 
+     * @param matrix
+     *            Gain matrix. <code>matrix[output][input]</code> is the gain
+     *            of an input channel in an output channel. It needs a row per
+     *            output channel and a column per input channel.
+     * @param inputChannelCount
+     *            Amount of input channels.
+     * @throws IllegalArgumentException
+     *             If the matrix has no rows or if a row does not have a
+     *             column for each input channel.
+     */
+    public MixingPlan(double[][] matrix, int inputChannelCount) {
+        final int outputChannelCount = matrix.length;
+
+        if (outputChannelCount == 0)
+            throw new IllegalArgumentException(
+                    "Matrix needs at least one output channel");
+
+        mInputChannelCount = inputChannelCount;
+        mInputs = new int[outputChannelCount][];
+        mGains = new double[outputChannelCount][];
+        final boolean[] selected = new boolean[inputChannelCount];
+        boolean selection = true;
+
+        for (int output = 0; output < outputChannelCount; ++output) {
+            final double[] row = matrix[output];
+
+            if (row.length != inputChannelCount) {
+                throw new IllegalArgumentException("Matrix row " + output
+                        + " has " + row.length + " columns, expected "
+                        + inputChannelCount);
+            }
+
+            int terms = 0;
+
+            for (double gain : row) {
+                if (gain != 0)
+                    ++terms;
+            }
+
+            final int[] inputs = new int[terms];
+            final double[] gains = new double[terms];
+            int term = 0;
+
+            for (int input = 0; input < row.length; ++input) {
+                if (row[input] != 0) {
+                    inputs[term] = input;
+                    gains[term] = row[input];
+                    ++term;
+                }
+            }
+
+            mInputs[output] = inputs;
+            mGains[output] = gains;
+
+            if (terms != 1 || gains[0] != 1 || selected[inputs[0]]) {
+                selection = false;
+            } else {
+                selected[inputs[0]] = true;
+            }
+        }
+
+        mSelection = selection;
+    }
+
+    /**
+     * Gets the first input channel that contributes to an output channel.
+     * 
+     * @param output
+     *            Output channel.
+     * @return Input channel, 0 if the output channel is silent.
+     */
+    public int getInputChannel(int output) {
+        final int[] inputs = mInputs[output];
+        return inputs.length > 0 ? inputs[0] : 0;
+    }
+
+    /**
+     * Gets the amount of input channels.
+     * 
+     * @return Input channel count.
+     */
+    public int getInputChannelCount() {
+        return mInputChannelCount;
+    }
+
+    /**
+     * Gets the amount of output channels.
+     * 
+     * @return Output channel count.
+     */
+    public int getOutputChannelCount() {
+        return mInputs.length;
+    }
+
+    /**
+     * Checks whether every output channel picks a different input channel
+     * with unity gain, for example when extracting or swapping channels. Such
+     * a plan can be applied by reading the input channels directly into the
+     * target arrays.
+     * 
+     * @return true if the plan only selects channels.
+     */
+    public boolean isSelection() {
+        return mSelection;
+    }
+
+    /**
+     * Mixes the current frame of an audio source into an output channel.
+     * 
+     * @param source
+     *            Audio source with the input channels.
+     * @param output
+     *            Output channel.
+     * @return Mixed sample.
+     */
+    public double mix(AudioSource source, int output) {
+        final int[] inputs = mInputs[output];
+        final double[] gains = mGains[output];
+        double sample = 0;
+
+        for (int term = 0; term < inputs.length; ++term) {
+            sample += gains[term] * source.getSample(inputs[term]);
+        }
+
+        return sample;
+    }
+
+    /**
+     * Mixes a block of planar samples.
+     * 
+     * @param src
+     *            Input samples with an array per input channel.
+     * @param srcOffset
+     *            Index of the first input frame.
+     * @param dst
+     *            Target arrays with an array per output channel. They must not
+     *            be the input arrays.
+     * @param dstOffset
+     *            Index of the first target frame.
+     * @param count
+     *            Amount of frames.
+     */
+    public void mix(double[][] src, int srcOffset, double[][] dst,
+            int dstOffset, int count) {
+        for (int output = 0; output < mInputs.length; ++output) {
+            final int[] inputs = mInputs[output];
+            final double[] gains = mGains[output];
+            final double[] target = dst[output];
+
+            if (inputs.length == 0) {
+                Arrays.fill(target, dstOffset, dstOffset + count, 0);
+                continue;
+            }
+
+            final double[] first = src[inputs[0]];
+            final double firstGain = gains[0];
+
+            if (firstGain == 1) {
+                System.arraycopy(first, srcOffset, target, dstOffset, count);
+            } else {
+                KERNELS.scale(first, srcOffset, firstGain, target, dstOffset,
+                        count);
+            }
+
+            for (int term = 1; term < inputs.length; ++term) {
+                final double[] samples = src[inputs[term]];
+                final double gain = gains[term];
+
+                if (gain == 1) {
+                    for (int frame = 0; frame < count; ++frame) {
+                        target[dstOffset + frame] += samples[srcOffset + frame];
+                    }
+                } else {
+                    KERNELS.addScaled(samples, srcOffset, gain, target,
+                            dstOffset, count);
+                }
+            }
+        }
+    }
+}
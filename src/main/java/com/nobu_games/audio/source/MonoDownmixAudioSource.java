@@ -11,7 +11,9 @@ import com.nobu_games.audio.AudioStreamDescriptor;
  */
 public class MonoDownmixAudioSource implements AudioSource {
     private AudioStreamDescriptor mDescriptor;
+    private double[][] mReadBuffer;
     private final AudioSource mSource;
+    private final int mSourceChannelCount;
 
     /**
      * Creates a new mono downmix audio source for the specified audio source.
@@ -22,6 +24,7 @@ public class MonoDownmixAudioSource implements AudioSource {
     public MonoDownmixAudioSource(AudioSource source) {
         mSource = source;
         final AudioStreamDescriptor descr = source.getDescriptor();
+        mSourceChannelCount = descr.getChannelCount();
         mDescriptor = new ProxyAudioStreamDescriptor(descr) {
             @Override
             public int getChannelCount() {
@@ -52,17 +55,15 @@ public class MonoDownmixAudioSource implements AudioSource {
 
     @Override
     public double getSample(int channel) {
-        final int sourceChannelCount = mSource.getDescriptor()
-                .getChannelCount();
-        if (sourceChannelCount == 1)
+        if (mSourceChannelCount == 1)
             return mSource.getSample(channel);
         double sample = 0;
 
-        for (int sourceChannel = 0; sourceChannel < sourceChannelCount; ++sourceChannel) {
+        for (int sourceChannel = 0; sourceChannel < mSourceChannelCount; ++sourceChannel) {
             sample += mSource.getSample(sourceChannel);
         }
 
-        sample /= sourceChannelCount;
+        sample /= mSourceChannelCount;
 
         return sample;
     }
@@ -71,4 +72,37 @@ public class MonoDownmixAudioSource implements AudioSource {
     public boolean next() throws IOException {
         return mSource.next();
     }
+
+    @Override
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        if (mSourceChannelCount == 1)
+            return mSource.read(dst, offset, frames);
+
+        if (mReadBuffer == null || mReadBuffer[0].length < frames) {
+            mReadBuffer = new double[mSourceChannelCount][frames];
+        }
+
+        final int count = mSource.read(mReadBuffer, 0, frames);
+        final double[] target = dst[0];
+        final double[] first = mReadBuffer[0];
+
+        for (int frame = 0; frame < count; ++frame) {
+            target[offset + frame] = first[frame];
+        }
+
+        for (int channel = 1; channel < mSourceChannelCount; ++channel) {
+            final double[] samples = mReadBuffer[channel];
+
+            for (int frame = 0; frame < count; ++frame) {
+                target[offset + frame] += samples[frame];
+            }
+        }
+
+        for (int frame = 0; frame < count; ++frame) {
+            target[offset + frame] /= mSourceChannelCount;
+        }
+
+        return count;
+    }
 }
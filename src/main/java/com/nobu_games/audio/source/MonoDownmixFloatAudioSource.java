@@ -0,0 +1,78 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+
+/**
+ * Single precision counterpart of {@link MonoDownmixAudioSource}.
+ * 
+ * @author ti
+ */
+public class MonoDownmixFloatAudioSource implements FloatAudioSource {
+    private AudioStreamDescriptor mDescriptor;
+    private float[][] mReadBuffer;
+    private final FloatAudioSource mSource;
+    private final int mSourceChannelCount;
+
+    /**
+     * Creates a new mono downmix audio source for the specified audio source.
+     * 
+     * @param source
+     *            Audio source to downmix.
+     */
+    public MonoDownmixFloatAudioSource(FloatAudioSource source) {
+        mSource = source;
+        final AudioStreamDescriptor descr = source.getDescriptor();
+        mSourceChannelCount = descr.getChannelCount();
+        mDescriptor = new ProxyAudioStreamDescriptor(descr) {
+            @Override
+            public int getChannelCount() {
+                return 1;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSource.close();
+    }
+
+    @Override
+    public AudioStreamDescriptor getDescriptor() {
+        return mDescriptor;
+    }
+
+    @Override
+    public int read(float[][] dst, int offset, int frames) throws IOException {
+        if (mSourceChannelCount == 1)
+            return mSource.read(dst, offset, frames);
+
+        if (mReadBuffer == null || mReadBuffer[0].length < frames) {
+            mReadBuffer = new float[mSourceChannelCount][frames];
+        }
+
+        final int count = mSource.read(mReadBuffer, 0, frames);
+        final float[] target = dst[0];
+        final float[] first = mReadBuffer[0];
+        final float scale = 1f / mSourceChannelCount;
+
+        for (int frame = 0; frame < count; ++frame) {
+            target[offset + frame] = first[frame];
+        }
+
+        for (int channel = 1; channel < mSourceChannelCount; ++channel) {
+            final float[] samples = mReadBuffer[channel];
+
+            for (int frame = 0; frame < count; ++frame) {
+                target[offset + frame] += samples[frame];
+            }
+        }
+
+        for (int frame = 0; frame < count; ++frame) {
+            target[offset + frame] *= scale;
+        }
+
+        return count;
+    }
+}
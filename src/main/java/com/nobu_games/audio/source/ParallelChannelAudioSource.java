@@ -0,0 +1,416 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+
+/**
+ * Audio source that processes each channel of another audio source in a
+ * separate lane, optionally on separate worker threads.
+ * <p>
+ * Every lane is a mono processing pipeline, for example a resampler, that is
+ * created by a {@link LaneFactory} for a single channel of the source. The
+ * lanes of a block run concurrently on an {@link ExecutorService}. The source
+ * is read only once and shared by all lanes. Since each lane computes exactly
+ * what the same pipeline computes for that channel on a single thread, the
+ * results do not depend on thread scheduling. The output stays in planar
+ * layout, so the lanes are only interleaved when the samples are encoded.
+ * <p>
+ * Lane pipelines must treat their channels independently. Stages that mix
+ * channels, such as {@link MonoDownmixAudioSource}, belong behind this
+ * source.
+ * 
+ * @author ti
+ */
+public class ParallelChannelAudioSource implements AudioSource {
+    /**
+     * Default amount of samples that each lane produces per task.
+     */
+    public static final int DEFAULT_BLOCK_FRAMES = 8192;
+
+    private int mBufferFill;
+    private int mBufferIndex;
+    private final AudioStreamDescriptor mDescriptor;
+    private boolean mEOS;
+    private final ExecutorService mExecutor;
+    private final double[][] mFrame;
+    private final double[][][] mLaneOutputs;
+    private final AudioSource[] mLanes;
+    private final double[][] mOutput;
+    private final AudioSource mSource;
+    private final ChannelSplitter mSplitter;
+    private final List<Callable<Integer>> mTasks;
+
+    /**
+     * Creates an audio source that runs its lanes one after the other on the
+     * calling thread.
+     * 
+     * @param source
+     *            Audio source to process.
+     * @param factory
+     *            Creates the processing pipeline of each channel.
+     */
+    public ParallelChannelAudioSource(AudioSource source, LaneFactory factory) {
+        this(source, factory, null, DEFAULT_BLOCK_FRAMES);
+    }
+
+    /**
+     * Creates an audio source that runs its lanes concurrently.
+     * 
+     * @param source
+     *            Audio source to process.
+     * @param factory
+     *            Creates the processing pipeline of each channel.
+     * @param executor
+     *            Executor for the lanes or <code>null</code> to run them on
+     *            the calling thread.
+     * @param blockFrames
+     *            Amount of samples that each lane produces per task.
+     * @throws IllegalArgumentException
+     *             If the block size is not positive or if the lane pipelines
+     *             do not produce mono streams.
+     */
+    public ParallelChannelAudioSource(AudioSource source, LaneFactory factory,
+            ExecutorService executor, int blockFrames) {
+        if (blockFrames < 1)
+            throw new IllegalArgumentException("blockFrames must be > 0");
+        final int channelCount = source.getDescriptor().getChannelCount();
+        mSource = source;
+        mExecutor = executor;
+        mSplitter = new ChannelSplitter(source);
+        mLanes = new AudioSource[channelCount];
+        mOutput = new double[channelCount][blockFrames];
+        mLaneOutputs = new double[channelCount][][];
+        mTasks = new ArrayList<Callable<Integer>>(channelCount);
+
+        for (int channel = 0; channel < channelCount; ++channel) {
+            mLanes[channel] = factory.createLane(new ChannelAudioSource(
+                    mSplitter, channel));
+            if (mLanes[channel].getDescriptor().getChannelCount() != 1)
+                throw new IllegalArgumentException(
+                        "Lane pipelines must produce mono streams");
+            mLaneOutputs[channel] = new double[][] { mOutput[channel] };
+            mTasks.add(new LaneTask(channel));
+        }
+
+        mDescriptor = new ProxyAudioStreamDescriptor(mLanes[0].getDescriptor()) {
+            @Override
+            public int getChannelCount() {
+                return mLanes.length;
+            }
+        };
+        mFrame = new double[channelCount][1];
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSource.close();
+    }
+
+    @Override
+    public short getCurrentBitRate(int channel) {
+        return mLanes[channel].getCurrentBitRate(0);
+    }
+
+    @Override
+    public int getCurrentSampleRate(int channel) {
+        return mLanes[channel].getCurrentSampleRate(0);
+    }
+
+    @Override
+    public AudioStreamDescriptor getDescriptor() {
+        return mDescriptor;
+    }
+
+    @Override
+    public double getSample(int channel) {
+        return mFrame[channel][0];
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        return read(mFrame, 0, 1) == 1;
+    }
+
+    /**
+     * Lets every lane fill its output buffer.
+     */
+    private void process() throws IOException {
+        int count;
+
+        if (mExecutor == null) {
+            count = readLane(0);
+
+            for (int channel = 1; channel < mLanes.length; ++channel) {
+                checkLaneCount(count, readLane(channel));
+            }
+        } else {
+            try {
+                final List<Future<Integer>> results = mExecutor
+                        .invokeAll(mTasks);
+                count = results.get(0).get();
+
+                for (int channel = 1; channel < results.size(); ++channel) {
+                    checkLaneCount(count, results.get(channel).get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(
+                        "Interrupted while processing channel lanes");
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new IOException(cause);
+            }
+        }
+
+        mBufferIndex = 0;
+        mBufferFill = count;
+        mEOS = count < mOutput[0].length;
+    }
+
+    private static void checkLaneCount(int expected, int count) {
+        if (count != expected)
+            throw new IllegalStateException(
+                    "Channel lanes produced different amounts of samples");
+    }
+
+    @Override
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        int total = 0;
+
+        while (total < frames) {
+            if (mBufferIndex == mBufferFill) {
+                if (mEOS)
+                    break;
+                process();
+                continue;
+            }
+
+            final int count = Math.min(frames - total, mBufferFill
+                    - mBufferIndex);
+
+            for (int channel = 0; channel < mOutput.length; ++channel) {
+                System.arraycopy(mOutput[channel], mBufferIndex,
+                        dst[channel], offset + total, count);
+            }
+
+            mBufferIndex += count;
+            total += count;
+        }
+
+        return total == 0 && frames > 0 ? -1 : total;
+    }
+
+    /**
+     * Reads a full block from a lane into its output buffer.
+     * 
+     * @return Amount of samples read.
+     */
+    private int readLane(int channel) throws IOException {
+        final AudioSource lane = mLanes[channel];
+        final double[][] target = mLaneOutputs[channel];
+        final int frames = target[0].length;
+        int total = 0;
+        int count;
+
+        while (total < frames
+                && (count = lane.read(target, total, frames - total)) > 0) {
+            total += count;
+        }
+
+        return total;
+    }
+
+    /**
+     * Creates the processing pipeline of a single channel.
+     */
+    public interface LaneFactory {
+        /**
+         * Creates the processing pipeline for a channel.
+         * 
+         * @param channel
+         *            Mono audio source that provides the samples of the
+         *            channel.
+         * @return Mono audio source at the end of the pipeline.
+         */
+        AudioSource createLane(AudioSource channel);
+    }
+
+    /**
+     * Mono view of a single channel of a shared {@link ChannelSplitter}.
+     */
+    private static class ChannelAudioSource implements AudioSource {
+        private final int mChannel;
+        private final AudioStreamDescriptor mDescriptor;
+        private final double[][] mFrame = new double[1][1];
+        private final ChannelSplitter mSplitter;
+
+        ChannelAudioSource(ChannelSplitter splitter, int channel) {
+            mSplitter = splitter;
+            mChannel = channel;
+            mDescriptor = new ProxyAudioStreamDescriptor(splitter.mSource
+                    .getDescriptor()) {
+                @Override
+                public int getChannelCount() {
+                    return 1;
+                }
+            };
+        }
+
+        /**
+         * No-op. The shared source is closed by the enclosing source.
+         */
+        @Override
+        public void close() throws IOException {
+        }
+
+        @Override
+        public short getCurrentBitRate(int channel) {
+            return mSplitter.mSource.getCurrentBitRate(mChannel);
+        }
+
+        @Override
+        public int getCurrentSampleRate(int channel) {
+            return mSplitter.mSource.getCurrentSampleRate(mChannel);
+        }
+
+        @Override
+        public AudioStreamDescriptor getDescriptor() {
+            return mDescriptor;
+        }
+
+        @Override
+        public double getSample(int channel) {
+            return mFrame[0][0];
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            return read(mFrame, 0, 1) == 1;
+        }
+
+        @Override
+        public int read(double[][] dst, int offset, int frames)
+                throws IOException {
+            return mSplitter.read(mChannel, dst[0], offset, frames);
+        }
+    }
+
+    /**
+     * Reads blocks from a multichannel source once and keeps them until every
+     * channel lane has consumed them.
+     */
+    private static class ChannelSplitter {
+        private static final int READ_FRAMES = 4096;
+
+        private double[][] mBuffer;
+        private boolean mEOS;
+        private int mFill;
+        private final long[] mPositions;
+        private final AudioSource mSource;
+        private long mStart;
+
+        ChannelSplitter(AudioSource source) {
+            final int channelCount = source.getDescriptor().getChannelCount();
+            mSource = source;
+            mBuffer = new double[channelCount][READ_FRAMES];
+            mPositions = new long[channelCount];
+        }
+
+        /**
+         * Discards the samples that all lanes have consumed and reads the
+         * next block from the source, growing the buffer if a lane is far
+         * behind the others.
+         */
+        private void fetch() throws IOException {
+            long minimum = Long.MAX_VALUE;
+
+            for (long position : mPositions) {
+                minimum = Math.min(minimum, position);
+            }
+
+            final int discard = (int) (minimum - mStart);
+
+            if (discard > 0) {
+                for (double[] samples : mBuffer) {
+                    System.arraycopy(samples, discard, samples, 0, mFill
+                            - discard);
+                }
+
+                mStart += discard;
+                mFill -= discard;
+            }
+
+            if (mBuffer[0].length - mFill < READ_FRAMES) {
+                for (int channel = 0; channel < mBuffer.length; ++channel) {
+                    final double[] samples = new double[Math.max(
+                            mBuffer[channel].length * 2, mFill + READ_FRAMES)];
+                    System.arraycopy(mBuffer[channel], 0, samples, 0, mFill);
+                    mBuffer[channel] = samples;
+                }
+            }
+
+            final int count = mSource.read(mBuffer, mFill, READ_FRAMES);
+
+            if (count > 0)
+                mFill += count;
+            if (count < READ_FRAMES)
+                mEOS = true;
+        }
+
+        synchronized int read(int channel, double[] dst, int offset,
+                int frames) throws IOException {
+            long position = mPositions[channel];
+            int total = 0;
+
+            while (total < frames) {
+                if (position >= mStart + mFill) {
+                    if (mEOS)
+                        break;
+                    fetch();
+                    continue;
+                }
+
+                final int index = (int) (position - mStart);
+                final int count = Math.min(frames - total, mFill - index);
+                System.arraycopy(mBuffer[channel], index, dst, offset + total,
+                        count);
+                position += count;
+                total += count;
+                mPositions[channel] = position;
+            }
+
+            return total == 0 && frames > 0 ? -1 : total;
+        }
+    }
+
+    /**
+     * Fills the output buffer of one lane.
+     */
+    private class LaneTask implements Callable<Integer> {
+        private final int mChannel;
+
+        LaneTask(int channel) {
+            mChannel = channel;
+        }
+
+        @Override
+        public Integer call() throws IOException {
+            return readLane(mChannel);
+        }
+    }
+}
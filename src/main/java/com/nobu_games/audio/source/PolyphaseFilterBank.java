@@ -0,0 +1,246 @@
+package com.nobu_games.audio.source;
+
+/**
+ * Immutable bank of polyphase FIR filter coefficients for converting between
+ * two sample rates.
+ * <p>
+ * The prototype filter is a Kaiser windowed sinc low-pass filter whose
+ * stopband starts at the Nyquist frequency of the lower of both sample rates.
+ * It is split into one sub-filter per phase. The coefficients of each phase
+ * are stored in reverse order, so an output sample is the dot product of a
+ * phase with a contiguous run of input samples. Each phase is normalized to
+ * unity gain at DC.
+ * <p>
+ * The conversion ratio is reduced to <code>interpolation / decimation</code>.
+ * If the interpolation factor exceeds {@link #MAX_PHASES} the filter is
+ * designed with {@link #MAX_PHASES} phases and output positions are rounded
+ * down to the nearest phase.
+ * 
+ * @author ti
+ */
+public class PolyphaseFilterBank {
+    /**
+     * Maximum amount of phases of a filter bank.
+     */
+    public static final int MAX_PHASES = 512;
+
+    private final double[][] mCoefficients;
+    private final int mDecimation;
+    private final long mDelay;
+    private final int mInputRate;
+    private final int mInterpolation;
+    private final int mOutputRate;
+    private final ResamplerQuality mQuality;
+    private final int mTaps;
+
+    private PolyphaseFilterBank(int inputRate, int outputRate,
+            ResamplerQuality quality) {
+        if (inputRate < 1 || outputRate < 1)
+            throw new IllegalArgumentException("Sample rates must be > 0");
+        final int gcd = gcd(inputRate, outputRate);
+        mInputRate = inputRate;
+        mOutputRate = outputRate;
+        mQuality = quality;
+        mInterpolation = outputRate / gcd;
+        mDecimation = inputRate / gcd;
+        final int phases = Math.min(mInterpolation, MAX_PHASES);
+        final double ratio = Math.min(1.0, (double) mInterpolation
+                / mDecimation);
+        mTaps = getTaps(mInterpolation, mDecimation, quality);
+        final int length = mTaps * phases;
+        final double attenuation = quality.getStopbandAttenuation();
+        final double transition = (attenuation - 7.95) / (14.36 * length);
+        final double cutoff = 0.5 / phases * ratio - transition / 2;
+        final double beta = getKaiserBeta(attenuation);
+        // Centered on a whole prototype sample, so the delay can be
+        // compensated exactly
+        final int center = length / 2;
+        final double[] prototype = new double[length];
+
+        for (int i = 0; i < length; ++i) {
+            final double x = i - center;
+            final double sinc = x == 0 ? 2 * cutoff : Math.sin(2 * Math.PI
+                    * cutoff * x)
+                    / (Math.PI * x);
+            final double r = x / center;
+            final double window = bessel0(beta * Math.sqrt(1 - r * r))
+                    / bessel0(beta);
+            prototype[i] = sinc * window;
+        }
+
+        mCoefficients = new double[phases][mTaps];
+
+        for (int phase = 0; phase < phases; ++phase) {
+            final double[] coefficients = mCoefficients[phase];
+            double sum = 0;
+
+            for (int tap = 0; tap < mTaps; ++tap) {
+                coefficients[tap] = prototype[phase + (mTaps - 1 - tap)
+                        * phases];
+                sum += coefficients[tap];
+            }
+
+            for (int tap = 0; tap < mTaps; ++tap) {
+                coefficients[tap] /= sum;
+            }
+        }
+
+        mDelay = Math.round((double) center * mInterpolation / phases);
+    }
+
+    /**
+     * Designs a filter bank for converting between two sample rates.
+     * 
+     * @param inputRate
+     *            Sample rate of the input signal.
+     * @param outputRate
+     *            Sample rate of the output signal.
+     * @param quality
+     *            Quality preset of the filter.
+     * @return New filter bank.
+     * @throws IllegalArgumentException
+     *             If a sample rate is not positive.
+     */
+    public static PolyphaseFilterBank design(int inputRate, int outputRate,
+            ResamplerQuality quality) {
+        return new PolyphaseFilterBank(inputRate, outputRate, quality);
+    }
+
+    /**
+     * Zeroth order modified Bessel function of the first kind.
+     */
+    static double bessel0(double x) {
+        double sum = 1;
+        double term = 1;
+        final double halfX = x / 2;
+
+        for (int k = 1; k < 64; ++k) {
+            term *= halfX / k;
+            final double squared = term * term;
+            sum += squared;
+            if (squared < sum * 1e-17)
+                break;
+        }
+
+        return sum;
+    }
+
+    static int gcd(int a, int b) {
+        while (b != 0) {
+            final int t = a % b;
+            a = b;
+            b = t;
+        }
+
+        return a;
+    }
+
+    /**
+     * Gets the Kaiser window shape parameter for a stopband attenuation in dB.
+     */
+    static double getKaiserBeta(double attenuation) {
+        if (attenuation > 50)
+            return 0.1102 * (attenuation - 8.7);
+        if (attenuation >= 21)
+            return 0.5842 * Math.pow(attenuation - 21, 0.4) + 0.07886
+                    * (attenuation - 21);
+        return 0;
+    }
+
+    /**
+     * Gets the amount of taps per phase for a reduced conversion ratio.
+     */
+    static int getTaps(int interpolation, int decimation,
+            ResamplerQuality quality) {
+        final double ratio = Math.min(1.0, (double) interpolation / decimation);
+        return (int) Math.ceil(quality.getTaps() / ratio);
+    }
+
+    /**
+     * Gets the reversed coefficients of a filter phase.
+     * <p>
+     * The returned array must not be modified.
+     * 
+     * @param phase
+     *            Phase index.
+     * @return Filter coefficients. The first coefficient is applied to the
+     *         oldest input sample.
+     */
+    public double[] getCoefficients(int phase) {
+        return mCoefficients[phase];
+    }
+
+    /**
+     * Gets the decimation factor of the reduced conversion ratio.
+     * 
+     * @return Input sample rate divided by the greatest common divisor of both
+     *         sample rates.
+     */
+    public int getDecimation() {
+        return mDecimation;
+    }
+
+    /**
+     * Gets the group delay of the filter.
+     * 
+     * @return Delay in units of <code>1 / interpolation</code> input samples.
+     */
+    public long getDelay() {
+        return mDelay;
+    }
+
+    public int getInputRate() {
+        return mInputRate;
+    }
+
+    /**
+     * Gets the interpolation factor of the reduced conversion ratio.
+     * 
+     * @return Output sample rate divided by the greatest common divisor of
+     *         both sample rates.
+     */
+    public int getInterpolation() {
+        return mInterpolation;
+    }
+
+    public int getOutputRate() {
+        return mOutputRate;
+    }
+
+    /**
+     * Gets the filter phase for a fractional input position.
+     * 
+     * @param remainder
+     *            Fractional part of the input position in units of
+     *            <code>1 / interpolation</code> input samples.
+     * @return Phase index.
+     */
+    public int getPhase(long remainder) {
+        if (mCoefficients.length == mInterpolation)
+            return (int) remainder;
+
+        return (int) (remainder * mCoefficients.length / mInterpolation);
+    }
+
+    /**
+     * Gets the amount of phases of this filter bank.
+     * 
+     * @return Phase count.
+     */
+    public int getPhaseCount() {
+        return mCoefficients.length;
+    }
+
+    public ResamplerQuality getQuality() {
+        return mQuality;
+    }
+
+    /**
+     * Gets the amount of input samples that contribute to one output sample.
+     * 
+     * @return Taps per phase.
+     */
+    public int getTaps() {
+        return mTaps;
+    }
+}
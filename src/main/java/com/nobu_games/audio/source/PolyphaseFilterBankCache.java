@@ -0,0 +1,235 @@
+package com.nobu_games.audio.source;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Thread safe, bounded cache of {@link PolyphaseFilterBank} instances keyed by
+ * input sample rate, output sample rate and quality.
+ * <p>
+ * Filter banks are immutable, so a single instance can be shared by any amount
+ * of resamplers on any thread. Each filter bank is designed only once, even if
+ * several threads request it at the same time. When the cache is full the
+ * least recently used filter bank is evicted.
+ * <p>
+ * {@link #getInstance()} returns the process-wide cache that is used by
+ * {@link PolyphaseResampledAudioSource}. Commonly used conversions can be
+ * designed ahead of time with {@link #prewarm(int, int, ResamplerQuality)}.
+ * 
+ * @author ti
+ */
+public class PolyphaseFilterBankCache {
+    /**
+     * Default maximum amount of cached filter banks.
+     */
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private static final PolyphaseFilterBankCache INSTANCE = new PolyphaseFilterBankCache(
+            DEFAULT_CAPACITY);
+
+    private final int mCapacity;
+    private final LinkedHashMap<Key, FutureTask<PolyphaseFilterBank>> mEntries;
+
+    /**
+     * Creates an empty filter bank cache.
+     * 
+     * @param capacity
+     *            Maximum amount of cached filter banks.
+     * @throws IllegalArgumentException
+     *             If the capacity is not positive.
+     */
+    public PolyphaseFilterBankCache(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be > 0");
+        mCapacity = capacity;
+        mEntries = new LinkedHashMap<Key, FutureTask<PolyphaseFilterBank>>(
+                16, 0.75f, true);
+    }
+
+    /**
+     * Gets the process-wide filter bank cache.
+     * 
+     * @return Shared cache instance.
+     */
+    public static PolyphaseFilterBankCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Removes all filter banks from the cache.
+     */
+    public void clear() {
+        synchronized (mEntries) {
+            mEntries.clear();
+        }
+    }
+
+    /**
+     * Gets a filter bank from the cache. If the cache does not contain a
+     * matching filter bank yet, it is designed and added to the cache.
+     * 
+     * @param inputRate
+     *            Sample rate of the input signal.
+     * @param outputRate
+     *            Sample rate of the output signal.
+     * @param quality
+     *            Quality preset of the filter.
+     * @return Shared filter bank.
+     * @throws IllegalArgumentException
+     *             If a sample rate is not positive.
+     */
+    public PolyphaseFilterBank get(final int inputRate, final int outputRate,
+            final ResamplerQuality quality) {
+        if (inputRate < 1 || outputRate < 1)
+            throw new IllegalArgumentException("Sample rates must be > 0");
+        if (quality == null)
+            throw new IllegalArgumentException("quality must not be null");
+        final Key key = new Key(inputRate, outputRate, quality);
+        FutureTask<PolyphaseFilterBank> entry;
+        boolean design = false;
+
+        synchronized (mEntries) {
+            entry = mEntries.get(key);
+
+            if (entry == null) {
+                entry = new FutureTask<PolyphaseFilterBank>(
+                        new Callable<PolyphaseFilterBank>() {
+                            @Override
+                            public PolyphaseFilterBank call() {
+                                return PolyphaseFilterBank.design(inputRate,
+                                        outputRate, quality);
+                            }
+                        });
+                mEntries.put(key, entry);
+                trim();
+                design = true;
+            }
+        }
+
+        // Designing happens outside of the lock, so lookups of other filter
+        // banks are not blocked. Concurrent requests for the same filter bank
+        // wait for the result.
+        if (design)
+            entry.run();
+
+        try {
+            return getUninterruptibly(entry);
+        } catch (ExecutionException e) {
+            synchronized (mEntries) {
+                if (mEntries.get(key) == entry)
+                    mEntries.remove(key);
+            }
+
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Gets the maximum amount of cached filter banks.
+     * 
+     * @return Capacity.
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    private static PolyphaseFilterBank getUninterruptibly(
+            FutureTask<PolyphaseFilterBank> entry) throws ExecutionException {
+        boolean interrupted = false;
+
+        try {
+            while (true) {
+                try {
+                    return entry.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Designs a filter bank ahead of time, so later requests for it do not
+     * pay the setup cost. Typically called at application startup for the
+     * commonly used conversions.
+     * 
+     * @param inputRate
+     *            Sample rate of the input signal.
+     * @param outputRate
+     *            Sample rate of the output signal.
+     * @param quality
+     *            Quality preset of the filter.
+     * @throws IllegalArgumentException
+     *             If a sample rate is not positive.
+     */
+    public void prewarm(int inputRate, int outputRate, ResamplerQuality quality) {
+        get(inputRate, outputRate, quality);
+    }
+
+    /**
+     * Gets the current amount of cached filter banks.
+     * 
+     * @return Cache size.
+     */
+    public int size() {
+        synchronized (mEntries) {
+            return mEntries.size();
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the capacity is no longer
+     * exceeded. Must be called while holding the lock on the entries.
+     */
+    private void trim() {
+        final Iterator<Map.Entry<Key, FutureTask<PolyphaseFilterBank>>> iterator = mEntries
+                .entrySet().iterator();
+
+        while (mEntries.size() > mCapacity && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Cache key of a filter bank.
+     */
+    private static class Key {
+        private final int mInputRate;
+        private final int mOutputRate;
+        private final ResamplerQuality mQuality;
+
+        Key(int inputRate, int outputRate, ResamplerQuality quality) {
+            mInputRate = inputRate;
+            mOutputRate = outputRate;
+            mQuality = quality;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            final Key other = (Key) obj;
+            return mInputRate == other.mInputRate
+                    && mOutputRate == other.mOutputRate
+                    && mQuality == other.mQuality;
+        }
+
+        @Override
+        public int hashCode() {
+            return (mInputRate * 31 + mOutputRate) * 31 + mQuality.ordinal();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.kernel.SampleKernels;
+
+/**
+ * Audio source that changes the sample rate of another audio source with a
+ * polyphase windowed sinc filter.
+ * <p>
+ * Supports arbitrary conversion ratios. All filter coefficients are computed
+ * up front by a {@link PolyphaseFilterBank}, so producing an output sample only
+ * takes a dot product of one filter phase with the input samples around the
+ * output position. The source stream is read in blocks.
+ * <p>
+ * An input stream of <code>n</code> samples yields
+ * <code>ceil(n * outputRate / inputRate)</code> output samples. The filter
+ * delay is compensated, so output sample <code>k</code> corresponds to input
+ * position <code>k * inputRate / outputRate</code>.
+ * 
+ * @author ti
+ */
+public class PolyphaseResampledAudioSource implements AudioSource {
+    /**
+     * Amount of input samples read from the source at a time.
+     */
+    private static final int BLOCK_FRAMES = 1024;
+
+    private static final SampleKernels KERNELS = SampleKernels.getInstance();
+
+    private final PolyphaseFilterBank mBank;
+    private final int[] mBases;
+    private final AudioStreamDescriptor mDescriptor;
+    private boolean mEOS;
+    private final double[][] mFrame;
+    private final double[][] mInput;
+    private int mInputFill;
+    private long mInputFrames;
+    private long mInputStart;
+    private long mOutputFrames = -1;
+    private long mOutputIndex;
+    private final int[] mPhases;
+    private final int mResampleRate;
+    private long mSampleCount;
+    private final AudioSource mSource;
+
+    /**
+     * Creates a resampled audio source with {@link ResamplerQuality#HIGH}
+     * quality.
+     * 
+     * @param source
+     *            Audio source to resample.
+     * @param resampleRate
+     *            The target sample rate.
+     */
+    public PolyphaseResampledAudioSource(AudioSource source, int resampleRate) {
+        this(source, resampleRate, ResamplerQuality.HIGH);
+    }
+
+    /**
+     * Creates a resampled audio source. The filter bank is taken from the
+     * shared {@link PolyphaseFilterBankCache}.
+     * 
+     * @param source
+     *            Audio source to resample.
+     * @param resampleRate
+     *            The target sample rate.
+     * @param quality
+     *            Quality preset of the resampling filter.
+     */
+    public PolyphaseResampledAudioSource(AudioSource source,
+            int resampleRate, ResamplerQuality quality) {
+        this(source, PolyphaseFilterBankCache.getInstance().get(
+                source.getDescriptor().getMaximumSampleRate(0), resampleRate,
+                quality));
+    }
+
+    /**
+     * Creates a resampled audio source that uses an existing filter bank.
+     * 
+     * @param source
+     *            Audio source to resample. Its sample rate must match the
+     *            input rate of the filter bank.
+     * @param bank
+     *            Filter bank for the conversion.
+     * @throws IllegalArgumentException
+     *             If the source has a variable sample rate or if its sample
+     *             rate does not match the filter bank.
+     */
+    public PolyphaseResampledAudioSource(AudioSource source,
+            PolyphaseFilterBank bank) {
+        final AudioStreamDescriptor descriptor = source.getDescriptor();
+
+        if ((descriptor.getFlags() & AudioStreamDescriptor.FLAG_VARIABLE_SAMPLE_RATE) != 0) {
+            throw new IllegalArgumentException(
+                    "Cannot resample an audio source with variable sample rate.");
+        }
+
+        if (descriptor.getMaximumSampleRate(0) != bank.getInputRate()) {
+            throw new IllegalArgumentException(
+                    "Filter bank does not match the source sample rate.");
+        }
+
+        mSource = source;
+        mBank = bank;
+        mResampleRate = bank.getOutputRate();
+        mSampleCount = descriptor.getSampleCount();
+        if (mSampleCount > -1)
+            mSampleCount = getOutputFrames(mSampleCount);
+        mDescriptor = new ProxyAudioStreamDescriptor(descriptor) {
+            @Override
+            public int getMaximumSampleRate(int channel) {
+                return mResampleRate;
+            }
+
+            @Override
+            public int getMinimumSampleRate(int channel) {
+                return mResampleRate;
+            }
+
+            @Override
+            public long getSampleCount() {
+                return mSampleCount;
+            }
+        };
+
+        final int channelCount = descriptor.getChannelCount();
+        final int taps = bank.getTaps();
+        mInput = new double[channelCount][taps + BLOCK_FRAMES];
+        // Input samples before the start of the stream are silent
+        mInputStart = -(taps - 1);
+        mInputFill = taps - 1;
+        mBases = new int[BLOCK_FRAMES];
+        mPhases = new int[BLOCK_FRAMES];
+        mFrame = new double[channelCount][1];
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSource.close();
+    }
+
+    /**
+     * Gets the filter bank used by this source.
+     * 
+     * @return Filter bank.
+     */
+    public PolyphaseFilterBank getFilterBank() {
+        return mBank;
+    }
+
+    @Override
+    public short getCurrentBitRate(int channel) {
+        return mSource.getCurrentBitRate(channel);
+    }
+
+    @Override
+    public int getCurrentSampleRate(int channel) {
+        return mResampleRate;
+    }
+
+    @Override
+    public AudioStreamDescriptor getDescriptor() {
+        return mDescriptor;
+    }
+
+    @Override
+    public double getSample(int channel) {
+        return mFrame[channel][0];
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        return read(mFrame, 0, 1) == 1;
+    }
+
+    @Override
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        final int taps = mBank.getTaps();
+        final int interpolation = mBank.getInterpolation();
+        final long decimation = mBank.getDecimation();
+        final long delay = mBank.getDelay();
+        int total = 0;
+
+        while (total < frames) {
+            if (mOutputFrames > -1 && mOutputIndex >= mOutputFrames)
+                break;
+
+            // Collect the positions of all output samples that can be computed
+            // with the buffered input samples
+            int count = 0;
+            final int limit = Math.min(frames - total, BLOCK_FRAMES);
+
+            while (count < limit) {
+                final long index = mOutputIndex + count;
+                if (mOutputFrames > -1 && index >= mOutputFrames)
+                    break;
+                final long position = index * decimation + delay;
+                final long base = position / interpolation;
+                if (base >= mInputStart + mInputFill)
+                    break;
+                mBases[count] = (int) (base - taps + 1 - mInputStart);
+                mPhases[count] = mBank.getPhase(position % interpolation);
+                ++count;
+            }
+
+            if (count == 0) {
+                final long position = mOutputIndex * decimation + delay;
+                refill(position / interpolation - taps + 1);
+                continue;
+            }
+
+            for (int channel = 0; channel < mInput.length; ++channel) {
+                final double[] input = mInput[channel];
+                final double[] target = dst[channel];
+
+                for (int i = 0; i < count; ++i) {
+                    final double[] coefficients = mBank
+                            .getCoefficients(mPhases[i]);
+                    target[offset + total + i] = KERNELS.dot(coefficients,
+                            0, input, mBases[i], taps);
+                }
+            }
+
+            mOutputIndex += count;
+            total += count;
+        }
+
+        return total == 0 && frames > 0 ? -1 : total;
+    }
+
+    /**
+     * Gets the amount of output samples for an amount of input samples.
+     */
+    private long getOutputFrames(long inputFrames) {
+        final long interpolation = mBank.getInterpolation();
+        final long decimation = mBank.getDecimation();
+        return (inputFrames * interpolation + decimation - 1) / decimation;
+    }
+
+    /**
+     * Discards buffered input samples before the specified input position and
+     * fills the rest of the input buffer with new samples from the source, or
+     * with silence after the end of the source stream.
+     */
+    private void refill(long keepFrom) throws IOException {
+        final int discard = (int) Math.min(keepFrom - mInputStart, mInputFill);
+
+        if (discard > 0) {
+            for (double[] input : mInput) {
+                System.arraycopy(input, discard, input, 0, mInputFill
+                        - discard);
+            }
+
+            mInputStart += discard;
+            mInputFill -= discard;
+        }
+
+        final int capacity = mInput[0].length;
+
+        if (!mEOS) {
+            final int requested = capacity - mInputFill;
+            final int count = mSource.read(mInput, mInputFill, requested);
+
+            if (count > 0) {
+                mInputFill += count;
+                mInputFrames += count;
+            }
+
+            if (count < requested) {
+                mEOS = true;
+                mOutputFrames = getOutputFrames(mInputFrames);
+            }
+        }
+
+        if (mEOS) {
+            for (double[] input : mInput) {
+                Arrays.fill(input, mInputFill, capacity, 0);
+            }
+
+            mInputFill = capacity;
+        }
+    }
+}
@@ -49,7 +49,7 @@ public class ProxyAudioStreamDescriptor implements AudioStreamDescriptor {
     }
 
     @Override
-    public int getSampleCount() {
+    public long getSampleCount() {
         return mDescriptor.getSampleCount();
     }
 }
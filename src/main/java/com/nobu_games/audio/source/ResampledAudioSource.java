@@ -12,7 +12,8 @@ import com.nobu_games.audio.AudioStreamDescriptor;
 public class ResampledAudioSource implements AudioSource {
     private final int mResampleRate;
     private final AudioStreamDescriptor mDescriptor;
-    private int mSampleCount;
+    private long mSampleCount;
+    private long mOutputIndex;
     private final float mPullSampleIncrement;
     private float mSampleIndex = -1f;
     private final double[] mSampleBuffer;
@@ -55,7 +56,7 @@ public class ResampledAudioSource implements AudioSource {
             }
 
             @Override
-            public int getSampleCount() {
+            public long getSampleCount() {
                 return mSampleCount;
             }
         };
@@ -94,6 +95,64 @@ public class ResampledAudioSource implements AudioSource {
 
     @Override
     public boolean next() throws IOException {
+        return resampleNext();
+    }
+
+    @Override
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        final int channelCount = mSampleBuffer.length;
+        int frame = 0;
+
+        for (; frame < frames; ++frame) {
+            if (!resampleNext())
+                break;
+
+            for (int channel = 0; channel < channelCount; ++channel) {
+                dst[channel][offset + frame] = mSampleBuffer[channel];
+            }
+        }
+
+        return frame == 0 && frames > 0 ? -1 : frame;
+    }
+
+    /**
+     * Computes the next resampled frame and stores it in the sample buffer.
+     * <p>
+     * If the sample count of the stream is known, exactly that amount of
+     * frames is produced. The accumulated pull position may run out of input
+     * samples a little earlier or later than the rounded sample count
+     * suggests, so surplus frames are dropped and missing frames repeat the
+     * last one.
+     * 
+     * @return <code>true</code> if a frame was computed, <code>false</code>
+     *         at the end of the stream.
+     * @throws IOException
+     *             In case of an I/O error while reading from the source.
+     */
+    private boolean resampleNext() throws IOException {
+        if (mSampleCount > -1) {
+            if (mOutputIndex >= mSampleCount)
+                return false;
+            interpolateNext();
+        } else if (!interpolateNext()) {
+            return false;
+        }
+
+        ++mOutputIndex;
+        return true;
+    }
+
+    /**
+     * Computes the next interpolated frame and stores it in the sample
+     * buffer.
+     * 
+     * @return <code>true</code> if a frame was computed, <code>false</code>
+     *         at the end of the source stream.
+     * @throws IOException
+     *             In case of an I/O error while reading from the source.
+     */
+    private boolean interpolateNext() throws IOException {
         if (mEOS)
             return false;
         boolean didLoad = false;
@@ -120,13 +179,11 @@ public class ResampledAudioSource implements AudioSource {
             }
         }
 
-        int range = mWindowSize * 2;
+        final int start = Math.round(mSampleIndex * mWindowSize * 2);
+        final int end = mWindowSize + 1;
 
         for (int channel = 0; channel < mSampleBuffer.length; ++channel) {
             double sample = 0;
-            int winPos = Math.round(mSampleIndex * range);
-            int start = winPos;
-            int end = mWindowSize + 1;
             int div = 0;
 
             for (int offset = start; offset < end; ++offset) {
@@ -0,0 +1,172 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+
+/**
+ * Single precision counterpart of {@link ResampledAudioSource}.
+ * 
+ * @author ti
+ */
+public class ResampledFloatAudioSource implements FloatAudioSource {
+    private final int mResampleRate;
+    private final AudioStreamDescriptor mDescriptor;
+    private long mSampleCount;
+    private long mOutputIndex;
+    private final float mPullSampleIncrement;
+    private float mSampleIndex = -1f;
+    private final float[] mSampleBuffer;
+    private boolean mEOS;
+    private FloatSampleWindow mWindow;
+    private int mWindowSize;
+
+    /**
+     * Creates a resampled audio source for the specified audio source.
+     * 
+     * @param source
+     *            Audio source to resample.
+     * @param resampleRate
+     *            The target sample rate.
+     */
+    public ResampledFloatAudioSource(FloatAudioSource source, int resampleRate) {
+        mResampleRate = resampleRate;
+        final AudioStreamDescriptor descriptor = source.getDescriptor();
+
+        if ((descriptor.getFlags() & AudioStreamDescriptor.FLAG_VARIABLE_SAMPLE_RATE) != 0) {
+            throw new IllegalArgumentException(
+                    "Cannot resample an audio source with variable sample rate.");
+        }
+
+        float resampleFactor = (float) resampleRate
+                / (float) descriptor.getMaximumSampleRate(0);
+        mPullSampleIncrement = 1f / resampleFactor;
+        mSampleCount = descriptor.getSampleCount();
+        if (mSampleCount > -1)
+            mSampleCount = Math.round(mSampleCount * resampleFactor);
+        mDescriptor = new ProxyAudioStreamDescriptor(descriptor) {
+            @Override
+            public int getMaximumSampleRate(int channel) {
+                return mResampleRate;
+            }
+
+            @Override
+            public int getMinimumSampleRate(int channel) {
+                return mResampleRate;
+            }
+
+            @Override
+            public long getSampleCount() {
+                return mSampleCount;
+            }
+        };
+
+        mWindowSize = Math.round(resampleFactor) - 1;
+        if (mWindowSize == 0)
+            mWindowSize = 1;
+        mWindow = new FloatSampleWindow(source, mWindowSize, 0);
+        mSampleBuffer = new float[descriptor.getChannelCount()];
+    }
+
+    @Override
+    public void close() throws IOException {
+        mWindow.close();
+    }
+
+    @Override
+    public AudioStreamDescriptor getDescriptor() {
+        return mDescriptor;
+    }
+
+    @Override
+    public int read(float[][] dst, int offset, int frames) throws IOException {
+        final int channelCount = mSampleBuffer.length;
+        int frame = 0;
+
+        for (; frame < frames; ++frame) {
+            if (!resampleNext())
+                break;
+
+            for (int channel = 0; channel < channelCount; ++channel) {
+                dst[channel][offset + frame] = mSampleBuffer[channel];
+            }
+        }
+
+        return frame == 0 && frames > 0 ? -1 : frame;
+    }
+
+    /**
+     * Computes the next resampled frame and stores it in the sample buffer.
+     * 
+     * @see ResampledAudioSource
+     */
+    private boolean resampleNext() throws IOException {
+        if (mSampleCount > -1) {
+            if (mOutputIndex >= mSampleCount)
+                return false;
+            interpolateNext();
+        } else if (!interpolateNext()) {
+            return false;
+        }
+
+        ++mOutputIndex;
+        return true;
+    }
+
+    /**
+     * Computes the next interpolated frame and stores it in the sample
+     * buffer.
+     * 
+     * @see ResampledAudioSource
+     */
+    private boolean interpolateNext() throws IOException {
+        if (mEOS)
+            return false;
+        boolean didLoad = false;
+
+        if (mSampleIndex < 0) {
+            mSampleIndex = 0;
+
+            if (!mWindow.next(0)) {
+                mEOS = true;
+            } else {
+                didLoad = true;
+            }
+        } else {
+            mSampleIndex += mPullSampleIncrement;
+
+            if (mSampleIndex >= 1f) {
+                int toSkip = ((int) mSampleIndex) - 1;
+                if (!mWindow.next(toSkip)) {
+                    mEOS = true;
+                } else {
+                    didLoad = true;
+                }
+                mSampleIndex -= toSkip + 1;
+            }
+        }
+
+        final int start = Math.round(mSampleIndex * mWindowSize * 2);
+        final int end = mWindowSize + 1;
+
+        for (int channel = 0; channel < mSampleBuffer.length; ++channel) {
+            float sample = 0;
+            int div = 0;
+
+            for (int offset = start; offset < end; ++offset) {
+                float sourceSample = mWindow.getSample(channel, offset);
+                if (Float.isNaN(sourceSample))
+                    continue;
+                div++;
+                sample += sourceSample;
+            }
+
+            if (div == 0)
+                continue;
+            sample /= div;
+            mSampleBuffer[channel] = sample;
+        }
+
+        return didLoad || !mEOS;
+    }
+}
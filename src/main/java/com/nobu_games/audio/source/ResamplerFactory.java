@@ -0,0 +1,225 @@
+package com.nobu_games.audio.source;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+
+/**
+ * Creates the fastest resampler for a conversion.
+ * <p>
+ * Sources that already have the target sample rate are returned unchanged.
+ * Upsampling by a power-of-two ratio uses a cascade of
+ * {@link HalfbandUpsampledAudioSource} stages. All other ratios use a
+ * {@link PolyphaseResampledAudioSource} with a filter bank from the shared
+ * {@link PolyphaseFilterBankCache}.
+ * 
+ * @author ti
+ */
+public class ResamplerFactory {
+    private ResamplerFactory() {
+    }
+
+    /**
+     * Creates a resampler with {@link ResamplerQuality#HIGH} quality.
+     * 
+     * @param source
+     *            Audio source to resample.
+     * @param resampleRate
+     *            The target sample rate.
+     * @return Resampled audio source.
+     * @throws IllegalArgumentException
+     *             If the source has a variable sample rate or if the target
+     *             sample rate is not positive.
+     */
+    public static AudioSource create(AudioSource source, int resampleRate) {
+        return create(source, resampleRate, ResamplerQuality.HIGH);
+    }
+
+    /**
+     * Creates a resampler.
+     * 
+     * @param source
+     *            Audio source to resample.
+     * @param resampleRate
+     *            The target sample rate.
+     * @param quality
+     *            Quality preset of the resampling filter.
+     * @return Resampled audio source.
+     * @throws IllegalArgumentException
+     *             If the source has a variable sample rate or if the target
+     *             sample rate is not positive.
+     */
+    public static AudioSource create(AudioSource source, int resampleRate,
+            ResamplerQuality quality) {
+        final AudioStreamDescriptor descriptor = source.getDescriptor();
+
+        if ((descriptor.getFlags() & AudioStreamDescriptor.FLAG_VARIABLE_SAMPLE_RATE) != 0) {
+            throw new IllegalArgumentException(
+                    "Cannot resample an audio source with variable sample rate.");
+        }
+
+        if (resampleRate < 1)
+            throw new IllegalArgumentException("resampleRate must be > 0");
+        final int sampleRate = descriptor.getMaximumSampleRate(0);
+        if (sampleRate == resampleRate)
+            return source;
+
+        if (isHalfband(sampleRate, resampleRate)) {
+            final double attenuation = quality.getStopbandAttenuation();
+            AudioSource result = new HalfbandUpsampledAudioSource(source,
+                    quality.getTaps() / 2, attenuation);
+            double transition = 0.25;
+
+            for (int rate = sampleRate * 4; rate <= resampleRate; rate *= 2) {
+                result = new HalfbandUpsampledAudioSource(result,
+                        getCascadePairs(attenuation, transition), attenuation);
+                transition = (0.5 + transition) / 2;
+            }
+
+            return result;
+        }
+
+        return new PolyphaseResampledAudioSource(source, resampleRate, quality);
+    }
+
+    /**
+     * Gets the amount of coefficient pairs of a later halfband cascade stage.
+     * <p>
+     * The first stage does the actual band limiting. Later stages only remove
+     * the images of an already oversampled signal, so their transition band is
+     * much wider and a shorter filter suffices. The Kaiser estimate of the
+     * filter length is divided by four, since each coefficient pair spans four
+     * output samples.
+     */
+    private static int getCascadePairs(double attenuation, double transition) {
+        return (int) Math.ceil((attenuation - 7.95) / (14.36 * transition * 4));
+    }
+
+    /**
+     * Gets the index behind the last input sample that contributes to the
+     * output samples in front of an output position.
+     * 
+     * @param inputRate
+     *            Sample rate of the input signal.
+     * @param outputRate
+     *            Sample rate of the output signal.
+     * @param quality
+     *            Quality preset of the resampling filter.
+     * @param position
+     *            Index behind the last output sample.
+     * @return Input sample index, which may lie beyond the end of the input.
+     */
+    public static long getEndPosition(int inputRate, int outputRate,
+            ResamplerQuality quality, long position) {
+        final int gcd = PolyphaseFilterBank.gcd(inputRate, outputRate);
+        final int decimation = inputRate / gcd;
+        final int interpolation = outputRate / gcd;
+
+        return (position * decimation + interpolation - 1) / interpolation
+                + getInputContext(inputRate, outputRate, quality);
+    }
+
+    /**
+     * Gets the amount of input samples on either side of an output position
+     * that contribute to the output sample of a resampler created by
+     * {@link #create(AudioSource, int, ResamplerQuality)}.
+     * <p>
+     * Resampling a part of a stream that starts and ends this many samples
+     * beyond the wanted output range yields the same output samples as
+     * resampling the whole stream, provided that the part starts at a
+     * multiple of <code>inputRate / gcd(inputRate, outputRate)</code>.
+     * 
+     * @param inputRate
+     *            Sample rate of the input signal.
+     * @param outputRate
+     *            Sample rate of the output signal.
+     * @param quality
+     *            Quality preset of the resampling filter.
+     * @return Context size in input samples.
+     */
+    public static int getInputContext(int inputRate, int outputRate,
+            ResamplerQuality quality) {
+        if (inputRate == outputRate)
+            return 0;
+
+        if (isHalfband(inputRate, outputRate)) {
+            final double attenuation = quality.getStopbandAttenuation();
+            int context = quality.getTaps() / 2 + 1;
+            double transition = 0.25;
+
+            for (int factor = 2; inputRate * factor * 2 <= outputRate; factor *= 2) {
+                final int pairs = getCascadePairs(attenuation, transition);
+                context += (pairs + factor - 1) / factor + 1;
+                transition = (0.5 + transition) / 2;
+            }
+
+            return context;
+        }
+
+        final int gcd = PolyphaseFilterBank.gcd(inputRate, outputRate);
+        return PolyphaseFilterBank.getTaps(outputRate / gcd, inputRate / gcd,
+                quality) + 1;
+    }
+
+    /**
+     * Gets the input position from which a resampler created by
+     * {@link #create(AudioSource, int, ResamplerQuality)} reproduces the
+     * output samples of the whole stream from an output position onwards.
+     * <p>
+     * The position lies {@link #getInputContext(int, int, ResamplerQuality)}
+     * samples in front of the input position of the output sample and is
+     * aligned to a multiple of <code>inputRate / gcd(inputRate,
+     * outputRate)</code>, so the filter phases match those of the whole
+     * stream. A resampler that starts there produces
+     * {@link #getWarmup(int, int, ResamplerQuality, long)} output samples in
+     * front of the output position.
+     * 
+     * @param inputRate
+     *            Sample rate of the input signal.
+     * @param outputRate
+     *            Sample rate of the output signal.
+     * @param quality
+     *            Quality preset of the resampling filter.
+     * @param position
+     *            Index of the output sample.
+     * @return Input sample index.
+     */
+    public static long getStartPosition(int inputRate, int outputRate,
+            ResamplerQuality quality, long position) {
+        final int gcd = PolyphaseFilterBank.gcd(inputRate, outputRate);
+        final int decimation = inputRate / gcd;
+        final int interpolation = outputRate / gcd;
+        final long start = position * decimation / interpolation
+                - getInputContext(inputRate, outputRate, quality);
+
+        return Math.max(0, start / decimation * decimation);
+    }
+
+    /**
+     * Gets the amount of output samples that a resampler produces in front of
+     * an output position when it starts at the input position returned by
+     * {@link #getStartPosition(int, int, ResamplerQuality, long)}. They only
+     * warm up the filter and are discarded.
+     * 
+     * @param inputRate
+     *            Sample rate of the input signal.
+     * @param outputRate
+     *            Sample rate of the output signal.
+     * @param quality
+     *            Quality preset of the resampling filter.
+     * @param position
+     *            Index of the output sample.
+     * @return Amount of warm-up output samples.
+     */
+    public static long getWarmup(int inputRate, int outputRate,
+            ResamplerQuality quality, long position) {
+        final int gcd = PolyphaseFilterBank.gcd(inputRate, outputRate);
+        final long start = getStartPosition(inputRate, outputRate, quality,
+                position);
+
+        return position - start / (inputRate / gcd) * (outputRate / gcd);
+    }
+
+    private static boolean isHalfband(int inputRate, int outputRate) {
+        return outputRate % inputRate == 0
+                && Integer.bitCount(outputRate / inputRate) == 1;
+    }
+}
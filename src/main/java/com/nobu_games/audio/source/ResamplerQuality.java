@@ -0,0 +1,57 @@
+package com.nobu_games.audio.source;
+
+/**
+ * Quality presets for {@link PolyphaseResampledAudioSource}.
+ * <p>
+ * Higher presets use longer filters, which attenuate aliasing and imaging
+ * artifacts more and keep a wider passband at the cost of more computation
+ * per output sample.
+ * 
+ * @author ti
+ */
+public enum ResamplerQuality {
+    /**
+     * 16 taps, 60 dB stopband attenuation.
+     */
+    LOW(16, 60),
+    /**
+     * 32 taps, 80 dB stopband attenuation.
+     */
+    MEDIUM(32, 80),
+    /**
+     * 64 taps, 100 dB stopband attenuation.
+     */
+    HIGH(64, 100),
+    /**
+     * 128 taps, 120 dB stopband attenuation.
+     */
+    BEST(128, 120);
+
+    private final double mStopbandAttenuation;
+    private final int mTaps;
+
+    private ResamplerQuality(int taps, double stopbandAttenuation) {
+        mTaps = taps;
+        mStopbandAttenuation = stopbandAttenuation;
+    }
+
+    /**
+     * Gets the stopband attenuation of the filter.
+     * 
+     * @return Attenuation in dB.
+     */
+    public double getStopbandAttenuation() {
+        return mStopbandAttenuation;
+    }
+
+    /**
+     * Gets the amount of input samples that contribute to one output sample
+     * when the sample rate is increased. When the sample rate is decreased
+     * the amount grows by the decimation ratio.
+     * 
+     * @return Filter taps per output sample.
+     */
+    public int getTaps() {
+        return mTaps;
+    }
+}
@@ -0,0 +1,141 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+
+/**
+ * Audio source that provides a range of samples of another audio source.
+ * <p>
+ * The samples before the range are skipped on the first read. Seekable
+ * sources skip them in place, all others are read and discarded block by
+ * block. The stream ends after the last sample of the range or at the end of
+ * the underlying stream, whichever comes first.
+ * 
+ * @author ti
+ */
+public class SampleRangeAudioSource implements AudioSource {
+    /**
+     * Amount of samples discarded at a time while skipping.
+     */
+    private static final int SKIP_FRAMES = 1024;
+
+    private final AudioStreamDescriptor mDescriptor;
+    private final double[][] mFrame;
+    private final long mLength;
+    private long mOffset;
+    private long mPosition;
+    private long mSampleCount;
+    private final AudioSource mSource;
+
+    /**
+     * Creates an audio source for a range of samples.
+     * 
+     * @param source
+     *            Underlying audio source.
+     * @param offset
+     *            Amount of samples to skip, relative to the current position
+     *            of the underlying audio source.
+     * @param length
+     *            Maximum amount of samples to provide.
+     * @throws IllegalArgumentException
+     *             If <code>offset</code> or <code>length</code> is negative.
+     */
+    public SampleRangeAudioSource(AudioSource source, long offset, long length) {
+        if (offset < 0)
+            throw new IllegalArgumentException("offset must be >= 0");
+        if (length < 0)
+            throw new IllegalArgumentException("length must be >= 0");
+        final AudioStreamDescriptor descriptor = source.getDescriptor();
+        mSource = source;
+        mOffset = offset;
+        mLength = length;
+        mSampleCount = descriptor.getSampleCount();
+        if (mSampleCount > -1)
+            mSampleCount = Math.max(0, Math.min(length, mSampleCount - offset));
+        mDescriptor = new ProxyAudioStreamDescriptor(descriptor) {
+            @Override
+            public long getSampleCount() {
+                return mSampleCount;
+            }
+        };
+        mFrame = new double[descriptor.getChannelCount()][1];
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSource.close();
+    }
+
+    @Override
+    public short getCurrentBitRate(int channel) {
+        return mSource.getCurrentBitRate(channel);
+    }
+
+    @Override
+    public int getCurrentSampleRate(int channel) {
+        return mSource.getCurrentSampleRate(channel);
+    }
+
+    @Override
+    public AudioStreamDescriptor getDescriptor() {
+        return mDescriptor;
+    }
+
+    @Override
+    public double getSample(int channel) {
+        return mFrame[channel][0];
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        return read(mFrame, 0, 1) == 1;
+    }
+
+    @Override
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        if (mOffset > 0)
+            skipSource();
+        final int count = (int) Math.min(frames, mLength - mPosition);
+        if (count <= 0)
+            return frames > 0 ? -1 : 0;
+        final int read = mSource.read(dst, offset, count);
+
+        if (read > 0)
+            mPosition += read;
+
+        return read;
+    }
+
+    /**
+     * Skips the samples before the range.
+     */
+    private void skipSource() throws IOException {
+        if (mSource instanceof SeekableAudioSource) {
+            final SeekableAudioSource source = (SeekableAudioSource) mSource;
+
+            while (mOffset > 0) {
+                final int count = (int) Math.min(mOffset, Integer.MAX_VALUE);
+                source.skip(count);
+                mOffset -= count;
+            }
+            return;
+        }
+
+        final double[][] buffer = new double[mFrame.length][(int) Math.min(
+                mOffset, SKIP_FRAMES)];
+
+        while (mOffset > 0) {
+            final int count = mSource.read(buffer, 0,
+                    (int) Math.min(mOffset, buffer[0].length));
+
+            if (count < 1) {
+                mOffset = 0;
+                break;
+            }
+
+            mOffset -= count;
+        }
+    }
+}
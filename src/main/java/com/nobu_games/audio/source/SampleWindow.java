@@ -2,9 +2,6 @@ package com.nobu_games.audio.source;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.util.Arrays;
-
-import com.nobu_games.common.util.ArrayTool;
 
 /**
  * Sliding window that provides a buffered data view into a range of samples of
@@ -12,16 +9,28 @@ import com.nobu_games.common.util.ArrayTool;
  * <p>
  * Useful for online algorithms that need to look ahead or look past a few
  * samples of an audio source.
+ * <p>
+ * The samples are kept in a circular buffer whose capacity is a power of two,
+ * so sliding the window only moves a position and never copies samples. The
+ * buffer is larger than the window and refilled in blocks.
  * 
  * @author ti
  */
 public class SampleWindow implements Closeable {
-    private int mBufferFillIndex;
-    private final int mBufferSize;
-    private int mLookAheadSize;
-    private int mLookBehindSize;
+    /**
+     * Minimum amount of samples read from the audio source at a time.
+     */
+    private static final int BLOCK_FRAMES = 1024;
+
+    private long mCenter = -1;
+    private long mEnd;
+    private boolean mEOS;
+    private final int mLookAheadSize;
+    private final int mLookBehindSize;
+    private final int mMask;
     private final double[][] mSampleBuffer;
     private final AudioSource mSource;
+    private final int mWindowSize;
 
     /**
      * Creates a sample window object for an audio source.
@@ -53,16 +62,21 @@ public class SampleWindow implements Closeable {
         mSource = source;
         mLookAheadSize = lookAheadSize;
         mLookBehindSize = lookBehindSize;
-        mBufferSize = mLookBehindSize + mLookAheadSize + 1;
-        mSampleBuffer = new double[source.getDescriptor().getChannelCount()][mBufferSize];
-
-        for (int i = 0; i < mSampleBuffer.length; ++i) {
-            Arrays.fill(mSampleBuffer[i], Double.NaN);
-        }
+        mWindowSize = mLookBehindSize + mLookAheadSize + 1;
+        final int capacity = getCapacity(mWindowSize);
+        mMask = capacity - 1;
+        mSampleBuffer = new double[source.getDescriptor().getChannelCount()][capacity];
+    }
 
-        // +1 because of algorithm implemented in next() method, which always
-        // shifts the window by at least 1
-        mBufferFillIndex = mLookBehindSize + 1;
+    /**
+     * Gets the smallest power of two that holds a window and a refill block.
+     */
+    static int getCapacity(int windowSize) {
+        final int minimum = windowSize + BLOCK_FRAMES;
+        if (minimum > 1 << 30)
+            throw new IllegalArgumentException("Window size too large");
+        final int capacity = Integer.highestOneBit(minimum);
+        return capacity == minimum ? capacity : capacity << 1;
     }
 
     /**
@@ -109,7 +123,12 @@ public class SampleWindow implements Closeable {
      *             <code>offset > "look-ahead size"</code>.
      */
     public double getSample(int channel, int offset) {
-        return mSampleBuffer[channel][mLookBehindSize + offset];
+        if (offset < -mLookBehindSize || offset > mLookAheadSize)
+            throw new ArrayIndexOutOfBoundsException(offset);
+        final long position = mCenter + offset;
+        if (position < 0 || position >= mEnd)
+            return Double.NaN;
+        return mSampleBuffer[channel][(int) position & mMask];
     }
 
     /**
@@ -120,7 +139,7 @@ public class SampleWindow implements Closeable {
      * @return Window size in samples.
      */
     public int getWindowSize() {
-        return mBufferSize;
+        return mWindowSize;
     }
 
     /**
@@ -140,35 +159,38 @@ public class SampleWindow implements Closeable {
      * @see {@link #getSample(int, int)}
      */
     public boolean next(int skip) throws IOException {
-        boolean didLoad = false;
+        mCenter += skip + 1;
 
-        for (int channel = 0; channel < mSampleBuffer.length; ++channel) {
-            double[] samples = mSampleBuffer[channel];
-            ArrayTool.shift(samples, -(skip + 1), Double.NaN);
+        while (!mEOS && mEnd <= mCenter + mLookAheadSize) {
+            refill();
         }
 
-        mBufferFillIndex -= skip + 1;
-        if (mBufferFillIndex < 0)
-            mBufferFillIndex = 0;
-
-        for (int i = 0; i < skip; ++i) {
-            if (!mSource.next())
-                break;
-        }
+        return mCenter < mEnd;
+    }
 
-        for (; mBufferFillIndex < mBufferSize; ++mBufferFillIndex) {
-            if (mSource.next()) {
-                didLoad = true;
-            } else {
-                break;
+    /**
+     * Reads as many samples from the audio source as fit into the buffer
+     * without overwriting samples that are still inside of the window. Samples
+     * that the window skipped entirely are read and overwritten later.
+     */
+    private void refill() throws IOException {
+        final int capacity = mMask + 1;
+        long remaining = mCenter - mLookBehindSize + capacity - mEnd;
+
+        while (remaining > 0) {
+            final int start = (int) mEnd & mMask;
+            final int requested = (int) Math.min(remaining, capacity - start);
+            final int count = mSource.read(mSampleBuffer, start, requested);
+
+            if (count > 0) {
+                mEnd += count;
+                remaining -= count;
             }
 
-            for (int channel = 0; channel < mSampleBuffer.length; ++channel) {
-                double[] samples = mSampleBuffer[channel];
-                samples[mBufferFillIndex] = mSource.getSample(channel);
+            if (count < requested) {
+                mEOS = true;
+                break;
             }
         }
-
-        return didLoad || mBufferFillIndex > mLookBehindSize;
     }
 }
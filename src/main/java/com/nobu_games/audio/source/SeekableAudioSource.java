@@ -18,6 +18,9 @@ public interface SeekableAudioSource extends AudioSource {
 
     /**
      * Seeks the audio stream to the specified sample position.
+     * <p>
+     * The next call to {@link #next()} or
+     * {@link #read(double[][], int, int)} reads the sample at that position.
      * 
      * @param position
      *            Position index in samples.
@@ -0,0 +1,40 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+
+/**
+ * Mono downmix of a seekable audio source. The downmix has no state of its
+ * own, so seeking is passed to the underlying audio source.
+ * 
+ * @author ti
+ */
+public class SeekableMonoDownmixAudioSource extends MonoDownmixAudioSource
+        implements SeekableAudioSource {
+    private final SeekableAudioSource mSeekableSource;
+
+    /**
+     * Creates a new mono downmix audio source for the specified audio source.
+     * 
+     * @param source
+     *            Audio source to downmix.
+     */
+    public SeekableMonoDownmixAudioSource(SeekableAudioSource source) {
+        super(source);
+        mSeekableSource = source;
+    }
+
+    @Override
+    public void rewind() throws IOException {
+        mSeekableSource.rewind();
+    }
+
+    @Override
+    public void seekPosition(int position) throws IOException {
+        mSeekableSource.seekPosition(position);
+    }
+
+    @Override
+    public void skip(int samples) throws IOException {
+        mSeekableSource.skip(samples);
+    }
+}
@@ -0,0 +1,185 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+
+/**
+ * Resampled view of a seekable audio source that is seekable itself.
+ * <p>
+ * The resampler is created by {@link ResamplerFactory}. Seeking to an output
+ * position maps it to the input position of the filter context in front of
+ * it, as computed by
+ * {@link ResamplerFactory#getStartPosition(int, int, ResamplerQuality, long)}.
+ * The underlying source is positioned there, a new resampler with a fresh
+ * filter state is started and the output samples in front of the target
+ * position are discarded. This costs a number of samples proportional to the
+ * filter length, regardless of the position. The samples after a seek are
+ * identical to the samples at the same position of a sequential read.
+ * 
+ * @author ti
+ */
+public class SeekableResampledAudioSource implements SeekableAudioSource {
+    /**
+     * Amount of output samples discarded at a time while priming the filter.
+     */
+    private static final int SKIP_FRAMES = 1024;
+
+    private final int mContext;
+    private final int mDecimation;
+    private final AudioStreamDescriptor mDescriptor;
+    private final double[][] mFrame;
+    private final int mInterpolation;
+    private int mPosition;
+    private final ResamplerQuality mQuality;
+    private final int mResampleRate;
+    private AudioSource mResampler;
+    private final int mSampleRate;
+    private double[][] mSkipBuffer;
+    private final SeekableAudioSource mSource;
+
+    /**
+     * Creates a resampled audio source with {@link ResamplerQuality#HIGH}
+     * quality.
+     * 
+     * @param source
+     *            Audio source to resample, positioned at the beginning of its
+     *            stream.
+     * @param resampleRate
+     *            The target sample rate.
+     * @throws IllegalArgumentException
+     *             If the source has a variable sample rate or if the target
+     *             sample rate is not positive.
+     */
+    public SeekableResampledAudioSource(SeekableAudioSource source,
+            int resampleRate) {
+        this(source, resampleRate, ResamplerQuality.HIGH);
+    }
+
+    /**
+     * Creates a resampled audio source.
+     * 
+     * @param source
+     *            Audio source to resample, positioned at the beginning of its
+     *            stream.
+     * @param resampleRate
+     *            The target sample rate.
+     * @param quality
+     *            Quality preset of the resampling filter.
+     * @throws IllegalArgumentException
+     *             If the source has a variable sample rate or if the target
+     *             sample rate is not positive.
+     */
+    public SeekableResampledAudioSource(SeekableAudioSource source,
+            int resampleRate, ResamplerQuality quality) {
+        mSource = source;
+        mResampleRate = resampleRate;
+        mQuality = quality;
+        mResampler = ResamplerFactory.create(source, resampleRate, quality);
+        mDescriptor = mResampler.getDescriptor();
+
+        mSampleRate = source.getDescriptor().getMaximumSampleRate(0);
+        final int gcd = PolyphaseFilterBank.gcd(mSampleRate, resampleRate);
+        mDecimation = mSampleRate / gcd;
+        mInterpolation = resampleRate / gcd;
+        mContext = ResamplerFactory.getInputContext(mSampleRate, resampleRate,
+                quality);
+        mFrame = new double[mDescriptor.getChannelCount()][1];
+    }
+
+    @Override
+    public void close() throws IOException {
+        mSource.close();
+    }
+
+    /**
+     * Reads and discards output samples.
+     */
+    private void discard(int frames) throws IOException {
+        if (frames > 0 && mSkipBuffer == null) {
+            mSkipBuffer = new double[mFrame.length][SKIP_FRAMES];
+        }
+
+        while (frames > 0) {
+            final int count = mResampler.read(mSkipBuffer, 0,
+                    Math.min(frames, SKIP_FRAMES));
+            if (count < 1)
+                break;
+            frames -= count;
+        }
+    }
+
+    @Override
+    public short getCurrentBitRate(int channel) {
+        return mResampler.getCurrentBitRate(channel);
+    }
+
+    @Override
+    public int getCurrentSampleRate(int channel) {
+        return mResampleRate;
+    }
+
+    @Override
+    public AudioStreamDescriptor getDescriptor() {
+        return mDescriptor;
+    }
+
+    @Override
+    public double getSample(int channel) {
+        return mFrame[channel][0];
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        return read(mFrame, 0, 1) == 1;
+    }
+
+    @Override
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        final int count = mResampler.read(dst, offset, frames);
+
+        if (count > 0)
+            mPosition += count;
+
+        return count;
+    }
+
+    @Override
+    public void rewind() throws IOException {
+        seekPosition(0);
+    }
+
+    @Override
+    public void seekPosition(int position) throws IOException {
+        position = Math.max(0, position);
+
+        if (mResampler == mSource) {
+            mSource.seekPosition(position);
+            mPosition = position;
+            return;
+        }
+
+        mSource.seekPosition((int) ResamplerFactory.getStartPosition(
+                mSampleRate, mResampleRate, mQuality, position));
+        mResampler = ResamplerFactory.create(mSource, mResampleRate, mQuality);
+        discard((int) ResamplerFactory.getWarmup(mSampleRate, mResampleRate,
+                mQuality, position));
+        mPosition = position;
+    }
+
+    @Override
+    public void skip(int samples) throws IOException {
+        // Short distances are cheaper to resample than to prime the filter
+        // at the new position
+        if (samples >= 0
+                && (long) samples * mDecimation <= (long) mContext
+                        * mInterpolation) {
+            discard(samples);
+            mPosition += samples;
+        } else {
+            seekPosition((int) Math.min(Integer.MAX_VALUE, (long) mPosition
+                    + samples));
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.nobu_games.audio.stream;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import com.nobu_games.audio.AudioStreamDescriptor;
 import com.nobu_games.audio.sink.AudioEncodingException;
 import com.nobu_games.audio.source.AudioDecodingException;
 import com.nobu_games.audio.source.AudioSource;
@@ -14,9 +15,24 @@ import com.nobu_games.audio.source.AudioSource;
  * @author ti
  */
 public interface AudioStreamWriter {
+    /**
+     * Calculates the exact amount of bytes that {@link #write(AudioSource,
+     * OutputStream)} produces for an audio stream.
+     * 
+     * @param descriptor
+     *            Descriptor of the audio stream to encode.
+     * @return Encoded size in bytes or -1 if the sample count of the stream is
+     *         unknown.
+     * @throws AudioEncodingException
+     *             In case the audio stream cannot be encoded by this writer.
+     */
+    long getEncodedSize(AudioStreamDescriptor descriptor)
+            throws AudioEncodingException;
+
     /**
      * Writes the sample data of an audio source into the target output stream
-     * using the audio encoding implemented by this writer.
+     * using the audio encoding implemented by this writer. If the sample count
+     * of the audio source is known, exactly that amount of samples is written.
      * 
      * @param source
      *            Audio source to encode and write.
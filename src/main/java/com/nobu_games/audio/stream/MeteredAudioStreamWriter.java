@@ -0,0 +1,149 @@
+package com.nobu_games.audio.stream;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.metering.MeterRegistry;
+import com.nobu_games.audio.metering.StageMeter;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.AudioSource;
+import com.nobu_games.audio.source.ProxyAudioStreamDescriptor;
+
+/**
+ * Audio stream writer that meters the encoding of another writer: the bytes
+ * written, the frames they contain, the time spent in the writer and the time
+ * until the first byte is written.
+ * <p>
+ * Reading from metered stages of the source chain is excluded from the self
+ * time of the writer. Writing to the target stream is included, unless the
+ * target is a {@link com.nobu_games.audio.metering.MeteredOutputStream}.
+ * <p>
+ * A metered writer meters a single stream. The meter is closed when
+ * {@link #write(AudioSource, OutputStream)} returns.
+ * 
+ * @author ti
+ */
+public class MeteredAudioStreamWriter implements AudioStreamWriter {
+    private final StageMeter mMeter;
+    private final AudioStreamWriter mWriter;
+
+    /**
+     * Creates a metered writer with a new meter of the default registry.
+     * 
+     * @param writer
+     *            Writer to meter.
+     * @param name
+     *            Stage name.
+     */
+    public MeteredAudioStreamWriter(AudioStreamWriter writer, String name) {
+        this(writer, MeterRegistry.getDefault().createMeter(name));
+    }
+
+    /**
+     * Creates a metered writer.
+     * 
+     * @param writer
+     *            Writer to meter.
+     * @param meter
+     *            Meter that receives the counters.
+     */
+    public MeteredAudioStreamWriter(AudioStreamWriter writer, StageMeter meter) {
+        if (writer == null)
+            throw new IllegalArgumentException("Writer must not be null");
+        if (meter == null)
+            throw new IllegalArgumentException("Meter must not be null");
+
+        mWriter = writer;
+        mMeter = meter;
+    }
+
+    @Override
+    public long getEncodedSize(AudioStreamDescriptor descriptor)
+            throws AudioEncodingException {
+        return mWriter.getEncodedSize(descriptor);
+    }
+
+    /**
+     * Gets the meter of this writer.
+     * 
+     * @return Stage meter.
+     */
+    public StageMeter getMeter() {
+        return mMeter;
+    }
+
+    @Override
+    public void write(AudioSource source, OutputStream target)
+            throws IOException, AudioDecodingException,
+            AudioEncodingException {
+        final FrameCountingOutputStream output = new FrameCountingOutputStream(
+                target, getFrameSize(source.getDescriptor()));
+        mMeter.enter();
+
+        try {
+            mWriter.write(source, output);
+        } finally {
+            mMeter.exit();
+            mMeter.close();
+        }
+    }
+
+    /**
+     * Derives the encoded size of a frame from the encoded size of a stream
+     * with a single frame.
+     */
+    private long getFrameSize(AudioStreamDescriptor descriptor)
+            throws AudioEncodingException {
+        final long frameSize = mWriter
+                .getEncodedSize(new ProxyAudioStreamDescriptor(descriptor) {
+                    @Override
+                    public long getSampleCount() {
+                        return 1;
+                    }
+                });
+
+        return frameSize > 0 ? frameSize : 0;
+    }
+
+    private class FrameCountingOutputStream extends FilterOutputStream {
+        private long mBytes;
+        private long mFrames;
+        private final long mFrameSize;
+
+        public FrameCountingOutputStream(OutputStream out, long frameSize) {
+            super(out);
+            mFrameSize = frameSize;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count(len);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count(1);
+        }
+
+        private void count(int bytes) {
+            mMeter.addBytesWritten(bytes);
+
+            if (mFrameSize > 0) {
+                mBytes += bytes;
+                final long frames = mBytes / mFrameSize;
+                mMeter.addFrames(frames - mFrames);
+                mFrames = frames;
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.nobu_games.audio.stream.pcm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.FloatAudioSource;
+import com.nobu_games.audio.source.SeekableAudioSource;
+import com.nobu_games.audio.source.ValidationHelper;
+
+/**
+ * Seekable audio source that decodes linear PCM audio data from a byte buffer,
+ * typically a memory mapped region of a file.
+ * <p>
+ * The source only keeps a read cursor, so seeking is a constant time
+ * operation. Several sources can share the same buffer since samples are
+ * read through a private view of it. Frames are copied from the buffer block
+ * by block and decoded by the same {@link PCMBlockDecoder} as the streaming
+ * PCM sources. The source can be used through the double precision and the
+ * single precision API.
+ * 
+ * @author ti
+ */
+public class MappedPCMAudioSource implements SeekableAudioSource,
+        FloatAudioSource {
+    private final ByteBuffer mData;
+    private int mDecodedIndex = -1;
+    private final PCMBlockDecoder mDecoder;
+    private final AudioStreamDescriptor mDescriptor;
+    private final double[][] mFrame;
+    private final int mFrameCount;
+    private int mFrameIndex = -1;
+    private final int mFrameSize;
+
+    /**
+     * Creates a PCM audio source for a buffer of audio data.
+     * 
+     * @param data
+     *            Buffer with the linear PCM audio data between its position
+     *            and its limit. The buffer itself is not modified.
+     * @param order
+     *            Byte order of the audio data.
+     * @param descriptor
+     *            Audio stream descriptor for the audio data.
+     * @throws AudioDecodingException
+     *             In case the descriptor is not valid.
+     */
+    public MappedPCMAudioSource(ByteBuffer data, ByteOrder order,
+            AudioStreamDescriptor descriptor) throws AudioDecodingException {
+        PCMBlockDecoder.checkDescriptor(descriptor);
+        ValidationHelper.validateIntegrity(descriptor);
+        mDescriptor = descriptor;
+        mData = data.slice();
+        mDecoder = new PCMBlockDecoder(order, descriptor);
+        mFrame = new double[descriptor.getChannelCount()][1];
+        mFrameSize = descriptor.getMaximumBitsPerSample(0) / 8
+                * descriptor.getChannelCount();
+        mFrameCount = mData.remaining() / mFrameSize;
+    }
+
+    /**
+     * No-op. The buffer is shared and stays valid until it is garbage
+     * collected.
+     */
+    @Override
+    public void close() throws IOException {
+    }
+
+    /**
+     * Copies frames from the buffer into the block buffer of the decoder.
+     */
+    private void fill(int frame, int frames) {
+        mData.position(frame * mFrameSize);
+        mData.get(mDecoder.getBlock(), 0, frames * mFrameSize);
+    }
+
+    @Override
+    public short getCurrentBitRate(int channel) {
+        return mDescriptor.getMaximumBitsPerSample(0);
+    }
+
+    @Override
+    public int getCurrentSampleRate(int channel) {
+        return mDescriptor.getMaximumSampleRate(0);
+    }
+
+    @Override
+    public AudioStreamDescriptor getDescriptor() {
+        return mDescriptor;
+    }
+
+    @Override
+    public double getSample(int channel) {
+        if (mFrameIndex < 0 || mFrameIndex >= mFrameCount)
+            throw new IllegalStateException(
+                    "next() must be called prior calling getSample()");
+
+        if (mDecodedIndex != mFrameIndex) {
+            fill(mFrameIndex, 1);
+            mDecoder.decode(mFrame, 0, 1);
+            mDecodedIndex = mFrameIndex;
+        }
+
+        return mFrame[channel][0];
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (mFrameIndex < mFrameCount)
+            ++mFrameIndex;
+
+        return mFrameIndex < mFrameCount;
+    }
+
+    @Override
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        final int start = mFrameIndex + 1;
+        final int count = Math.min(frames, mFrameCount - start);
+        if (count <= 0)
+            return frames > 0 ? -1 : 0;
+        final int blockFrames = mDecoder.getBlockFrames();
+
+        for (int done = 0; done < count; done += blockFrames) {
+            final int length = Math.min(blockFrames, count - done);
+            fill(start + done, length);
+            mDecoder.decode(dst, offset + done, length);
+        }
+
+        mFrameIndex += count;
+        return count;
+    }
+
+    @Override
+    public int read(float[][] dst, int offset, int frames) throws IOException {
+        final int start = mFrameIndex + 1;
+        final int count = Math.min(frames, mFrameCount - start);
+        if (count <= 0)
+            return frames > 0 ? -1 : 0;
+        final int blockFrames = mDecoder.getBlockFrames();
+
+        for (int done = 0; done < count; done += blockFrames) {
+            final int length = Math.min(blockFrames, count - done);
+            fill(start + done, length);
+            mDecoder.decode(dst, offset + done, length);
+        }
+
+        mFrameIndex += count;
+        return count;
+    }
+
+    @Override
+    public void rewind() {
+        mFrameIndex = -1;
+    }
+
+    /**
+     * Seeks the audio stream to the specified sample position. The next call
+     * to {@link #next()} or {@link #read(double[][], int, int)} starts reading
+     * at that position.
+     * 
+     * @param position
+     *            Position index in samples. Values beyond the end of the
+     *            stream move the cursor to the end of the stream.
+     */
+    @Override
+    public void seekPosition(int position) throws IOException {
+        if (position < 0)
+            throw new IllegalArgumentException("position must be >= 0");
+        mFrameIndex = Math.min(position, mFrameCount) - 1;
+    }
+
+    @Override
+    public void skip(int samples) throws IOException {
+        seekPosition(mFrameIndex + 1 + samples);
+    }
+}
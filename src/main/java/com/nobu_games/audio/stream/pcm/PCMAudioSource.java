@@ -2,7 +2,6 @@ package com.nobu_games.audio.stream.pcm;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 import com.nobu_games.audio.AudioStreamDescriptor;
@@ -10,68 +9,35 @@ import com.nobu_games.audio.source.AudioDecodingException;
 import com.nobu_games.audio.source.AudioSource;
 import com.nobu_games.audio.source.ValidationHelper;
 
+/**
+ * Audio source that decodes uncompressed linear PCM audio data from an input
+ * stream.
+ * <p>
+ * The input stream is read in large blocks. Frame by frame access through
+ * {@link #next()} is served from a buffer of decoded samples.
+ * 
+ * @author ti
+ */
 public class PCMAudioSource implements AudioSource {
-    private final byte[] mBuffer;
-    private final ByteBuffer mByteBuffer;
+    /**
+     * Amount of frames decoded at a time for {@link #next()}.
+     */
+    private static final int BUFFER_FRAMES = 512;
+
+    private double[][] mBuffer;
+    private int mBufferFrames;
+    private int mBufferIndex = -1;
+    private final PCMBlockDecoder mDecoder;
     private final AudioStreamDescriptor mDescriptor;
     private final InputStream mInput;
 
     public PCMAudioSource(InputStream data, ByteOrder order,
             AudioStreamDescriptor descriptor) throws AudioDecodingException {
-        int flags = descriptor.getFlags();
-
-        if ((flags & AudioStreamDescriptor.FLAG_VARIABLE_BITS_PER_SAMPLE) != 0
-                || (flags & AudioStreamDescriptor.FLAG_VARIABLE_SAMPLE_RATE) != 0) {
-            throw new IllegalArgumentException(
-                    "Linear PCM audio stream cannot have variable bit rate or variable sample rate");
-        }
-
+        PCMBlockDecoder.checkDescriptor(descriptor);
         ValidationHelper.validateIntegrity(descriptor);
-        short bitsPerSample = descriptor.getMaximumBitsPerSample(0);
-
-        if (bitsPerSample != 8 && bitsPerSample != 16 && bitsPerSample != 32
-                && bitsPerSample != 64) {
-            throw new IllegalArgumentException("Unsupported bit rate "
-                    + bitsPerSample);
-        }
-
         mInput = data;
         mDescriptor = descriptor;
-        mBuffer = new byte[(bitsPerSample / 8) * descriptor.getChannelCount()];
-        mByteBuffer = ByteBuffer.wrap(mBuffer);
-        mByteBuffer.order(order);
-    }
-
-    private static double normalizeByte(byte value) {
-        if (value < 0) {
-            return (double) -value / (double) Byte.MIN_VALUE;
-        } else {
-            return (double) value / (double) Byte.MAX_VALUE;
-        }
-    }
-
-    private static double normalizeInt(int value) {
-        if (value < 0) {
-            return (double) -value / (double) Integer.MIN_VALUE;
-        } else {
-            return (double) value / (double) Integer.MAX_VALUE;
-        }
-    }
-
-    private static double normalizeLong(long value) {
-        if (value < 0) {
-            return (double) -value / (double) Long.MIN_VALUE;
-        } else {
-            return (double) value / (double) Long.MAX_VALUE;
-        }
-    }
-
-    private static double normalizeShort(short value) {
-        if (value < 0) {
-            return (double) -value / (double) Short.MIN_VALUE;
-        } else {
-            return (double) value / (double) Short.MAX_VALUE;
-        }
+        mDecoder = new PCMBlockDecoder(data, order, descriptor);
     }
 
     @Override
@@ -96,31 +62,50 @@ public class PCMAudioSource implements AudioSource {
 
     @Override
     public double getSample(int channel) {
-        switch (mDescriptor.getMaximumBitsPerSample(0)) {
-            case 8:
-                return normalizeByte(mByteBuffer.get(channel));
+        if (mBufferIndex < 0 || mBufferIndex >= mBufferFrames)
+            throw new IllegalStateException(
+                    "next() must be called prior calling getSample()");
 
-            case 16:
-                return normalizeShort(mByteBuffer.getShort(channel * 2));
-
-            case 32:
-                return normalizeInt(mByteBuffer.getInt(channel * 4));
+        return mBuffer[channel][mBufferIndex];
+    }
 
-            case 64:
-                return normalizeLong(mByteBuffer.getLong(channel * 8));
+    @Override
+    public boolean next() throws IOException {
+        if (++mBufferIndex < mBufferFrames)
+            return true;
 
-            default:
-                throw new IllegalStateException("Unexpected bits per sample "
-                        + mDescriptor.getMaximumBitsPerSample(0));
+        if (mBuffer == null) {
+            mBuffer = new double[mDescriptor.getChannelCount()][BUFFER_FRAMES];
         }
+
+        final int count = mDecoder.read(mBuffer, 0, BUFFER_FRAMES);
+        mBufferIndex = 0;
+        mBufferFrames = Math.max(count, 0);
+
+        return mBufferFrames > 0;
     }
 
     @Override
-    public boolean next() throws IOException {
-        int result = mInput.read(mBuffer, 0, mBuffer.length);
-        if (result != mBuffer.length)
-            return false;
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        final int buffered = Math.min(frames, mBufferFrames
+                - (mBufferIndex + 1));
+        if (buffered <= 0)
+            return mDecoder.read(dst, offset, frames);
+
+        final int start = mBufferIndex + 1;
+
+        for (int channel = 0; channel < mBuffer.length; ++channel) {
+            System.arraycopy(mBuffer[channel], start, dst[channel], offset,
+                    buffered);
+        }
+
+        mBufferIndex += buffered;
+        if (buffered == frames)
+            return buffered;
 
-        return true;
+        final int count = mDecoder.read(dst, offset + buffered, frames
+                - buffered);
+        return count > 0 ? buffered + count : buffered;
     }
 }
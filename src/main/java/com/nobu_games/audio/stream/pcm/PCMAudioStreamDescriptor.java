@@ -6,11 +6,11 @@ public class PCMAudioStreamDescriptor implements AudioStreamDescriptor {
     private final short mBitsPerSample;
     private final int mChannels;
     private final int mFlags;
-    private final int mSampleCount;
+    private final long mSampleCount;
     private final int mSampleRate;
 
     public PCMAudioStreamDescriptor(int channels, short bitsPerSample,
-            int sampleRate, int sampleCount, int flags) {
+            int sampleRate, long sampleCount, int flags) {
         mChannels = channels;
         mBitsPerSample = bitsPerSample;
         mSampleRate = sampleRate;
@@ -49,7 +49,7 @@ public class PCMAudioStreamDescriptor implements AudioStreamDescriptor {
     }
 
     @Override
-    public int getSampleCount() {
+    public long getSampleCount() {
         return mSampleCount;
     }
 }
@@ -2,24 +2,46 @@ package com.nobu_games.audio.stream.pcm;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.kernel.SampleKernels;
 import com.nobu_games.audio.sink.AudioEncodingException;
 import com.nobu_games.audio.source.AudioDecodingException;
 import com.nobu_games.audio.source.AudioSource;
+import com.nobu_games.audio.source.FloatAudioSource;
 import com.nobu_games.audio.stream.AudioStreamWriter;
 
 /**
  * Component for encoding an {@link AudioSource} and writing it as uncompressed
  * linear PCM audio data into an output stream.
+ * <p>
+ * Samples are read from the audio source in blocks and encoded into a
+ * reusable interleaved byte block, which is then passed to the output stream
+ * with a single write call. Integer samples with 8, 16, 24, 32 or 64 bits
+ * are supported; sample values are clamped to the range of <code>-1.0</code>
+ * to <code>+1.0</code> before they are quantized. Alternatively the writer
+ * stores 32 or 64 bit IEEE floating point samples.
+ * <p>
+ * If the descriptor of the audio source declares a sample count, exactly that
+ * amount of samples is written: surplus samples are ignored and missing
+ * samples are written as silence. The output size therefore always matches
+ * {@link #getEncodedSize(AudioStreamDescriptor)}.
  * 
  * @author ti
  */
 public class PCMAudioStreamWriter implements AudioStreamWriter {
-    private final byte[] mByteArray;
-    private final ByteBuffer mByteBuffer;
+    /**
+     * Default amount of frames that are encoded and written at a time.
+     */
+    public static final int DEFAULT_BLOCK_FRAMES = 1024;
+
+    private static final SampleKernels KERNELS = SampleKernels.getInstance();
+
+    private byte[] mBlock;
+    private final int mBlockFrames;
+    private final ByteOrder mEndianness;
+    private final boolean mFloatingPoint;
 
     /**
      * Creates a new PCM audio stream writer for the specified byte order.
@@ -29,129 +51,449 @@ public class PCMAudioStreamWriter implements AudioStreamWriter {
      *            endian).
      */
     public PCMAudioStreamWriter(ByteOrder endianness) {
-        mByteArray = new byte[8];
-        mByteBuffer = ByteBuffer.wrap(mByteArray);
-        mByteBuffer.order(endianness);
+        this(endianness, DEFAULT_BLOCK_FRAMES);
     }
 
-    private static byte toByte(double value) {
-        if (value < 0) {
-            return (byte) Math.round(-value * Byte.MIN_VALUE);
-        } else {
-            return (byte) Math.round(value * Byte.MAX_VALUE);
-        }
+    /**
+     * Creates a new PCM audio stream writer for the specified byte order and
+     * sample format.
+     * 
+     * @param endianness
+     *            Byte order for the audio encoding (typically it is little
+     *            endian).
+     * @param floatingPoint
+     *            <code>true</code> for writing IEEE floating point samples.
+     * @see #PCMAudioStreamWriter(ByteOrder, int, boolean)
+     */
+    public PCMAudioStreamWriter(ByteOrder endianness, boolean floatingPoint) {
+        this(endianness, DEFAULT_BLOCK_FRAMES, floatingPoint);
     }
 
-    private static int toInt(double value) {
-        if (value < 0) {
-            return (int) Math.round(-value * Integer.MIN_VALUE);
-        } else {
-            return (int) Math.round(value * Integer.MAX_VALUE);
-        }
+    /**
+     * Creates a new PCM audio stream writer for the specified byte order and
+     * block size.
+     * 
+     * @param endianness
+     *            Byte order for the audio encoding (typically it is little
+     *            endian).
+     * @param blockFrames
+     *            Amount of frames that are encoded and written to the output
+     *            stream at a time (must be > 0).
+     * @throws IllegalArgumentException
+     *             If <code>blockFrames</code> is not positive.
+     */
+    public PCMAudioStreamWriter(ByteOrder endianness, int blockFrames) {
+        this(endianness, blockFrames, false);
     }
 
-    private static long toLong(double value) {
-        if (value < 0) {
-            return (long) Math.round(-value * Long.MIN_VALUE);
-        } else {
-            return (long) Math.round(value * Long.MAX_VALUE);
-        }
+    /**
+     * Creates a new PCM audio stream writer for the specified byte order,
+     * block size and sample format.
+     * <p>
+     * Floating point samples are written as 64 bit doubles if the audio source
+     * has 64 bits per sample, otherwise as 32 bit floats. They are written
+     * as they are, without clamping or quantization, so single precision
+     * samples of a {@link FloatAudioSource} are stored bit-exact.
+     * 
+     * @param endianness
+     *            Byte order for the audio encoding (typically it is little
+     *            endian).
+     * @param blockFrames
+     *            Amount of frames that are encoded and written to the output
+     *            stream at a time (must be > 0).
+     * @param floatingPoint
+     *            <code>true</code> for writing IEEE floating point samples,
+     *            <code>false</code> for integer samples.
+     * @throws IllegalArgumentException
+     *             If <code>blockFrames</code> is not positive.
+     */
+    public PCMAudioStreamWriter(ByteOrder endianness, int blockFrames,
+            boolean floatingPoint) {
+        if (blockFrames < 1)
+            throw new IllegalArgumentException("blockFrames must be > 0");
+        mEndianness = endianness;
+        mBlockFrames = blockFrames;
+        mFloatingPoint = floatingPoint;
     }
 
-    private static short toShort(double value) {
-        if (value < 0) {
-            return (short) Math.round(-value * Short.MIN_VALUE);
-        } else {
-            return (short) Math.round(value * Short.MAX_VALUE);
-        }
+    /**
+     * Gets the scale factor for quantizing a normalized sample value.
+     * <p>
+     * Negative values are scaled by <code>2^(bits - 1)</code>, positive values
+     * by <code>2^(bits - 1) - 1</code>. The sign selects the factor without
+     * branching.
+     */
+    private static double getScale(double value, double halfRange) {
+        return halfRange - Math.copySign(0.5, value);
+    }
+
+    private static double clamp(double value) {
+        return Math.max(-1.0, Math.min(1.0, value));
+    }
+
+    @Override
+    public long getEncodedSize(AudioStreamDescriptor descriptor)
+            throws AudioEncodingException {
+        final int bytesPerSample = checkDescriptor(descriptor);
+        final long sampleCount = descriptor.getSampleCount();
+        if (sampleCount < 0)
+            return -1;
+        return sampleCount * descriptor.getChannelCount()
+                * bytesPerSample;
+    }
+
+    /**
+     * Gets the amount of frames that are encoded and written at a time.
+     * 
+     * @return Block size in frames.
+     */
+    public int getBlockFrames() {
+        return mBlockFrames;
+    }
+
+    /**
+     * Checks whether this writer writes IEEE floating point samples.
+     * 
+     * @return <code>true</code> for floating point samples,
+     *         <code>false</code> for integer samples.
+     */
+    public boolean isFloatingPoint() {
+        return mFloatingPoint;
     }
 
     @Override
     public void write(AudioSource source, OutputStream target)
             throws IOException, AudioDecodingException, AudioEncodingException {
-        int flags = source.getDescriptor().getFlags();
+        final AudioStreamDescriptor descriptor = source.getDescriptor();
+        final int bytesPerSample = checkDescriptor(descriptor);
+        final int channelCount = descriptor.getChannelCount();
+        final int frameSize = bytesPerSample * channelCount;
+        final double[][] samples = new double[channelCount][mBlockFrames];
+        final double[] quantized = new double[mBlockFrames];
+        final byte[] block = getBlock(frameSize);
+        final int[] byteOffsets = getByteOffsets(bytesPerSample);
+        long remaining = getRemainingFrames(descriptor);
+        int count;
+
+        while (remaining > 0
+                && (count = source.read(samples, 0,
+                        getReadFrames(remaining))) > 0) {
+            for (int channel = 0; channel < channelCount; ++channel) {
+                encode(samples[channel], quantized, count, block, channel
+                        * bytesPerSample, frameSize, byteOffsets);
+            }
+
+            target.write(block, 0, count * frameSize);
+            remaining -= count;
+        }
+
+        if (remaining > 0 && descriptor.getSampleCount() > -1) {
+            writeSilence(remaining, channelCount, bytesPerSample, block,
+                    byteOffsets, target);
+        }
+    }
 
-        if ((flags & AudioStreamDescriptor.FLAG_VARIABLE_SAMPLE_RATE) != 0) {
+    /**
+     * Writes the sample data of a single precision audio source into the
+     * target output stream.
+     * 
+     * @param source
+     *            Audio source to encode and write.
+     * @param target
+     *            Target output stream for encoded audio data.
+     * @throws IOException
+     *             In case of an I/O error while reading from the audio source
+     *             or writing to the target output stream.
+     * @throws AudioEncodingException
+     *             In case the bit depth of the audio source is not supported.
+     * @see #write(AudioSource, OutputStream)
+     */
+    public void write(FloatAudioSource source, OutputStream target)
+            throws IOException, AudioEncodingException {
+        final AudioStreamDescriptor descriptor = source.getDescriptor();
+        final int bytesPerSample = checkDescriptor(descriptor);
+        final int channelCount = descriptor.getChannelCount();
+        final int frameSize = bytesPerSample * channelCount;
+        final float[][] samples = new float[channelCount][mBlockFrames];
+        final byte[] block = getBlock(frameSize);
+        final int[] byteOffsets = getByteOffsets(bytesPerSample);
+        long remaining = getRemainingFrames(descriptor);
+        int count;
+
+        while (remaining > 0
+                && (count = source.read(samples, 0,
+                        getReadFrames(remaining))) > 0) {
+            for (int channel = 0; channel < channelCount; ++channel) {
+                encode(samples[channel], count, block, channel
+                        * bytesPerSample, frameSize, byteOffsets);
+            }
+
+            target.write(block, 0, count * frameSize);
+            remaining -= count;
+        }
+
+        if (remaining > 0 && descriptor.getSampleCount() > -1) {
+            writeSilence(remaining, channelCount, bytesPerSample, block,
+                    byteOffsets, target);
+        }
+    }
+
+    /**
+     * Makes sure that the audio stream can be encoded by this writer.
+     * 
+     * @return Amount of bytes per encoded sample.
+     */
+    private int checkDescriptor(AudioStreamDescriptor descriptor)
+            throws AudioEncodingException {
+        if ((descriptor.getFlags() & AudioStreamDescriptor.FLAG_VARIABLE_SAMPLE_RATE) != 0) {
             throw new IllegalArgumentException(
                     "Cannot write audio source with variable sample rate.");
         }
 
-        final AudioStreamDescriptor descriptor = source.getDescriptor();
-        int channelCount = descriptor.getChannelCount();
-        short bitsPerSample = descriptor.getMaximumBitsPerSample(descriptor
-                .getMaximumBitsPerSample(0));
+        short bitsPerSample = descriptor.getMaximumBitsPerSample(0);
 
-        switch (bitsPerSample) {
-            case 8:
-                write8Bit(source, target, channelCount);
+        if (mFloatingPoint)
+            return bitsPerSample == 64 ? 8 : 4;
+
+        if (bitsPerSample != 8 && bitsPerSample != 16 && bitsPerSample != 24
+                && bitsPerSample != 32 && bitsPerSample != 64) {
+            throw new AudioEncodingException(
+                    "Cannot write unsupported sample bit depth "
+                            + bitsPerSample);
+        }
+
+        return bitsPerSample / 8;
+    }
+
+    /**
+     * Encodes the samples of one channel into the interleaved byte block. The
+     * samples are quantized in one go before they are scattered into the
+     * block. Floating point samples are stored without quantization.
+     */
+    private void encode(double[] samples, double[] quantized, int count,
+            byte[] block, int start, int frameSize, int[] byteOffsets) {
+        if (mFloatingPoint) {
+            if (byteOffsets.length == 4) {
+                for (int i = 0, p = start; i < count; ++i, p += frameSize) {
+                    putInt(block, p, byteOffsets,
+                            Float.floatToRawIntBits((float) samples[i]));
+                }
+            } else {
+                for (int i = 0, p = start; i < count; ++i, p += frameSize) {
+                    putLong(block, p, byteOffsets,
+                            Double.doubleToRawLongBits(samples[i]));
+                }
+            }
+            return;
+        }
+
+        switch (byteOffsets.length) {
+            case 1:
+                KERNELS.quantize(samples, 0, quantized, 0, count, 127.5);
+
+                for (int i = 0, p = start; i < count; ++i, p += frameSize) {
+                    block[p] = (byte) quantized[i];
+                }
                 break;
 
-            case 16:
-                write16Bit(source, target, channelCount);
+            case 2: {
+                final int hi = start + byteOffsets[0];
+                final int lo = start + byteOffsets[1];
+                KERNELS.quantize(samples, 0, quantized, 0, count, 32767.5);
+
+                for (int i = 0, p = 0; i < count; ++i, p += frameSize) {
+                    final int intValue = (int) quantized[i];
+                    block[hi + p] = (byte) (intValue >> 8);
+                    block[lo + p] = (byte) intValue;
+                }
                 break;
+            }
 
-            case 32:
-                write32Bit(source, target, channelCount);
+            case 3:
+                KERNELS.quantize(samples, 0, quantized, 0, count, 8388607.5);
+
+                for (int i = 0, p = start; i < count; ++i, p += frameSize) {
+                    putInt24(block, p, byteOffsets, (int) quantized[i]);
+                }
                 break;
 
-            case 64:
-                write64Bit(source, target, channelCount);
+            case 4:
+                KERNELS.quantize(samples, 0, quantized, 0, count,
+                        2147483647.5);
+
+                for (int i = 0, p = start; i < count; ++i, p += frameSize) {
+                    putInt(block, p, byteOffsets, (int) quantized[i]);
+                }
                 break;
 
             default:
-                throw new AudioEncodingException(
-                        "Cannot write unsupported sample bit depth "
-                                + bitsPerSample);
+                for (int i = 0, p = start; i < count; ++i, p += frameSize) {
+                    putLong(block, p, byteOffsets, Math.round(clamp(samples[i])
+                            * Long.MAX_VALUE));
+                }
+                break;
         }
     }
 
-    private void write16Bit(AudioSource source, OutputStream target,
-            int channelCount) throws IOException {
-        while (source.next()) {
-            for (int channel = 0; channel < channelCount; ++channel) {
-                double sample = source.getSample(channel);
-                short intSample = toShort(sample);
-                mByteBuffer.rewind();
-                mByteBuffer.putShort(intSample);
-                target.write(mByteArray, 0, 2);
+    /**
+     * Encodes the samples of one channel into the interleaved byte block.
+     * Floating point samples are stored without quantization.
+     */
+    private void encode(float[] samples, int count, byte[] block, int start,
+            int frameSize, int[] byteOffsets) {
+        if (mFloatingPoint) {
+            if (byteOffsets.length == 4) {
+                for (int i = 0, p = start; i < count; ++i, p += frameSize) {
+                    putInt(block, p, byteOffsets,
+                            Float.floatToRawIntBits(samples[i]));
+                }
+            } else {
+                for (int i = 0, p = start; i < count; ++i, p += frameSize) {
+                    putLong(block, p, byteOffsets,
+                            Double.doubleToRawLongBits(samples[i]));
+                }
             }
+            return;
         }
-    }
 
-    private void write32Bit(AudioSource source, OutputStream target,
-            int channelCount) throws IOException {
-        while (source.next()) {
-            for (int channel = 0; channel < channelCount; ++channel) {
-                double sample = source.getSample(channel);
-                int intSample = toInt(sample);
-                mByteBuffer.rewind();
-                mByteBuffer.putInt(intSample);
-                target.write(mByteArray, 0, 4);
+        switch (byteOffsets.length) {
+            case 1:
+                for (int i = 0, p = start; i < count; ++i, p += frameSize) {
+                    final double value = clamp(samples[i]);
+                    block[p] = (byte) Math.round(value
+                            * getScale(value, 127.5));
+                }
+                break;
+
+            case 2: {
+                final int hi = start + byteOffsets[0];
+                final int lo = start + byteOffsets[1];
+
+                for (int i = 0, p = 0; i < count; ++i, p += frameSize) {
+                    final double value = clamp(samples[i]);
+                    final int intValue = (int) Math.round(value
+                            * getScale(value, 32767.5));
+                    block[hi + p] = (byte) (intValue >> 8);
+                    block[lo + p] = (byte) intValue;
+                }
+                break;
             }
+
+            case 3:
+                for (int i = 0, p = start; i < count; ++i, p += frameSize) {
+                    final double value = clamp(samples[i]);
+                    putInt24(block, p, byteOffsets, (int) Math.round(value
+                            * getScale(value, 8388607.5)));
+                }
+                break;
+
+            case 4:
+                for (int i = 0, p = start; i < count; ++i, p += frameSize) {
+                    final double value = clamp(samples[i]);
+                    putInt(block, p, byteOffsets, (int) Math.round(value
+                            * getScale(value, 2147483647.5)));
+                }
+                break;
+
+            default:
+                for (int i = 0, p = start; i < count; ++i, p += frameSize) {
+                    putLong(block, p, byteOffsets, Math.round(clamp(samples[i])
+                            * Long.MAX_VALUE));
+                }
+                break;
         }
     }
 
-    private void write64Bit(AudioSource source, OutputStream target,
-            int channelCount) throws IOException {
-        while (source.next()) {
-            for (int channel = 0; channel < channelCount; ++channel) {
-                double sample = source.getSample(channel);
-                long intSample = toLong(sample);
-                mByteBuffer.rewind();
-                mByteBuffer.putLong(intSample);
-                target.write(mByteArray, 0, 8);
-            }
+    /**
+     * Writes encoded silence in blocks until the requested amount of frames
+     * has been written.
+     */
+    private void writeSilence(long frames, int channelCount,
+            int bytesPerSample, byte[] block, int[] byteOffsets,
+            OutputStream target) throws IOException {
+        final int frameSize = bytesPerSample * channelCount;
+        final double[] silence = new double[mBlockFrames];
+        final double[] quantized = new double[mBlockFrames];
+
+        for (int channel = 0; channel < channelCount; ++channel) {
+            encode(silence, quantized, mBlockFrames, block, channel
+                    * bytesPerSample, frameSize, byteOffsets);
+        }
+
+        while (frames > 0) {
+            final int count = getReadFrames(frames);
+            target.write(block, 0, count * frameSize);
+            frames -= count;
         }
     }
 
-    private void write8Bit(AudioSource source, OutputStream target,
-            int channelCount) throws IOException {
-        while (source.next()) {
-            for (int channel = 0; channel < channelCount; ++channel) {
-                double sample = source.getSample(channel);
-                byte intSample = toByte(sample);
-                target.write(intSample);
-            }
+    private static void putInt24(byte[] block, int position,
+            int[] byteOffsets, int value) {
+        block[position + byteOffsets[0]] = (byte) (value >> 16);
+        block[position + byteOffsets[1]] = (byte) (value >> 8);
+        block[position + byteOffsets[2]] = (byte) value;
+    }
+
+    private static void putInt(byte[] block, int position, int[] byteOffsets,
+            int value) {
+        block[position + byteOffsets[0]] = (byte) (value >> 24);
+        block[position + byteOffsets[1]] = (byte) (value >> 16);
+        block[position + byteOffsets[2]] = (byte) (value >> 8);
+        block[position + byteOffsets[3]] = (byte) value;
+    }
+
+    private static void putLong(byte[] block, int position,
+            int[] byteOffsets, long value) {
+        for (int i = 7; i >= 0; --i) {
+            block[position + byteOffsets[i]] = (byte) value;
+            value >>= 8;
+        }
+    }
+
+    /**
+     * Gets the reusable byte block, making sure it can hold a full block of
+     * frames of the specified size.
+     */
+    private byte[] getBlock(int frameSize) {
+        final int length = mBlockFrames * frameSize;
+
+        if (mBlock == null || mBlock.length < length) {
+            mBlock = new byte[length];
         }
+
+        return mBlock;
+    }
+
+    /**
+     * Gets the amount of frames to read for the next block.
+     */
+    private int getReadFrames(long remaining) {
+        return (int) Math.min(mBlockFrames, remaining);
+    }
+
+    /**
+     * Gets the amount of frames to write for an audio stream.
+     * 
+     * @return Declared sample count or {@link Long#MAX_VALUE} if it is
+     *         unknown.
+     */
+    private static long getRemainingFrames(AudioStreamDescriptor descriptor) {
+        final long sampleCount = descriptor.getSampleCount();
+        return sampleCount < 0 ? Long.MAX_VALUE : sampleCount;
+    }
+
+    /**
+     * Gets the offset of each byte within an encoded sample, from most to
+     * least significant byte.
+     */
+    private int[] getByteOffsets(int bytesPerSample) {
+        final int[] offsets = new int[bytesPerSample];
+
+        for (int i = 0; i < bytesPerSample; ++i) {
+            offsets[i] = mEndianness == ByteOrder.BIG_ENDIAN ? i
+                    : bytesPerSample - 1 - i;
+        }
+
+        return offsets;
     }
 }
@@ -0,0 +1,402 @@
+package com.nobu_games.audio.stream.pcm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.kernel.SampleKernels;
+
+/**
+ * Reads interleaved linear PCM frames from an input stream in blocks and
+ * decodes them into planar arrays of normalized samples.
+ * <p>
+ * Shared by the double and single precision PCM audio sources and by the
+ * memory mapped source, which copies its frames into the block buffer instead
+ * of reading them from a stream, so all of them decode samples the same way.
+ * Supports 8, 16, 24, 32 and 64 bit integer samples and 32 and 64 bit IEEE
+ * floating point samples, which are flagged with
+ * {@link AudioStreamDescriptor#FLAG_FLOATING_POINT}. 8 and 16 bit samples are
+ * normalized through precomputed lookup tables, 24 and 32 bit samples are
+ * gathered per channel and normalized in one go by the sample kernels.
+ * Floating point samples are passed through without normalization. The byte
+ * order is resolved once into byte offsets within a sample, so the decoding
+ * loops do not branch on it.
+ * 
+ * @author ti
+ */
+class PCMBlockDecoder {
+    /**
+     * Maximum size of the byte block that is read from the input stream at a
+     * time.
+     */
+    private static final int BLOCK_SIZE = 8192;
+
+    /**
+     * Normalized values of all 8 bit samples, indexed by the unsigned byte
+     * value.
+     */
+    static final double[] BYTE_TABLE;
+
+    private static final SampleKernels KERNELS = SampleKernels.getInstance();
+
+    static {
+        BYTE_TABLE = new double[1 << 8];
+
+        for (int i = 0; i < BYTE_TABLE.length; ++i) {
+            BYTE_TABLE[i] = normalizeByte((byte) i);
+        }
+    }
+
+    private final byte[] mBlock;
+    private final int mBlockFrames;
+    private final int mBytesPerSample;
+    private final int mChannelCount;
+    private final boolean mFloatingPoint;
+    private final int mFrameSize;
+    private final InputStream mInput;
+    /**
+     * Samples of one channel for the single precision decoding, allocated on
+     * first use.
+     */
+    private double[] mScratch;
+    /**
+     * Gathered 24 or 32 bit values of one channel, normalized in one go.
+     */
+    private final int[] mValues;
+    /**
+     * Offset of each byte within a sample, from most to least significant
+     * byte.
+     */
+    private final int[] mByteOffsets;
+
+    /**
+     * Creates a decoder for frames that the caller puts into the block
+     * buffer.
+     */
+    PCMBlockDecoder(ByteOrder order, AudioStreamDescriptor descriptor) {
+        this(null, order, descriptor);
+    }
+
+    PCMBlockDecoder(InputStream input, ByteOrder order,
+            AudioStreamDescriptor descriptor) {
+        mInput = input;
+        mChannelCount = descriptor.getChannelCount();
+        mBytesPerSample = descriptor.getMaximumBitsPerSample(0) / 8;
+        mFloatingPoint = isFloatingPoint(descriptor);
+        mFrameSize = mBytesPerSample * mChannelCount;
+        mBlockFrames = Math.max(1, BLOCK_SIZE / mFrameSize);
+        mBlock = new byte[mBlockFrames * mFrameSize];
+        mValues = mBytesPerSample == 3 || mBytesPerSample == 4 ? new int[mBlockFrames]
+                : null;
+        mByteOffsets = new int[mBytesPerSample];
+
+        for (int i = 0; i < mBytesPerSample; ++i) {
+            mByteOffsets[i] = order == ByteOrder.BIG_ENDIAN ? i
+                    : mBytesPerSample - 1 - i;
+        }
+    }
+
+    /**
+     * Makes sure the descriptor describes a linear PCM stream that can be
+     * decoded.
+     * 
+     * @throws IllegalArgumentException
+     *             If the bit rate or sample rate is variable or the bit depth
+     *             is not supported.
+     */
+    static void checkDescriptor(AudioStreamDescriptor descriptor) {
+        int flags = descriptor.getFlags();
+
+        if ((flags & AudioStreamDescriptor.FLAG_VARIABLE_BITS_PER_SAMPLE) != 0
+                || (flags & AudioStreamDescriptor.FLAG_VARIABLE_SAMPLE_RATE) != 0) {
+            throw new IllegalArgumentException(
+                    "Linear PCM audio stream cannot have variable bit rate or variable sample rate");
+        }
+
+        short bitsPerSample = descriptor.getMaximumBitsPerSample(0);
+
+        if (isFloatingPoint(descriptor)) {
+            if (bitsPerSample != 32 && bitsPerSample != 64) {
+                throw new IllegalArgumentException(
+                        "Unsupported floating point bit rate " + bitsPerSample);
+            }
+        } else if (bitsPerSample != 8 && bitsPerSample != 16
+                && bitsPerSample != 24 && bitsPerSample != 32
+                && bitsPerSample != 64) {
+            throw new IllegalArgumentException("Unsupported bit rate "
+                    + bitsPerSample);
+        }
+    }
+
+    static boolean isFloatingPoint(AudioStreamDescriptor descriptor) {
+        return (descriptor.getFlags() & AudioStreamDescriptor.FLAG_FLOATING_POINT) != 0;
+    }
+
+    static double normalizeByte(byte value) {
+        if (value < 0) {
+            return (double) -value / (double) Byte.MIN_VALUE;
+        } else {
+            return (double) value / (double) Byte.MAX_VALUE;
+        }
+    }
+
+    static double normalizeInt24(int value) {
+        if (value < 0) {
+            return (double) value / 8388608.0;
+        } else {
+            return (double) value / 8388607.0;
+        }
+    }
+
+    static double normalizeInt(int value) {
+        if (value < 0) {
+            return (double) value / -(double) Integer.MIN_VALUE;
+        } else {
+            return (double) value / (double) Integer.MAX_VALUE;
+        }
+    }
+
+    static double normalizeLong(long value) {
+        if (value < 0) {
+            return (double) value / -(double) Long.MIN_VALUE;
+        } else {
+            return (double) value / (double) Long.MAX_VALUE;
+        }
+    }
+
+    static double normalizeShort(short value) {
+        if (value < 0) {
+            return (double) -value / (double) Short.MIN_VALUE;
+        } else {
+            return (double) value / (double) Short.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Reads and decodes frames into double precision sample arrays.
+     * 
+     * @see com.nobu_games.audio.source.AudioSource#read(double[][], int, int)
+     */
+    int read(double[][] dst, int offset, int frames) throws IOException {
+        int total = 0;
+
+        while (total < frames) {
+            final int count = readBlock(Math.min(mBlockFrames, frames - total));
+            if (count == 0)
+                break;
+            decode(dst, offset + total, count);
+            total += count;
+        }
+
+        return total == 0 && frames > 0 ? -1 : total;
+    }
+
+    /**
+     * Reads and decodes frames into single precision sample arrays.
+     * 
+     * @see com.nobu_games.audio.source.FloatAudioSource#read(float[][], int,
+     *      int)
+     */
+    int read(float[][] dst, int offset, int frames) throws IOException {
+        int total = 0;
+
+        while (total < frames) {
+            final int count = readBlock(Math.min(mBlockFrames, frames - total));
+            if (count == 0)
+                break;
+            decode(dst, offset + total, count);
+            total += count;
+        }
+
+        return total == 0 && frames > 0 ? -1 : total;
+    }
+
+    /**
+     * Decodes the frames at the beginning of the block buffer into double
+     * precision sample arrays.
+     */
+    void decode(double[][] dst, int offset, int frames) {
+        for (int channel = 0; channel < mChannelCount; ++channel) {
+            decodeChannel(channel, dst[channel], offset, frames);
+        }
+    }
+
+    /**
+     * Decodes the frames at the beginning of the block buffer into single
+     * precision sample arrays. Each channel is decoded in double precision
+     * and then narrowed.
+     */
+    void decode(float[][] dst, int offset, int frames) {
+        if (mScratch == null)
+            mScratch = new double[mBlockFrames];
+        final double[] scratch = mScratch;
+
+        for (int channel = 0; channel < mChannelCount; ++channel) {
+            final float[] target = dst[channel];
+            decodeChannel(channel, scratch, 0, frames);
+
+            for (int i = 0; i < frames; ++i) {
+                target[offset + i] = (float) scratch[i];
+            }
+        }
+    }
+
+    private void decodeChannel(int channel, double[] target, int offset,
+            int frames) {
+        final byte[] block = mBlock;
+        final int frameSize = mFrameSize;
+        final int end = offset + frames;
+        final int start = channel * mBytesPerSample;
+
+        switch (mBytesPerSample) {
+            case 1: {
+                final double[] table = BYTE_TABLE;
+
+                for (int i = offset, p = start; i < end; ++i, p += frameSize) {
+                    target[i] = table[block[p] & 0xff];
+                }
+                break;
+            }
+
+            case 2: {
+                final double[] table = ShortTable.VALUES;
+                final int hi = start + mByteOffsets[0];
+                final int lo = start + mByteOffsets[1];
+
+                for (int i = offset, p = 0; i < end; ++i, p += frameSize) {
+                    target[i] = table[(block[hi + p] & 0xff) << 8
+                            | (block[lo + p] & 0xff)];
+                }
+                break;
+            }
+
+            case 3: {
+                final int[] values = mValues;
+
+                for (int i = 0, p = start; i < frames; ++i, p += frameSize) {
+                    values[i] = getInt24(block, p);
+                }
+
+                KERNELS.normalize(values, 0, target, offset, frames, 24);
+                break;
+            }
+
+            case 4: {
+                if (mFloatingPoint) {
+                    for (int i = offset, p = start; i < end; ++i, p += frameSize) {
+                        target[i] = Float.intBitsToFloat(getInt(block, p));
+                    }
+                    break;
+                }
+
+                final int[] values = mValues;
+
+                for (int i = 0, p = start; i < frames; ++i, p += frameSize) {
+                    values[i] = getInt(block, p);
+                }
+
+                KERNELS.normalize(values, 0, target, offset, frames, 32);
+                break;
+            }
+
+            default:
+                if (mFloatingPoint) {
+                    for (int i = offset, p = start; i < end; ++i, p += frameSize) {
+                        target[i] = Double.longBitsToDouble(getLong(block, p));
+                    }
+                } else {
+                    for (int i = offset, p = start; i < end; ++i, p += frameSize) {
+                        target[i] = normalizeLong(getLong(block, p));
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Gets the block buffer. Callers that do not read from an input stream
+     * fill it with frames themselves and decode them with
+     * {@link #decode(double[][], int, int)} or
+     * {@link #decode(float[][], int, int)}.
+     * 
+     * @return Block buffer.
+     */
+    byte[] getBlock() {
+        return mBlock;
+    }
+
+    /**
+     * Gets the amount of frames that fit into the block buffer.
+     * 
+     * @return Block size in frames.
+     */
+    int getBlockFrames() {
+        return mBlockFrames;
+    }
+
+    /**
+     * Gets a sign extended 24 bit value.
+     */
+    private int getInt24(byte[] block, int position) {
+        final int[] offsets = mByteOffsets;
+        return block[position + offsets[0]] << 16
+                | (block[position + offsets[1]] & 0xff) << 8
+                | (block[position + offsets[2]] & 0xff);
+    }
+
+    private int getInt(byte[] block, int position) {
+        final int[] offsets = mByteOffsets;
+        return block[position + offsets[0]] << 24
+                | (block[position + offsets[1]] & 0xff) << 16
+                | (block[position + offsets[2]] & 0xff) << 8
+                | (block[position + offsets[3]] & 0xff);
+    }
+
+    private long getLong(byte[] block, int position) {
+        final int[] offsets = mByteOffsets;
+        long value = 0;
+
+        for (int i = 0; i < 8; ++i) {
+            value = value << 8 | (block[position + offsets[i]] & 0xff);
+        }
+
+        return value;
+    }
+
+    /**
+     * Reads complete frames into the block buffer.
+     * 
+     * @return Amount of complete frames read. Less than <code>frames</code>
+     *         only if the end of the stream has been reached.
+     */
+    private int readBlock(int frames) throws IOException {
+        final int length = frames * mFrameSize;
+        int total = 0;
+
+        while (total < length) {
+            final int result = mInput.read(mBlock, total, length - total);
+            if (result == -1)
+                break;
+            total += result;
+        }
+
+        return total / mFrameSize;
+    }
+
+    /**
+     * Normalized values of all 16 bit samples, indexed by the unsigned short
+     * value. Lazily initialized on first use since the table is fairly large.
+     */
+    static class ShortTable {
+        static final double[] VALUES;
+
+        static {
+            VALUES = new double[1 << 16];
+
+            for (int i = 0; i < VALUES.length; ++i) {
+                VALUES[i] = normalizeShort((short) i);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.nobu_games.audio.stream.pcm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.FloatAudioSource;
+import com.nobu_games.audio.source.ValidationHelper;
+
+/**
+ * Single precision counterpart of {@link PCMAudioSource} that decodes linear
+ * PCM audio data in blocks.
+ * 
+ * @author ti
+ */
+public class PCMFloatAudioSource implements FloatAudioSource {
+    private final PCMBlockDecoder mDecoder;
+    private final AudioStreamDescriptor mDescriptor;
+    private final InputStream mInput;
+
+    public PCMFloatAudioSource(InputStream data, ByteOrder order,
+            AudioStreamDescriptor descriptor) throws AudioDecodingException {
+        PCMBlockDecoder.checkDescriptor(descriptor);
+        ValidationHelper.validateIntegrity(descriptor);
+        mInput = data;
+        mDescriptor = descriptor;
+        mDecoder = new PCMBlockDecoder(data, order, descriptor);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInput.close();
+    }
+
+    @Override
+    public AudioStreamDescriptor getDescriptor() {
+        return mDescriptor;
+    }
+
+    @Override
+    public int read(float[][] dst, int offset, int frames) throws IOException {
+        return mDecoder.read(dst, offset, frames);
+    }
+}
@@ -0,0 +1,221 @@
+package com.nobu_games.audio.stream.pcm;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.SeekableAudioSource;
+import com.nobu_games.audio.source.ValidationHelper;
+
+/**
+ * Audio source that decodes uncompressed linear PCM audio data from a seekable
+ * byte channel, such as a file channel.
+ * <p>
+ * Decoding works like in {@link PCMAudioSource}. Seeking moves the channel
+ * position to the requested frame and discards the buffered samples, so it
+ * costs the same for every position.
+ * 
+ * @author ti
+ */
+public class SeekablePCMAudioSource implements SeekableAudioSource {
+    /**
+     * Amount of frames decoded at a time for {@link #next()}.
+     */
+    private static final int BUFFER_FRAMES = 512;
+
+    private double[][] mBuffer;
+    private int mBufferFrames;
+    private int mBufferIndex = -1;
+    private final SeekableByteChannel mChannel;
+    private final long mDataOffset;
+    private final PCMBlockDecoder mDecoder;
+    private final AudioStreamDescriptor mDescriptor;
+    private final long mFrameCount;
+    private final int mFrameSize;
+    /**
+     * Index of the frame at the channel position.
+     */
+    private long mPosition;
+
+    /**
+     * Creates an audio source for the audio data at the current position of a
+     * channel.
+     * 
+     * @param channel
+     *            Channel with the audio data.
+     * @param order
+     *            Byte order of the samples.
+     * @param descriptor
+     *            Descriptor of the audio data. If it declares a sample count,
+     *            the stream ends after that many frames, otherwise at the end
+     *            of the channel.
+     * @throws IOException
+     *             In case the channel position cannot be determined.
+     * @throws AudioDecodingException
+     *             In case the audio data format is not supported.
+     */
+    public SeekablePCMAudioSource(SeekableByteChannel channel,
+            ByteOrder order, AudioStreamDescriptor descriptor)
+            throws IOException, AudioDecodingException {
+        this(channel, channel.position(), order, descriptor);
+    }
+
+    /**
+     * Creates an audio source for audio data at a specific position of a
+     * channel.
+     * 
+     * @param channel
+     *            Channel with the audio data.
+     * @param dataOffset
+     *            Position of the first audio data byte within the channel.
+     * @param order
+     *            Byte order of the samples.
+     * @param descriptor
+     *            Descriptor of the audio data. If it declares a sample count,
+     *            the stream ends after that many frames, otherwise at the end
+     *            of the channel.
+     * @throws IOException
+     *             In case the channel cannot be positioned.
+     * @throws AudioDecodingException
+     *             In case the audio data format is not supported.
+     */
+    public SeekablePCMAudioSource(SeekableByteChannel channel,
+            long dataOffset, ByteOrder order, AudioStreamDescriptor descriptor)
+            throws IOException, AudioDecodingException {
+        PCMBlockDecoder.checkDescriptor(descriptor);
+        ValidationHelper.validateIntegrity(descriptor);
+        mChannel = channel;
+        mDataOffset = dataOffset;
+        mDescriptor = descriptor;
+        mFrameSize = descriptor.getChannelCount()
+                * (descriptor.getMaximumBitsPerSample(0) / 8);
+        mFrameCount = descriptor.getSampleCount() > -1 ? descriptor
+                .getSampleCount() : Long.MAX_VALUE;
+        mDecoder = new PCMBlockDecoder(Channels.newInputStream(channel),
+                order, descriptor);
+        channel.position(dataOffset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    @Override
+    public short getCurrentBitRate(int channel) {
+        return mDescriptor.getMaximumBitsPerSample(0);
+    }
+
+    @Override
+    public int getCurrentSampleRate(int channel) {
+        return mDescriptor.getMaximumSampleRate(0);
+    }
+
+    @Override
+    public AudioStreamDescriptor getDescriptor() {
+        return mDescriptor;
+    }
+
+    /**
+     * Gets the index of the frame that is read next.
+     */
+    private long getReadPosition() {
+        return mPosition - Math.max(0, mBufferFrames - (mBufferIndex + 1));
+    }
+
+    @Override
+    public double getSample(int channel) {
+        if (mBufferIndex < 0 || mBufferIndex >= mBufferFrames)
+            throw new IllegalStateException(
+                    "next() must be called prior calling getSample()");
+
+        return mBuffer[channel][mBufferIndex];
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (++mBufferIndex < mBufferFrames)
+            return true;
+
+        if (mBuffer == null) {
+            mBuffer = new double[mDescriptor.getChannelCount()][BUFFER_FRAMES];
+        }
+
+        final int count = readDecoder(mBuffer, 0, BUFFER_FRAMES);
+        mBufferIndex = 0;
+        mBufferFrames = Math.max(count, 0);
+
+        return mBufferFrames > 0;
+    }
+
+    @Override
+    public int read(double[][] dst, int offset, int frames)
+            throws IOException {
+        final int buffered = Math.min(frames, mBufferFrames
+                - (mBufferIndex + 1));
+        if (buffered <= 0)
+            return readDecoder(dst, offset, frames);
+
+        final int start = mBufferIndex + 1;
+
+        for (int channel = 0; channel < mBuffer.length; ++channel) {
+            System.arraycopy(mBuffer[channel], start, dst[channel], offset,
+                    buffered);
+        }
+
+        mBufferIndex += buffered;
+        if (buffered == frames)
+            return buffered;
+
+        final int count = readDecoder(dst, offset + buffered, frames
+                - buffered);
+        return count > 0 ? buffered + count : buffered;
+    }
+
+    /**
+     * Decodes frames at the channel position without reading beyond the last
+     * frame.
+     */
+    private int readDecoder(double[][] dst, int offset, int frames)
+            throws IOException {
+        final int count = (int) Math.min(frames, mFrameCount - mPosition);
+        if (count <= 0)
+            return frames > 0 ? -1 : 0;
+        final int read = mDecoder.read(dst, offset, count);
+
+        if (read > 0)
+            mPosition += read;
+
+        return read;
+    }
+
+    @Override
+    public void rewind() throws IOException {
+        seekPosition(0);
+    }
+
+    /**
+     * Positions the channel at a frame. Unlike the public seek methods it can
+     * reach frames beyond the <code>int</code> range.
+     */
+    private void seek(long position) throws IOException {
+        position = Math.max(0, Math.min(position, mFrameCount));
+        mChannel.position(mDataOffset + position * mFrameSize);
+        mPosition = position;
+        mBufferFrames = 0;
+        mBufferIndex = -1;
+    }
+
+    @Override
+    public void seekPosition(int position) throws IOException {
+        seek(position);
+    }
+
+    @Override
+    public void skip(int samples) throws IOException {
+        seek(getReadPosition() + samples);
+    }
+}
@@ -0,0 +1,73 @@
+package com.nobu_games.audio.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+
+import com.nobu_games.audio.format.wave.MappedWaveFormatReader;
+import com.nobu_games.audio.format.wave.WaveFormatReader;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.AudioSource;
+import com.nobu_games.audio.source.SeekableAudioSource;
+
+import junit.framework.TestCase;
+
+public class MappedWaveFormatReaderTest extends TestCase {
+    public void testMappedWaveFormatReader() {
+        InputStream is = getClass().getClassLoader().getResourceAsStream(
+                "0.wav");
+
+        try {
+            File file = new File(getClass().getClassLoader()
+                    .getResource("0.wav").toURI());
+            WaveFormatReader reader = new WaveFormatReader(is);
+            AudioSource expected = reader.createAudioSource();
+            MappedWaveFormatReader mappedReader = new MappedWaveFormatReader(
+                    file);
+            SeekableAudioSource first = mappedReader.createAudioSource();
+            SeekableAudioSource second = mappedReader.createAudioSource();
+            mappedReader.close();
+            assertEquals(reader.getAudioStreamDescriptor().getSampleCount(),
+                    first.getDescriptor().getSampleCount());
+
+            int sampleIndex = 0;
+
+            while (expected.next()) {
+                assertTrue("Mapped source is prematurely out of samples",
+                        first.next());
+                assertEquals("Wrong sample value at index " + sampleIndex,
+                        expected.getSample(0), first.getSample(0), 0);
+                ++sampleIndex;
+            }
+
+            assertFalse(first.next());
+            expected.close();
+
+            second.seekPosition(100);
+            first.seekPosition(99);
+            first.skip(1);
+            assertTrue(first.next());
+            assertTrue(second.next());
+            assertEquals(first.getSample(0), second.getSample(0), 0);
+
+            double[][] block = new double[1][10];
+            first.rewind();
+            assertEquals(10, first.read(block, 0, 10));
+            second.rewind();
+
+            for (int i = 0; i < 10; ++i) {
+                assertTrue(second.next());
+                assertEquals(second.getSample(0), block[0][i], 0);
+            }
+        } catch (InvalidAudioFormatException e) {
+            fail("Audio format could not be parsed. Reason: " + e.getMessage());
+        } catch (IOException e) {
+            fail("IOException while trying to read file.");
+        } catch (AudioDecodingException e) {
+            fail("Could not create audio source.");
+        } catch (URISyntaxException e) {
+            fail("Could not locate test file.");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.nobu_games.audio.format;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import com.nobu_games.audio.format.wave.MappedWaveFormatReader;
+import com.nobu_games.audio.format.wave.ParallelWaveTranscoder;
+import com.nobu_games.audio.format.wave.WaveTranscoder;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.ResamplerQuality;
+
+import junit.framework.TestCase;
+
+public class ParallelWaveTranscoderTest extends TestCase {
+    private static void assertSameOutput(File input, int sampleRate,
+            int channelCount, ForkJoinPool pool) throws IOException,
+            AudioDecodingException, AudioEncodingException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        FileChannel inputChannel = new RandomAccessFile(input, "r")
+                .getChannel();
+
+        try {
+            new WaveTranscoder(sampleRate, channelCount).transcode(
+                    inputChannel, Channels.newChannel(expected));
+        } finally {
+            inputChannel.close();
+        }
+
+        File output = File.createTempFile("parallel", ".wav");
+        MappedWaveFormatReader reader = new MappedWaveFormatReader(input);
+        FileChannel outputChannel = new RandomAccessFile(output, "rw")
+                .getChannel();
+
+        try {
+            long size = new ParallelWaveTranscoder(sampleRate, channelCount,
+                    ResamplerQuality.HIGH, pool, 1000).transcode(reader,
+                    outputChannel);
+            assertEquals(expected.size(), size);
+            assertEquals(size, outputChannel.size());
+            ByteBuffer actual = ByteBuffer.allocate((int) size);
+            outputChannel.read(actual, 0);
+            assertTrue("Parallel output differs for " + sampleRate + " Hz",
+                    Arrays.equals(expected.toByteArray(), actual.array()));
+        } finally {
+            outputChannel.close();
+            reader.close();
+            output.delete();
+        }
+    }
+
+    public void testMatchesSerialTranscoding() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            File input = WaveTestFiles.createWaveFile(22050, 12345);
+
+            try {
+                assertSameOutput(input, 44100, WaveTranscoder.KEEP, pool);
+                assertSameOutput(input, 88200, 1, pool);
+                assertSameOutput(input, 48000, WaveTranscoder.KEEP, pool);
+                assertSameOutput(input, 8000, 1, pool);
+                assertSameOutput(input, WaveTranscoder.KEEP, 1, pool);
+            } finally {
+                input.delete();
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
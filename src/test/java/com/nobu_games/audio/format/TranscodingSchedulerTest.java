@@ -0,0 +1,209 @@
+package com.nobu_games.audio.format;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.format.wave.WaveAudioDataFormat;
+import com.nobu_games.audio.format.wave.WaveFormatReader;
+import com.nobu_games.audio.format.wave.WaveFormatWriter;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.AudioSource;
+import com.nobu_games.audio.source.DoubleArrayAudioSource;
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+
+import junit.framework.TestCase;
+
+public class TranscodingSchedulerTest extends TestCase {
+    private static final PCMAudioStreamDescriptor DESCRIPTOR = new PCMAudioStreamDescriptor(
+            2, (short) 16, 22050, -1, 0);
+
+    public void testCancellation() {
+        ExecutorService executor = TranscodingScheduler
+                .createVirtualThreadExecutor();
+        // Room for a single stereo job only
+        TranscodingScheduler scheduler = new TranscodingScheduler(executor,
+                (long) TranscodingScheduler.estimateMemory(DESCRIPTOR, 44100,
+                        TranscodingScheduler.KEEP) << 10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch firstClosed = new CountDownLatch(1);
+        CountDownLatch secondClosed = new CountDownLatch(1);
+
+        try {
+            Future<Long> first = scheduler.submit(new EndlessReader(started),
+                    44100, TranscodingScheduler.KEEP, new ClosingWriter(
+                            firstClosed));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(0, scheduler.getAvailableMemory());
+            Future<Long> second = scheduler.submit(new EndlessReader(
+                    new CountDownLatch(1)), 44100, 1, new ClosingWriter(
+                    secondClosed));
+            assertTrue(second.cancel(false));
+            assertTrue(secondClosed.await(5, TimeUnit.SECONDS));
+            assertTrue(first.cancel(false));
+            assertTrue(first.isCancelled());
+            assertTrue(firstClosed.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            fail("Interrupted");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testEstimateMemory() {
+        final int keep = TranscodingScheduler.estimateMemory(DESCRIPTOR,
+                TranscodingScheduler.KEEP, TranscodingScheduler.KEEP);
+        final int resample = TranscodingScheduler.estimateMemory(DESCRIPTOR,
+                44100, TranscodingScheduler.KEEP);
+
+        // Two blocks in the decoder and two in the writer, 8 bytes each
+        assertEquals(2 * 4 * TranscodingScheduler.BLOCK_FRAMES * 8 / 1024,
+                keep);
+        assertEquals(keep, TranscodingScheduler.estimateMemory(DESCRIPTOR,
+                22050, TranscodingScheduler.KEEP));
+        assertTrue(resample > keep);
+        assertTrue("Resampling with a longer filter needs more memory",
+                TranscodingScheduler.estimateMemory(DESCRIPTOR, 48000,
+                        TranscodingScheduler.KEEP) > resample);
+    }
+
+    /**
+     * A job that is interrupted while waiting for memory must keep the
+     * interrupt flag of its thread.
+     */
+    public void testInterruptedWhileWaiting() {
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        TranscodingScheduler scheduler = new TranscodingScheduler(direct);
+        CountDownLatch closed = new CountDownLatch(1);
+        Thread.currentThread().interrupt();
+        Future<Long> future = scheduler.submit(new EndlessReader(
+                new CountDownLatch(1)), 44100, 1, new ClosingWriter(closed));
+        assertTrue(Thread.interrupted());
+        assertEquals(0, closed.getCount());
+
+        try {
+            future.get();
+            fail("Interrupted job completed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InterruptedIOException);
+        } catch (InterruptedException e) {
+            fail("Interrupted");
+        }
+    }
+
+    public void testTranscoding() {
+        final int frames = 5000;
+        double[] samples = new double[frames * 2];
+
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = Math.random() * 2.0 - 1.0;
+        }
+
+        ExecutorService executor = TranscodingScheduler
+                .createVirtualThreadExecutor();
+        TranscodingScheduler scheduler = new TranscodingScheduler(executor);
+
+        try {
+            ByteArrayOutputStream input = new ByteArrayOutputStream();
+            WaveFormatWriter inputWriter = new WaveFormatWriter(input,
+                    WaveAudioDataFormat.LINEAR_PCM);
+            inputWriter.write(new DoubleArrayAudioSource(
+                    new PCMAudioStreamDescriptor(2, (short) 16, 22050, frames,
+                            0), samples));
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            Future<Long> result = scheduler.submit(new WaveFormatReader(
+                    new ByteArrayInputStream(input.toByteArray())), 44100, 1,
+                    new WaveFormatWriter(output,
+                            WaveAudioDataFormat.LINEAR_PCM));
+            assertEquals(frames * 2, result.get().longValue());
+            assertEquals(TranscodingScheduler.DEFAULT_MEMORY_BUDGET,
+                    scheduler.getAvailableMemory());
+
+            AudioStreamDescriptor descriptor = new WaveFormatReader(
+                    new ByteArrayInputStream(output.toByteArray()))
+                    .getAudioStreamDescriptor();
+            assertEquals(44100, descriptor.getMaximumSampleRate(0));
+            assertEquals(1, descriptor.getChannelCount());
+            assertEquals(frames * 2, descriptor.getSampleCount());
+        } catch (InterruptedException e) {
+            fail("Interrupted");
+        } catch (ExecutionException e) {
+            fail("Transcoding failed: " + e.getCause());
+        } catch (Exception e) {
+            fail("Unexpected exception " + e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Writer that consumes its source and signals when it is closed.
+     */
+    private static class ClosingWriter implements ContainerFormatWriter {
+        private final CountDownLatch mClosed;
+
+        ClosingWriter(CountDownLatch closed) {
+            mClosed = closed;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mClosed.countDown();
+        }
+
+        @Override
+        public void write(AudioSource source) throws IOException {
+            double[][] block = new double[source.getDescriptor()
+                    .getChannelCount()][256];
+
+            while (source.read(block, 0, 256) > 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Reader of an audio stream that never ends.
+     */
+    private static class EndlessReader implements ContainerFormatReader {
+        private final CountDownLatch mStarted;
+
+        EndlessReader(CountDownLatch started) {
+            mStarted = started;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+
+        @Override
+        public AudioSource createAudioSource() throws IOException,
+                AudioDecodingException {
+            mStarted.countDown();
+            return new DoubleArrayAudioSource(DESCRIPTOR, new double[2]) {
+                @Override
+                public int read(double[][] dst, int offset, int frames) {
+                    return frames;
+                }
+            };
+        }
+
+        @Override
+        public AudioStreamDescriptor getAudioStreamDescriptor() {
+            return DESCRIPTOR;
+        }
+    }
+}
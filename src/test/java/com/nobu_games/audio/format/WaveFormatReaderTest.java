@@ -1,12 +1,16 @@
 package com.nobu_games.audio.format;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import com.nobu_games.audio.AudioStreamDescriptor;
 import com.nobu_games.audio.format.wave.WaveFormatReader;
 import com.nobu_games.audio.source.AudioDecodingException;
 import com.nobu_games.audio.source.AudioSource;
+import com.nobu_games.audio.source.FloatAudioSource;
 
 import junit.framework.TestCase;
 
@@ -39,4 +43,181 @@ public class WaveFormatReaderTest extends TestCase {
             e.printStackTrace();
         }
     }
+
+    public void testExtensibleFormat() {
+        ByteBuffer buffer = ByteBuffer.allocate(68 + 3 * 8).order(
+                ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[] { 'R', 'I', 'F', 'F' }).putInt(
+                buffer.capacity() - 8);
+        buffer.put(new byte[] { 'W', 'A', 'V', 'E', 'f', 'm', 't', ' ' });
+        buffer.putInt(40).putShort((short) 0xfffe).putShort((short) 1);
+        buffer.putInt(96000).putInt(96000 * 8).putShort((short) 8)
+                .putShort((short) 64);
+        // Extension size, valid bits, channel mask and sub format GUID
+        buffer.putShort((short) 22).putShort((short) 64).putInt(4);
+        buffer.putShort((short) 3).put(new byte[14]);
+        buffer.put(new byte[] { 'd', 'a', 't', 'a' }).putInt(3 * 8);
+        buffer.putDouble(0.5).putDouble(-1.25).putDouble(1e-9);
+
+        try {
+            WaveFormatReader reader = new WaveFormatReader(
+                    new ByteArrayInputStream(buffer.array()));
+            AudioStreamDescriptor descriptor = reader
+                    .getAudioStreamDescriptor();
+            assertEquals(AudioStreamDescriptor.FLAG_FLOATING_POINT,
+                    descriptor.getFlags());
+            assertEquals(64, descriptor.getMaximumBitsPerSample(0));
+            assertEquals(3, descriptor.getSampleCount());
+            assertEquals(68, reader.getDataOffset());
+            AudioSource source = reader.createAudioSource();
+            assertTrue(source.next());
+            assertEquals(0.5, source.getSample(0), 0);
+            assertTrue(source.next());
+            assertEquals(-1.25, source.getSample(0), 0);
+            assertTrue(source.next());
+            assertEquals(1e-9, source.getSample(0), 0);
+            assertFalse(source.next());
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    public void testChunkWalking() {
+        ByteBuffer buffer = ByteBuffer.allocate(200).order(
+                ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[] { 'R', 'I', 'F', 'F' }).putInt(0);
+        buffer.put(new byte[] { 'W', 'A', 'V', 'E' });
+        // Odd sized chunk with pad byte in front of the fmt chunk
+        buffer.put(new byte[] { 'b', 'e', 'x', 't' }).putInt(5)
+                .put(new byte[6]);
+        buffer.put(new byte[] { 'f', 'm', 't', ' ' }).putInt(16)
+                .putShort((short) 1).putShort((short) 1).putInt(8000)
+                .putInt(16000).putShort((short) 2).putShort((short) 16);
+        buffer.put(new byte[] { 'L', 'I', 'S', 'T' }).putInt(12)
+                .put(new byte[12]);
+        buffer.put(new byte[] { 'f', 'a', 'c', 't' }).putInt(4).putInt(2);
+        buffer.put(new byte[] { 'd', 'a', 't', 'a' }).putInt(4);
+        final int dataOffset = buffer.position();
+        buffer.putShort(Short.MAX_VALUE).putShort(Short.MIN_VALUE);
+        buffer.putInt(4, buffer.position() - 8);
+
+        try {
+            WaveFormatReader reader = new WaveFormatReader(
+                    new ByteArrayInputStream(buffer.array(), 0,
+                            buffer.position()));
+            assertFalse(reader.isRF64());
+            assertEquals(dataOffset, reader.getDataOffset());
+            assertEquals(4, reader.getDataSize());
+            AudioSource source = reader.createAudioSource();
+            assertEquals(2, source.getDescriptor().getSampleCount());
+            assertTrue(source.next());
+            assertEquals(1.0, source.getSample(0), 0);
+            assertTrue(source.next());
+            assertEquals(-1.0, source.getSample(0), 0);
+            assertFalse(source.next());
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    public void testTrailingChunk() {
+        final int frames = 100;
+        ByteBuffer buffer = ByteBuffer.allocate(44 + frames * 4 + 56).order(
+                ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[] { 'R', 'I', 'F', 'F' }).putInt(
+                buffer.capacity() - 8);
+        buffer.put(new byte[] { 'W', 'A', 'V', 'E', 'f', 'm', 't', ' ' });
+        buffer.putInt(16).putShort((short) 1).putShort((short) 2)
+                .putInt(8000).putInt(32000).putShort((short) 4)
+                .putShort((short) 16);
+        buffer.put(new byte[] { 'd', 'a', 't', 'a' }).putInt(frames * 4);
+
+        for (int i = 0; i < frames * 2; ++i) {
+            buffer.putShort(Short.MAX_VALUE);
+        }
+
+        // Metadata behind the audio data, which must not be decoded
+        buffer.put(new byte[] { 'L', 'I', 'S', 'T' }).putInt(48);
+        buffer.put(new byte[] { 'I', 'N', 'F', 'O', 'I', 'N', 'A', 'M' })
+                .putInt(36);
+
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 'x');
+        }
+
+        try {
+            WaveFormatReader reader = new WaveFormatReader(
+                    new ByteArrayInputStream(buffer.array()));
+            AudioSource source = reader.createAudioSource();
+            assertEquals(frames, source.getDescriptor().getSampleCount());
+            int count = 0;
+
+            while (source.next()) {
+                assertEquals(1.0, source.getSample(1), 0);
+                ++count;
+            }
+
+            assertEquals(frames, count);
+
+            reader = new WaveFormatReader(new ByteArrayInputStream(
+                    buffer.array()));
+            FloatAudioSource floatSource = reader.createFloatAudioSource();
+            float[][] block = new float[2][frames + 50];
+            assertEquals(frames, floatSource.read(block, 0, frames + 50));
+            assertEquals(1f, block[0][frames - 1], 0);
+            assertEquals(-1, floatSource.read(block, 0, 10));
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    public void testMissingFormat() {
+        ByteBuffer buffer = ByteBuffer.allocate(20).order(
+                ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[] { 'R', 'I', 'F', 'F' }).putInt(12);
+        buffer.put(new byte[] { 'W', 'A', 'V', 'E', 'd', 'a', 't', 'a' })
+                .putInt(0);
+
+        try {
+            new WaveFormatReader(new ByteArrayInputStream(buffer.array()));
+            fail("Data chunk without fmt chunk must be rejected");
+        } catch (InvalidAudioFormatException e) {
+            // Expected
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+
+    public void testRF64() {
+        ByteBuffer buffer = ByteBuffer.allocate(88).order(
+                ByteOrder.LITTLE_ENDIAN);
+        buffer.put(new byte[] { 'B', 'W', '6', '4' }).putInt(-1);
+        buffer.put(new byte[] { 'W', 'A', 'V', 'E', 'd', 's', '6', '4' });
+        buffer.putInt(28).putLong(80).putLong(8).putLong(4).putInt(0);
+        buffer.put(new byte[] { 'f', 'm', 't', ' ' }).putInt(16)
+                .putShort((short) 1).putShort((short) 1).putInt(8000)
+                .putInt(16000).putShort((short) 2).putShort((short) 16);
+        buffer.put(new byte[] { 'd', 'a', 't', 'a' }).putInt(-1);
+        buffer.putShort((short) 1).putShort((short) 2).putShort((short) 3)
+                .putShort((short) 4);
+
+        try {
+            WaveFormatReader reader = new WaveFormatReader(
+                    new ByteArrayInputStream(buffer.array()));
+            assertTrue(reader.isRF64());
+            assertEquals(80, reader.getDataOffset());
+            assertEquals(8, reader.getDataSize());
+            assertEquals(4, reader.getAudioStreamDescriptor().getSampleCount());
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        }
+    }
 }
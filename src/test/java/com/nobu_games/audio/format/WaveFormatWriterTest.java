@@ -1,22 +1,280 @@
 package com.nobu_games.audio.format;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.format.wave.MappedWaveFormatReader;
 import com.nobu_games.audio.format.wave.WaveAudioDataFormat;
 import com.nobu_games.audio.format.wave.WaveFormatReader;
 import com.nobu_games.audio.format.wave.WaveFormatWriter;
 import com.nobu_games.audio.sink.AudioEncodingException;
 import com.nobu_games.audio.source.AudioDecodingException;
 import com.nobu_games.audio.source.AudioSource;
+import com.nobu_games.audio.source.DoubleArrayAudioSource;
+import com.nobu_games.audio.source.DoubleToFloatAudioSource;
+import com.nobu_games.audio.source.FloatAudioSource;
 import com.nobu_games.audio.source.ResampledAudioSource;
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
 import com.nobu_games.common.io.FileTool;
 
 public class WaveFormatWriterTest extends TestCase {
+    private static final int FRAMES = 3000;
+
+    /**
+     * Creates a stereo source of unknown length.
+     */
+    private static AudioSource createLiveSource() {
+        double[] samples = new double[FRAMES * 2];
+
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = Math.random() * 1.6 - 0.8;
+        }
+
+        return new DoubleArrayAudioSource(new PCMAudioStreamDescriptor(2,
+                (short) 16, 22050, -1, 0), samples);
+    }
+
+    private static int countFrames(AudioSource source) throws IOException {
+        double[][] block = new double[2][256];
+        int total = 0;
+        int count;
+
+        while ((count = source.read(block, 0, 256)) > 0) {
+            total += count;
+        }
+
+        return total;
+    }
+
+    private static double[] createSamples(int count, double amplitude) {
+        double[] samples = new double[count];
+
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = (float) ((Math.random() * 2.0 - 1.0) * amplitude);
+        }
+
+        return samples;
+    }
+
+    private static long getSize(ByteBuffer header, int position) {
+        return header.getInt(position) & 0xffffffffL;
+    }
+
+    public void test24BitRoundTrip() {
+        double[] samples = createSamples(FRAMES * 2, 1.0);
+
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            new WaveFormatWriter(output, WaveAudioDataFormat.LINEAR_PCM)
+                    .write(new DoubleArrayAudioSource(
+                            new PCMAudioStreamDescriptor(2, (short) 24, 48000,
+                                    FRAMES, 0), samples));
+            assertEquals(44 + FRAMES * 6, output.size());
+
+            AudioSource source = new WaveFormatReader(new ByteArrayInputStream(
+                    output.toByteArray())).createAudioSource();
+            assertEquals(24, source.getDescriptor().getMaximumBitsPerSample(0));
+            double[][] block = new double[2][FRAMES];
+            assertEquals(FRAMES, source.read(block, 0, FRAMES));
+
+            for (int frame = 0; frame < FRAMES; ++frame) {
+                assertEquals(samples[frame * 2], block[0][frame],
+                        1.0 / (1 << 23));
+                assertEquals(samples[frame * 2 + 1], block[1][frame],
+                        1.0 / (1 << 23));
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    public void testFloatPassthrough() {
+        // Floating point samples are neither clamped nor quantized
+        double[] samples = createSamples(FRAMES * 2, 4.0);
+
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            WaveFormatWriter writer = new WaveFormatWriter(output,
+                    WaveAudioDataFormat.IEEE_FLOAT);
+            AudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(2,
+                    (short) 16, 44100, FRAMES, 0);
+            writer.write(new DoubleArrayAudioSource(descriptor, samples));
+            assertEquals(44 + FRAMES * 8, output.size());
+            assertEquals(output.size(), writer.getFileSize(descriptor));
+            byte[] data = output.toByteArray();
+
+            WaveFormatReader reader = new WaveFormatReader(
+                    new ByteArrayInputStream(data));
+            descriptor = reader.getAudioStreamDescriptor();
+            assertEquals(32, descriptor.getMaximumBitsPerSample(0));
+            assertEquals(AudioStreamDescriptor.FLAG_FLOATING_POINT,
+                    descriptor.getFlags());
+            FloatAudioSource source = reader.createFloatAudioSource();
+            float[][] block = new float[2][FRAMES];
+            assertEquals(FRAMES, source.read(block, 0, FRAMES));
+
+            for (int frame = 0; frame < FRAMES; ++frame) {
+                assertEquals(samples[frame * 2], block[0][frame], 0);
+                assertEquals(samples[frame * 2 + 1], block[1][frame], 0);
+            }
+
+            // Single precision float to float copies are bit-exact
+            output = new ByteArrayOutputStream();
+            reader = new WaveFormatReader(new ByteArrayInputStream(data));
+            new WaveFormatWriter(output, WaveAudioDataFormat.IEEE_FLOAT)
+                    .write(reader.createFloatAudioSource());
+            assertTrue(Arrays.equals(data, output.toByteArray()));
+
+            // 64 bit streams are written as doubles
+            output = new ByteArrayOutputStream();
+            new WaveFormatWriter(output, WaveAudioDataFormat.IEEE_FLOAT)
+                    .write(DoubleToFloatAudioSource
+                            .adapt(new DoubleArrayAudioSource(
+                                    new PCMAudioStreamDescriptor(2, (short) 64,
+                                            44100, FRAMES, 0), samples)));
+            assertEquals(44 + FRAMES * 16, output.size());
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    public void testRF64Header() {
+        // 8 GiB of stereo 16 bit audio data
+        final long sampleCount = 1L << 31;
+        AudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(2,
+                (short) 16, 44100, sampleCount, 0);
+
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            WaveFormatWriter writer = new WaveFormatWriter(output,
+                    WaveAudioDataFormat.LINEAR_PCM);
+            writer.writeHeader(descriptor);
+            assertEquals(80, output.size());
+            assertEquals(80 + sampleCount * 4, writer.getFileSize(descriptor));
+
+            ByteBuffer header = ByteBuffer.wrap(output.toByteArray()).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            assertEquals('R', header.get(0));
+            assertEquals('6', header.get(2));
+            assertEquals(0xffffffffL, getSize(header, 4));
+            assertEquals(0xffffffffL, getSize(header, 76));
+
+            WaveFormatReader reader = new WaveFormatReader(
+                    new ByteArrayInputStream(output.toByteArray()));
+            assertTrue(reader.isRF64());
+            assertEquals(80, reader.getDataOffset());
+            assertEquals(sampleCount * 4, reader.getDataSize());
+            assertEquals(sampleCount, reader.getAudioStreamDescriptor()
+                    .getSampleCount());
+
+            // Just below the limit a plain RIFF header is written
+            descriptor = new PCMAudioStreamDescriptor(1, (short) 8, 8000,
+                    0xffffffffL - 36 - 1, 0);
+            output = new ByteArrayOutputStream();
+            new WaveFormatWriter(output, WaveAudioDataFormat.LINEAR_PCM)
+                    .writeHeader(descriptor);
+            assertEquals(44, output.size());
+            assertEquals(0xffffffffL - 1,
+                    getSize(ByteBuffer.wrap(output.toByteArray()).order(
+                            ByteOrder.LITTLE_ENDIAN), 4));
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    public void testSeekableChannel() {
+        try {
+            File file = File.createTempFile("seekable", ".wav");
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            FileChannel channel = raf.getChannel();
+
+            try {
+                WaveFormatWriter writer = new WaveFormatWriter(channel,
+                        WaveAudioDataFormat.LINEAR_PCM);
+                writer.write(createLiveSource());
+                writer.close();
+                assertFalse(channel.isOpen());
+                // The header reserves room for a ds64 chunk
+                assertEquals(80 + FRAMES * 4, file.length());
+
+                channel = new RandomAccessFile(file, "r").getChannel();
+                ByteBuffer header = ByteBuffer.allocate(80).order(
+                        ByteOrder.LITTLE_ENDIAN);
+                channel.read(header, 0);
+                channel.close();
+                assertEquals(72 + FRAMES * 4, getSize(header, 4));
+                assertEquals('J', header.get(12));
+                assertEquals(FRAMES * 4, getSize(header, 76));
+
+                MappedWaveFormatReader reader = new MappedWaveFormatReader(
+                        file);
+                assertEquals(FRAMES, reader.getAudioStreamDescriptor()
+                        .getSampleCount());
+                reader.close();
+            } finally {
+                raf.close();
+                file.delete();
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    public void testStreaming() {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            new WaveFormatWriter(output, WaveAudioDataFormat.LINEAR_PCM)
+                    .write(createLiveSource());
+            assertEquals(44 + FRAMES * 4, output.size());
+
+            ByteBuffer header = ByteBuffer.wrap(output.toByteArray()).order(
+                    ByteOrder.LITTLE_ENDIAN);
+            assertEquals(0xffffffffL, getSize(header, 4));
+            assertEquals(0xffffffffL, getSize(header, 40));
+
+            WaveFormatReader reader = new WaveFormatReader(
+                    new ByteArrayInputStream(output.toByteArray()));
+            AudioStreamDescriptor descriptor = reader
+                    .getAudioStreamDescriptor();
+            assertEquals(-1, descriptor.getSampleCount());
+            assertEquals(FRAMES, countFrames(reader.createAudioSource()));
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+
     public void testWaveFormatWriter() {
         InputStream is = getClass().getClassLoader().getResourceAsStream(
                 "0.wav");
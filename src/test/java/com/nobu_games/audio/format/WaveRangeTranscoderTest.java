@@ -0,0 +1,215 @@
+package com.nobu_games.audio.format;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.nobu_games.audio.format.wave.MappedWaveFormatReader;
+import com.nobu_games.audio.format.wave.WaveFormatReader;
+import com.nobu_games.audio.format.wave.WaveRangeTranscoder;
+import com.nobu_games.audio.format.wave.WaveRangeTranscoder.InputRange;
+import com.nobu_games.audio.format.wave.WaveTranscoder;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.DoubleArrayAudioSource;
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+import com.nobu_games.audio.stream.pcm.SeekablePCMAudioSource;
+
+import junit.framework.TestCase;
+
+public class WaveRangeTranscoderTest extends TestCase {
+    private static void assertSameRanges(File input, int sampleRate,
+            int channelCount) throws IOException, AudioDecodingException,
+            AudioEncodingException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        FileChannel inputChannel = new RandomAccessFile(input, "r")
+                .getChannel();
+
+        try {
+            new WaveTranscoder(sampleRate, channelCount).transcode(
+                    inputChannel, Channels.newChannel(expected));
+        } finally {
+            inputChannel.close();
+        }
+
+        byte[] file = expected.toByteArray();
+        WaveRangeTranscoder transcoder = new WaveRangeTranscoder(sampleRate,
+                channelCount);
+        MappedWaveFormatReader reader = new MappedWaveFormatReader(input);
+        inputChannel = new RandomAccessFile(input, "r").getChannel();
+        WaveFormatReader header = new WaveFormatReader(
+                Channels.newInputStream(inputChannel));
+        SeekablePCMAudioSource source = new SeekablePCMAudioSource(
+                inputChannel, header.getDataOffset(), header.getByteOrder(),
+                header.getAudioStreamDescriptor());
+        Random random = new Random(sampleRate);
+
+        try {
+            assertEquals(file.length, transcoder.getOutputSize(reader));
+            assertEquals(file.length, transcoder.getOutputSize(source));
+            List<int[]> ranges = new ArrayList<int[]>();
+            ranges.add(new int[] { 0, file.length });
+            ranges.add(new int[] { 0, 10 });
+            ranges.add(new int[] { 40, 9 });
+            ranges.add(new int[] { file.length - 1, 1 });
+            ranges.add(new int[] { file.length, 0 });
+
+            for (int i = 0; i < 20; ++i) {
+                int position = random.nextInt(file.length);
+                int length = random.nextInt(file.length - position + 1);
+                ranges.add(new int[] { position, length });
+            }
+
+            for (int[] range : ranges) {
+                ByteArrayOutputStream mapped = new ByteArrayOutputStream();
+                assertEquals(range[1], transcoder.transcode(reader, range[0],
+                        range[1], Channels.newChannel(mapped)));
+                assertRange(file, range, mapped);
+                ByteArrayOutputStream seekable = new ByteArrayOutputStream();
+                assertEquals(range[1], transcoder.transcode(source, range[0],
+                        range[1], Channels.newChannel(seekable)));
+                assertRange(file, range, seekable);
+            }
+        } finally {
+            reader.close();
+            source.close();
+        }
+    }
+
+    private static void assertRange(byte[] file, int[] range,
+            ByteArrayOutputStream actual) {
+        assertTrue("Range " + range[0] + "+" + range[1] + " differs",
+                Arrays.equals(Arrays.copyOfRange(file, range[0], range[0]
+                        + range[1]), actual.toByteArray()));
+    }
+
+    public void testMatchesCompleteTranscoding() {
+        try {
+            File input = WaveTestFiles.createWaveFile(22050, 12345);
+
+            try {
+                assertSameRanges(input, 44100, 1);
+                assertSameRanges(input, 48000, WaveTranscoder.KEEP);
+                assertSameRanges(input, 8000, 1);
+                assertSameRanges(input, WaveTranscoder.KEEP,
+                        WaveTranscoder.KEEP);
+            } finally {
+                input.delete();
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    public void testRangeBeyondIntPositions() {
+        final long frames = 1L << 33;
+        final long offset = 3000000000L;
+        PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(2,
+                (short) 16, 22050, frames, 0);
+        WaveRangeTranscoder transcoder = new WaveRangeTranscoder(8000, 1);
+        InputRange range = transcoder.getInputRange(descriptor, offset, 1000);
+
+        // 22050 to 8000 Hz decimates by 441 and interpolates by 160
+        assertTrue(range.getStart() > Integer.MAX_VALUE);
+        assertEquals(0, range.getStart() % 441);
+        assertEquals(offset, range.getStart() / 441 * 160 + range.getWarmup());
+        assertTrue(range.getEnd() > range.getStart() + (1000 * 441 / 160));
+        assertTrue(range.getWarmup() > 0 && range.getWarmup() < 1000);
+
+        try {
+            transcoder.createAudioSource(new DoubleArrayAudioSource(
+                    descriptor, new double[2]), offset, 1000);
+            fail("Input range beyond int positions was accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+
+    public void testRangeOutsideOfFile() {
+        try {
+            File input = WaveTestFiles.createWaveFile(22050, 100);
+            MappedWaveFormatReader reader = new MappedWaveFormatReader(input);
+
+            try {
+                WaveRangeTranscoder transcoder = new WaveRangeTranscoder(
+                        44100, 1);
+                long size = transcoder.getOutputSize(reader);
+                transcoder.transcode(reader, size - 10, 11,
+                        Channels.newChannel(new ByteArrayOutputStream()));
+                fail("Range beyond the end of the file was accepted");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            } finally {
+                reader.close();
+                input.delete();
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    public void testStalledOutput() {
+        try {
+            File input = WaveTestFiles.createWaveFile(22050, 100);
+            MappedWaveFormatReader reader = new MappedWaveFormatReader(input);
+            // Channel that never takes any bytes
+            WritableByteChannel output = new WritableByteChannel() {
+                @Override
+                public void close() {
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+
+                @Override
+                public int write(ByteBuffer src) {
+                    return 0;
+                }
+            };
+
+            try {
+                WaveRangeTranscoder transcoder = new WaveRangeTranscoder(
+                        44100, 1);
+
+                for (long position : new long[] { 0, 100 }) {
+                    try {
+                        transcoder.transcode(reader, position, 10, output);
+                        fail("Stalled output channel was not detected");
+                    } catch (IOException e) {
+                        // Expected
+                    }
+                }
+            } finally {
+                reader.close();
+                input.delete();
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+}
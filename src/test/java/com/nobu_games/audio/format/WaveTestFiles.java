@@ -0,0 +1,60 @@
+package com.nobu_games.audio.format;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import com.nobu_games.audio.format.wave.WaveAudioDataFormat;
+import com.nobu_games.audio.format.wave.WaveFormatWriter;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.DoubleArrayAudioSource;
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+
+/**
+ * Creates the wave files that the transcoder tests work on.
+ * 
+ * @author ti
+ */
+final class WaveTestFiles {
+    private WaveTestFiles() {
+    }
+
+    /**
+     * Creates a temporary 16 bit stereo wave file. The left channel is a sine
+     * wave, the right channel is noise. The noise is seeded with the amount
+     * of frames, so a file of the same length always has the same content.
+     * 
+     * @param sampleRate
+     *            Sample rate of the file.
+     * @param frames
+     *            Amount of frames.
+     * @return Temporary file, which the caller deletes.
+     */
+    static File createWaveFile(int sampleRate, int frames)
+            throws IOException, AudioDecodingException,
+            AudioEncodingException {
+        Random random = new Random(frames);
+        double[] samples = new double[frames * 2];
+
+        for (int i = 0; i < frames; ++i) {
+            samples[i * 2] = 0.5 * Math.sin(i * 0.05);
+            samples[i * 2 + 1] = random.nextDouble() * 1.6 - 0.8;
+        }
+
+        File file = File.createTempFile("input", ".wav");
+        WaveFormatWriter writer = new WaveFormatWriter(new FileOutputStream(
+                file), WaveAudioDataFormat.LINEAR_PCM);
+
+        try {
+            writer.write(new DoubleArrayAudioSource(
+                    new PCMAudioStreamDescriptor(2, (short) 16, sampleRate,
+                            frames, 0), samples));
+        } finally {
+            writer.close();
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,145 @@
+package com.nobu_games.audio.format;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.format.wave.WaveFormatReader;
+import com.nobu_games.audio.format.wave.WaveTranscoder;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+
+import junit.framework.TestCase;
+
+public class WaveTranscoderTest extends TestCase {
+    private static byte[] transcode(File input, WaveTranscoder transcoder,
+            WritableByteChannel output, ByteArrayOutputStream bytes)
+            throws IOException, AudioDecodingException,
+            AudioEncodingException {
+        FileChannel channel = new RandomAccessFile(input, "r").getChannel();
+
+        try {
+            long size = transcoder.getOutputSize(channel);
+            assertEquals(size, transcoder.transcode(channel, output));
+            assertEquals(size, bytes.size());
+        } finally {
+            channel.close();
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static byte[] transcode(File input, WaveTranscoder transcoder)
+            throws IOException, AudioDecodingException,
+            AudioEncodingException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        return transcode(input, transcoder, Channels.newChannel(output),
+                output);
+    }
+
+    public void testDecode() {
+        try {
+            File input = WaveTestFiles.createWaveFile(22050, 3000);
+
+            try {
+                byte[] output = transcode(input, new WaveTranscoder(44100, 1));
+                WaveFormatReader reader = new WaveFormatReader(
+                        new ByteArrayInputStream(output));
+                AudioStreamDescriptor descriptor = reader
+                        .getAudioStreamDescriptor();
+                assertEquals(1, descriptor.getChannelCount());
+                assertEquals(44100, descriptor.getMaximumSampleRate(0));
+                assertEquals(16, descriptor.getMaximumBitsPerSample(0));
+                assertEquals(6000, descriptor.getSampleCount());
+                assertEquals(output.length - reader.getDataOffset(),
+                        reader.getDataSize());
+            } finally {
+                input.delete();
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    public void testPassthrough() {
+        try {
+            File input = WaveTestFiles.createWaveFile(22050, 3000);
+
+            try {
+                byte[] output = transcode(input, new WaveTranscoder(22050,
+                        WaveTranscoder.KEEP));
+                assertTrue(Arrays.equals(Files.readAllBytes(input.toPath()),
+                        output));
+            } finally {
+                input.delete();
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    public void testPassthroughStalledOutput() {
+        try {
+            File input = WaveTestFiles.createWaveFile(22050, 3000);
+
+            try {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                final WritableByteChannel target = Channels.newChannel(bytes);
+                // Takes nothing from the buffers of up to 8 KiB through which
+                // transferTo copies to channels of unknown type, so that
+                // transferTo never makes progress. The header is written in
+                // smaller pieces.
+                WritableByteChannel output = new WritableByteChannel() {
+                    @Override
+                    public void close() throws IOException {
+                        target.close();
+                    }
+
+                    @Override
+                    public boolean isOpen() {
+                        return target.isOpen();
+                    }
+
+                    @Override
+                    public int write(ByteBuffer src) throws IOException {
+                        final int remaining = src.remaining();
+                        if (remaining > 1000 && remaining <= 8192)
+                            return 0;
+                        return target.write(src);
+                    }
+                };
+
+                byte[] result = transcode(input, new WaveTranscoder(
+                        WaveTranscoder.KEEP, WaveTranscoder.KEEP), output,
+                        bytes);
+                assertTrue(Arrays.equals(Files.readAllBytes(input.toPath()),
+                        result));
+            } finally {
+                input.delete();
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+}
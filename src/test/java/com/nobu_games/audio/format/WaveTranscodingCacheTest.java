@@ -0,0 +1,239 @@
+package com.nobu_games.audio.format;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.nobu_games.audio.format.wave.WaveTranscoder;
+import com.nobu_games.audio.format.wave.WaveTranscodingCache;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+
+import junit.framework.TestCase;
+
+public class WaveTranscodingCacheTest extends TestCase {
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("cache", "");
+        directory.delete();
+        directory.mkdir();
+        return directory;
+    }
+
+    private static void delete(File directory) {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+
+        directory.delete();
+    }
+
+    private static byte[] transcode(File input, WaveTranscoder transcoder)
+            throws IOException, AudioDecodingException,
+            AudioEncodingException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        FileChannel channel = new RandomAccessFile(input, "r").getChannel();
+
+        try {
+            transcoder.transcode(channel, Channels.newChannel(output));
+        } finally {
+            channel.close();
+        }
+
+        return output.toByteArray();
+    }
+
+    private static byte[] transcode(WaveTranscodingCache cache, File input,
+            WaveTranscoder transcoder) throws IOException,
+            AudioDecodingException, AudioEncodingException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long size = cache.transcode(input, transcoder,
+                Channels.newChannel(output));
+        assertEquals(output.size(), size);
+        return output.toByteArray();
+    }
+
+    public void testConcurrentRequests() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            final File directory = createDirectory();
+            final File input = WaveTestFiles.createWaveFile(22050, 20000);
+
+            try {
+                final WaveTranscodingCache cache = new WaveTranscodingCache(
+                        directory, 1 << 20);
+                final CountingTranscoder transcoder = new CountingTranscoder(
+                        44100, 1);
+                final byte[] expected = transcode(input, new WaveTranscoder(
+                        44100, 1));
+                List<Callable<byte[]>> requests = new ArrayList<Callable<byte[]>>();
+
+                for (int i = 0; i < 8; ++i) {
+                    requests.add(new Callable<byte[]>() {
+                        @Override
+                        public byte[] call() throws Exception {
+                            return transcode(cache, input, transcoder);
+                        }
+                    });
+                }
+
+                for (Future<byte[]> result : executor.invokeAll(requests)) {
+                    assertTrue(Arrays.equals(expected, result.get()));
+                }
+
+                assertEquals(1, transcoder.mCount.get());
+                assertEquals(expected.length, cache.getSize());
+                assertEquals(1, directory.listFiles().length);
+            } finally {
+                input.delete();
+                delete(directory);
+            }
+        } catch (Exception e) {
+            fail("Unexpected exception " + e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * A cached file that is deleted outside of the cache must be transcoded
+     * again instead of failing every later request.
+     */
+    public void testDeletedFile() {
+        try {
+            File directory = createDirectory();
+            File input = WaveTestFiles.createWaveFile(22050, 5000);
+
+            try {
+                WaveTranscodingCache cache = new WaveTranscodingCache(
+                        directory, 1 << 20);
+                CountingTranscoder counting = new CountingTranscoder(44100, 1);
+                byte[] expected = transcode(cache, input, counting);
+
+                for (File file : directory.listFiles()) {
+                    assertTrue(file.delete());
+                }
+
+                assertTrue(Arrays.equals(expected,
+                        transcode(cache, input, counting)));
+                assertEquals(2, counting.mCount.get());
+                assertEquals(expected.length, cache.getSize());
+                assertEquals(1, directory.listFiles().length);
+                assertTrue(Arrays.equals(expected,
+                        transcode(cache, input, counting)));
+                assertEquals(2, counting.mCount.get());
+            } finally {
+                input.delete();
+                delete(directory);
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    public void testEviction() {
+        try {
+            File directory = createDirectory();
+            File input = WaveTestFiles.createWaveFile(22050, 5000);
+
+            try {
+                WaveTranscoder mono = new WaveTranscoder(44100, 1);
+                WaveTranscoder stereo = new WaveTranscoder(44100,
+                        WaveTranscoder.KEEP);
+                int monoSize = transcode(input, mono).length;
+                int stereoSize = transcode(input, stereo).length;
+                WaveTranscodingCache cache = new WaveTranscodingCache(
+                        directory, stereoSize + monoSize - 1);
+                transcode(cache, input, mono);
+                transcode(cache, input, stereo);
+                assertEquals(stereoSize, cache.getSize());
+                assertEquals(1, directory.listFiles().length);
+
+                CountingTranscoder counting = new CountingTranscoder(44100,
+                        WaveTranscoder.KEEP);
+                transcode(cache, input, counting);
+                assertEquals(0, counting.mCount.get());
+                counting = new CountingTranscoder(44100, 1);
+                transcode(cache, input, counting);
+                assertEquals(1, counting.mCount.get());
+                assertEquals(monoSize, cache.getSize());
+            } finally {
+                input.delete();
+                delete(directory);
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    public void testPersistence() {
+        try {
+            File directory = createDirectory();
+            File input = WaveTestFiles.createWaveFile(22050, 5000);
+
+            try {
+                WaveTranscoder transcoder = new WaveTranscoder(44100, 1);
+                byte[] expected = transcode(new WaveTranscodingCache(
+                        directory, 1 << 20), input, transcoder);
+                new File(directory, "leftover.tmp").createNewFile();
+
+                WaveTranscodingCache cache = new WaveTranscodingCache(
+                        directory, 1 << 20);
+                assertEquals(expected.length, cache.getSize());
+                assertEquals(1, directory.listFiles().length);
+                CountingTranscoder counting = new CountingTranscoder(44100, 1);
+                assertTrue(Arrays.equals(expected,
+                        transcode(cache, input, counting)));
+                assertEquals(0, counting.mCount.get());
+            } finally {
+                input.delete();
+                delete(directory);
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Transcoder that counts how often it is used.
+     */
+    private static class CountingTranscoder extends WaveTranscoder {
+        final AtomicInteger mCount = new AtomicInteger();
+
+        CountingTranscoder(int sampleRate, int channelCount) {
+            super(sampleRate, channelCount);
+        }
+
+        @Override
+        public long transcode(FileChannel input, WritableByteChannel output)
+                throws IOException, AudioDecodingException,
+                AudioEncodingException {
+            mCount.incrementAndGet();
+            return super.transcode(input, output);
+        }
+    }
+}
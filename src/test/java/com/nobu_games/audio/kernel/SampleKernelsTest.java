@@ -0,0 +1,135 @@
+package com.nobu_games.audio.kernel;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class SampleKernelsTest extends TestCase {
+    /**
+     * Lengths around typical vector sizes, so the vector loops and the scalar
+     * tails are both covered.
+     */
+    private static final int[] LENGTHS = { 0, 1, 3, 7, 8, 9, 31, 64, 1000 };
+
+    private final Random mRandom = new Random(42);
+
+    private double[] createSamples(int length, double range) {
+        double[] samples = new double[length];
+
+        for (int i = 0; i < length; ++i) {
+            samples[i] = (mRandom.nextDouble() * 2 - 1) * range;
+        }
+
+        return samples;
+    }
+
+    public void testAddScaledAndScale() {
+        SampleKernels kernels = SampleKernels.getInstance();
+
+        for (int length : LENGTHS) {
+            double[] src = createSamples(length + 3, 1);
+            double[] dst = createSamples(length + 5, 1);
+            double[] expected = dst.clone();
+            kernels.addScaled(src, 3, 0.3, dst, 5, length);
+
+            for (int i = 0; i < length; ++i) {
+                expected[5 + i] += 0.3 * src[3 + i];
+            }
+
+            assertTrue(Arrays.equals(expected, dst));
+
+            kernels.scale(src, 3, -0.7, dst, 5, length);
+
+            for (int i = 0; i < length; ++i) {
+                expected[5 + i] = -0.7 * src[3 + i];
+            }
+
+            assertTrue(Arrays.equals(expected, dst));
+        }
+    }
+
+    public void testDot() {
+        SampleKernels kernels = SampleKernels.getInstance();
+
+        for (int length : LENGTHS) {
+            double[] a = createSamples(length, 1);
+            double[] b = createSamples(length + 2, 1);
+            double expected = 0;
+
+            for (int i = 0; i < length; ++i) {
+                expected += a[i] * b[2 + i];
+            }
+
+            assertEquals(expected, kernels.dot(a, 0, b, 2, length), 1e-12);
+        }
+    }
+
+    public void testNormalize() {
+        SampleKernels kernels = SampleKernels.getInstance();
+        final int[] depths = { 24, 32 };
+
+        for (int bits : depths) {
+            final int max = (int) ((1L << (bits - 1)) - 1);
+
+            for (int length : LENGTHS) {
+                int[] src = new int[length + 1];
+
+                for (int i = 0; i < src.length; ++i) {
+                    src[i] = mRandom.nextInt() >> (32 - bits);
+                }
+
+                if (length > 2) {
+                    src[1] = -max - 1;
+                    src[2] = max;
+                }
+
+                double[] dst = new double[length];
+                kernels.normalize(src, 1, dst, 0, length, bits);
+
+                for (int i = 0; i < length; ++i) {
+                    final int value = src[1 + i];
+                    assertEquals(value < 0 ? value / (max + 1.0) : value
+                            / (double) max, dst[i], 0);
+                }
+
+                if (length > 2) {
+                    assertEquals(-1.0, dst[0], 0);
+                    assertEquals(1.0, dst[1], 0);
+                }
+            }
+        }
+    }
+
+    public void testQuantize() {
+        SampleKernels kernels = SampleKernels.getInstance();
+        final double[] ranges = { 127.5, 32767.5, 2147483647.5 };
+
+        for (double halfRange : ranges) {
+            for (int length : LENGTHS) {
+                double[] src = createSamples(length, 1.2);
+
+                // Ties and clamping limits
+                if (length > 8) {
+                    src[0] = 0.5 / (halfRange - 0.5);
+                    src[1] = -0.5 / (halfRange + 0.5);
+                    src[2] = -1.5 / (halfRange + 0.5);
+                    src[3] = 1;
+                    src[4] = -1;
+                    src[5] = -0.0;
+                }
+
+                double[] dst = new double[length];
+                kernels.quantize(src, 0, dst, 0, length, halfRange);
+
+                for (int i = 0; i < length; ++i) {
+                    final double value = Math.max(-1, Math.min(1, src[i]));
+                    assertEquals("Wrong value for " + src[i],
+                            (double) Math.round(value
+                                    * (value < 0 ? halfRange + 0.5
+                                            : halfRange - 0.5)), dst[i], 0);
+                }
+            }
+        }
+    }
+}
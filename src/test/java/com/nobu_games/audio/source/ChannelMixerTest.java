@@ -0,0 +1,144 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+
+import junit.framework.TestCase;
+
+public class ChannelMixerTest extends TestCase {
+    private static final int FRAMES = 100;
+
+    private static double[] createSamples(int channels) {
+        double[] samples = new double[FRAMES * channels];
+
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = Math.random() * 2.0 - 1.0;
+        }
+
+        return samples;
+    }
+
+    private static AudioSource createSource(int channels, double[] samples) {
+        return new DoubleArrayAudioSource(new PCMAudioStreamDescriptor(
+                channels, (short) 16, 22050, FRAMES, 0), samples);
+    }
+
+    /**
+     * Mixes the samples with the matrix, reading the mixer in uneven blocks
+     * at an offset and frame by frame.
+     */
+    private static void assertMix(int channels, double[][] matrix,
+            ChannelMixer blockMixer, ChannelMixer frameMixer,
+            double[] samples) throws IOException {
+        final int outputs = matrix.length;
+        assertEquals(outputs, blockMixer.getDescriptor().getChannelCount());
+        double[][] block = new double[outputs][FRAMES + 5];
+        assertEquals(30, blockMixer.read(block, 5, 30));
+        assertEquals(FRAMES - 30, blockMixer.read(block, 35, 80));
+        assertEquals(-1, blockMixer.read(block, 0, 10));
+
+        for (int frame = 0; frame < FRAMES; ++frame) {
+            assertTrue(frameMixer.next());
+
+            for (int output = 0; output < outputs; ++output) {
+                double expected = 0;
+
+                for (int input = 0; input < channels; ++input) {
+                    expected += matrix[output][input]
+                            * samples[frame * channels + input];
+                }
+
+                assertEquals("Wrong block sample at frame " + frame,
+                        expected, block[output][frame + 5], 1e-12);
+                assertEquals("Wrong frame sample at frame " + frame,
+                        expected, frameMixer.getSample(output), 1e-12);
+            }
+        }
+
+        assertFalse(frameMixer.next());
+    }
+
+    private static void assertMatrix(int channels, double[][] matrix)
+            throws IOException {
+        double[] samples = createSamples(channels);
+        assertMix(channels, matrix,
+                new ChannelMixer(createSource(channels, samples), matrix),
+                new ChannelMixer(createSource(channels, samples), matrix),
+                samples);
+    }
+
+    public void testMatrix() {
+        try {
+            assertMatrix(2, new double[][] { { 0.5, 0.5 } });
+            assertMatrix(2, new double[][] { { 1, 0 }, { 0.25, 1 },
+                    { 0, 0 } });
+            assertMatrix(1, new double[][] { { 1 }, { -0.5 } });
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+
+    public void testFactories() {
+        try {
+            double[] samples = createSamples(6);
+            final double front = 1 / (1 + Math.sqrt(2));
+            final double surround = Math.sqrt(0.5) * front;
+            assertMix(6, new double[][] {
+                    { front, 0, surround, 0, surround, 0 },
+                    { 0, front, surround, 0, 0, surround } },
+                    ChannelMixer.createSurroundDownmix(createSource(6, samples)),
+                    ChannelMixer.createSurroundDownmix(createSource(6, samples)),
+                    samples);
+
+            // Channel swap and extraction are read without mixing
+            assertMix(6, new double[][] { { 0, 1, 0, 0, 0, 0 },
+                    { 1, 0, 0, 0, 0, 0 } }, ChannelMixer.createSelection(
+                    createSource(6, samples), 1, 0),
+                    ChannelMixer.createSelection(createSource(6, samples), 1,
+                            0), samples);
+            assertMix(6, new double[][] { { 0, 0, 1, 0, 0, 0 },
+                    { 0, 0, 1, 0, 0, 0 } }, ChannelMixer.createSelection(
+                    createSource(6, samples), 2, 2),
+                    ChannelMixer.createSelection(createSource(6, samples), 2,
+                            2), samples);
+
+            samples = createSamples(3);
+            final double third = 1.0 / 3;
+            assertMix(3, new double[][] { { third, third, third } },
+                    ChannelMixer.createMonoDownmix(createSource(3, samples)),
+                    ChannelMixer.createMonoDownmix(createSource(3, samples)),
+                    samples);
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+
+    public void testInvalidMatrix() {
+        AudioSource source = createSource(2, createSamples(2));
+
+        try {
+            new ChannelMixer(source, new double[][] { { 1, 0, 0 } });
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            new ChannelMixer(source, new double[0][]);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            ChannelMixer.createSelection(source, 2);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            ChannelMixer.createSurroundDownmix(source);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+
+import junit.framework.TestCase;
+
+public class FloatSampleWindowTest extends TestCase {
+    private static FloatAudioSource createSource(int channels, double[] samples) {
+        return DoubleToFloatAudioSource.adapt(new DoubleArrayAudioSource(
+                new PCMAudioStreamDescriptor(channels, (short) 16, 22050,
+                        samples.length / channels, 0), samples));
+    }
+
+    public void testInvalidSizes() {
+        FloatAudioSource source = createSource(1, new double[10]);
+
+        try {
+            new FloatSampleWindow(source, -1, 2);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            new FloatSampleWindow(source, 2, -1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+
+        try {
+            new FloatSampleWindow(source, 0, 0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    public void testSampleWindowEdges() {
+        double[] samples = new double[64];
+
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = i + 1;
+        }
+
+        final int lookAheadSize = 3;
+        final int lookBehindSize = 2;
+        FloatSampleWindow window = new FloatSampleWindow(
+                createSource(1, samples), lookAheadSize, lookBehindSize);
+        assertEquals(lookAheadSize + lookBehindSize + 1,
+                window.getWindowSize());
+
+        try {
+            for (int position = 0; position < samples.length; ++position) {
+                assertTrue("Could not iterate window at position=" + position,
+                        window.next(0));
+
+                for (int offset = -lookBehindSize; offset <= lookAheadSize; ++offset) {
+                    final int index = position + offset;
+                    final float expected = index < 0
+                            || index >= samples.length ? Float.NaN
+                            : (float) samples[index];
+                    assertEquals("Wrong sample at position=" + position
+                            + " offset=" + offset, expected,
+                            window.getSample(0, offset));
+                }
+            }
+
+            assertFalse(window.next(0));
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+
+        try {
+            window.getSample(0, -lookBehindSize - 1);
+            fail("Expected ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException e) {
+        }
+
+        try {
+            window.getSample(0, lookAheadSize + 1);
+            fail("Expected ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException e) {
+        }
+    }
+
+    public void testSkipAcrossBufferBoundaries() {
+        final int frames = 20000;
+        double[] samples = new double[frames * 2];
+
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = i + 1;
+        }
+
+        final int lookAheadSize = 700;
+        final int lookBehindSize = 300;
+        FloatSampleWindow window = new FloatSampleWindow(
+                createSource(2, samples), lookAheadSize, lookBehindSize);
+
+        try {
+            int position = -1;
+
+            for (int skip = 0; position + skip + 1 < frames; skip = (skip * 7 + 13) % 3000) {
+                position += skip + 1;
+                assertTrue("Could not iterate window at position=" + position,
+                        window.next(skip));
+
+                for (int offset = -lookBehindSize; offset <= lookAheadSize; offset += 50) {
+                    final int index = position + offset;
+                    final float expected = index < 0 || index >= frames ? Float.NaN
+                            : (float) samples[index * 2 + 1];
+                    assertEquals("Wrong sample at position=" + position
+                            + " offset=" + offset, expected,
+                            window.getSample(1, offset));
+                }
+            }
+
+            assertFalse(window.next(frames));
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+import java.util.Random;
+
+import com.nobu_games.audio.AudioStreamDescriptor;
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+
+import junit.framework.TestCase;
+
+public class FloatToDoubleAudioSourceTest extends TestCase {
+    /**
+     * Creates a single precision source that is not an adapter, so that
+     * {@link FloatToDoubleAudioSource#adapt(FloatAudioSource)} cannot unwrap
+     * it.
+     */
+    private static FloatAudioSource createFloatSource(int channels,
+            double[] samples) {
+        final FloatAudioSource source = DoubleToFloatAudioSource
+                .adapt(new DoubleArrayAudioSource(new PCMAudioStreamDescriptor(
+                        channels, (short) 16, 44100, samples.length
+                                / channels, 0), samples));
+
+        return new FloatAudioSource() {
+            @Override
+            public void close() throws IOException {
+                source.close();
+            }
+
+            @Override
+            public AudioStreamDescriptor getDescriptor() {
+                return source.getDescriptor();
+            }
+
+            @Override
+            public int read(float[][] dst, int offset, int frames)
+                    throws IOException {
+                return source.read(dst, offset, frames);
+            }
+        };
+    }
+
+    private static double[] createSamples(int count) {
+        Random random = new Random(2);
+        double[] samples = new double[count];
+
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = random.nextDouble() * 2.0 - 1.0;
+        }
+
+        return samples;
+    }
+
+    public void testAdapterUnwrapping() {
+        AudioSource source = new DoubleArrayAudioSource(
+                new PCMAudioStreamDescriptor(1, (short) 16, 22050, 10, 0),
+                new double[10]);
+        FloatAudioSource floatSource = DoubleToFloatAudioSource.adapt(source);
+        assertTrue(floatSource instanceof DoubleToFloatAudioSource);
+        assertSame(source, FloatToDoubleAudioSource.adapt(floatSource));
+
+        floatSource = createFloatSource(1, new double[10]);
+        AudioSource adapter = FloatToDoubleAudioSource.adapt(floatSource);
+        assertTrue(adapter instanceof FloatToDoubleAudioSource);
+        assertSame(floatSource, DoubleToFloatAudioSource.adapt(adapter));
+    }
+
+    public void testRoundTrip() {
+        // More frames than the adapter buffers at a time, read in pieces that
+        // do not line up with its blocks and mixed with single frames
+        final int frames = 3000;
+        final int channels = 2;
+        double[] samples = createSamples(frames * channels);
+        FloatAudioSource floatSource = createFloatSource(channels, samples);
+        AudioSource source = FloatToDoubleAudioSource.adapt(floatSource);
+        assertSame(floatSource.getDescriptor(), source.getDescriptor());
+        assertEquals(44100, source.getCurrentSampleRate(0));
+        double[][] block = new double[channels][frames];
+        int position = 0;
+
+        try {
+            while (position < frames) {
+                assertTrue(source.next());
+
+                for (int channel = 0; channel < channels; ++channel) {
+                    block[channel][position] = source.getSample(channel);
+                }
+
+                ++position;
+                final int requested = Math.min(700, frames - position);
+                if (requested == 0)
+                    break;
+                assertEquals(requested,
+                        source.read(block, position, requested));
+                position += requested;
+            }
+
+            assertEquals(-1, source.read(block, 0, 10));
+            assertFalse(source.next());
+
+            for (int frame = 0; frame < frames; ++frame) {
+                for (int channel = 0; channel < channels; ++channel) {
+                    assertEquals("Wrong sample at frame " + frame,
+                            (float) samples[frame * channels + channel],
+                            block[channel][frame], 0);
+                }
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+}
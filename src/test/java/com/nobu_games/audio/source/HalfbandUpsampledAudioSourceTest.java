@@ -0,0 +1,89 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+
+import junit.framework.TestCase;
+
+public class HalfbandUpsampledAudioSourceTest extends TestCase {
+    private static double[] createSamples(int count) {
+        double[] samples = new double[count];
+
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = Math.random() * 2.0 - 1.0;
+        }
+
+        return samples;
+    }
+
+    public void testEvenSamplesAreInputSamples() {
+        final int frames = 3000;
+        double[] samples = createSamples(frames * 2);
+        HalfbandUpsampledAudioSource source = new HalfbandUpsampledAudioSource(
+                new DoubleArrayAudioSource(new PCMAudioStreamDescriptor(2,
+                        (short) 16, 22050, frames, 0), samples));
+        assertEquals(44100, source.getDescriptor().getMaximumSampleRate(0));
+        assertEquals(frames * 2, source.getDescriptor().getSampleCount());
+        double[][] output = new double[2][frames * 2];
+
+        try {
+            int count = 0;
+
+            for (int read; (read = source.read(output, count, 333)) > 0;) {
+                count += read;
+            }
+
+            assertEquals(frames * 2, count);
+
+            for (int i = 0; i < frames; ++i) {
+                assertEquals(samples[i * 2], output[0][i * 2], 0);
+                assertEquals(samples[i * 2 + 1], output[1][i * 2], 0);
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+
+    public void testFactoryPicksHalfbandForPowerOfTwoRatios() {
+        PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(1,
+                (short) 16, 11025, 100, 0);
+        AudioSource source = new DoubleArrayAudioSource(descriptor,
+                createSamples(100));
+        assertSame(source, ResamplerFactory.create(source, 11025));
+        assertTrue(ResamplerFactory.create(source, 22050) instanceof HalfbandUpsampledAudioSource);
+        AudioSource quadrupled = ResamplerFactory.create(source, 44100);
+        assertTrue(quadrupled instanceof HalfbandUpsampledAudioSource);
+        assertEquals(400, quadrupled.getDescriptor().getSampleCount());
+        assertTrue(ResamplerFactory.create(source, 33075) instanceof PolyphaseResampledAudioSource);
+        assertTrue(ResamplerFactory.create(source, 8000) instanceof PolyphaseResampledAudioSource);
+    }
+
+    public void testFrameReadsMatchBlockReads() {
+        final int frames = 777;
+        double[] samples = createSamples(frames);
+        PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(1,
+                (short) 16, 11025, frames, 0);
+        AudioSource frameSource = ResamplerFactory.create(
+                new DoubleArrayAudioSource(descriptor, samples), 44100);
+        AudioSource blockSource = ResamplerFactory.create(
+                new DoubleArrayAudioSource(descriptor, samples), 44100);
+        double[][] block = new double[1][frames * 4];
+
+        try {
+            assertEquals(frames * 4, blockSource.read(block, 0, frames * 4));
+            assertEquals(-1, blockSource.read(block, 0, 1));
+
+            for (int i = 0; i < frames * 4; ++i) {
+                assertTrue("Frame source is prematurely out of samples",
+                        frameSource.next());
+                assertEquals("Block read differs at index " + i,
+                        frameSource.getSample(0), block[0][i], 0);
+            }
+
+            assertFalse(frameSource.next());
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+}
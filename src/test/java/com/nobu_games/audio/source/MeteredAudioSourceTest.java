@@ -0,0 +1,183 @@
+package com.nobu_games.audio.source;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nobu_games.audio.metering.MeterListener;
+import com.nobu_games.audio.metering.MeterRegistry;
+import com.nobu_games.audio.metering.MeteredInputStream;
+import com.nobu_games.audio.metering.StageMeter;
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+
+import junit.framework.TestCase;
+
+public class MeteredAudioSourceTest extends TestCase {
+    private static final long SLEEP_MILLIS = 20;
+
+    private static AudioSource createSource(int frames) {
+        PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(2,
+                (short) 16, 22050, frames, 0);
+        return new DoubleArrayAudioSource(descriptor, new double[frames * 2]);
+    }
+
+    public void testCounters() {
+        final MeterRegistry registry = new MeterRegistry();
+        final MeteredAudioSource source = new MeteredAudioSource(
+                createSource(100), registry.createMeter("decoder"));
+        final StageMeter meter = source.getMeter();
+        double[][] block = new double[2][64];
+
+        try {
+            assertEquals(-1, meter.getFirstOutputTime());
+            assertTrue(source.next());
+            assertTrue(meter.getFirstOutputTime() >= 0);
+            assertEquals(64, source.read(block, 0, 64));
+            assertEquals(35, source.read(block, 0, 64));
+            assertEquals(1, registry.getMeters().size());
+            assertEquals(-1, source.read(block, 0, 64));
+            assertTrue(meter.isClosed());
+            assertTrue(registry.getMeters().isEmpty());
+            assertFalse(source.next());
+            assertEquals("decoder", meter.getName());
+            assertEquals(100, meter.getFrames());
+            assertEquals(0, meter.getBytesRead());
+            assertEquals(0, meter.getBytesWritten());
+            assertEquals(meter.getTotalTime(), meter.getSelfTime());
+            source.close();
+            assertTrue(meter.isClosed());
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sources that are read to the end but never closed must not stay in the
+     * registry.
+     */
+    public void testEndOfStream() {
+        final MeterRegistry registry = new MeterRegistry();
+        final List<String> events = new ArrayList<String>();
+        registry.addListener(new MeterListener() {
+            @Override
+            public void closed(StageMeter meter) {
+                events.add("closed " + meter.getName() + " "
+                        + meter.getFrames());
+            }
+
+            @Override
+            public void firstOutput(StageMeter meter) {
+            }
+        });
+        final MeteredAudioSource source = new MeteredAudioSource(
+                createSource(3), registry.createMeter("decoder"));
+        final MeteredInputStream input = new MeteredInputStream(
+                new ByteArrayInputStream(new byte[5]),
+                registry.createMeter("input"));
+        assertEquals(2, registry.getMeters().size());
+
+        try {
+            while (source.next()) {
+            }
+
+            assertTrue(source.getMeter().isClosed());
+            assertFalse(source.next());
+            assertEquals(4, input.read(new byte[4]));
+            assertEquals(0, input.read());
+            assertFalse(input.getMeter().isClosed());
+            assertEquals(-1, input.read(new byte[4]));
+            assertTrue(input.getMeter().isClosed());
+            assertEquals(5, input.getMeter().getBytesRead());
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+
+        assertTrue(registry.getMeters().isEmpty());
+        assertEquals(2, events.size());
+        assertEquals("closed decoder 3", events.get(0));
+        assertEquals("closed input 0", events.get(1));
+    }
+
+    public void testListener() {
+        final MeterRegistry registry = new MeterRegistry();
+        final List<String> events = new ArrayList<String>();
+        registry.addListener(new MeterListener() {
+            @Override
+            public void closed(StageMeter meter) {
+                events.add("closed " + meter.getName() + " "
+                        + meter.getFrames());
+            }
+
+            @Override
+            public void firstOutput(StageMeter meter) {
+                events.add("first " + meter.getName() + " "
+                        + meter.getFrames());
+            }
+        });
+        final MeteredAudioSource source = new MeteredAudioSource(
+                createSource(10), registry.createMeter("decoder"));
+        double[][] block = new double[2][4];
+
+        try {
+            while (source.read(block, 0, 4) > 0) {
+            }
+
+            source.close();
+            source.close();
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+
+        assertEquals(2, events.size());
+        assertEquals("first decoder 4", events.get(0));
+        assertEquals("closed decoder 10", events.get(1));
+    }
+
+    /**
+     * The time spent in a nested metered source must only count as self time
+     * of the nested source.
+     */
+    public void testSelfTime() {
+        final MeterRegistry registry = new MeterRegistry();
+        final PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(
+                2, (short) 16, 22050, 1000, 0);
+        final MeteredAudioSource inner = new MeteredAudioSource(
+                new DoubleArrayAudioSource(descriptor, new double[2000]) {
+                    @Override
+                    public int read(double[][] dst, int offset, int frames)
+                            throws IOException {
+                        try {
+                            Thread.sleep(SLEEP_MILLIS);
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+
+                        return super.read(dst, offset, frames);
+                    }
+                }, registry.createMeter("inner"));
+        final MeteredAudioSource outer = new MeteredAudioSource(inner,
+                registry.createMeter("outer"));
+        double[][] block = new double[2][500];
+
+        try {
+            assertEquals(500, outer.read(block, 0, 500));
+            assertEquals(500, outer.read(block, 0, 500));
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+
+        final long sleepNanos = 2 * SLEEP_MILLIS * 1000000;
+        final StageMeter innerMeter = inner.getMeter();
+        final StageMeter outerMeter = outer.getMeter();
+        assertTrue(innerMeter.getSelfTime() >= sleepNanos);
+        assertEquals(innerMeter.getTotalTime(), innerMeter.getSelfTime());
+        assertTrue(outerMeter.getTotalTime() >= innerMeter.getTotalTime());
+        assertTrue("Outer self time includes the nested source",
+                outerMeter.getSelfTime() < sleepNanos / 2);
+        assertEquals(outerMeter.getTotalTime(), outerMeter.getSelfTime()
+                + innerMeter.getTotalTime());
+        assertEquals(1000, outerMeter.getFrames());
+        assertEquals(1000, innerMeter.getFrames());
+    }
+}
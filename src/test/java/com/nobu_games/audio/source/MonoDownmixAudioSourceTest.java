@@ -0,0 +1,51 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+
+import junit.framework.TestCase;
+
+public class MonoDownmixAudioSourceTest extends TestCase {
+    private static double[] createStereoSamples(int frames) {
+        double[] samples = new double[frames * 2];
+
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = Math.random() * 2.0 - 1.0;
+        }
+
+        return samples;
+    }
+
+    public void testBlockReadMatchesFrameReads() {
+        final int frames = 100;
+        double[] samples = createStereoSamples(frames);
+        PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(2,
+                (short) 16, 22050, frames, 0);
+        MonoDownmixAudioSource frameSource = new MonoDownmixAudioSource(
+                new DoubleArrayAudioSource(descriptor, samples));
+        MonoDownmixAudioSource blockSource = new MonoDownmixAudioSource(
+                new DoubleArrayAudioSource(descriptor, samples));
+        double[][] block = new double[1][frames + 10];
+
+        try {
+            assertEquals(30, blockSource.read(block, 0, 30));
+            assertEquals(frames - 30, blockSource.read(block, 30, 80));
+            assertEquals(-1, blockSource.read(block, frames, 10));
+
+            for (int i = 0; i < frames; ++i) {
+                assertTrue("Frame source is prematurely out of samples",
+                        frameSource.next());
+                assertEquals("Wrong sample value at index " + i,
+                        (samples[i * 2] + samples[i * 2 + 1]) / 2,
+                        block[0][i], 1e-12);
+                assertEquals("Block read differs at index " + i,
+                        frameSource.getSample(0), block[0][i], 1e-12);
+            }
+
+            assertFalse(frameSource.next());
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+}
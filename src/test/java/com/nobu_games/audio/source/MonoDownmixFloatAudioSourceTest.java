@@ -0,0 +1,66 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+import java.util.Random;
+
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+
+import junit.framework.TestCase;
+
+public class MonoDownmixFloatAudioSourceTest extends TestCase {
+    public void testBlockReadMatchesDoublePrecision() {
+        final int frames = 100;
+        final int channels = 3;
+        Random random = new Random(3);
+        double[] samples = new double[frames * channels];
+
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = (float) (random.nextDouble() * 2.0 - 1.0);
+        }
+
+        PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(
+                channels, (short) 16, 22050, frames, 0);
+        MonoDownmixFloatAudioSource floatSource = new MonoDownmixFloatAudioSource(
+                DoubleToFloatAudioSource.adapt(new DoubleArrayAudioSource(
+                        descriptor, samples)));
+        MonoDownmixAudioSource doubleSource = new MonoDownmixAudioSource(
+                new DoubleArrayAudioSource(descriptor, samples));
+        assertEquals(1, floatSource.getDescriptor().getChannelCount());
+        float[][] block = new float[1][frames + 10];
+
+        try {
+            assertEquals(30, floatSource.read(block, 0, 30));
+            assertEquals(frames - 30, floatSource.read(block, 30, 80));
+            assertEquals(-1, floatSource.read(block, frames, 10));
+
+            for (int i = 0; i < frames; ++i) {
+                assertTrue(doubleSource.next());
+                assertEquals("Wrong sample value at index " + i,
+                        doubleSource.getSample(0), block[0][i], 1e-6);
+            }
+
+            assertFalse(doubleSource.next());
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+
+    public void testMonoPassthrough() {
+        double[] samples = { 0.5, -0.25, 0.125 };
+        MonoDownmixFloatAudioSource source = new MonoDownmixFloatAudioSource(
+                DoubleToFloatAudioSource.adapt(new DoubleArrayAudioSource(
+                        new PCMAudioStreamDescriptor(1, (short) 16, 22050,
+                                samples.length, 0), samples)));
+        float[][] block = new float[1][4];
+
+        try {
+            assertEquals(3, source.read(block, 1, 4));
+            assertEquals(0.5f, block[0][1], 0);
+            assertEquals(-0.25f, block[0][2], 0);
+            assertEquals(0.125f, block[0][3], 0);
+            assertEquals(-1, source.read(block, 0, 4));
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+
+import junit.framework.TestCase;
+
+public class ParallelChannelAudioSourceTest extends TestCase {
+    public void testMatchesSerialProcessing() {
+        final int channelCount = 6;
+        final int frames = 20000;
+        double[] samples = new double[frames * channelCount];
+
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = Math.random() * 2.0 - 1.0;
+        }
+
+        PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(
+                channelCount, (short) 16, 44100, frames, 0);
+        AudioSource serial = ResamplerFactory.create(
+                new DoubleArrayAudioSource(descriptor, samples), 48000);
+        ParallelChannelAudioSource.LaneFactory factory = new ParallelChannelAudioSource.LaneFactory() {
+            @Override
+            public AudioSource createLane(AudioSource channel) {
+                return ResamplerFactory.create(channel, 48000);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+
+        try {
+            AudioSource parallel = new ParallelChannelAudioSource(
+                    new DoubleArrayAudioSource(descriptor, samples), factory,
+                    executor, 1000);
+            assertEquals(channelCount, parallel.getDescriptor()
+                    .getChannelCount());
+            assertEquals(48000, parallel.getDescriptor()
+                    .getMaximumSampleRate(0));
+            final long expected = serial.getDescriptor().getSampleCount();
+            assertEquals(expected, parallel.getDescriptor().getSampleCount());
+            double[][] serialBlock = new double[channelCount][777];
+            double[][] parallelBlock = new double[channelCount][777];
+            int total = 0;
+            int count;
+
+            while ((count = serial.read(serialBlock, 0, 777)) > 0) {
+                assertEquals(count, parallel.read(parallelBlock, 0, count));
+
+                for (int channel = 0; channel < channelCount; ++channel) {
+                    for (int i = 0; i < count; ++i) {
+                        assertEquals("Lane output differs in channel "
+                                + channel + " at index " + (total + i),
+                                serialBlock[channel][i],
+                                parallelBlock[channel][i], 0);
+                    }
+                }
+
+                total += count;
+            }
+
+            assertEquals(expected, total);
+            assertEquals(-1, parallel.read(parallelBlock, 0, 1));
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.nobu_games.audio.source;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+public class PolyphaseFilterBankCacheTest extends TestCase {
+    public void testConcurrentRequestsShareInstance() {
+        final PolyphaseFilterBankCache cache = new PolyphaseFilterBankCache(4);
+        final PolyphaseFilterBank[] banks = new PolyphaseFilterBank[8];
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[banks.length];
+
+        for (int i = 0; i < threads.length; ++i) {
+            final int index = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+
+                    banks[index] = cache.get(48000, 44100,
+                            ResamplerQuality.MEDIUM);
+                }
+            };
+            threads[i].start();
+        }
+
+        start.countDown();
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            fail("Interrupted");
+        }
+
+        for (PolyphaseFilterBank bank : banks) {
+            assertNotNull(bank);
+            assertSame(banks[0], bank);
+        }
+
+        assertEquals(1, cache.size());
+    }
+
+    public void testEvictsLeastRecentlyUsed() {
+        PolyphaseFilterBankCache cache = new PolyphaseFilterBankCache(2);
+        PolyphaseFilterBank first = cache.get(22050, 44100,
+                ResamplerQuality.LOW);
+        PolyphaseFilterBank second = cache.get(11025, 44100,
+                ResamplerQuality.LOW);
+        assertSame(first, cache.get(22050, 44100, ResamplerQuality.LOW));
+        cache.get(48000, 44100, ResamplerQuality.LOW);
+        assertEquals(2, cache.size());
+        assertSame(first, cache.get(22050, 44100, ResamplerQuality.LOW));
+        assertNotSame(second, cache.get(11025, 44100, ResamplerQuality.LOW));
+    }
+
+    public void testKeyIncludesQuality() {
+        PolyphaseFilterBankCache cache = new PolyphaseFilterBankCache(4);
+        cache.prewarm(22050, 44100, ResamplerQuality.LOW);
+        cache.prewarm(22050, 44100, ResamplerQuality.HIGH);
+        assertEquals(2, cache.size());
+        assertEquals(ResamplerQuality.HIGH,
+                cache.get(22050, 44100, ResamplerQuality.HIGH).getQuality());
+        assertEquals(2, cache.size());
+    }
+}
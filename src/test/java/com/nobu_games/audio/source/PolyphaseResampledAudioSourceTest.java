@@ -0,0 +1,96 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+
+import junit.framework.TestCase;
+
+public class PolyphaseResampledAudioSourceTest extends TestCase {
+    private static void assertSine(int inputRate, int outputRate,
+            ResamplerQuality quality, double maximumError) {
+        final int frames = 10000;
+        final double frequency = 1000;
+        double[] samples = new double[frames];
+
+        for (int i = 0; i < frames; ++i) {
+            samples[i] = 0.5 * Math.sin(2 * Math.PI * frequency * i
+                    / inputRate);
+        }
+
+        PolyphaseResampledAudioSource source = new PolyphaseResampledAudioSource(
+                new DoubleArrayAudioSource(new PCMAudioStreamDescriptor(1,
+                        (short) 16, inputRate, frames, 0), samples),
+                outputRate, quality);
+        final int expected = (int) (((long) frames * outputRate + inputRate - 1) / inputRate);
+        assertEquals(expected, source.getDescriptor().getSampleCount());
+        assertEquals(outputRate, source.getDescriptor().getMaximumSampleRate(0));
+        double[][] output = new double[1][expected + 10];
+
+        try {
+            int count = 0;
+
+            for (int read; (read = source.read(output, count, 777)) > 0;) {
+                count += read;
+            }
+
+            assertEquals(expected, count);
+            // Skip the filter transients at both ends of the stream
+            final int margin = source.getFilterBank().getTaps() * outputRate
+                    / inputRate + 1;
+
+            for (int i = margin; i < count - margin; ++i) {
+                assertEquals("Wrong sample value at index " + i, 0.5 * Math
+                        .sin(2 * Math.PI * frequency * i / outputRate),
+                        output[0][i], maximumError);
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+
+    public void testDownsampling() {
+        assertSine(44100, 22050, ResamplerQuality.LOW, 1e-3);
+        assertSine(48000, 44100, ResamplerQuality.HIGH, 1e-5);
+    }
+
+    public void testFrameReadsMatchBlockReads() {
+        final int frames = 500;
+        double[] samples = new double[frames];
+
+        for (int i = 0; i < frames; ++i) {
+            samples[i] = Math.random() * 2.0 - 1.0;
+        }
+
+        PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(1,
+                (short) 16, 44100, frames, 0);
+        PolyphaseResampledAudioSource frameSource = new PolyphaseResampledAudioSource(
+                new DoubleArrayAudioSource(descriptor, samples), 48000);
+        PolyphaseResampledAudioSource blockSource = new PolyphaseResampledAudioSource(
+                new DoubleArrayAudioSource(descriptor, samples), 48000);
+        final int expected = (int) blockSource.getDescriptor()
+                .getSampleCount();
+        double[][] block = new double[1][expected];
+
+        try {
+            assertEquals(expected, blockSource.read(block, 0, expected));
+            assertEquals(-1, blockSource.read(block, 0, 1));
+
+            for (int i = 0; i < expected; ++i) {
+                assertTrue("Frame source is prematurely out of samples",
+                        frameSource.next());
+                assertEquals("Block read differs at index " + i,
+                        frameSource.getSample(0), block[0][i], 0);
+            }
+
+            assertFalse(frameSource.next());
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+
+    public void testUpsampling() {
+        assertSine(22050, 44100, ResamplerQuality.MEDIUM, 1e-4);
+        assertSine(11025, 44100, ResamplerQuality.HIGH, 1e-5);
+    }
+}
@@ -7,6 +7,34 @@ import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
 import junit.framework.TestCase;
 
 public class ResampledAudioSourceTest extends TestCase {
+    public void testDeclaredSampleCount() {
+        int[][] rates = { { 22050, 44100 }, { 44100, 48000 },
+                { 48000, 44100 }, { 8000, 44100 }, { 44100, 22050 } };
+
+        try {
+            for (int[] rate : rates) {
+                for (int length : new int[] { 0, 1, 7, 1001, 4097 }) {
+                    AudioSource resampled = new ResampledAudioSource(
+                            new DoubleArrayAudioSource(
+                                    new PCMAudioStreamDescriptor(2,
+                                            (short) 16, rate[0], length, 0),
+                                    new double[length * 2]), rate[1]);
+                    int count = 0;
+
+                    while (resampled.next()) {
+                        ++count;
+                    }
+
+                    assertEquals(rate[0] + " to " + rate[1] + " Hz, "
+                            + length + " samples", resampled.getDescriptor()
+                            .getSampleCount(), count);
+                }
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+
     public void testResampleCorrectness() {
         double[] samples = new double[64];
 
@@ -0,0 +1,75 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+import java.util.Random;
+
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+
+import junit.framework.TestCase;
+
+public class ResampledFloatAudioSourceTest extends TestCase {
+    public void testMatchesDoublePrecision() {
+        int[][] rates = { { 22050, 44100 }, { 44100, 48000 },
+                { 48000, 44100 }, { 8000, 44100 }, { 44100, 22050 } };
+        final int channels = 2;
+        Random random = new Random(4);
+
+        try {
+            for (int[] rate : rates) {
+                for (int length : new int[] { 0, 1, 7, 1001, 4097 }) {
+                    double[] samples = new double[length * channels];
+
+                    for (int i = 0; i < samples.length; ++i) {
+                        samples[i] = (float) (random.nextDouble() * 2.0 - 1.0);
+                    }
+
+                    PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(
+                            channels, (short) 16, rate[0], length, 0);
+                    ResampledFloatAudioSource floatSource = new ResampledFloatAudioSource(
+                            DoubleToFloatAudioSource
+                                    .adapt(new DoubleArrayAudioSource(
+                                            descriptor, samples)), rate[1]);
+                    ResampledAudioSource doubleSource = new ResampledAudioSource(
+                            new DoubleArrayAudioSource(descriptor, samples),
+                            rate[1]);
+                    final String message = rate[0] + " to " + rate[1]
+                            + " Hz, " + length + " samples";
+                    final long expected = doubleSource.getDescriptor()
+                            .getSampleCount();
+                    assertEquals(message, expected, floatSource
+                            .getDescriptor().getSampleCount());
+                    assertEquals(message, rate[1], floatSource
+                            .getDescriptor().getMaximumSampleRate(0));
+
+                    float[][] block = new float[channels][(int) expected + 1];
+                    int count = 0;
+
+                    // Odd block size, so blocks end at varying positions
+                    while (count <= expected) {
+                        final int read = floatSource.read(block, count,
+                                Math.min(333, block[0].length - count));
+                        if (read < 0)
+                            break;
+                        count += read;
+                    }
+
+                    assertEquals(message, expected, count);
+
+                    for (int frame = 0; frame < count; ++frame) {
+                        assertTrue(message, doubleSource.next());
+
+                        for (int channel = 0; channel < channels; ++channel) {
+                            assertEquals(message + ", frame " + frame,
+                                    doubleSource.getSample(channel),
+                                    block[channel][frame], 1e-6);
+                        }
+                    }
+
+                    assertFalse(message, doubleSource.next());
+                }
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+}
@@ -98,4 +98,49 @@ public class SampleWindowTest extends TestCase {
             e.printStackTrace();
         }
     }
+
+    public void testSkipAcrossBufferBoundaries() {
+        final int frames = 20000;
+        double[] samples = new double[frames * 2];
+
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = i + 1;
+        }
+
+        PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(2,
+                (short) 16, 22050, frames, 0);
+        final int lookAheadSize = 700;
+        final int lookBehindSize = 300;
+        SampleWindow window = new SampleWindow(new DoubleArrayAudioSource(
+                descriptor, samples), lookAheadSize, lookBehindSize);
+
+        try {
+            int position = -1;
+
+            for (int skip = 0; position + skip + 1 < frames; skip = (skip * 7 + 13) % 3000) {
+                position += skip + 1;
+                assertTrue("Could not iterate window at position=" + position,
+                        window.next(skip));
+
+                for (int offset = -lookBehindSize; offset <= lookAheadSize; offset += 50) {
+                    final int index = position + offset;
+                    final double expected = index < 0 || index >= frames ? Double.NaN
+                            : samples[index * 2 + 1];
+                    assertEquals("Wrong sample at position=" + position
+                            + " offset=" + offset, expected,
+                            window.getSample(1, offset));
+                }
+            }
+
+            assertFalse(window.next(frames));
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+
+        try {
+            window.getSample(0, lookAheadSize + 1);
+            fail("Expected ArrayIndexOutOfBoundsException");
+        } catch (ArrayIndexOutOfBoundsException e) {
+        }
+    }
 }
@@ -0,0 +1,96 @@
+package com.nobu_games.audio.source;
+
+import java.io.IOException;
+import java.util.Random;
+
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+
+import junit.framework.TestCase;
+
+public class SeekableResampledAudioSourceTest extends TestCase {
+    private static final int FRAMES = 5000;
+
+    private static SeekableAudioSource createSource(int sampleRate,
+            int channels) {
+        Random random = new Random(sampleRate);
+        double[] samples = new double[FRAMES * channels];
+
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = random.nextDouble() * 1.6 - 0.8;
+        }
+
+        return new DoubleArrayAudioSource(new PCMAudioStreamDescriptor(
+                channels, (short) 16, sampleRate, FRAMES, 0), samples);
+    }
+
+    private static double[][] readAll(AudioSource source) throws IOException {
+        final int count = (int) source.getDescriptor().getSampleCount();
+        double[][] output = new double[source.getDescriptor()
+                .getChannelCount()][count];
+        int total = 0;
+
+        for (int read; (read = source.read(output, total, count - total)) > 0;) {
+            total += read;
+        }
+
+        assertEquals(count, total);
+        return output;
+    }
+
+    private static void assertSeeking(SeekableAudioSource source)
+            throws IOException {
+        final double[][] expected = readAll(source);
+        final int count = expected[0].length;
+        final int[] positions = { count / 2, 1, count - 5, 0, count / 3 };
+        double[][] block = new double[expected.length][100];
+
+        for (int position : positions) {
+            source.seekPosition(position);
+            final int read = source.read(block, 0, 100);
+            assertEquals(Math.min(100, count - position), read);
+
+            for (int channel = 0; channel < expected.length; ++channel) {
+                for (int frame = 0; frame < read; ++frame) {
+                    assertEquals("Wrong sample after seeking to " + position,
+                            expected[channel][position + frame],
+                            block[channel][frame], 0);
+                }
+            }
+        }
+
+        // Short and long skips from the current position
+        source.rewind();
+        final int[] skips = { 3, 1000, 0, 17 };
+        int position = 0;
+
+        for (int skip : skips) {
+            source.skip(skip);
+            position += skip;
+            assertTrue(source.next());
+            assertEquals("Wrong sample after skipping to " + position,
+                    expected[0][position], source.getSample(0), 0);
+            ++position;
+        }
+    }
+
+    public void testSeeking() {
+        try {
+            // Polyphase resampler
+            assertSeeking(new SeekableResampledAudioSource(createSource(
+                    44100, 2), 48000));
+            assertSeeking(new SeekableResampledAudioSource(createSource(
+                    48000, 1), 22050, ResamplerQuality.LOW));
+            // Halfband cascade
+            assertSeeking(new SeekableResampledAudioSource(createSource(
+                    11025, 1), 44100));
+            // No conversion
+            assertSeeking(new SeekableResampledAudioSource(createSource(
+                    44100, 1), 44100));
+            assertSeeking(new SeekableMonoDownmixAudioSource(
+                    new SeekableResampledAudioSource(createSource(22050, 2),
+                            32000)));
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+    }
+}
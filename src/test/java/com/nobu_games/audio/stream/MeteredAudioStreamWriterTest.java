@@ -0,0 +1,68 @@
+package com.nobu_games.audio.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import com.nobu_games.audio.metering.MeterRegistry;
+import com.nobu_games.audio.metering.MeteredOutputStream;
+import com.nobu_games.audio.metering.StageMeter;
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.DoubleArrayAudioSource;
+import com.nobu_games.audio.source.MeteredAudioSource;
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamDescriptor;
+import com.nobu_games.audio.stream.pcm.PCMAudioStreamWriter;
+
+import junit.framework.TestCase;
+
+public class MeteredAudioStreamWriterTest extends TestCase {
+    public void testCounters() {
+        final MeterRegistry registry = new MeterRegistry();
+        final PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(
+                2, (short) 24, 44100, 3000, 0);
+        final MeteredAudioSource source = new MeteredAudioSource(
+                new DoubleArrayAudioSource(descriptor, new double[6000]),
+                registry.createMeter("source"));
+        final MeteredAudioStreamWriter writer = new MeteredAudioStreamWriter(
+                new PCMAudioStreamWriter(ByteOrder.LITTLE_ENDIAN),
+                registry.createMeter("encoder"));
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final MeteredOutputStream target = new MeteredOutputStream(output,
+                registry.createMeter("output"));
+
+        try {
+            assertEquals(18000, writer.getEncodedSize(descriptor));
+            writer.write(source, target);
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Unexpected AudioDecodingException " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Unexpected AudioEncodingException " + e.getMessage());
+        }
+
+        final StageMeter encoder = writer.getMeter();
+        final StageMeter input = source.getMeter();
+        final StageMeter sink = target.getMeter();
+        assertEquals(18000, output.size());
+        assertTrue(encoder.isClosed());
+        assertEquals(3000, encoder.getFrames());
+        assertEquals(18000, encoder.getBytesWritten());
+        assertEquals(3000, input.getFrames());
+        assertEquals(18000, sink.getBytesWritten());
+        assertTrue(encoder.getFirstOutputTime() >= 0);
+        assertTrue(encoder.getFirstOutputTime() <= encoder.getTotalTime());
+        assertEquals(encoder.getTotalTime(), encoder.getSelfTime()
+                + input.getTotalTime() + sink.getTotalTime());
+
+        try {
+            target.close();
+            source.close();
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        }
+
+        assertTrue(registry.getMeters().isEmpty());
+    }
+}
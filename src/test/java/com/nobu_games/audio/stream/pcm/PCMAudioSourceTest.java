@@ -0,0 +1,374 @@
+package com.nobu_games.audio.stream.pcm;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import com.nobu_games.audio.source.AudioDecodingException;
+
+import junit.framework.TestCase;
+
+public class PCMAudioSourceTest extends TestCase {
+    private static final int FRAMES = 1000;
+
+    /**
+     * Input stream that returns at most one byte per read call, like a slow
+     * network connection would.
+     */
+    private static class TrickleInputStream extends ByteArrayInputStream {
+        public TrickleInputStream(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 1));
+        }
+    }
+
+    private static long[] createValues(int bitsPerSample, int count) {
+        long[] values = new long[count];
+        long max = bitsPerSample == 64 ? Long.MAX_VALUE
+                : (1L << (bitsPerSample - 1)) - 1;
+
+        for (int i = 0; i < count; ++i) {
+            double random = Math.random() * 2.0 - 1.0;
+            values[i] = (long) (random * max);
+        }
+
+        values[0] = max;
+        values[1] = -max - 1;
+        return values;
+    }
+
+    private static double normalize(long value, int bitsPerSample) {
+        switch (bitsPerSample) {
+            case 8:
+                return PCMBlockDecoder.normalizeByte((byte) value);
+            case 16:
+                return PCMBlockDecoder.normalizeShort((short) value);
+            case 24:
+                return PCMBlockDecoder.normalizeInt24((int) value);
+            case 32:
+                return PCMBlockDecoder.normalizeInt((int) value);
+            default:
+                return PCMBlockDecoder.normalizeLong(value);
+        }
+    }
+
+    private static byte[] encode(long[] values, int bitsPerSample,
+            ByteOrder order) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * bitsPerSample
+                / 8);
+        buffer.order(order);
+
+        for (long value : values) {
+            switch (bitsPerSample) {
+                case 8:
+                    buffer.put((byte) value);
+                    break;
+                case 16:
+                    buffer.putShort((short) value);
+                    break;
+                case 24:
+                    if (order == ByteOrder.BIG_ENDIAN) {
+                        buffer.put((byte) (value >> 16));
+                        buffer.putShort((short) value);
+                    } else {
+                        buffer.putShort((short) value);
+                        buffer.put((byte) (value >> 16));
+                    }
+                    break;
+                case 32:
+                    buffer.putInt((int) value);
+                    break;
+                default:
+                    buffer.putLong(value);
+                    break;
+            }
+        }
+
+        return buffer.array();
+    }
+
+    private void assertDecoding(int bitsPerSample, ByteOrder order)
+            throws IOException, AudioDecodingException {
+        final int channels = 2;
+        long[] values = createValues(bitsPerSample, FRAMES * channels);
+        byte[] data = encode(values, bitsPerSample, order);
+        PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(
+                channels, (short) bitsPerSample, 22050, FRAMES, 0);
+
+        InputStream input = new TrickleInputStream(data);
+        PCMAudioSource source = new PCMAudioSource(input, order, descriptor);
+
+        for (int frame = 0; frame < FRAMES; ++frame) {
+            assertTrue("Premature end of stream at frame " + frame,
+                    source.next());
+
+            for (int channel = 0; channel < channels; ++channel) {
+                assertEquals("Wrong sample at frame " + frame,
+                        normalize(values[frame * channels + channel],
+                                bitsPerSample), source.getSample(channel), 0);
+            }
+        }
+
+        assertFalse(source.next());
+
+        input = new TrickleInputStream(data);
+        source = new PCMAudioSource(input, order, descriptor);
+        double[][] block = new double[channels][FRAMES];
+        assertTrue(source.next());
+        assertEquals(FRAMES - 1, source.read(block, 1, FRAMES));
+        assertEquals(-1, source.read(block, 0, 1));
+
+        for (int frame = 1; frame < FRAMES; ++frame) {
+            for (int channel = 0; channel < channels; ++channel) {
+                assertEquals("Wrong block sample at frame " + frame,
+                        normalize(values[frame * channels + channel],
+                                bitsPerSample), block[channel][frame], 0);
+            }
+        }
+    }
+
+    public void testDecoding() {
+        final int[] bitDepths = { 8, 16, 24, 32, 64 };
+
+        try {
+            for (int bitsPerSample : bitDepths) {
+                assertDecoding(bitsPerSample, ByteOrder.LITTLE_ENDIAN);
+                assertDecoding(bitsPerSample, ByteOrder.BIG_ENDIAN);
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not create audio source.");
+        }
+    }
+
+    public void testFloatBlockDecoding() {
+        final int channels = 3;
+
+        try {
+            for (int bitsPerSample : new int[] { 8, 16, 24, 32, 64 }) {
+                for (ByteOrder order : new ByteOrder[] {
+                        ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN }) {
+                    long[] values = createValues(bitsPerSample, FRAMES
+                            * channels);
+                    PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(
+                            channels, (short) bitsPerSample, 22050, FRAMES, 0);
+                    PCMFloatAudioSource source = new PCMFloatAudioSource(
+                            new TrickleInputStream(encode(values,
+                                    bitsPerSample, order)), order, descriptor);
+                    assertSame(descriptor, source.getDescriptor());
+                    float[][] block = new float[channels][FRAMES + 1];
+                    int count = 0;
+
+                    while (count < FRAMES) {
+                        final int read = source.read(block, count + 1, 333);
+                        assertEquals(Math.min(333, FRAMES - count), read);
+                        count += read;
+                    }
+
+                    assertEquals(-1, source.read(block, 0, 1));
+
+                    for (int frame = 0; frame < FRAMES; ++frame) {
+                        for (int channel = 0; channel < channels; ++channel) {
+                            assertEquals(bitsPerSample + " bits, frame "
+                                    + frame, (float) normalize(
+                                    values[frame * channels + channel],
+                                    bitsPerSample), block[channel][frame + 1],
+                                    0);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not create audio source.");
+        }
+    }
+
+    public void testFloatDecoding() {
+        final int channels = 2;
+        final double[] values = new double[FRAMES * channels];
+
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = (float) (Math.random() * 3.0 - 1.5);
+        }
+
+        try {
+            for (ByteOrder order : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN,
+                    ByteOrder.BIG_ENDIAN }) {
+                for (int bitsPerSample : new int[] { 32, 64 }) {
+                    ByteBuffer buffer = ByteBuffer.allocate(values.length
+                            * bitsPerSample / 8);
+                    buffer.order(order);
+
+                    for (double value : values) {
+                        if (bitsPerSample == 32) {
+                            buffer.putFloat((float) value);
+                        } else {
+                            buffer.putDouble(value);
+                        }
+                    }
+
+                    PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(
+                            channels, (short) bitsPerSample, 44100, FRAMES,
+                            PCMAudioStreamDescriptor.FLAG_FLOATING_POINT);
+                    double[][] block = new double[channels][FRAMES];
+                    float[][] floatBlock = new float[channels][FRAMES];
+                    PCMAudioSource source = new PCMAudioSource(
+                            new TrickleInputStream(buffer.array()), order,
+                            descriptor);
+                    assertEquals(FRAMES, source.read(block, 0, FRAMES));
+                    PCMFloatAudioSource floatSource = new PCMFloatAudioSource(
+                            new TrickleInputStream(buffer.array()), order,
+                            descriptor);
+                    assertEquals(FRAMES,
+                            floatSource.read(floatBlock, 0, FRAMES));
+                    buffer.rewind();
+                    MappedPCMAudioSource mapped = new MappedPCMAudioSource(
+                            buffer, order, descriptor);
+                    assertTrue(mapped.next());
+                    assertEquals(values[1], mapped.getSample(1), 0);
+
+                    for (int frame = 0; frame < FRAMES; ++frame) {
+                        for (int channel = 0; channel < channels; ++channel) {
+                            // Samples are passed through without clamping
+                            final double value = values[frame * channels
+                                    + channel];
+                            assertEquals(value, block[channel][frame], 0);
+                            assertEquals((float) value,
+                                    floatBlock[channel][frame], 0);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not create audio source.");
+        }
+    }
+
+    public void testMappedDecoding() {
+        final int channels = 3;
+
+        try {
+            for (ByteOrder order : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN,
+                    ByteOrder.BIG_ENDIAN }) {
+                long[] values = createValues(24, FRAMES * channels);
+                PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(
+                        channels, (short) 24, 48000, FRAMES, 0);
+                MappedPCMAudioSource source = new MappedPCMAudioSource(
+                        ByteBuffer.wrap(encode(values, 24, order)), order,
+                        descriptor);
+                assertTrue(source.next());
+                assertEquals(normalize(values[1], 24), source.getSample(1), 0);
+                double[][] block = new double[channels][FRAMES];
+                assertEquals(FRAMES - 1, source.read(block, 0, FRAMES));
+
+                for (int frame = 1; frame < FRAMES; ++frame) {
+                    for (int channel = 0; channel < channels; ++channel) {
+                        assertEquals(normalize(values[frame * channels
+                                + channel], 24), block[channel][frame - 1], 0);
+                    }
+                }
+
+                // Single precision reads cross the block buffer of the decoder
+                source.seekPosition(5);
+                float[][] floatBlock = new float[channels][FRAMES];
+                assertEquals(FRAMES - 5, source.read(floatBlock, 0, FRAMES));
+                assertEquals(-1, source.read(floatBlock, 0, 1));
+
+                for (int frame = 5; frame < FRAMES; ++frame) {
+                    for (int channel = 0; channel < channels; ++channel) {
+                        assertEquals((float) normalize(values[frame
+                                * channels + channel], 24),
+                                floatBlock[channel][frame - 5], 0);
+                    }
+                }
+
+                source.seekPosition(FRAMES - 1);
+                assertTrue(source.next());
+                assertEquals(normalize(values[FRAMES * channels - 1], 24),
+                        source.getSample(channels - 1), 0);
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not create audio source.");
+        }
+    }
+
+    public void testSeeking() {
+        final int channels = 2;
+        final int header = 44;
+        long[] values = createValues(16, FRAMES * channels);
+        byte[] data = encode(values, 16, ByteOrder.LITTLE_ENDIAN);
+        PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(
+                channels, (short) 16, 22050, FRAMES, 0);
+
+        try {
+            File file = File.createTempFile("seek", ".pcm");
+
+            try {
+                RandomAccessFile output = new RandomAccessFile(file, "rw");
+                output.write(new byte[header]);
+                output.write(data);
+                // Trailing bytes that must not be decoded as audio data
+                output.write(new byte[100]);
+                output.close();
+
+                FileChannel channel = new RandomAccessFile(file, "r")
+                        .getChannel();
+                SeekablePCMAudioSource source = new SeekablePCMAudioSource(
+                        channel, header, ByteOrder.LITTLE_ENDIAN, descriptor);
+
+                try {
+                    final int[] positions = { 700, 3, 999, 0, 512 };
+                    double[][] block = new double[channels][10];
+
+                    for (int position : positions) {
+                        source.seekPosition(position);
+                        assertTrue(source.next());
+                        assertEquals(normalize(values[position * channels], 16),
+                                source.getSample(0), 0);
+                        final int expected = Math.min(10, FRAMES - position
+                                - 1);
+                        final int count = source.read(block, 0, 10);
+                        assertEquals(expected > 0 ? expected : -1, count);
+
+                        for (int frame = 0; frame < count; ++frame) {
+                            assertEquals(normalize(values[(position + 1 + frame)
+                                    * channels + 1], 16), block[1][frame], 0);
+                        }
+                    }
+
+                    source.rewind();
+                    assertTrue(source.next());
+                    source.skip(FRAMES - 2);
+                    assertTrue(source.next());
+                    assertEquals(normalize(values[(FRAMES - 1) * channels], 16),
+                            source.getSample(0), 0);
+                    assertFalse(source.next());
+                } finally {
+                    source.close();
+                }
+            } finally {
+                file.delete();
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not create audio source.");
+        }
+    }
+}
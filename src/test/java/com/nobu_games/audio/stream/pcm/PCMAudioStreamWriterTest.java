@@ -0,0 +1,148 @@
+package com.nobu_games.audio.stream.pcm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import com.nobu_games.audio.sink.AudioEncodingException;
+import com.nobu_games.audio.source.AudioDecodingException;
+import com.nobu_games.audio.source.DoubleArrayAudioSource;
+
+import junit.framework.TestCase;
+
+public class PCMAudioStreamWriterTest extends TestCase {
+    private static byte[] write(PCMAudioStreamWriter writer, int channels,
+            int bitsPerSample, double... samples) throws IOException,
+            AudioDecodingException, AudioEncodingException {
+        PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(
+                channels, (short) bitsPerSample, 44100, samples.length
+                        / channels, 0);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.write(new DoubleArrayAudioSource(descriptor, samples), output);
+        return output.toByteArray();
+    }
+
+    public void testBlockSizeDoesNotChangeOutput() {
+        double[] samples = new double[3 * 1000];
+
+        for (int i = 0; i < samples.length; ++i) {
+            samples[i] = Math.random() * 2.0 - 1.0;
+        }
+
+        try {
+            for (int bitsPerSample : new int[] { 8, 16, 24, 32, 64 }) {
+                byte[] expected = write(new PCMAudioStreamWriter(
+                        ByteOrder.BIG_ENDIAN, 1), 3, bitsPerSample, samples);
+                byte[] actual = write(new PCMAudioStreamWriter(
+                        ByteOrder.BIG_ENDIAN, 77), 3, bitsPerSample, samples);
+                assertEquals(samples.length * bitsPerSample / 8,
+                        actual.length);
+                assertTrue("Output differs for " + bitsPerSample + " bits",
+                        Arrays.equals(expected, actual));
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not read audio source.");
+        } catch (AudioEncodingException e) {
+            fail("Error while encoding audio: " + e.getMessage());
+        }
+    }
+
+    public void testDeclaredSampleCount() {
+        double[] samples = new double[2 * 1000];
+        Arrays.fill(samples, 0.5);
+        PCMAudioStreamWriter writer = new PCMAudioStreamWriter(
+                ByteOrder.LITTLE_ENDIAN, 64);
+
+        try {
+            for (int sampleCount : new int[] { 0, 1, 999, 1000, 1001, 2500 }) {
+                PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(
+                        2, (short) 16, 44100, sampleCount, 0);
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                writer.write(new DoubleArrayAudioSource(descriptor, samples),
+                        output);
+                assertEquals(sampleCount * 4, output.size());
+                assertEquals(output.size(), writer.getEncodedSize(descriptor));
+
+                // Missing samples are written as silence
+                byte[] bytes = output.toByteArray();
+                for (int i = 1000 * 4; i < bytes.length; ++i) {
+                    assertEquals(0, bytes[i]);
+                }
+            }
+
+            assertEquals(-1, writer.getEncodedSize(new PCMAudioStreamDescriptor(
+                    2, (short) 16, 44100, -1, 0)));
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not decode audio. Reason: " + e.getMessage());
+        } catch (AudioEncodingException e) {
+            fail("Could not encode audio. Reason: " + e.getMessage());
+        }
+    }
+
+    public void testClampingAndEndianness() {
+        try {
+            byte[] data = write(new PCMAudioStreamWriter(
+                    ByteOrder.LITTLE_ENDIAN), 1, 16, 2.0, -2.0, 1.0, -1.0, 0.5);
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(Short.MAX_VALUE, buffer.getShort());
+            assertEquals(Short.MIN_VALUE, buffer.getShort());
+            assertEquals(Short.MAX_VALUE, buffer.getShort());
+            assertEquals(Short.MIN_VALUE, buffer.getShort());
+            assertEquals(16384, buffer.getShort());
+
+            data = write(new PCMAudioStreamWriter(ByteOrder.BIG_ENDIAN), 1,
+                    24, 2.0, -1.0, 0.5);
+            assertEquals(9, data.length);
+            assertTrue(Arrays.equals(new byte[] { 0x7f, (byte) 0xff,
+                    (byte) 0xff, (byte) 0x80, 0, 0, 0x40, 0, 0 }, data));
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not read audio source.");
+        } catch (AudioEncodingException e) {
+            fail("Error while encoding audio: " + e.getMessage());
+        }
+    }
+
+    public void testFloatingPoint() {
+        final double[] samples = { 0.25, -1.5, 2.0, 1e-30 };
+
+        try {
+            for (int bitsPerSample : new int[] { 16, 32, 64 }) {
+                PCMAudioStreamWriter writer = new PCMAudioStreamWriter(
+                        ByteOrder.LITTLE_ENDIAN, true);
+                assertTrue(writer.isFloatingPoint());
+                byte[] data = write(writer, 2, bitsPerSample, samples);
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                PCMAudioStreamDescriptor descriptor = new PCMAudioStreamDescriptor(
+                        2, (short) bitsPerSample, 44100, 2, 0);
+                assertEquals(data.length, writer.getEncodedSize(descriptor));
+
+                // Samples are stored without clamping
+                for (double sample : samples) {
+                    if (bitsPerSample == 64) {
+                        assertEquals(sample, buffer.getDouble(), 0);
+                    } else {
+                        assertEquals((float) sample, buffer.getFloat(), 0);
+                    }
+                }
+
+                assertFalse(buffer.hasRemaining());
+            }
+        } catch (IOException e) {
+            fail("Unexpected IOException " + e.getMessage());
+        } catch (AudioDecodingException e) {
+            fail("Could not read audio source.");
+        } catch (AudioEncodingException e) {
+            fail("Error while encoding audio: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.nobu_games.audio.kernel;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Sample kernels based on the Java Vector API, which compiles them to the
+ * widest SIMD instructions of the processor, such as AVX2 or AVX-512.
+ * <p>
+ * Loaded reflectively by {@link SampleKernels#getInstance()}, so the rest of
+ * the library does not depend on the incubator module. Remaining samples that
+ * do not fill a whole vector are processed by the scalar kernels.
+ * 
+ * @author ti
+ */
+public class VectorSampleKernels extends SampleKernels {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * Integer species with as many lanes as {@link #DOUBLES}.
+     */
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED
+            .withShape(VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    private final ScalarSampleKernels mScalar = new ScalarSampleKernels();
+
+    /**
+     * Creates the vector kernels.
+     * 
+     * @throws UnsupportedOperationException
+     *             If the processor has no SIMD registers for doubles.
+     */
+    public VectorSampleKernels() {
+        if (DOUBLES.length() < 2)
+            throw new UnsupportedOperationException(
+                    "No SIMD support for double vectors");
+    }
+
+    @Override
+    public void addScaled(double[] src, int srcOffset, double gain,
+            double[] dst, int dstOffset, int length) {
+        final int bound = DOUBLES.loopBound(length);
+        int i = 0;
+
+        for (; i < bound; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, src, srcOffset + i).mul(gain)
+                    .add(DoubleVector.fromArray(DOUBLES, dst, dstOffset + i))
+                    .intoArray(dst, dstOffset + i);
+        }
+
+        mScalar.addScaled(src, srcOffset + i, gain, dst, dstOffset + i, length
+                - i);
+    }
+
+    @Override
+    public double dot(double[] a, int aOffset, double[] b, int bOffset,
+            int length) {
+        final int bound = DOUBLES.loopBound(length);
+        DoubleVector sum = DoubleVector.zero(DOUBLES);
+        int i = 0;
+
+        for (; i < bound; i += DOUBLES.length()) {
+            sum = DoubleVector.fromArray(DOUBLES, a, aOffset + i).fma(
+                    DoubleVector.fromArray(DOUBLES, b, bOffset + i), sum);
+        }
+
+        return sum.reduceLanes(VectorOperators.ADD)
+                + mScalar.dot(a, aOffset + i, b, bOffset + i, length - i);
+    }
+
+    @Override
+    public String getName() {
+        return "vector " + DOUBLES.vectorBitSize() + " bit";
+    }
+
+    @Override
+    public void normalize(int[] src, int srcOffset, double[] dst,
+            int dstOffset, int length, int bits) {
+        final int bound = DOUBLES.loopBound(length);
+        final double negative = 1L << (bits - 1);
+        final DoubleVector positive = DoubleVector.broadcast(DOUBLES,
+                negative - 1);
+        int i = 0;
+
+        for (; i < bound; i += DOUBLES.length()) {
+            final DoubleVector value = (DoubleVector) IntVector.fromArray(
+                    INTS, src, srcOffset + i).castShape(DOUBLES, 0);
+            value.div(
+                    positive.blend(negative,
+                            value.compare(VectorOperators.LT, 0))).intoArray(
+                    dst, dstOffset + i);
+        }
+
+        mScalar.normalize(src, srcOffset + i, dst, dstOffset + i, length - i,
+                bits);
+    }
+
+    @Override
+    public void quantize(double[] src, int srcOffset, double[] dst,
+            int dstOffset, int length, double halfRange) {
+        final int bound = DOUBLES.loopBound(length);
+        final DoubleVector positive = DoubleVector.broadcast(DOUBLES,
+                halfRange - 0.5);
+        int i = 0;
+
+        for (; i < bound; i += DOUBLES.length()) {
+            DoubleVector value = DoubleVector.fromArray(DOUBLES, src,
+                    srcOffset + i).max(-1.0).min(1.0);
+            value = value.mul(positive.blend(halfRange + 0.5,
+                    value.compare(VectorOperators.LT, 0)));
+
+            // Math.round() emulation: truncate and correct by the exact
+            // fraction, ties round towards positive infinity
+            final DoubleVector truncated = (DoubleVector) value
+                    .convert(VectorOperators.D2L, 0)
+                    .convert(VectorOperators.L2D, 0);
+            final DoubleVector fraction = value.sub(truncated);
+            final VectorMask<Double> up = fraction.compare(
+                    VectorOperators.GE, 0.5);
+            final VectorMask<Double> down = fraction.compare(
+                    VectorOperators.LT, -0.5);
+            truncated.add(1.0, up).sub(1.0, down)
+                    .intoArray(dst, dstOffset + i);
+        }
+
+        mScalar.quantize(src, srcOffset + i, dst, dstOffset + i, length - i,
+                halfRange);
+    }
+
+    @Override
+    public void scale(double[] src, int srcOffset, double gain, double[] dst,
+            int dstOffset, int length) {
+        final int bound = DOUBLES.loopBound(length);
+        int i = 0;
+
+        for (; i < bound; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, src, srcOffset + i).mul(gain)
+                    .intoArray(dst, dstOffset + i);
+        }
+
+        mScalar.scale(src, srcOffset + i, gain, dst, dstOffset + i, length - i);
+    }
+}